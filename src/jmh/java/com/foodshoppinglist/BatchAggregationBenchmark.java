@@ -0,0 +1,84 @@
+package com.foodshoppinglist;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the throughput of the aggregation of many selections, in
+ * selections per second: aggregated together (see {@link ShoppingListBatch})
+ * or one by one with a {@link ShoppingListAggregator}, bypassing the cache of
+ * shopping lists.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class BatchAggregationBenchmark {
+
+    private static final int SELECTIONS_COUNT = 10_000;
+
+    /** The number of ingredient lines of the meals file. */
+    @Param({"100", "10000", "1000000"})
+    public int linesCount;
+
+    /** The number of meals of each selection. */
+    @Param({"7", "100"})
+    public int selectionSize;
+
+    private MealCatalogue catalogue;
+    private List<BitSet> selections;
+    private final ShoppingListAggregator aggregator = new ShoppingListAggregator();
+
+    @Setup
+    public void setUp() throws Exception {
+        catalogue = new MealsHandler(SyntheticCatalogue.writeTemporaryFile(linesCount).toString()).getCatalogue();
+        Random random = new Random(selectionSize);
+        selections = new ArrayList<>(SELECTIONS_COUNT);
+        for (int i = 0; i < SELECTIONS_COUNT; i++) {
+            BitSet selection = new BitSet(catalogue.getMealsCount());
+            random.ints(selectionSize, 0, catalogue.getMealsCount()).forEach(selection::set);
+            selections.add(selection);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SELECTIONS_COUNT)
+    public void aggregateOneByOne(Blackhole blackhole) {
+        for (BitSet selection : selections)
+            blackhole.consume(aggregator.aggregate(catalogue, selection));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SELECTIONS_COUNT)
+    public ShoppingListBatch aggregateBatch() {
+        return ShoppingListBatch.aggregate(catalogue, selections, ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SELECTIONS_COUNT)
+    public void aggregateBatchIntoMaps(Blackhole blackhole) {
+        ShoppingListBatch batch = ShoppingListBatch.aggregate(catalogue, selections, ForkJoinPool.commonPool());
+        for (int i = 0; i < batch.size(); i++)
+            blackhole.consume(batch.getShoppingList(i));
+    }
+}
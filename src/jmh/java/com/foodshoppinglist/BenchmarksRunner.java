@@ -0,0 +1,27 @@
+package com.foodshoppinglist;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The main class of the benchmarks jar.
+ * <p/>
+ * It accepts the usual JMH command-line options (for instance a regex of the
+ * benchmarks to run, or <code>-p linesCount=10000</code>), and always adds the
+ * GC profiler, so that the allocation rate of each benchmark is reported next
+ * to its time.
+ */
+public class BenchmarksRunner {
+
+    static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()
+        ).run();
+    }
+}
@@ -0,0 +1,67 @@
+package com.foodshoppinglist;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the loading of a meals file, step by step.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class CatalogueLoadingBenchmark {
+
+    /** The number of ingredient lines of the meals file. */
+    @Param({"100", "10000", "1000000"})
+    public int linesCount;
+
+    private String mealsFile;
+    private Object content;
+
+    @Setup
+    public void setUp() {
+        mealsFile = SyntheticCatalogue.writeTemporaryFile(linesCount).toString();
+        content = Utils.readYamlFile(mealsFile, false);
+    }
+
+    @Benchmark
+    public Object readYamlFile() {
+        return Utils.readYamlFile(mealsFile, false);
+    }
+
+    @Benchmark
+    public Object checkFileFormat() throws FileFormatException {
+        MealsHandler.checkFileFormat(mealsFile, content);
+        return content;
+    }
+
+    @Benchmark
+    public Map<String, Map<String, IngredientAmount>> convertToStructuredObject() {
+        return MealsHandler.convertToStructuredObject(content);
+    }
+
+    @Benchmark
+    public Map<String, Map<String, IngredientAmount>> streamingLoad() throws FileFormatException {
+        return MealsFileLoader.load(mealsFile);
+    }
+
+    @Benchmark
+    public MealsHandler mealsHandler() throws FileFormatException {
+        return new MealsHandler(mealsFile);
+    }
+}
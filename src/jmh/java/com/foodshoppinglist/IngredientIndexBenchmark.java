@@ -0,0 +1,99 @@
+package com.foodshoppinglist;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the queries of the meals by ingredient, against a scan of the
+ * lines of the catalogue.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class IngredientIndexBenchmark {
+
+    /** The number of ingredient lines of the meals file. */
+    @Param({"10000", "1000000"})
+    public int linesCount;
+
+    private MealCatalogue catalogue;
+    private List<String> allOf;
+    private List<String> anyOf;
+    private List<String> noneOf;
+    /** The ingredients of a pantry, a few meals' worth. */
+    private List<String> pantry;
+
+    @Setup
+    public void setUp() throws Exception {
+        catalogue = new MealsHandler(SyntheticCatalogue.writeTemporaryFile(linesCount).toString()).getCatalogue();
+        Random random = new Random(linesCount);
+        // the ingredients of a meal are consecutive, so neighbours often go together
+        int ingredient = random.nextInt(catalogue.getIngredientsCount() - 5);
+        allOf = List.of(catalogue.getIngredientName(ingredient), catalogue.getIngredientName(ingredient + 3));
+        anyOf = List.of(catalogue.getIngredientName(ingredient + 1), catalogue.getIngredientName(ingredient + 2));
+        noneOf = List.of(catalogue.getIngredientName(ingredient + 4));
+        pantry = new ArrayList<>();
+        for (int i = 0; i < 30; i++)
+            pantry.add(catalogue.getIngredientName((ingredient + i) % catalogue.getIngredientsCount()));
+    }
+
+    @Benchmark
+    public BitSet findMeals() {
+        return catalogue.getIngredientIndex().findMeals(allOf, anyOf, noneOf);
+    }
+
+    @Benchmark
+    public BitSet findCookableMeals() {
+        return catalogue.getIngredientIndex().findCookableMeals(pantry);
+    }
+
+    /** The same query as {@link #findMeals()}, by a scan of every line. */
+    @Benchmark
+    public BitSet scanMeals() {
+        int[] allOfIds = allOf.stream().mapToInt(catalogue::getIngredientId).toArray();
+        int[] anyOfIds = anyOf.stream().mapToInt(catalogue::getIngredientId).toArray();
+        int[] noneOfIds = noneOf.stream().mapToInt(catalogue::getIngredientId).toArray();
+        BitSet result = new BitSet();
+        for (int ordinal = 0; ordinal < catalogue.getMealsCount(); ordinal++) {
+            int allOfCount = 0;
+            boolean hasAnyOf = false;
+            boolean hasNoneOf = false;
+            for (int line = catalogue.getFirstLine(ordinal); line < catalogue.getEndLine(ordinal); line++) {
+                int id = catalogue.getLineIngredient(line);
+                for (int allOfId : allOfIds)
+                    allOfCount += allOfId == id ? 1 : 0;
+                for (int anyOfId : anyOfIds)
+                    hasAnyOf |= anyOfId == id;
+                for (int noneOfId : noneOfIds)
+                    hasNoneOf |= noneOfId == id;
+            }
+            if (allOfCount == allOfIds.length && hasAnyOf && ! hasNoneOf)
+                result.set(ordinal);
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public IngredientIndex buildIndex() {
+        return IngredientIndex.of(catalogue);
+    }
+}
@@ -0,0 +1,49 @@
+package com.foodshoppinglist;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the cost of timing a phase, with the metrics disabled and
+ * enabled.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+    @Param({"false", "true"})
+    public boolean isEnabled;
+
+    @Setup
+    public void setUp() {
+        Metrics.setEnabled(isEnabled);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Metrics.setEnabled(false);
+    }
+
+    @Benchmark
+    public void timePhase() {
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.PARSE_SELECTION)) {
+            // an empty phase: only the cost of the timer is measured
+        }
+    }
+}
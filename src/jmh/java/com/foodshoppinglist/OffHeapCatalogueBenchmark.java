@@ -0,0 +1,88 @@
+package com.foodshoppinglist;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks many resident catalogues, on the heap (one {@link MealCatalogue}
+ * each) or outside of it (one {@link OffHeapCatalogue} each, in a
+ * {@link CatalogueStore}): the duration of a full garbage collection, which
+ * grows with what the heap holds, and the aggregation of a selection.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class OffHeapCatalogueBenchmark {
+
+    /** The number of resident catalogues. */
+    @Param({"10", "100", "200"})
+    public int cataloguesCount;
+
+    /** The number of ingredient lines of each meals file. */
+    @Param({"100000", "200000"})
+    public int linesCount;
+
+    @Param({"heap", "offHeap"})
+    public String storage;
+
+    private final List<MealCatalogue> heapCatalogues = new ArrayList<>();
+    private final CatalogueStore store = new CatalogueStore();
+    private final ShoppingListAggregator aggregator = new ShoppingListAggregator();
+    private BitSet selection;
+    private long[] totals;
+
+    @Setup
+    public void setUp() throws Exception {
+        MealCatalogue catalogue = new MealsHandler(SyntheticCatalogue.writeTemporaryFile(linesCount).toString()).getCatalogue();
+        for (int i = 0; i < cataloguesCount; i++) {
+            if (storage.equals("heap"))
+                heapCatalogues.add(MealCatalogue.of(catalogue.asMap()));
+            else
+                store.load("customer " + i, catalogue);
+        }
+        selection = new BitSet(catalogue.getMealsCount());
+        new Random(linesCount).ints(7, 0, catalogue.getMealsCount()).forEach(selection::set);
+        totals = new long[catalogue.getIngredientsCount()];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.close();
+    }
+
+    @Benchmark
+    public void collectGarbage() {
+        System.gc();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Object aggregate() {
+        if (storage.equals("heap"))
+            return aggregator.aggregate(heapCatalogues.getLast(), selection);
+        Arrays.fill(totals, 0);
+        store.get("customer " + (cataloguesCount - 1)).aggregate(selection, totals);
+        return totals;
+    }
+}
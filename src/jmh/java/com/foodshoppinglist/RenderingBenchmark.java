@@ -0,0 +1,71 @@
+package com.foodshoppinglist;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the listing of the meals, against one autoflushed
+ * <code>println</code> per meal as the standard output does it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class RenderingBenchmark {
+
+    /** The number of ingredient lines of the meals file (ten per meal). */
+    @Param({"10000", "1000000"})
+    public int linesCount;
+
+    private List<String> availableMealsNames;
+    private FrontendHandler frontendHandler;
+    private PrintStream printStream;
+
+    @Setup
+    public void setUp() throws Exception {
+        availableMealsNames = new MealsHandler(SyntheticCatalogue.writeTemporaryFile(linesCount).toString())
+                .getAvailableMealsNames();
+        frontendHandler = new FrontendHandler(
+                "texts.yaml", new OutputStreamWriter(OutputStream.nullOutputStream(), StandardCharsets.UTF_8)
+        );
+        printStream = new PrintStream(OutputStream.nullOutputStream(), true, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void printAvailableMeals() throws IOException {
+        frontendHandler.printAvailableMeals(availableMealsNames);
+    }
+
+    @Benchmark
+    public void printOnePage() throws IOException {
+        frontendHandler.printAvailableMeals(availableMealsNames, availableMealsNames.size() / 2, 100);
+    }
+
+    @Benchmark
+    public void printlnPerMeal() {
+        printStream.println();
+        printStream.println("Available meals:");
+        for (int i = 0; i < availableMealsNames.size(); i++)
+            printStream.println((i + 1) + ". " + availableMealsNames.get(i));
+        printStream.println();
+    }
+}
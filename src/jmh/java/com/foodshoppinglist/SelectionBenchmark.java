@@ -0,0 +1,78 @@
+package com.foodshoppinglist;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmarks what happens once the meals are loaded: listing the meals,
+ * parsing the user input and aggregating the selected meals.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class SelectionBenchmark {
+
+    /** The number of ingredient lines of the meals file. */
+    @Param({"100", "10000", "1000000"})
+    public int linesCount;
+
+    /** The number of selected meals. */
+    @Param({"7", "1000"})
+    public int selectionSize;
+
+    private MealsHandler mealsHandler;
+    private List<String> availableMealsNames;
+    private String userInput;
+    private List<String> selectedMealsNames;
+    private final SelectionParser selectionParser = new SelectionParser();
+
+    @Setup
+    public void setUp() throws Exception {
+        mealsHandler = new MealsHandler(SyntheticCatalogue.writeTemporaryFile(linesCount).toString());
+        availableMealsNames = mealsHandler.getAvailableMealsNames();
+        Random random = new Random(selectionSize);
+        userInput = random.ints(selectionSize, 1, availableMealsNames.size() + 1)
+                .mapToObj(Integer::toString)
+                .collect(Collectors.joining(" "));
+        selectedMealsNames = FrontendHandler.parseUserInput(userInput, availableMealsNames);
+    }
+
+    @Benchmark
+    public List<String> getAvailableMealsNames() {
+        return mealsHandler.getAvailableMealsNames();
+    }
+
+    @Benchmark
+    public List<String> parseUserInput() throws InvalidUserInputException {
+        return FrontendHandler.parseUserInput(userInput, availableMealsNames);
+    }
+
+    @Benchmark
+    public BitSet parseSelection() throws InvalidUserInputException {
+        return selectionParser.parse(userInput, availableMealsNames.size());
+    }
+
+    @Benchmark
+    public Map<String, IngredientAmount> computeRequiredIngredients() {
+        return mealsHandler.computeRequiredIngredients(selectedMealsNames);
+    }
+}
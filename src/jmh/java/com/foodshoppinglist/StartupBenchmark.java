@@ -0,0 +1,92 @@
+package com.foodshoppinglist;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the time to first prompt of the packaged program: the time from
+ * the start of a new JVM to the prompt that asks for the meals, with and
+ * without the ahead-of-time cache recorded by the packaging.
+ * <p/>
+ * The packaged jar must have been built first (<code>mvn package</code>),
+ * and the benchmarks run from the directory of the project.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    /** The packaged jar. */
+    private static final Path JAR = Path.of("target/food-shopping-list.jar");
+    /** The ahead-of-time cache of the packaged jar. */
+    private static final Path AOT_CACHE = Path.of("target/food-shopping-list.aot");
+
+    /** The number of ingredient lines of the meals file. */
+    @Param({"100", "10000"})
+    public int linesCount;
+
+    /** True to start the program with the ahead-of-time cache. */
+    @Param({"false", "true"})
+    public boolean aotCache;
+
+    private List<String> command;
+    private String prompt;
+    private Process process;
+
+    @Setup
+    public void setUp() throws Exception {
+        if (! Files.isRegularFile(JAR) || aotCache && ! Files.isRegularFile(AOT_CACHE))
+            throw new IllegalStateException("Package the program first, with mvn package");
+        command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if (aotCache)
+            command.add("-XX:AOTCache=" + AOT_CACHE);
+        command.addAll(List.of("-jar", JAR.toString(), SyntheticCatalogue.writeTemporaryFile(linesCount).toString()));
+        prompt = TextAssets.load("texts.yaml").get("prompt_user");
+    }
+
+    @Benchmark
+    public int timeToFirstPrompt() throws IOException {
+        process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), System.out.charset()));
+        int printedLinesCount = 0;
+        String line;
+        while ((line = output.readLine()) != null && ! line.equals(prompt))
+            printedLinesCount++;
+        if (line == null)
+            throw new IllegalStateException("The program ended before prompting for the meals");
+        return printedLinesCount;
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopProgram() throws Exception {
+        // the end of the input selects no meal, and ends the program
+        process.getOutputStream().close();
+        process.getInputStream().transferTo(OutputStream.nullOutputStream());
+        process.waitFor();
+    }
+}
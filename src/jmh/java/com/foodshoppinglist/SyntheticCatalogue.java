@@ -0,0 +1,87 @@
+package com.foodshoppinglist;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generates meals files of a given size for the benchmarks.
+ * <p/>
+ * The files follow the syntax of the meals file: each ingredient always uses
+ * the same unit, and names contain accents like real ones do. The generation
+ * is deterministic, so that every run benchmarks the same files.
+ */
+public class SyntheticCatalogue {
+
+    /** The number of ingredients of each meal. */
+    public static final int INGREDIENTS_PER_MEAL = 10;
+
+    private static final String[] UNITS = {"g", "kg", "unit", "c à s", "pincée", "mL", "L"};
+    private static final String[] QUANTITIES = {"1", "2", "5", "0.1", "1.5", "200", "400"};
+
+
+
+
+    /**
+     * Returns the name of the meal at the given position in a generated file.
+     *
+     * @param index the position of the meal
+     * @return the name of the meal
+     */
+    public static String mealName(int index) {
+        return "plat n°" + index;
+    }
+
+    /**
+     * Writes a meals file that has about the given number of ingredient lines
+     * (that is, ingredients of a meal).
+     *
+     * @param file the file to write
+     * @param linesCount the number of ingredient lines
+     * @return the number of meals in the file
+     */
+    public static int write(Path file, int linesCount) {
+        int mealsCount = Math.max(1, linesCount / INGREDIENTS_PER_MEAL);
+        // real catalogues reuse a few thousands of ingredients at most
+        int ingredientsCount = Math.min(5_000, Math.max(INGREDIENTS_PER_MEAL, linesCount / 20));
+        Random random = new Random(linesCount);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int meal = 0; meal < mealsCount; meal++) {
+                writer.write(mealName(meal) + ":\n");
+                int firstIngredient = random.nextInt(ingredientsCount);
+                for (int i = 0; i < INGREDIENTS_PER_MEAL; i++) {
+                    // consecutive ingredients, so that none is repeated in a meal
+                    int ingredient = (firstIngredient + i) % ingredientsCount;
+                    writer.write("  ingrédient " + ingredient + ":\n");
+                    writer.write("    quantity: " + QUANTITIES[random.nextInt(QUANTITIES.length)] + "\n");
+                    writer.write("    unit: " + UNITS[ingredient % UNITS.length] + "\n");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return mealsCount;
+    }
+
+    /**
+     * Writes a meals file with about the given number of ingredient lines
+     * into a temporary file that is deleted when the JVM exits.
+     *
+     * @param linesCount the number of ingredient lines
+     * @return the path of the file
+     */
+    public static Path writeTemporaryFile(int linesCount) {
+        try {
+            Path file = Files.createTempFile("meals-" + linesCount + "-", ".yaml");
+            file.toFile().deleteOnExit();
+            write(file, linesCount);
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.foodshoppinglist;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * Computes the shopping lists of many selections, read one per line.
+ * <p/>
+ * Each line of the input is a selection, written as the user would enter it
+ * (see {@link SelectionParser}). The aggregated list of each selection is
+ * written in one of the {@link OutputFormat output formats}. Invalid
+ * selections are reported on the error output, with their line number.
+ */
+public class BatchProcessor {
+
+    /**
+     * The formats of the output.
+     */
+    public enum OutputFormat {
+        /**
+         * One JSON object per selection and per line, for instance
+         * <code>{"selection":1,"ingredients":[{"name":"riz","quantity":400,"unit":"g"}]}</code>.
+         * An invalid selection gives <code>{"selection":2,"error":"..."}</code>,
+         * so that the n-th output line is always about the n-th input line.
+         */
+        JSON_LINES,
+        /**
+         * One row per ingredient of each selection, under the header
+         * <code>selection,ingredient,quantity,unit</code>. Invalid selections
+         * have no rows, like empty ones: they are told apart by the error
+         * output and the {@link Statistics statistics} only.
+         */
+        CSV
+    }
+
+    private static final String CSV_HEADER = "selection,ingredient,quantity,unit";
+
+    private final MealsHandler mealsHandler;
+    private final OutputFormat outputFormat;
+    private final SelectionParser selectionParser = new SelectionParser();
+
+
+
+
+    /**
+     * Builds a <code>BatchProcessor</code>
+     *
+     * @param mealsHandler the handler of the meals the selections refer to
+     * @param outputFormat the format of the output
+     */
+    public BatchProcessor(MealsHandler mealsHandler, OutputFormat outputFormat) {
+        this.mealsHandler = mealsHandler;
+        this.outputFormat = outputFormat;
+    }
+
+
+
+
+    /**
+     * Processes all the selections of the input.
+     * <p/>
+     * The output is not flushed after each selection, so it is expected to be
+     * buffered; it is flushed whenever the input has no more selections ready
+     * (so that a long-running pipe gets its answers without delay), and once
+     * all the selections are processed.
+     *
+     * @param input the selections, one per line
+     * @param output where to write the shopping lists
+     * @param errorOutput where to report invalid selections
+     * @return the statistics of the processing
+     * @throws IOException if the input cannot be read or the output cannot be
+     * written
+     */
+    public Statistics process(BufferedReader input, Writer output, PrintStream errorOutput) throws IOException {
+        long startTime = System.nanoTime();
+        long selectionsCount = 0;
+        long invalidSelectionsCount = 0;
+
+        if (outputFormat == OutputFormat.CSV)
+            output.write(CSV_HEADER + "\n");
+        String line;
+        while ((line = input.readLine()) != null) {
+            selectionsCount++;
+            // the meals may be reloaded between two selections
+            MealCatalogue catalogue = mealsHandler.getCatalogue();
+            try {
+                BitSet selection = selectionParser.parse(line, catalogue.getMealsCount());
+                writeShoppingList(output, selectionsCount, mealsHandler.computeRequiredIngredients(catalogue, selection));
+            } catch (InvalidUserInputException e) {
+                invalidSelectionsCount++;
+                errorOutput.println("Invalid selection on line " + selectionsCount + ": " + e.getMessage());
+                if (outputFormat == OutputFormat.JSON_LINES)
+                    writeJsonError(output, selectionsCount, e.getMessage());
+            } catch (ArithmeticException e) {
+                invalidSelectionsCount++;
+                errorOutput.println("Invalid selection on line " + selectionsCount + ": " + ShoppingListAggregator.OVERFLOW_MESSAGE);
+                if (outputFormat == OutputFormat.JSON_LINES)
+                    writeJsonError(output, selectionsCount, ShoppingListAggregator.OVERFLOW_MESSAGE);
+            }
+            if (! input.ready())
+                output.flush();
+        }
+        output.flush();
+
+        return new Statistics(selectionsCount, invalidSelectionsCount, System.nanoTime() - startTime);
+    }
+
+    private void writeShoppingList(Writer output, long selection, Map<String, IngredientAmount> requiredIngredients)
+            throws IOException {
+        switch (outputFormat) {
+            case JSON_LINES -> {
+                output.write("{\"selection\":");
+                output.write(Long.toString(selection));
+                output.write(",\"ingredients\":");
+                Json.writeIngredients(output, requiredIngredients);
+                output.write("}\n");
+            }
+            case CSV -> {
+                for (Map.Entry<String, IngredientAmount> ingredientEntry : requiredIngredients.entrySet()) {
+                    output.write(Long.toString(selection));
+                    output.write(',');
+                    writeCsvField(output, ingredientEntry.getKey());
+                    output.write(',');
+                    output.write(FixedPoint.toString(ingredientEntry.getValue().scaledQuantity()));
+                    output.write(',');
+                    writeCsvField(output, ingredientEntry.getValue().unit());
+                    output.write('\n');
+                }
+            }
+        }
+    }
+
+    private static void writeJsonError(Writer output, long selection, String message) throws IOException {
+        output.write("{\"selection\":");
+        output.write(Long.toString(selection));
+        output.write(",\"error\":");
+        Json.writeString(output, message);
+        output.write("}\n");
+    }
+
+    /**
+     * Writes a CSV field, quoting it if needed (RFC 4180).
+     */
+    private static void writeCsvField(Writer output, String field) throws IOException {
+        boolean needsQuotes = false;
+        for (int i = 0; i < field.length() && ! needsQuotes; i++) {
+            char c = field.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (! needsQuotes) {
+            output.write(field);
+            return;
+        }
+        output.write('"');
+        output.write(field.replace("\"", "\"\""));
+        output.write('"');
+    }
+
+    /**
+     * The statistics of a batch.
+     *
+     * @param selectionsCount the number of selections
+     * @param invalidSelectionsCount the number of invalid selections
+     * @param durationNanos the duration of the processing, in nanoseconds
+     */
+    public record Statistics(long selectionsCount, long invalidSelectionsCount, long durationNanos) {
+
+        /**
+         * Returns the number of selections processed per second.
+         *
+         * @return the number of selections processed per second
+         */
+        public double selectionsPerSecond() {
+            return durationNanos == 0 ? 0 : selectionsCount * 1e9 / durationNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Processed %d selections (%d invalid) in %.3f s: %.0f selections/s".formatted(
+                    selectionsCount, invalidSelectionsCount, durationNanos / 1e9, selectionsPerSecond()
+            );
+        }
+    }
+}
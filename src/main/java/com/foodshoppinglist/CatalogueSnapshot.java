@@ -0,0 +1,335 @@
+package com.foodshoppinglist;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads and writes binary snapshots of meal catalogues.
+ * <p/>
+ * A snapshot holds a catalogue that was already checked, so that it can be
+ * loaded without parsing or checking the meals file again. It is stored next
+ * to the meals file, with the <code>.snapshot</code> extension, and records the
+ * size, modification time and SHA-256 hash of the meals file it was compiled
+ * from: a snapshot whose meals file has changed since is ignored.
+ * <p/>
+ * Layout (little-endian):
+ * <pre>
+ * header:  magic (int), version (int),
+ *          source size (long), source modification time in ms (long),
+ *          source SHA-256 hash (32 bytes),
+ *          payload length (long), payload CRC32C (int)
+ * payload: meals count, lines count, ingredients count, units count (ints),
+ *          meals names, ingredients names, units (string tables),
+ *          meals offsets (ints), lines ingredients (ints),
+ *          lines quantities (longs, in thousandths of the units of the ingredients),
+ *          lines written quantities (longs, in thousandths of the units of the lines),
+ *          lines units (ints), ingredients units (ints)
+ * </pre>
+ * A string table is the offsets of the strings (count + 1 ints) in the UTF-8
+ * bytes that follow, padded to a multiple of 4 bytes.
+ */
+public class CatalogueSnapshot {
+
+    /** The extension appended to the name of a meals file to get the name of its snapshot. */
+    public static final String EXTENSION = ".snapshot";
+
+    private static final int MAGIC = 0x464C5343; // "FLSC"
+    /**
+     * The version of the format: 2 since meals are sorted by collation rather
+     * than lexicographically, 3 since quantities are fixed-point longs, 4
+     * since an ingredient may be written with several compatible units, 5
+     * since their quantities are converted to a unit that divides all of them.
+     */
+    private static final int VERSION = 5;
+    private static final int HASH_LENGTH = 32;
+    private static final int HEADER_LENGTH = 4 + 4 + 8 + 8 + HASH_LENGTH + 8 + 4;
+
+
+
+
+    /**
+     * Checks and compiles a meals file into a snapshot, stored next to it.
+     *
+     * @param mealsFile the meals file
+     * @return the compiled catalogue
+     * @throws FileFormatException if the meals file is not correctly formatted
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static MealCatalogue compile(String mealsFile) throws FileFormatException, IOException {
+        Path source = Path.of(mealsFile);
+        // the source is described before being read, so that a modification
+        // during the compilation makes the snapshot stale
+        SourceDescription sourceDescription = SourceDescription.of(source);
+        MealCatalogue catalogue = MealCatalogue.of(MealsFileLoader.load(mealsFile));
+        write(catalogue, sourceDescription, Path.of(mealsFile + EXTENSION));
+        return catalogue;
+    }
+
+    /**
+     * Reads the snapshot of a meals file, if it exists and is up to date.
+     * <p/>
+     * A corrupted snapshot is reported on the standard error output and
+     * ignored.
+     *
+     * @param mealsFile the meals file
+     * @return the catalogue, or null if there's no up-to-date snapshot
+     */
+    public static MealCatalogue readIfUpToDate(String mealsFile) {
+        Path snapshot = Path.of(mealsFile + EXTENSION);
+        if (! Files.isRegularFile(snapshot))
+            return null;
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.READ_SNAPSHOT)) {
+            return read(snapshot, Path.of(mealsFile));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring the snapshot " + snapshot + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes a catalogue into a snapshot.
+     * <p/>
+     * The snapshot is written into a temporary file that then replaces the
+     * snapshot file, so that a reader never sees a partially written snapshot.
+     *
+     * @param catalogue the catalogue
+     * @param source the description of the meals file of the catalogue
+     * @param snapshot the snapshot file
+     * @throws IOException if the snapshot cannot be written
+     */
+    static void write(MealCatalogue catalogue, SourceDescription source, Path snapshot) throws IOException {
+        byte[][] mealsNames = encode(catalogue.getMealsCount(), catalogue::getMealName);
+        byte[][] ingredientsNames = encode(catalogue.getIngredientsCount(), catalogue::getIngredientName);
+        byte[][] units = encode(catalogue.getUnitsCount(), catalogue::getUnit);
+
+        long payloadLength = 4 * 4
+                + stringTableLength(mealsNames) + stringTableLength(ingredientsNames) + stringTableLength(units)
+                + 4L * (catalogue.getMealsCount() + 1)
+                + 4L * catalogue.getLinesCount()
+                + 8L * catalogue.getLinesCount() * 2
+                + 4L * catalogue.getLinesCount()
+                + 4L * catalogue.getIngredientsCount();
+        if (HEADER_LENGTH + payloadLength > Integer.MAX_VALUE)
+            throw new IOException("the catalogue is too large for a snapshot");
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + (int) payloadLength).order(ByteOrder.LITTLE_ENDIAN);
+
+        // payload
+        buffer.position(HEADER_LENGTH);
+        buffer.putInt(catalogue.getMealsCount());
+        buffer.putInt(catalogue.getLinesCount());
+        buffer.putInt(catalogue.getIngredientsCount());
+        buffer.putInt(catalogue.getUnitsCount());
+        putStringTable(buffer, mealsNames);
+        putStringTable(buffer, ingredientsNames);
+        putStringTable(buffer, units);
+        for (int ordinal = 0; ordinal < catalogue.getMealsCount(); ordinal++)
+            buffer.putInt(catalogue.getFirstLine(ordinal));
+        buffer.putInt(catalogue.getLinesCount());
+        for (int line = 0; line < catalogue.getLinesCount(); line++)
+            buffer.putInt(catalogue.getLineIngredient(line));
+        for (int line = 0; line < catalogue.getLinesCount(); line++)
+            buffer.putLong(catalogue.getLineQuantity(line));
+        for (int line = 0; line < catalogue.getLinesCount(); line++)
+            buffer.putLong(catalogue.getLineWrittenQuantity(line));
+        for (int line = 0; line < catalogue.getLinesCount(); line++)
+            buffer.putInt(catalogue.getLineUnitIndex(line));
+        for (int id = 0; id < catalogue.getIngredientsCount(); id++)
+            buffer.putInt(catalogue.getIngredientUnitIndex(id));
+
+        // header
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), HEADER_LENGTH, (int) payloadLength);
+        buffer.position(0);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(source.size());
+        buffer.putLong(source.modificationTime());
+        buffer.put(source.hash());
+        buffer.putLong(payloadLength);
+        buffer.putInt((int) crc.getValue());
+
+        Path temporaryFile = Files.createTempFile(snapshot.toAbsolutePath().getParent(), snapshot.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporaryFile, buffer.array());
+            Files.move(temporaryFile, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Reads a snapshot through a memory map, if it is up to date.
+     *
+     * @param snapshot the snapshot file
+     * @param source the meals file the snapshot was compiled from
+     * @return the catalogue, or null if the snapshot is out of date
+     * @throws IOException if the snapshot cannot be read or is corrupted
+     */
+    static MealCatalogue read(Path snapshot, Path source) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_LENGTH)
+                throw new IOException("truncated file");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        // header
+        if (buffer.getInt() != MAGIC)
+            throw new IOException("not a snapshot");
+        if (buffer.getInt() != VERSION)
+            return null; // written by another version of the program
+        long sourceSize = buffer.getLong();
+        long sourceModificationTime = buffer.getLong();
+        byte[] sourceHash = new byte[HASH_LENGTH];
+        buffer.get(sourceHash);
+        if (! isUpToDate(source, sourceSize, sourceModificationTime, sourceHash))
+            return null;
+        long payloadLength = buffer.getLong();
+        int payloadCrc = buffer.getInt();
+        if (payloadLength != buffer.capacity() - HEADER_LENGTH)
+            throw new IOException("truncated file");
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice());
+        if ((int) crc.getValue() != payloadCrc)
+            throw new IOException("checksum mismatch");
+
+        // payload
+        int mealsCount = buffer.getInt();
+        int linesCount = buffer.getInt();
+        int ingredientsCount = buffer.getInt();
+        int unitsCount = buffer.getInt();
+        String[] mealsNames = getStringTable(buffer, mealsCount);
+        String[] ingredientsNames = getStringTable(buffer, ingredientsCount);
+        String[] units = getStringTable(buffer, unitsCount);
+        int[] mealsOffsets = new int[mealsCount + 1];
+        buffer.asIntBuffer().get(mealsOffsets);
+        buffer.position(buffer.position() + 4 * mealsOffsets.length);
+        int[] linesIngredients = new int[linesCount];
+        buffer.asIntBuffer().get(linesIngredients);
+        buffer.position(buffer.position() + 4 * linesCount);
+        long[] linesQuantities = new long[linesCount];
+        buffer.asLongBuffer().get(linesQuantities);
+        buffer.position(buffer.position() + 8 * linesCount);
+        long[] linesWrittenQuantities = new long[linesCount];
+        buffer.asLongBuffer().get(linesWrittenQuantities);
+        buffer.position(buffer.position() + 8 * linesCount);
+        if (Arrays.equals(linesWrittenQuantities, linesQuantities))
+            linesWrittenQuantities = linesQuantities;
+        int[] linesUnits = new int[linesCount];
+        buffer.asIntBuffer().get(linesUnits);
+        buffer.position(buffer.position() + 4 * linesCount);
+        int[] ingredientsUnits = new int[ingredientsCount];
+        buffer.asIntBuffer().get(ingredientsUnits);
+
+        return new MealCatalogue(
+                mealsNames,
+                mealsOffsets,
+                linesIngredients,
+                linesQuantities,
+                linesWrittenQuantities,
+                linesUnits,
+                ingredientsNames,
+                ingredientsUnits,
+                units
+        );
+    }
+
+    /**
+     * Returns true if the meals file hasn't changed since the snapshot was
+     * compiled. The file is only hashed if its modification time has changed
+     * but not its size.
+     */
+    private static boolean isUpToDate(Path source, long size, long modificationTime, byte[] hash) throws IOException {
+        if (! Files.isRegularFile(source) || Files.size(source) != size)
+            return false;
+        if (Files.getLastModifiedTime(source).toMillis() == modificationTime)
+            return true;
+        return Arrays.equals(hash(source), hash);
+    }
+
+    private static byte[][] encode(int count, IntFunction<String> strings) {
+        byte[][] encoded = new byte[count][];
+        for (int i = 0; i < count; i++)
+            encoded[i] = strings.apply(i).getBytes(StandardCharsets.UTF_8);
+        return encoded;
+    }
+
+    private static long stringTableLength(byte[][] strings) {
+        long bytesLength = 0;
+        for (byte[] string : strings)
+            bytesLength += string.length;
+        return 4L * (strings.length + 1) + padded(bytesLength);
+    }
+
+    private static void putStringTable(ByteBuffer buffer, byte[][] strings) {
+        int offset = 0;
+        for (byte[] string : strings) {
+            buffer.putInt(offset);
+            offset += string.length;
+        }
+        buffer.putInt(offset);
+        for (byte[] string : strings)
+            buffer.put(string);
+        buffer.position(buffer.position() + (int) (padded(offset) - offset));
+    }
+
+    private static String[] getStringTable(ByteBuffer buffer, int count) {
+        int[] offsets = new int[count + 1];
+        buffer.asIntBuffer().get(offsets);
+        int bytesStart = buffer.position() + 4 * offsets.length;
+        byte[] bytes = new byte[offsets[count]];
+        buffer.get(bytesStart, bytes);
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++)
+            strings[i] = new String(bytes, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+        buffer.position(bytesStart + (int) padded(offsets[count]));
+        return strings;
+    }
+
+    private static long padded(long length) {
+        return (length + 3) & ~3L;
+    }
+
+    private static byte[] hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            byte[] chunk = new byte[64 * 1024];
+            int read;
+            while ((read = inputStream.read(chunk)) > 0)
+                digest.update(chunk, 0, read);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * The size, modification time and hash of a meals file.
+     */
+    record SourceDescription(long size, long modificationTime, byte[] hash) {
+
+        static SourceDescription of(Path source) throws IOException {
+            return new SourceDescription(
+                    Files.size(source), Files.getLastModifiedTime(source).toMillis(), CatalogueSnapshot.hash(source)
+            );
+        }
+    }
+}
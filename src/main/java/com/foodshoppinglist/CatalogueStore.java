@@ -0,0 +1,121 @@
+package com.foodshoppinglist;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The catalogues of many customers, held outside of the heap (see
+ * {@link OffHeapCatalogue}), so that the pauses of the garbage collector
+ * don't grow with the number of resident catalogues.
+ * <p/>
+ * Each catalogue is loaded and released on its own: its memory is freed as
+ * soon as it is released or replaced, without waiting for a garbage
+ * collection. A catalogue that is read by another thread while it is
+ * released makes that thread fail with an {@link IllegalStateException},
+ * never read freed memory.
+ * <p/>
+ * Once the store is closed, it cannot load catalogues anymore: a load that
+ * runs concurrently with the closing either fails, or its catalogue is
+ * released by the closing.
+ */
+public class CatalogueStore implements Closeable {
+
+    private final Map<String, OffHeapCatalogue> catalogues = new ConcurrentHashMap<>();
+    private volatile boolean isClosed;
+
+
+
+
+    /**
+     * Copies a catalogue into the store, replacing and freeing the previous
+     * catalogue of the customer, if any.
+     *
+     * @param customer the name of the customer
+     * @param catalogue the catalogue of the customer; it can be garbage
+     *                  collected once it is loaded
+     * @return the view of the loaded catalogue
+     * @throws IllegalStateException if the store is closed
+     */
+    public OffHeapCatalogue load(String customer, MealCatalogue catalogue) {
+        checkIsOpen();
+        OffHeapCatalogue loaded = OffHeapCatalogue.copyOf(catalogue);
+        OffHeapCatalogue previous = catalogues.put(customer, loaded);
+        if (previous != null)
+            previous.close();
+        // the store may have been closed while the catalogue was copied; the
+        // closing sets the flag before releasing the catalogues, so that
+        // either it releases this one, or this load sees the flag
+        if (isClosed) {
+            if (catalogues.remove(customer, loaded))
+                loaded.close();
+            checkIsOpen();
+        }
+        return loaded;
+    }
+
+    /**
+     * Returns the catalogue of a customer.
+     *
+     * @param customer the name of the customer
+     * @return the view of the catalogue, or null if none is loaded
+     */
+    public OffHeapCatalogue get(String customer) {
+        return catalogues.get(customer);
+    }
+
+    /**
+     * Returns the customers whose catalogues are loaded.
+     *
+     * @return a read-only view of the names of the customers
+     */
+    public Set<String> getCustomers() {
+        return Collections.unmodifiableSet(catalogues.keySet());
+    }
+
+    /**
+     * Returns the memory used by the catalogues.
+     *
+     * @return the total size of the catalogues, in bytes
+     */
+    public long getByteSize() {
+        long byteSize = 0;
+        for (OffHeapCatalogue catalogue : catalogues.values())
+            byteSize += catalogue.getByteSize();
+        return byteSize;
+    }
+
+    /**
+     * Releases the catalogue of a customer, and frees its memory.
+     *
+     * @param customer the name of the customer
+     * @return true if a catalogue was loaded
+     */
+    public boolean release(String customer) {
+        OffHeapCatalogue catalogue = catalogues.remove(customer);
+        if (catalogue == null)
+            return false;
+        catalogue.close();
+        return true;
+    }
+
+    /**
+     * Releases all the catalogues, and stops loading new ones.
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        for (String customer : catalogues.keySet())
+            release(customer);
+    }
+
+
+
+
+    private void checkIsOpen() {
+        if (isClosed)
+            throw new IllegalStateException("The catalogue store is closed");
+    }
+}
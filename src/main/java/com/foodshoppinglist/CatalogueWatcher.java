@@ -0,0 +1,182 @@
+package com.foodshoppinglist;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Reloads the meals of a {@link MealsHandler} whenever its meals file
+ * changes.
+ * <p/>
+ * The directory of the meals file is watched by a background thread. When
+ * the file is modified or replaced, the thread waits for the changes to
+ * settle (editors often write a file in several steps), then reloads it with
+ * {@link MealsHandler#reload()}. A file that is not correctly formatted is
+ * rejected and reported, and the previous meals stay in service.
+ * <p/>
+ * When the meals are split into several files (see {@link MealsFileSet}),
+ * the directories under the base directory of the files are watched, and
+ * any change to a file that matches the directory or the glob pattern
+ * reloads the meals; only the files that have changed are parsed again. The
+ * directories created later are watched as soon as they appear, and the
+ * meals are reloaded in case files were written in them before.
+ */
+public class CatalogueWatcher implements Closeable {
+
+    /** How long the file must stay unchanged before it is reloaded. */
+    private static final long SETTLE_DELAY_MILLIS = 100;
+
+    private final MealsHandler mealsHandler;
+    private final Path mealsFile;
+    /** The meals files, if the meals are split into several files; null otherwise. */
+    private final MealsFileSet mealsFileSet;
+    private final PrintStream log;
+    private final WatchService watchService;
+    /** The kinds of events of the watched directories. */
+    private final WatchEvent.Kind<?>[] kinds;
+    private final Thread thread;
+
+
+
+
+    /**
+     * Builds a <code>CatalogueWatcher</code> and starts watching the meals
+     * file.
+     *
+     * @param mealsHandler the handler whose meals file is watched
+     * @param log where to report the reloads and the rejected files
+     * @throws IOException if the directory of the meals file cannot be watched
+     */
+    public CatalogueWatcher(MealsHandler mealsHandler, PrintStream log) throws IOException {
+        this.mealsHandler = mealsHandler;
+        this.log = log;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        if (MealsFileSet.isFileSet(mealsHandler.getMealsFile())) {
+            this.mealsFile = null;
+            try {
+                this.mealsFileSet = MealsFileSet.of(mealsHandler.getMealsFile());
+            } catch (FileFormatException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        } else {
+            this.mealsFile = Path.of(mealsHandler.getMealsFile()).toAbsolutePath();
+            this.mealsFileSet = null;
+        }
+        // a deleted file only matters when it is one of several
+        this.kinds = mealsFileSet != null
+                ? new WatchEvent.Kind<?>[] {
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE
+                }
+                : new WatchEvent.Kind<?>[] {StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY};
+        if (mealsFileSet != null)
+            registerDirectories(mealsFileSet.getBaseDirectory().toAbsolutePath());
+        else
+            mealsFile.getParent().register(watchService, kinds);
+        this.thread = Thread.ofPlatform().daemon().name("meals-file-watcher").start(this::watch);
+    }
+
+
+
+
+    /**
+     * Stops watching the meals file.
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                boolean hasChanged = pollEvents(watchService.take());
+                WatchKey key;
+                while ((key = watchService.poll(SETTLE_DELAY_MILLIS, TimeUnit.MILLISECONDS)) != null)
+                    hasChanged |= pollEvents(key);
+                if (hasChanged)
+                    reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // the watcher is closed
+        }
+    }
+
+    /**
+     * Consumes the events of a key.
+     *
+     * @param key the key
+     * @return true if one of the events may be about a meals file
+     */
+    private boolean pollEvents(WatchKey key) {
+        boolean isAboutTheMealsFile = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                isAboutTheMealsFile = true;
+            } else if (mealsFileSet != null) {
+                Path path = ((Path) key.watchable()).resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)
+                        && ! path.endsWith(MealsFileSet.CACHE_DIRECTORY)) {
+                    // files may have been written in it before it is watched
+                    isAboutTheMealsFile = true;
+                    try {
+                        registerDirectories(path);
+                    } catch (IOException e) {
+                        log.println("Cannot watch the new directory " + path + ": " + e.getMessage());
+                    }
+                } else {
+                    isAboutTheMealsFile |= mealsFileSet.matches(path);
+                }
+            } else {
+                isAboutTheMealsFile |= mealsFile.getFileName().equals(event.context());
+            }
+        }
+        key.reset();
+        return isAboutTheMealsFile;
+    }
+
+    /**
+     * Watches a directory and the directories under it, except the cache of
+     * the snapshots.
+     */
+    private void registerDirectories(Path directory) throws IOException {
+        // the directory is watched before it is listed, so that a
+        // subdirectory created meanwhile is either listed or reported
+        directory.register(watchService, kinds);
+        List<Path> subdirectories;
+        try (Stream<Path> paths = Files.list(directory)) {
+            subdirectories = paths
+                    .filter(path -> Files.isDirectory(path) && ! path.endsWith(MealsFileSet.CACHE_DIRECTORY))
+                    .toList();
+        }
+        for (Path subdirectory : subdirectories)
+            registerDirectories(subdirectory);
+    }
+
+    private void reload() {
+        try {
+            MealCatalogue catalogue = mealsHandler.reload();
+            log.println("Reloaded " + catalogue.getMealsCount() + " meals from " + mealsHandler.getMealsFile());
+        } catch (FileFormatException | IOException e) {
+            log.println("Rejected the new version of " + mealsHandler.getMealsFile()
+                    + ", the previous meals stay in service: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // an unexpected error must not end the watcher: the next change is reloaded again
+            log.println("Could not reload " + mealsHandler.getMealsFile()
+                    + ", the previous meals stay in service: " + e);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.foodshoppinglist;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Helpers for fixed-point quantities.
+ * <p/>
+ * A quantity is stored as a <code>long</code> number of thousandths of its
+ * unit (its scaled value), so that quantities are added exactly, with integer
+ * additions. Quantities are kept to the thousandth: more precise quantities
+ * are rounded half up when they are read.
+ */
+public class FixedPoint {
+
+    /** The number of thousandths in one unit. */
+    public static final long SCALE = 1000;
+    /** The number of decimals of the fixed-point quantities. */
+    public static final int DECIMALS = 3;
+    /**
+     * The bound (exclusive) of the absolute value of a quantity, so that its
+     * scaled value fits in a <code>long</code> with room to spare. The sum of
+     * about 9,000 quantities at the bound still overflows, and so do fewer
+     * quantities once they are converted to a smaller unit: the sums are
+     * checked with <code>Math.addExact</code>.
+     */
+    public static final long MAX_QUANTITY = 1_000_000_000_000L;
+
+
+
+
+    /**
+     * Parses a decimal number, written like <code>400</code>,
+     * <code>-1.5</code>, <code>.25</code> or <code>2.5e3</code>.
+     *
+     * @param text the decimal number
+     * @return the scaled value of the number, rounded half up to the
+     * thousandth
+     * @throws NumberFormatException if the text is not a decimal number, or
+     * if its absolute value is not below {@link #MAX_QUANTITY}
+     */
+    public static long parse(CharSequence text) {
+        // fast path: no exponent and few enough digits for a long
+        int i = 0;
+        boolean isNegative = false;
+        if (i < text.length() && (text.charAt(i) == '-' || text.charAt(i) == '+'))
+            isNegative = text.charAt(i++) == '-';
+        long integerPart = 0;
+        int digits = 0;
+        while (i < text.length() && isDigit(text.charAt(i)) && digits < 13) {
+            integerPart = integerPart * 10 + (text.charAt(i++) - '0');
+            digits++;
+        }
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean roundsUp = false;
+        if (i < text.length() && text.charAt(i) == '.') {
+            i++;
+            while (i < text.length() && isDigit(text.charAt(i))) {
+                if (fractionDigits < DECIMALS)
+                    fraction = fraction * 10 + (text.charAt(i) - '0');
+                else if (fractionDigits == DECIMALS)
+                    roundsUp = text.charAt(i) >= '5';
+                fractionDigits++;
+                digits++;
+                i++;
+            }
+        }
+        if (i < text.length() || digits == 0)
+            return parseSlowly(text);
+        for (int d = Math.min(fractionDigits, DECIMALS); d < DECIMALS; d++)
+            fraction *= 10;
+        long scaled = integerPart * SCALE + fraction + (roundsUp ? 1 : 0);
+        return checkRange(isNegative ? -scaled : scaled, text);
+    }
+
+    /**
+     * Converts a number, as built by the YAML loader, to a scaled value.
+     *
+     * @param number an <code>Integer</code>, a <code>Long</code>, a
+     *               <code>BigDecimal</code> or a <code>Double</code>
+     * @return the scaled value of the number, rounded half up to the
+     * thousandth
+     * @throws NumberFormatException if the absolute value of the number is not
+     * below {@link #MAX_QUANTITY}
+     */
+    public static long of(Number number) {
+        if (number instanceof Integer || number instanceof Long)
+            return checkRange(Math.multiplyExact(number.longValue(), SCALE), number);
+        if (number instanceof BigDecimal decimal)
+            return of(decimal, number);
+        double value = number.doubleValue();
+        if (! (Math.abs(value) < MAX_QUANTITY))
+            throw outOfRange(number);
+        // the shortest decimal representation of the double, as it was written in the file
+        return checkRange(BigDecimal.valueOf(value).setScale(DECIMALS, RoundingMode.HALF_UP).unscaledValue().longValueExact(), number);
+    }
+
+    /**
+     * Multiplies a scaled value by a ratio.
+     *
+     * @param scaled the scaled value
+     * @param numerator the numerator of the ratio
+     * @param denominator the denominator of the ratio, positive
+     * @return the scaled value of the product, rounded half up to the
+     * thousandth
+     * @throws ArithmeticException if the product doesn't fit in a
+     * <code>long</code>
+     */
+    public static long multiply(long scaled, long numerator, long denominator) {
+        long high = Math.multiplyHigh(scaled, numerator);
+        long low = scaled * numerator;
+        if ((high != 0 || low < 0) && (high != -1 || low >= 0) || low == Long.MIN_VALUE) {
+            // the product doesn't fit in a long, but the result may
+            return new BigDecimal(BigInteger.valueOf(scaled).multiply(BigInteger.valueOf(numerator)))
+                    .divide(BigDecimal.valueOf(denominator), 0, RoundingMode.HALF_UP).longValueExact();
+        }
+        long product = Math.abs(low);
+        long remainder = product % denominator;
+        // rounds up when the remainder is at least half the denominator
+        long rounded = product / denominator + (remainder >= denominator - remainder ? 1 : 0);
+        return low < 0 ? -rounded : rounded;
+    }
+
+    /**
+     * Returns true if a number can be converted to a scaled value.
+     *
+     * @param number an <code>Integer</code>, a <code>Long</code>, a
+     *               <code>BigDecimal</code> or a <code>Double</code>
+     * @return true if the absolute value of the number is below
+     * {@link #MAX_QUANTITY}
+     */
+    public static boolean isInRange(Number number) {
+        if (number instanceof Integer || number instanceof Long)
+            return Math.abs(number.longValue()) < MAX_QUANTITY;
+        if (number instanceof BigDecimal decimal)
+            return decimal.abs().setScale(DECIMALS, RoundingMode.HALF_UP).compareTo(BigDecimal.valueOf(MAX_QUANTITY)) < 0;
+        return Math.abs(number.doubleValue()) < MAX_QUANTITY;
+    }
+
+    /**
+     * Formats a scaled value for display, without trailing zeros or
+     * exponent, for instance "1.5" or "400".
+     *
+     * @param scaled the scaled value
+     * @return the formatted quantity
+     */
+    public static String toString(long scaled) {
+        StringBuilder builder = new StringBuilder(24);
+        if (scaled < 0)
+            builder.append('-');
+        long absolute = Math.abs(scaled);
+        builder.append(absolute / SCALE);
+        long fraction = absolute % SCALE;
+        if (fraction != 0) {
+            builder.append('.');
+            for (long unit = SCALE / 10; fraction != 0; unit /= 10) {
+                builder.append((char) ('0' + fraction / unit));
+                fraction %= unit;
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Converts a scaled value to a <code>double</code>, for computations that
+     * don't need to be exact.
+     *
+     * @param scaled the scaled value
+     * @return the quantity
+     */
+    public static double toDouble(long scaled) {
+        return (double) scaled / SCALE;
+    }
+
+    private static long parseSlowly(CharSequence text) {
+        return of(new BigDecimal(text.toString()), text);
+    }
+
+    private static long of(BigDecimal value, Object quantity) {
+        if (value.abs().compareTo(BigDecimal.valueOf(MAX_QUANTITY)) >= 0)
+            throw outOfRange(quantity);
+        return checkRange(value.setScale(DECIMALS, RoundingMode.HALF_UP).unscaledValue().longValueExact(), quantity);
+    }
+
+    private static long checkRange(long scaled, Object quantity) {
+        if (Math.abs(scaled) >= MAX_QUANTITY * SCALE)
+            throw outOfRange(quantity);
+        return scaled;
+    }
+
+    private static NumberFormatException outOfRange(Object quantity) {
+        return new NumberFormatException("the quantity " + quantity + " is out of range");
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
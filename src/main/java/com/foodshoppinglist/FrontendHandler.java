@@ -1,39 +1,107 @@
 package com.foodshoppinglist;
 
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * A class for interfacing with the user.
+ * <p/>
+ * Everything is printed through a single buffered writer, which is flushed
+ * once per message rather than once per line, and the lines are written
+ * piece by piece instead of being concatenated first. A long list of meals
+ * can be printed one window at a time, in which case only the meals of the
+ * window are formatted.
  */
 public class FrontendHandler {
 
     // The text assets keys
     private static final String INTRODUCE_AVAILABLE_MEALS = "introduce_available_meals";
     private static final String PROMPT_USER = "prompt_user";
+    private static final String PROMPT_USER_WITH_SUGGESTION = "prompt_user_with_suggestion";
     private static final String TRY_AGAIN = "try_again";
     private static final String YOU_DIDNT_CHOOSE_ANY_MEAL = "you_didnt_choose_any_meal";
     private static final String INTRODUCE_SELECTED_MEALS = "introduce_selected_meals";
+    private static final String INTRODUCE_REQUIRED_INGREDIENTS = "introduce_required_ingredients";
+    private static final String SHOWING_MEALS = "showing_meals";
+    private static final String INTRODUCE_SUGGESTED_MEALS = "introduce_suggested_meals";
+    private static final String INPUT_HAS_ENDED = "input_has_ended";
+
+    /** The unit of the ingredients that don't have a unit. */
+    private static final String NO_UNIT = "unit";
+
+    /** The size of the buffer of the output, in characters. */
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /** The selection parser of each thread. */
+    private static final ThreadLocal<SelectionParser> SELECTION_PARSER = ThreadLocal.withInitial(SelectionParser::new);
 
     /** The text assets. */
     private final Map<String, String> textAssets;
+    /**
+     * The reader of the user input. There's only one, since a scanner may
+     * read ahead of the line it returns.
+     */
+    private final Scanner standardInput;
+    /** The output, which is flushed at the end of each message. */
+    private final Writer output;
+    /** The digits of the number being written, from the last one. */
+    private final char[] digits = new char[10];
 
 
 
 
     /**
-     * Builds a <code>FrontendHandler</code>
+     * Builds a <code>FrontendHandler</code> that prints on the standard
+     * output.
      *
      * @param textAssetsFile the file that contains the text assets
      * @throws FileFormatException if the file is not correctly formatted
      */
     public FrontendHandler(String textAssetsFile) throws FileFormatException {
-        Object content = Utils.readYamlFile(textAssetsFile, true);
-        checkFileFormat(textAssetsFile, content);
-        this.textAssets = (Map<String, String>) content;
+        this(textAssetsFile, new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), System.out.charset()));
+    }
+
+    /**
+     * Builds a <code>FrontendHandler</code>
+     *
+     * @param textAssetsFile the file that contains the text assets, read
+     *                       from its compiled version if there's an
+     *                       up-to-date one (see {@link TextAssets})
+     * @param output where to print the messages; it is buffered unless it is
+     *               a <code>BufferedWriter</code> already
+     * @throws FileFormatException if the file is not correctly formatted
+     */
+    public FrontendHandler(String textAssetsFile, Writer output) throws FileFormatException {
+        this(textAssetsFile, output, new InputStreamReader(System.in));
+    }
+
+    /**
+     * Builds a <code>FrontendHandler</code> that reads the user input from
+     * the given reader.
+     *
+     * @param textAssetsFile the file that contains the text assets
+     * @param output where to print the messages
+     * @param input where to read the user input from
+     * @throws FileFormatException if the file is not correctly formatted
+     */
+    FrontendHandler(String textAssetsFile, Writer output, Reader input) throws FileFormatException {
+        this.textAssets = TextAssets.load(textAssetsFile);
+        this.standardInput = new Scanner(input);
+        this.output = output instanceof BufferedWriter ? output : new BufferedWriter(output, OUTPUT_BUFFER_SIZE);
     }
 
 
@@ -68,76 +136,138 @@ public class FrontendHandler {
      * meals names if nothing was entered).
      * <p/>
      * If the input is invalid, throws an exception. An input is valid if it is
-     * a blank line or a sequence of valid blank-separated integers (invalid
-     * integers being integers that are not associated to any meal).
+     * a blank line or a sequence of valid blank-separated integers or ranges
+     * of integers such as <code>3-7</code> (invalid integers being integers
+     * that are not associated to any meal).
      *
      * @param userInput the user input
      * @param availableMealsNames the list of the names of available meals
      * @return the list of the names of the user-selected meals
      * @throws InvalidUserInputException if the user input is invalid
+     * @see SelectionParser
      */
     public static List<String> parseUserInput(
             String userInput,
             List<String> availableMealsNames)
             throws InvalidUserInputException {
-        // regex for a decimal integer with no leading zero (except if there's just one digit)
-        String decimalNumberRegex = "(([1-9][0-9]+)|[0-9])";
-        Pattern validInputPattern = Pattern.compile(
-                "\\p{Blank}*|(\\p{Blank}*%1$s\\p{Blank}*)|(\\p{Blank}*%1$s(\\p{Blank}+%1$s)+\\p{Blank}*)"
-                        .formatted(decimalNumberRegex)
-        );
-        Matcher validInputMatcher = validInputPattern.matcher(userInput);
-        if (! validInputMatcher.matches())
-            throw new InvalidUserInputException("The input must be integers separated by spaces.");
-        Pattern decimalNumberPattern = Pattern.compile(decimalNumberRegex);
-        Matcher decimalNumberMatcher = decimalNumberPattern.matcher(userInput);
-        List<Integer> theNumbers = decimalNumberMatcher.results()
-                .map(matchResult -> Integer.parseInt(matchResult.group()))
-                .distinct()
-                .sorted()
-                .toList();
-        if (theNumbers.stream()
-                .anyMatch(integer -> integer < 1 || integer > availableMealsNames.size()))
-            throw new InvalidUserInputException("The numbers must be part of those proposed.");
-        return theNumbers.stream()
-                .map(integer -> availableMealsNames.get(integer - 1))
-                .toList();
+        return parseUserInput(userInput, availableMealsNames, null);
+    }
+
+    /**
+     * Parses the provided user input and returns the implied meals names (or no
+     * meals names if nothing was entered).
+     * <p/>
+     * Besides integers and ranges, the input may contain queries between
+     * double quotes, such as <code>"pates tofu"</code>, each query selecting
+     * the meal that best matches it.
+     *
+     * @param userInput the user input
+     * @param availableMealsNames the list of the names of available meals
+     * @param searchIndex the search index of the available meals, or null if
+     *                    queries are not accepted
+     * @return the list of the names of the user-selected meals
+     * @throws InvalidUserInputException if the user input is invalid, or if
+     * no meal matches a query
+     * @see SelectionParser
+     */
+    public static List<String> parseUserInput(
+            String userInput,
+            List<String> availableMealsNames,
+            MealSearchIndex searchIndex)
+            throws InvalidUserInputException {
+        BitSet selection = SELECTION_PARSER.get().parse(userInput, availableMealsNames.size(), searchIndex);
+        return getMealsNames(selection, availableMealsNames);
     }
 
     /**
      * Prints the provided list of names of available meals.
      *
      * @param availableMealsNames the list of the names of available meals
+     * @throws IOException if the output cannot be written
+     */
+    public void printAvailableMeals(List<String> availableMealsNames) throws IOException {
+        printAvailableMeals(availableMealsNames, 0, availableMealsNames.size());
+    }
+
+    /**
+     * Prints a window of the provided list of names of available meals, with
+     * their numbers in the whole list. When some meals are not printed, says
+     * which ones are.
+     *
+     * @param availableMealsNames the list of the names of available meals
+     * @param first the index of the first meal to print
+     * @param limit the maximum number of meals to print
+     * @throws IOException if the output cannot be written
      */
-    public void printAvailableMeals(List<String> availableMealsNames) {
-        IO.println();
-        IO.println(textAssets.get(INTRODUCE_AVAILABLE_MEALS));
-        for (int i = 0; i < availableMealsNames.size(); i++)
-            IO.println((i + 1) + ". " + availableMealsNames.get(i));
-        IO.println();
+    public void printAvailableMeals(List<String> availableMealsNames, int first, int limit) throws IOException {
+        int end = (int) Math.min(availableMealsNames.size(), (long) first + limit);
+        output.write(LINE_SEPARATOR);
+        writeLine(textAssets.get(INTRODUCE_AVAILABLE_MEALS));
+        for (int i = first; i < end; i++) {
+            writeNumber(i + 1);
+            output.write(". ");
+            writeLine(availableMealsNames.get(i));
+        }
+        if (first > 0 || end < availableMealsNames.size())
+            writeLine(String.format(textAssets.get(SHOWING_MEALS), first + 1, end, availableMealsNames.size()));
+        output.write(LINE_SEPARATOR);
+        output.flush();
     }
 
     /**
      * Prompts the user to select meals.
-     * The user is expected to enter integers separated by spaces, each integer
-     * representing a meal. An empty string is also accepted; it indicates that
+     * The user is expected to enter items separated by spaces, each item
+     * being the number of a meal, a range of numbers such as <code>3-7</code>,
+     * or a query such as <code>"pates tofu"</code> (see {@link SelectionParser}).
+     * An empty string is also accepted; it indicates that
      * the user selects zero meals.
      * <p/>
      * If the user enters an invalid string, they are informed of it and
      * prompted again.
      *
      * @param availableMealsNames the list of the names of available meals
+     * @param searchIndex the search index of the available meals
      * @return the list of the names of the user-selected meals (an empty list
      * may be returned)
+     * @throws EOFException if the input ends before meals are selected
+     * @throws IOException if the output cannot be written
+     */
+    public List<String> getSelectedMealsFromUserInput(List<String> availableMealsNames, MealSearchIndex searchIndex)
+            throws IOException {
+        return getSelectedMealsFromUserInput(availableMealsNames, searchIndex, null);
+    }
+
+    /**
+     * Prompts the user to select meals, as {@link #getSelectedMealsFromUserInput(List, MealSearchIndex)}
+     * does, with suggested meals (see {@link #printSuggestedMeals(List, BitSet)})
+     * that the user chooses by entering an empty string.
+     *
+     * @param availableMealsNames the list of the names of available meals
+     * @param searchIndex the search index of the available meals
+     * @param suggestedMeals the ordinals of the suggested meals, or null if no
+     *                       meals are suggested
+     * @return the list of the names of the user-selected meals (an empty list
+     * may be returned if no meals are suggested)
+     * @throws EOFException if the input ends before meals are selected, which
+     * is not taken as an empty input
+     * @throws IOException if the output cannot be written
      */
-    public List<String> getSelectedMealsFromUserInput(List<String> availableMealsNames) {
+    public List<String> getSelectedMealsFromUserInput(
+            List<String> availableMealsNames,
+            MealSearchIndex searchIndex,
+            BitSet suggestedMeals)
+            throws IOException {
         String userInput;
         boolean inputIsValidated = false;
         List<String> selectedMeals = null;
-        userInput = promptUserInput(textAssets.get(PROMPT_USER));
+        userInput = promptUserInput(textAssets.get(suggestedMeals != null ? PROMPT_USER_WITH_SUGGESTION : PROMPT_USER));
         while (! inputIsValidated) {
             try {
-                selectedMeals = parseUserInput(userInput, availableMealsNames);
+                // an empty input chooses the suggested meals
+                if (suggestedMeals != null && userInput.isBlank())
+                    selectedMeals = getMealsNames(suggestedMeals, availableMealsNames);
+                else
+                    selectedMeals = parseUserInput(userInput, availableMealsNames, searchIndex);
                 inputIsValidated = true;
             } catch (InvalidUserInputException e) {
                 userInput = promptUserInput(e.getMessage() + "\r\n" + textAssets.get(TRY_AGAIN));
@@ -146,23 +276,90 @@ public class FrontendHandler {
         return selectedMeals;
     }
 
+    /**
+     * Prints the meals suggested by the planner (see {@link MealPlanner}),
+     * with their numbers.
+     *
+     * @param availableMealsNames the list of the names of available meals
+     * @param suggestedMeals the ordinals of the suggested meals
+     * @throws IOException if the output cannot be written
+     */
+    public void printSuggestedMeals(List<String> availableMealsNames, BitSet suggestedMeals) throws IOException {
+        writeLine(textAssets.get(INTRODUCE_SUGGESTED_MEALS));
+        for (int i = suggestedMeals.nextSetBit(0); i >= 0; i = suggestedMeals.nextSetBit(i + 1)) {
+            output.write("- ");
+            writeNumber(i + 1);
+            output.write(". ");
+            writeLine(availableMealsNames.get(i));
+        }
+        output.write(LINE_SEPARATOR);
+        output.flush();
+    }
+
     /**
      * Informs the user that they didn't choose any meal.
+     *
+     * @throws IOException if the output cannot be written
      */
-    public void printYouDidntChooseAnyMeal() {
-        IO.println(textAssets.get(YOU_DIDNT_CHOOSE_ANY_MEAL));
+    public void printYouDidntChooseAnyMeal() throws IOException {
+        writeLine(textAssets.get(YOU_DIDNT_CHOOSE_ANY_MEAL));
+        output.flush();
     }
 
     /**
      * Prints the user-selected meals.
      *
      * @param selectedMealsNames the names of the selected meals
+     * @throws IOException if the output cannot be written
+     */
+    public void printSelectedMeals(List<String> selectedMealsNames) throws IOException {
+        writeLine(textAssets.get(INTRODUCE_SELECTED_MEALS));
+        for (String mealName : selectedMealsNames) {
+            output.write("- ");
+            writeLine(mealName);
+        }
+        output.write(LINE_SEPARATOR);
+        output.flush();
+    }
+
+    /**
+     * Prints the ingredients required by the selected meals.
+     *
+     * @param requiredIngredients a map associating each required ingredient to
+     *                            its total amount
+     * @throws IOException if the output cannot be written
      */
-    public void printSelectedMeals(List<String> selectedMealsNames) {
-        IO.println(textAssets.get(INTRODUCE_SELECTED_MEALS));
-        for (String mealName : selectedMealsNames)
-            IO.println("- " + mealName);
-        IO.println();
+    public void printRequiredIngredients(Map<String, IngredientAmount> requiredIngredients) throws IOException {
+        writeLine(textAssets.get(INTRODUCE_REQUIRED_INGREDIENTS));
+        for (Map.Entry<String, IngredientAmount> ingredientEntry : requiredIngredients.entrySet()) {
+            output.write("- ");
+            output.write(ingredientEntry.getKey());
+            output.write(": ");
+            writeLine(formatAmount(ingredientEntry.getValue()));
+        }
+        output.write(LINE_SEPARATOR);
+        output.flush();
+    }
+
+    /**
+     * Formats an ingredient amount for display, for instance "1.5 kg", or "2"
+     * for an ingredient that has no unit.
+     *
+     * @param ingredientAmount the ingredient amount
+     * @return the formatted amount
+     */
+    static String formatAmount(IngredientAmount ingredientAmount) {
+        String quantity = FixedPoint.toString(ingredientAmount.scaledQuantity());
+        if (ingredientAmount.unit().equals(NO_UNIT))
+            return quantity;
+        return quantity + " " + ingredientAmount.unit();
+    }
+
+    private static List<String> getMealsNames(BitSet selection, List<String> availableMealsNames) {
+        List<String> mealsNames = new ArrayList<>(selection.cardinality());
+        for (int i = selection.nextSetBit(0); i >= 0; i = selection.nextSetBit(i + 1))
+            mealsNames.add(availableMealsNames.get(i));
+        return Collections.unmodifiableList(mealsNames);
     }
 
     /**
@@ -170,11 +367,32 @@ public class FrontendHandler {
      *
      * @param message the message to prompt the user with
      * @return the user input
+     * @throws EOFException if the input has ended
      */
-    private static String promptUserInput(String message) {
-        IO.println(message);
-        String userInput = new Scanner(System.in).nextLine();
-        IO.println();
+    private String promptUserInput(String message) throws IOException {
+        writeLine(message);
+        output.flush();
+        if (! standardInput.hasNextLine())
+            throw new EOFException(textAssets.get(INPUT_HAS_ENDED));
+        String userInput = standardInput.nextLine();
+        output.write(LINE_SEPARATOR);
         return userInput;
     }
+
+    private void writeLine(String text) throws IOException {
+        output.write(text);
+        output.write(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes a positive number, without building a string.
+     */
+    private void writeNumber(int number) throws IOException {
+        int start = digits.length;
+        do {
+            digits[--start] = (char) ('0' + number % 10);
+            number /= 10;
+        } while (number > 0);
+        output.write(digits, start, digits.length - start);
+    }
 }
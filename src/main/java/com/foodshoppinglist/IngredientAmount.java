@@ -1,3 +1,33 @@
 package com.foodshoppinglist;
 
-public record IngredientAmount(float quantity, String unit) {}
+/**
+ * The amount of an ingredient.
+ *
+ * @param scaledQuantity the quantity, in thousandths of the unit (see
+ *                       {@link FixedPoint})
+ * @param unit the unit
+ */
+public record IngredientAmount(long scaledQuantity, String unit) {
+
+    /**
+     * Builds an ingredient amount from a quantity in units.
+     *
+     * @param quantity the quantity, rounded half up to the thousandth
+     * @param unit the unit
+     * @return the ingredient amount
+     * @throws NumberFormatException if the quantity is out of range
+     */
+    public static IngredientAmount of(double quantity, String unit) {
+        return new IngredientAmount(FixedPoint.of(quantity), unit);
+    }
+
+    /**
+     * Returns the quantity, in units, for computations that don't need to be
+     * exact.
+     *
+     * @return the quantity, in units
+     */
+    public double quantity() {
+        return FixedPoint.toDouble(scaledQuantity);
+    }
+}
@@ -0,0 +1,329 @@
+package com.foodshoppinglist;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * An inverted index of the meals of a catalogue, from each ingredient to the
+ * meals that use it, to answer questions such as "which meals use tofu and
+ * patates but not huile?" or "which meals can I cook with what I have?".
+ * <p/>
+ * The meals of each ingredient are a sorted posting list of ordinals, all the
+ * lists being stored one after the other in a single array. Like the
+ * containers of a roaring bitmap, the ingredients used by many meals also
+ * have a bitmap of their meals, used when it is smaller than their posting
+ * list (that is, when they are used by more than one meal out of 32): the
+ * queries combine the bitmaps word by word, and walk the posting lists of
+ * the rare ingredients. A query costs as much as the posting lists of its
+ * rare ingredients, plus a few words per meal for its frequent ones, instead
+ * of a scan of every line of the catalogue.
+ * <p/>
+ * The index is immutable, and can be shared between threads.
+ */
+public class IngredientIndex {
+
+    /** The number of bits of a bitmap that cost as much memory as one element of a posting list. */
+    private static final int BITS_PER_POSTING = Integer.SIZE;
+
+    private final MealCatalogue catalogue;
+    /**
+     * The range of postings of each ingredient: the postings of the
+     * ingredient with id <code>i</code> go from
+     * <code>postingsOffsets[i]</code> (inclusive) to
+     * <code>postingsOffsets[i + 1]</code> (exclusive).
+     */
+    private final int[] postingsOffsets;
+    /** The ordinal of the meal of each posting, sorted within each ingredient. */
+    private final int[] postingsMeals;
+    /** The line of each posting, that holds the quantity of the ingredient in the meal. */
+    private final int[] postingsLines;
+    /** The meals of each frequent ingredient; null for the other ingredients. */
+    private final BitSet[] bitmaps;
+    /** The per-meal counters that are not used by a query; they are all zero. */
+    private final Queue<int[]> countersPool = new ConcurrentLinkedQueue<>();
+
+
+
+
+    private IngredientIndex(MealCatalogue catalogue, int[] postingsOffsets, int[] postingsMeals, int[] postingsLines, BitSet[] bitmaps) {
+        this.catalogue = catalogue;
+        this.postingsOffsets = postingsOffsets;
+        this.postingsMeals = postingsMeals;
+        this.postingsLines = postingsLines;
+        this.bitmaps = bitmaps;
+    }
+
+
+
+
+    /**
+     * Builds the index of the meals of a catalogue, in a time proportional
+     * to its number of lines.
+     *
+     * @param catalogue the catalogue
+     * @return the index
+     */
+    public static IngredientIndex of(MealCatalogue catalogue) {
+        int ingredientsCount = catalogue.getIngredientsCount();
+        int linesCount = catalogue.getLinesCount();
+        // counting sort of the lines by ingredient
+        int[] postingsOffsets = new int[ingredientsCount + 1];
+        for (int line = 0; line < linesCount; line++)
+            postingsOffsets[catalogue.getLineIngredient(line) + 1]++;
+        for (int id = 0; id < ingredientsCount; id++)
+            postingsOffsets[id + 1] += postingsOffsets[id];
+
+        // the meals are visited in ordinal order, so the postings are sorted
+        int[] postingsMeals = new int[linesCount];
+        int[] postingsLines = new int[linesCount];
+        int[] nextPostings = new int[ingredientsCount];
+        System.arraycopy(postingsOffsets, 0, nextPostings, 0, ingredientsCount);
+        for (int ordinal = 0; ordinal < catalogue.getMealsCount(); ordinal++) {
+            for (int line = catalogue.getFirstLine(ordinal); line < catalogue.getEndLine(ordinal); line++) {
+                int posting = nextPostings[catalogue.getLineIngredient(line)]++;
+                postingsMeals[posting] = ordinal;
+                postingsLines[posting] = line;
+            }
+        }
+
+        BitSet[] bitmaps = new BitSet[ingredientsCount];
+        for (int id = 0; id < ingredientsCount; id++) {
+            int postingsCount = postingsOffsets[id + 1] - postingsOffsets[id];
+            if ((long) postingsCount * BITS_PER_POSTING >= catalogue.getMealsCount()) {
+                bitmaps[id] = new BitSet(catalogue.getMealsCount());
+                for (int posting = postingsOffsets[id]; posting < postingsOffsets[id + 1]; posting++)
+                    bitmaps[id].set(postingsMeals[posting]);
+            }
+        }
+        return new IngredientIndex(catalogue, postingsOffsets, postingsMeals, postingsLines, bitmaps);
+    }
+
+
+
+
+    /**
+     * Returns the number of meals that use an ingredient.
+     *
+     * @param ingredientName the name of the ingredient
+     * @return the number of meals that use the ingredient, 0 if there's no
+     * such ingredient
+     */
+    public int countMealsWith(String ingredientName) {
+        int id = catalogue.getIngredientId(ingredientName);
+        return id >= 0 ? getPostingsCount(id) : 0;
+    }
+
+    /**
+     * Returns the meals that use an ingredient.
+     *
+     * @param ingredientName the name of the ingredient
+     * @return the ordinals of the meals that use the ingredient, empty if
+     * there's no such ingredient
+     */
+    public BitSet findMealsWith(String ingredientName) {
+        BitSet result = new BitSet();
+        int id = catalogue.getIngredientId(ingredientName);
+        if (id >= 0)
+            or(result, id);
+        return result;
+    }
+
+    /**
+     * Returns the meals that use all the ingredients of a set, at least one
+     * ingredient of another set, and none of the ingredients of a third set.
+     * <p/>
+     * For instance, the meals that use tofu and patates but not huile are
+     * found with <code>findMeals(List.of("tofu", "patates"), List.of(),
+     * List.of("huile"))</code>.
+     *
+     * @param allOf the ingredients that the meals must all use; an empty set
+     *              doesn't restrict the meals
+     * @param anyOf the ingredients of which the meals must use at least one;
+     *              an empty set doesn't restrict the meals
+     * @param noneOf the ingredients that the meals must not use
+     * @return the ordinals of the matching meals; the ingredients that the
+     * catalogue doesn't know are used by no meal
+     */
+    public BitSet findMeals(Collection<String> allOf, Collection<String> anyOf, Collection<String> noneOf) {
+        BitSet result;
+        if (! allOf.isEmpty()) {
+            int[] ids = new int[allOf.size()];
+            int count = 0;
+            for (String ingredientName : allOf) {
+                int id = catalogue.getIngredientId(ingredientName);
+                if (id < 0)
+                    return new BitSet();
+                ids[count++] = id;
+            }
+            // the rarest ingredient first, so that the result is small from the start
+            int rarest = 0;
+            for (int i = 1; i < count; i++) {
+                if (getPostingsCount(ids[i]) < getPostingsCount(ids[rarest]))
+                    rarest = i;
+            }
+            result = new BitSet();
+            or(result, ids[rarest]);
+            for (int i = 0; i < count && ! result.isEmpty(); i++) {
+                if (i != rarest)
+                    result = and(result, ids[i]);
+            }
+        } else {
+            result = new BitSet(catalogue.getMealsCount());
+            result.set(0, catalogue.getMealsCount());
+        }
+
+        if (! anyOf.isEmpty() && ! result.isEmpty()) {
+            BitSet union = new BitSet();
+            for (String ingredientName : anyOf) {
+                int id = catalogue.getIngredientId(ingredientName);
+                if (id >= 0)
+                    or(union, id);
+            }
+            result.and(union);
+        }
+
+        for (String ingredientName : noneOf) {
+            int id = catalogue.getIngredientId(ingredientName);
+            if (id >= 0 && ! result.isEmpty())
+                andNot(result, id);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the meals whose ingredients are all in a pantry, whatever their
+     * quantities.
+     *
+     * @param pantry the names of the ingredients at hand
+     * @return the ordinals of the meals that use only ingredients of the
+     * pantry
+     */
+    public BitSet findCookableMeals(Collection<String> pantry) {
+        // the ingredients of the pantry, each once
+        BitSet pantryIds = new BitSet(catalogue.getIngredientsCount());
+        for (String ingredientName : pantry) {
+            int id = catalogue.getIngredientId(ingredientName);
+            if (id >= 0)
+                pantryIds.set(id);
+        }
+        int[] counters = takeCounters();
+        try {
+            for (int id = pantryIds.nextSetBit(0); id >= 0; id = pantryIds.nextSetBit(id + 1)) {
+                for (int posting = postingsOffsets[id]; posting < postingsOffsets[id + 1]; posting++)
+                    counters[postingsMeals[posting]]++;
+            }
+            return collectCookableMeals(counters, pantryIds);
+        } finally {
+            countersPool.offer(counters);
+        }
+    }
+
+    /**
+     * Returns the meals whose ingredients are all in a pantry, in sufficient
+     * quantities for one serving.
+     *
+     * @param pantry a map associating each ingredient at hand to its amount,
+     *               in a unit that is compatible with the unit of the
+     *               ingredient in the catalogue
+     * @return the ordinals of the meals that can be cooked from the pantry
+     * @throws IllegalArgumentException if an amount of the pantry cannot be
+     * converted to the unit of its ingredient
+     */
+    public BitSet findCookableMeals(Map<String, IngredientAmount> pantry) {
+        UnitRegistry unitRegistry = UnitRegistry.getDefault();
+        BitSet pantryIds = new BitSet(catalogue.getIngredientsCount());
+        // all the amounts are converted before the counters are touched, so
+        // that a failed conversion leaves them at zero for the next query
+        int[] ids = new int[pantry.size()];
+        long[] availableQuantities = new long[pantry.size()];
+        int pantrySize = 0;
+        for (Map.Entry<String, IngredientAmount> pantryEntry : pantry.entrySet()) {
+            int id = catalogue.getIngredientId(pantryEntry.getKey());
+            if (id < 0)
+                continue;
+            IngredientAmount amount = pantryEntry.getValue();
+            availableQuantities[pantrySize] = unitRegistry.convert(
+                    amount.scaledQuantity(), amount.unit(), catalogue.getIngredientUnit(id)
+            );
+            ids[pantrySize++] = id;
+            pantryIds.set(id);
+        }
+        int[] counters = takeCounters();
+        try {
+            for (int i = 0; i < pantrySize; i++) {
+                int id = ids[i];
+                // the quantities of the lines are in the unit of the ingredient
+                for (int posting = postingsOffsets[id]; posting < postingsOffsets[id + 1]; posting++) {
+                    if (catalogue.getLineQuantity(postingsLines[posting]) <= availableQuantities[i])
+                        counters[postingsMeals[posting]]++;
+                }
+            }
+            return collectCookableMeals(counters, pantryIds);
+        } finally {
+            countersPool.offer(counters);
+        }
+    }
+
+    /**
+     * Collects the meals whose number of available ingredients is their
+     * number of lines, and sets the counters back to zero.
+     */
+    private BitSet collectCookableMeals(int[] counters, BitSet pantryIds) {
+        BitSet result = new BitSet();
+        for (int id = pantryIds.nextSetBit(0); id >= 0; id = pantryIds.nextSetBit(id + 1)) {
+            for (int posting = postingsOffsets[id]; posting < postingsOffsets[id + 1]; posting++) {
+                int ordinal = postingsMeals[posting];
+                if (counters[ordinal] != 0) {
+                    if (counters[ordinal] == catalogue.getEndLine(ordinal) - catalogue.getFirstLine(ordinal))
+                        result.set(ordinal);
+                    counters[ordinal] = 0;
+                }
+            }
+        }
+        return result;
+    }
+
+    private int[] takeCounters() {
+        int[] counters = countersPool.poll();
+        return counters != null ? counters : new int[catalogue.getMealsCount()];
+    }
+
+    private int getPostingsCount(int id) {
+        return postingsOffsets[id + 1] - postingsOffsets[id];
+    }
+
+    private void or(BitSet result, int id) {
+        if (bitmaps[id] != null) {
+            result.or(bitmaps[id]);
+            return;
+        }
+        for (int posting = postingsOffsets[id]; posting < postingsOffsets[id + 1]; posting++)
+            result.set(postingsMeals[posting]);
+    }
+
+    private BitSet and(BitSet result, int id) {
+        if (bitmaps[id] != null) {
+            result.and(bitmaps[id]);
+            return result;
+        }
+        // the intersection is at most as large as the posting list
+        BitSet intersection = new BitSet();
+        for (int posting = postingsOffsets[id]; posting < postingsOffsets[id + 1]; posting++) {
+            if (result.get(postingsMeals[posting]))
+                intersection.set(postingsMeals[posting]);
+        }
+        return intersection;
+    }
+
+    private void andNot(BitSet result, int id) {
+        if (bitmaps[id] != null) {
+            result.andNot(bitmaps[id]);
+            return;
+        }
+        for (int posting = postingsOffsets[id]; posting < postingsOffsets[id + 1]; posting++)
+            result.clear(postingsMeals[posting]);
+    }
+}
@@ -0,0 +1,70 @@
+package com.foodshoppinglist;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Helpers for writing JSON.
+ */
+public class Json {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+
+
+
+    /**
+     * Writes a string as a JSON string literal, with its quotes.
+     *
+     * @param output where to write
+     * @param string the string
+     * @throws IOException if the output cannot be written
+     */
+    public static void writeString(Appendable output, CharSequence string) throws IOException {
+        output.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '"' -> output.append("\\\"");
+                case '\\' -> output.append("\\\\");
+                case '\n' -> output.append("\\n");
+                case '\r' -> output.append("\\r");
+                case '\t' -> output.append("\\t");
+                default -> {
+                    if (c < 0x20)
+                        output.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+                    else
+                        output.append(c);
+                }
+            }
+        }
+        output.append('"');
+    }
+
+    /**
+     * Writes ingredients with their amounts as a JSON array, for instance
+     * <code>[{"name":"riz","quantity":400,"unit":"g"}]</code>.
+     *
+     * @param output where to write
+     * @param ingredients a map associating each ingredient to its amount
+     * @throws IOException if the output cannot be written
+     */
+    public static void writeIngredients(Appendable output, Map<String, IngredientAmount> ingredients)
+            throws IOException {
+        output.append('[');
+        boolean isFirst = true;
+        for (Map.Entry<String, IngredientAmount> ingredientEntry : ingredients.entrySet()) {
+            if (! isFirst)
+                output.append(',');
+            isFirst = false;
+            output.append("{\"name\":");
+            writeString(output, ingredientEntry.getKey());
+            output.append(",\"quantity\":");
+            output.append(FixedPoint.toString(ingredientEntry.getValue().scaledQuantity()));
+            output.append(",\"unit\":");
+            writeString(output, ingredientEntry.getValue().unit());
+            output.append('}');
+        }
+        output.append(']');
+    }
+}
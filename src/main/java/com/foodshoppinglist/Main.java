@@ -1,6 +1,25 @@
 package com.foodshoppinglist;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
 
 /**
  * The main class of the program.
@@ -8,40 +27,338 @@ import java.util.List;
 public class Main {
 
     /** The usage of this program. */
-    private static final String USAGE = "Usage: java -jar target/food-shopping-list.jar <meals-file>";
+    private static final String USAGE = """
+            Usage: java -jar target/food-shopping-list.jar <meals-file> [--page <page>] [--limit <meals-per-page>] [--plan <meals-count> [--packs <packs-file>]] [--pantry <pantry-directory>]
+                   java -jar target/food-shopping-list.jar compile <meals-file>
+                   java -jar target/food-shopping-list.jar batch <meals-file> [<selections-file>] [--format jsonl|csv] [--watch]
+                   java -jar target/food-shopping-list.jar serve <meals-file> [--port <port>] [--watch] [--pantries <pantries-directory>]
+            The <meals-file> can also be a directory or a quoted glob pattern (such as 'recipes/*.yaml') of several meals files.
+            Add --metrics to report the time spent in each phase on the error output when the program ends
+            (and on GET /metrics when serving).""";
+    /** The option that enables the metrics, accepted by every command. */
+    private static final String METRICS_OPTION = "--metrics";
+    /** The command that compiles a meals file into a snapshot. */
+    private static final String COMPILE_COMMAND = "compile";
+    /** The command that processes a file of selections. */
+    private static final String BATCH_COMMAND = "batch";
+    /** The command that starts the HTTP server. */
+    private static final String SERVE_COMMAND = "serve";
+    /** The number of meals per page when a page is requested without a limit. */
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    /** The time after which the planner completes its plan greedily. */
+    private static final Duration PLANNING_TIME_BUDGET = Duration.ofSeconds(2);
+    /** The size of the buffers of the batch mode. */
+    private static final int BATCH_BUFFER_SIZE = 64 * 1024;
     /** The name of the text assets file */
     private static final String TEXT_ASSETS_FILE_NAME = "texts.yaml";
 
     static void main(String[] args) {
-        // check the number of arguments
-        if (args.length != 1) {
+        // the metrics are reported when the program ends, whatever the command
+        if (List.of(args).contains(METRICS_OPTION)) {
+            args = Arrays.stream(args).filter(arg -> ! arg.equals(METRICS_OPTION)).toArray(String[]::new);
+            Metrics.setEnabled(true);
+            Runtime.getRuntime().addShutdownHook(new Thread(Main::printMetrics));
+        }
+
+        // compile a meals file into a snapshot
+        if (args.length == 2 && args[0].equals(COMPILE_COMMAND)) {
+            compile(args[1]);
+            return;
+        }
+
+        // process a file of selections
+        if (args.length >= 2 && args[0].equals(BATCH_COMMAND)) {
+            batch(List.of(args).subList(1, args.length));
+            return;
+        }
+
+        // serve the meals over HTTP
+        if (args.length >= 2 && args[0].equals(SERVE_COMMAND)) {
+            serve(List.of(args).subList(1, args.length));
+            return;
+        }
+
+        // read the arguments: the meals file, the window of the meals to list, the meals to plan, then the pantry
+        String mealsFile = args.length > 0 ? args[0] : null;
+        int page = 0;
+        int limit = 0;
+        int plannedMealsCount = 0;
+        String packsFile = null;
+        String pantryDirectory = null;
+        for (int i = 1; i < args.length && mealsFile != null; i++) {
+            if (args[i].equals("--page") && i + 1 < args.length && args[i + 1].matches("[1-9]\\d{0,8}"))
+                page = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--limit") && i + 1 < args.length && args[i + 1].matches("[1-9]\\d{0,8}"))
+                limit = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--plan") && i + 1 < args.length && args[i + 1].matches("[1-9]\\d{0,8}"))
+                plannedMealsCount = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--packs") && i + 1 < args.length)
+                packsFile = args[++i];
+            else if (args[i].equals("--pantry") && i + 1 < args.length)
+                pantryDirectory = args[++i];
+            else
+                mealsFile = null;
+        }
+        if (mealsFile == null || packsFile != null && plannedMealsCount == 0) {
             System.err.println(USAGE);
             System.exit(1);
         }
-        final String mealsFile = args[0];
+        if (limit == 0)
+            limit = page == 0 ? Integer.MAX_VALUE : DEFAULT_PAGE_SIZE;
+        page = Math.max(1, page);
 
-        // load text assets and meals
+        // load the meals in the background while the text assets are loaded
+        String mealsSource = mealsFile;
+        FutureTask<MealsHandler> mealsLoading = new FutureTask<>(() -> new MealsHandler(mealsSource));
+        Thread.ofPlatform().daemon().name("meals-loader").start(mealsLoading);
         FrontendHandler frontendHandler = null;
         MealsHandler mealsHandler = null;
         try {
             frontendHandler = new FrontendHandler(TEXT_ASSETS_FILE_NAME);
+            mealsHandler = await(mealsLoading);
+        } catch (FileFormatException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+
+        MealCatalogue catalogue = mealsHandler.getCatalogue();
+        List<String> availableMealsNames = catalogue.getMealsNames();
+        long first = (long) (page - 1) * limit;
+        if (first > 0 && first >= availableMealsNames.size()) {
+            long pagesCount = Math.max(1, (availableMealsNames.size() + (long) limit - 1) / limit);
+            System.err.println("There is no page " + page + ": the meals fit in " + pagesCount + " page(s).");
+            System.exit(1);
+        }
+
+        BitSet suggestedMeals = plannedMealsCount > 0 ? planMeals(catalogue, plannedMealsCount, packsFile) : null;
+
+        try {
+            frontendHandler.printAvailableMeals(availableMealsNames, (int) first, limit);
+            if (suggestedMeals != null)
+                frontendHandler.printSuggestedMeals(availableMealsNames, suggestedMeals);
+
+            List<String> selectedMealsNames = frontendHandler.getSelectedMealsFromUserInput(
+                    availableMealsNames, catalogue.getSearchIndex(), suggestedMeals
+            );
+            mealsHandler.setSelectedMealsNames(selectedMealsNames);
+
+            if (selectedMealsNames.isEmpty()) {
+                frontendHandler.printYouDidntChooseAnyMeal();
+                return;
+            }
+
+            frontendHandler.printSelectedMeals(selectedMealsNames);
+            Map<String, IngredientAmount> requiredIngredients = mealsHandler.getRequiredIngredients();
+            if (pantryDirectory != null) {
+                try (Pantry pantry = Pantry.open(Path.of(pantryDirectory))) {
+                    requiredIngredients = pantry.subtractFrom(requiredIngredients);
+                }
+            }
+            frontendHandler.printRequiredIngredients(requiredIngredients);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (ArithmeticException e) {
+            System.err.println(ShoppingListAggregator.OVERFLOW_MESSAGE);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Waits for the meals to be loaded in the background.
+     *
+     * @param mealsLoading the loading of the meals
+     * @return the handler of the loaded meals
+     * @throws FileFormatException if a meals file is not correctly formatted
+     */
+    private static MealsHandler await(FutureTask<MealsHandler> mealsLoading) throws FileFormatException {
+        try {
+            return mealsLoading.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            switch (e.getCause()) {
+                case FileFormatException cause -> throw cause;
+                case RuntimeException cause -> throw cause;
+                case Error cause -> throw cause;
+                default -> throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Searches for meals that share their ingredients (see {@link MealPlanner}).
+     * If the packs file is not correctly formatted, or if the meals cannot be
+     * planned, the program exits.
+     *
+     * @param catalogue the catalogue of the meals
+     * @param mealsCount the number of meals to plan
+     * @param packsFile the file of the pack sizes of the ingredients, or null
+     *                  if there's none
+     * @return the ordinals of the planned meals
+     */
+    private static BitSet planMeals(MealCatalogue catalogue, int mealsCount, String packsFile) {
+        try {
+            Map<String, IngredientAmount> packSizes = packsFile != null ? MealPlanner.readPackSizes(packsFile) : Map.of();
+            MealPlanner planner = new MealPlanner(
+                    catalogue, packSizes, MealPlanner.DEFAULT_BEAM_WIDTH, ForkJoinPool.commonPool()
+            );
+            return planner.plan(mealsCount, PLANNING_TIME_BUDGET).mealsOrdinals();
+        } catch (FileFormatException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return null;
+        } catch (ArithmeticException e) {
+            System.err.println(ShoppingListAggregator.OVERFLOW_MESSAGE);
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Prints the summary of the metrics on the error output.
+     */
+    private static void printMetrics() {
+        StringBuilder summary = new StringBuilder();
+        Metrics.writeSummary(summary);
+        System.err.print(summary);
+        System.err.flush();
+    }
+
+    /**
+     * Checks and compiles a meals file into a snapshot, or the meals files of
+     * a directory or a glob pattern into their snapshots.
+     *
+     * @param mealsFile the meals file, or the directory or glob pattern of the
+     *                  meals files
+     */
+    private static void compile(String mealsFile) {
+        try {
+            if (MealsFileSet.isFileSet(mealsFile)) {
+                MealsFileSet mealsFileSet = MealsFileSet.of(mealsFile);
+                MealCatalogue catalogue = mealsFileSet.load();
+                IO.println("Compiled " + catalogue.getMealsCount() + " meals from " + mealsFileSet.getFiles().size()
+                        + " files into " + mealsFileSet.getBaseDirectory().resolve(MealsFileSet.CACHE_DIRECTORY));
+                return;
+            }
+            MealCatalogue catalogue = CatalogueSnapshot.compile(mealsFile);
+            IO.println("Compiled " + catalogue.getMealsCount() + " meals into " + mealsFile + CatalogueSnapshot.EXTENSION);
+        } catch (FileFormatException | IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Processes a file of selections (or the standard input), one per line,
+     * and writes the shopping lists on the standard output. The program
+     * exits with a non-zero status if a selection is invalid, since in CSV an
+     * invalid selection has no rows, as an empty one.
+     *
+     * @param args the arguments that follow the batch command
+     */
+    private static void batch(List<String> args) {
+        String mealsFile = args.getFirst();
+        String selectionsFile = null;
+        BatchProcessor.OutputFormat outputFormat = BatchProcessor.OutputFormat.JSON_LINES;
+        boolean isWatching = false;
+        for (int i = 1; i < args.size(); i++) {
+            if (args.get(i).equals("--watch")) {
+                isWatching = true;
+            } else if (args.get(i).equals("--format") && i + 1 < args.size()) {
+                outputFormat = switch (args.get(++i)) {
+                    case "jsonl" -> BatchProcessor.OutputFormat.JSON_LINES;
+                    case "csv" -> BatchProcessor.OutputFormat.CSV;
+                    default -> null;
+                };
+            } else if (selectionsFile == null && ! args.get(i).startsWith("--")) {
+                selectionsFile = args.get(i);
+            } else {
+                outputFormat = null;
+            }
+            if (outputFormat == null) {
+                System.err.println(USAGE);
+                System.exit(1);
+            }
+        }
+
+        MealsHandler mealsHandler = null;
+        try {
             mealsHandler = new MealsHandler(mealsFile);
         } catch (FileFormatException e) {
             System.err.println(e.getMessage());
             System.exit(1);
         }
 
-        List<String> availableMealsNames = mealsHandler.getAvailableMealsNames();
-        frontendHandler.printAvailableMeals(availableMealsNames);
+        BatchProcessor.Statistics statistics = null;
+        try (CatalogueWatcher watcher = isWatching ? new CatalogueWatcher(mealsHandler, System.err) : null;
+             BufferedReader input = selectionsFile == null || selectionsFile.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), BATCH_BUFFER_SIZE)
+                : Files.newBufferedReader(Path.of(selectionsFile), StandardCharsets.UTF_8);
+             Writer output = new BufferedWriter(
+                     new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8),
+                     BATCH_BUFFER_SIZE)) {
+            statistics = new BatchProcessor(mealsHandler, outputFormat).process(input, output, System.err);
+            System.err.println(statistics);
+            System.err.println(mealsHandler.getShoppingListCache().getStatistics());
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        if (statistics.invalidSelectionsCount() > 0)
+            System.exit(1);
+    }
 
-        List<String> selectedMealsNames = frontendHandler.getSelectedMealsFromUserInput(availableMealsNames);
-        mealsHandler.setSelectedMealsNames(selectedMealsNames);
+    /**
+     * Starts the HTTP server (see {@link MealsServer}). The server runs until
+     * the program is stopped.
+     *
+     * @param args the arguments that follow the serve command
+     */
+    private static void serve(List<String> args) {
+        String mealsFile = args.getFirst();
+        int port = MealsServer.DEFAULT_PORT;
+        boolean isWatching = false;
+        String pantriesDirectory = null;
+        for (int i = 1; i < args.size(); i++) {
+            if (args.get(i).equals("--watch")) {
+                isWatching = true;
+            } else if (args.get(i).equals("--port") && i + 1 < args.size() && args.get(i + 1).matches("\\d{1,5}")) {
+                port = Integer.parseInt(args.get(++i));
+            } else if (args.get(i).equals("--pantries") && i + 1 < args.size()) {
+                pantriesDirectory = args.get(++i);
+            } else {
+                System.err.println(USAGE);
+                System.exit(1);
+            }
+        }
 
-        if (selectedMealsNames.isEmpty()) {
-            frontendHandler.printYouDidntChooseAnyMeal();
-            return;
+        MealsHandler mealsHandler = null;
+        try {
+            mealsHandler = new MealsHandler(mealsFile);
+        } catch (FileFormatException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
         }
 
-        frontendHandler.printSelectedMeals(selectedMealsNames);
+        // Without TCP_NODELAY, the response headers and body are sent in two
+        // small segments, and each response waits for the delayed ACK of the
+        // client (about 40 ms). The property is read when the first server is
+        // created, unless it is given on the command line.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        try {
+            if (isWatching)
+                new CatalogueWatcher(mealsHandler, System.err);
+            // the pantries are closed with the program: their updates are synced before they return
+            Pantries pantries = pantriesDirectory != null ? new Pantries(Path.of(pantriesDirectory)) : null;
+            MealsServer server = new MealsServer(mealsHandler, pantries, new InetSocketAddress(port));
+            IO.println("Serving " + mealsHandler.getCatalogue().getMealsCount() + " meals on http://localhost:"
+                    + server.getAddress().getPort());
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
     }
 }
@@ -0,0 +1,751 @@
+package com.foodshoppinglist;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * An immutable and compact store of meals.
+ * <p/>
+ * Each ingredient name and each unit is stored once, and identified by its
+ * position in the lexicographic order of the names (its id). The ingredients
+ * of all the meals are stored in shared arrays of ingredients ids and
+ * quantities: the ingredients of a meal are a range of these arrays (a
+ * "line" being one ingredient of one meal).
+ * <p/>
+ * An ingredient may be written with several compatible units (see
+ * {@link UnitRegistry}), such as "g" and "kg": it then has a single unit, one
+ * whose size divides the sizes of all of them (see
+ * {@link UnitRegistry#getCommonUnit(String, String)}), and the quantity of
+ * each line is converted exactly to that unit when the catalogue is built, so
+ * that adding up quantities needs no conversion. The quantities and units as
+ * written in the meals file are kept for the map view. Meals are identified
+ * by their position in the alphabetical order of their names (their
+ * ordinal), which is the order in which they are proposed to the user: it
+ * follows the French collation rules, so that accented names such as
+ * "échalotte" are sorted next to the unaccented ones instead of after "z".
+ */
+public class MealCatalogue {
+
+    /** The locale whose collation rules sort the meals names. */
+    static final Locale MEALS_NAMES_LOCALE = Locale.FRENCH;
+
+    /** The names of the meals, in alphabetical order. */
+    private final String[] mealsNames;
+    /** The read-only list view of <code>mealsNames</code>. */
+    private final List<String> mealsNamesView;
+    /**
+     * An open-addressing hash table of the meals: each non-empty slot holds
+     * the ordinal of a meal plus one, at the position given by the hash of its
+     * name (or a following one, when several names collide).
+     */
+    private final int[] mealsHashTable;
+    /**
+     * The range of lines of each meal: the lines of the meal with ordinal
+     * <code>m</code> go from <code>mealsOffsets[m]</code> (inclusive) to
+     * <code>mealsOffsets[m + 1]</code> (exclusive).
+     */
+    private final int[] mealsOffsets;
+    /** The ingredient of each line; the lines of a meal are sorted by ingredient. */
+    private final int[] linesIngredients;
+    /** The quantity of each line, in thousandths of the unit of its ingredient. */
+    private final long[] linesQuantities;
+    /**
+     * The quantity of each line, in thousandths of the unit it was written
+     * with; the same array as <code>linesQuantities</code> if no line needed
+     * a conversion.
+     */
+    private final long[] linesWrittenQuantities;
+    /** The unit each line was written with, as an index in <code>units</code>. */
+    private final int[] linesUnits;
+    /** The names of the ingredients, in lexicographic order. */
+    private final String[] ingredientsNames;
+    /** The unit of each ingredient, as an index in <code>units</code>. */
+    private final int[] ingredientsUnits;
+    /** The units, in lexicographic order. */
+    private final String[] units;
+
+    /** The read-only map view of this catalogue. */
+    private final Map<String, Map<String, IngredientAmount>> mapView;
+    /** The index of the meals by ingredient. */
+    private final IngredientIndex ingredientIndex;
+    /** The search index of the meals, built when it is first used. */
+    private volatile MealSearchIndex searchIndex;
+
+
+
+
+    MealCatalogue(
+            String[] mealsNames,
+            int[] mealsOffsets,
+            int[] linesIngredients,
+            long[] linesQuantities,
+            long[] linesWrittenQuantities,
+            int[] linesUnits,
+            String[] ingredientsNames,
+            int[] ingredientsUnits,
+            String[] units) {
+        this.mealsNames = mealsNames;
+        this.mealsNamesView = Collections.unmodifiableList(Arrays.asList(mealsNames));
+        this.mealsHashTable = buildHashTable(mealsNames);
+        this.mealsOffsets = mealsOffsets;
+        this.linesIngredients = linesIngredients;
+        this.linesQuantities = linesQuantities;
+        this.linesWrittenQuantities = linesWrittenQuantities;
+        this.linesUnits = linesUnits;
+        this.ingredientsNames = ingredientsNames;
+        this.ingredientsUnits = ingredientsUnits;
+        this.units = units;
+        this.mapView = new MealsMapView();
+        // all the other fields are set: the index reads the lines of the catalogue
+        this.ingredientIndex = IngredientIndex.of(this);
+    }
+
+
+
+
+    /**
+     * Builds a catalogue from checked meals, with the default units.
+     *
+     * @param meals a map associating each meal name to a map associating each
+     *              ingredient to its amount
+     * @return the catalogue
+     * @throws IllegalArgumentException if an ingredient uses incompatible
+     * units
+     */
+    public static MealCatalogue of(Map<String, Map<String, IngredientAmount>> meals) {
+        return of(meals, UnitRegistry.getDefault());
+    }
+
+    /**
+     * Builds a catalogue from checked meals.
+     *
+     * @param meals a map associating each meal name to a map associating each
+     *              ingredient to its amount
+     * @param unitRegistry the units that can be converted into one another
+     * @return the catalogue
+     * @throws IllegalArgumentException if an ingredient uses incompatible
+     * units
+     */
+    public static MealCatalogue of(Map<String, Map<String, IngredientAmount>> meals, UnitRegistry unitRegistry) {
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.BUILD_CATALOGUE)) {
+            return build(meals, unitRegistry);
+        }
+    }
+
+    private static MealCatalogue build(Map<String, Map<String, IngredientAmount>> meals, UnitRegistry unitRegistry) {
+        // build the dictionaries; the unit of an ingredient divides all the units it is written with
+        Map<String, String> ingredientsUnitsNames = new TreeMap<>();
+        Set<String> unitsNames = new TreeSet<>();
+        int linesCount = 0;
+        for (Map<String, IngredientAmount> ingredients : meals.values()) {
+            for (Map.Entry<String, IngredientAmount> ingredientEntry : ingredients.entrySet()) {
+                ingredientsUnitsNames.merge(
+                        ingredientEntry.getKey(),
+                        ingredientEntry.getValue().unit(),
+                        unitRegistry::getCommonUnit
+                );
+                unitsNames.add(ingredientEntry.getValue().unit());
+            }
+            linesCount += ingredients.size();
+        }
+        // the unit of an ingredient may be none of the units it is written with
+        unitsNames.addAll(ingredientsUnitsNames.values());
+        String[] units = unitsNames.toArray(String[]::new);
+        String[] ingredientsNames = ingredientsUnitsNames.keySet().toArray(String[]::new);
+        int[] ingredientsUnits = new int[ingredientsNames.length];
+        for (int id = 0; id < ingredientsNames.length; id++)
+            ingredientsUnits[id] = Arrays.binarySearch(units, ingredientsUnitsNames.get(ingredientsNames[id]));
+
+        // the indexes of the units of the catalogue in the registry, looked up once per unit
+        int[] registryUnits = new int[units.length];
+        for (int index = 0; index < units.length; index++)
+            registryUnits[index] = unitRegistry.getUnitIndex(units[index]);
+
+        // fill the lines, meal after meal
+        String[] mealsNames = sortMealsNames(meals.keySet());
+        int[] mealsOffsets = new int[mealsNames.length + 1];
+        int[] linesIngredients = new int[linesCount];
+        long[] linesQuantities = new long[linesCount];
+        long[] linesWrittenQuantities = new long[linesCount];
+        int[] linesUnits = new int[linesCount];
+        boolean hasConversions = false;
+        int line = 0;
+        for (int ordinal = 0; ordinal < mealsNames.length; ordinal++) {
+            mealsOffsets[ordinal] = line;
+            for (Map.Entry<String, IngredientAmount> ingredientEntry
+                    : new TreeMap<>(meals.get(mealsNames[ordinal])).entrySet()) {
+                int id = Arrays.binarySearch(ingredientsNames, ingredientEntry.getKey());
+                linesIngredients[line] = id;
+                linesUnits[line] = Arrays.binarySearch(units, ingredientEntry.getValue().unit());
+                linesWrittenQuantities[line] = ingredientEntry.getValue().scaledQuantity();
+                linesQuantities[line] = linesWrittenQuantities[line];
+                if (linesUnits[line] != ingredientsUnits[id]) {
+                    int from = registryUnits[linesUnits[line]];
+                    int to = registryUnits[ingredientsUnits[id]];
+                    if (from < 0 || to < 0)
+                        throw new IllegalArgumentException(
+                                "The ingredient '" + ingredientEntry.getKey() + "' uses incompatible units"
+                        );
+                    linesQuantities[line] = unitRegistry.convert(linesWrittenQuantities[line], from, to);
+                    hasConversions = true;
+                }
+                line++;
+            }
+        }
+        mealsOffsets[mealsNames.length] = line;
+
+        return new MealCatalogue(
+                mealsNames,
+                mealsOffsets,
+                linesIngredients,
+                linesQuantities,
+                hasConversions ? linesWrittenQuantities : linesQuantities,
+                linesUnits,
+                ingredientsNames,
+                ingredientsUnits,
+                units
+        );
+    }
+
+    /**
+     * Merges catalogues whose meals have different names into one, as
+     * {@link #of(Map, UnitRegistry)} would build it from all their meals,
+     * but directly from their arrays: the names of the meals are sorted
+     * again, and the lines are copied with their ingredients and units
+     * renumbered.
+     *
+     * @param catalogues the catalogues, whose meals have different names
+     * @param unitRegistry the units that can be converted into one another
+     * @return the catalogue of the meals of all the catalogues
+     * @throws IllegalArgumentException if an ingredient uses incompatible
+     * units
+     */
+    static MealCatalogue merge(List<MealCatalogue> catalogues, UnitRegistry unitRegistry) {
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.BUILD_CATALOGUE)) {
+            return mergeCatalogues(catalogues, unitRegistry);
+        }
+    }
+
+    private static MealCatalogue mergeCatalogues(List<MealCatalogue> catalogues, UnitRegistry unitRegistry) {
+        // the dictionaries are the unions of the dictionaries; the unit of an
+        // ingredient already divides all its units within each catalogue
+        Map<String, String> ingredientsUnitsNames = new TreeMap<>();
+        Set<String> unitsNames = new TreeSet<>();
+        // the catalogue of each meal, by index
+        Map<String, Integer> mealsCatalogues = new HashMap<>();
+        int linesCount = 0;
+        for (int index = 0; index < catalogues.size(); index++) {
+            MealCatalogue catalogue = catalogues.get(index);
+            for (int id = 0; id < catalogue.ingredientsNames.length; id++) {
+                ingredientsUnitsNames.merge(
+                        catalogue.ingredientsNames[id],
+                        catalogue.units[catalogue.ingredientsUnits[id]],
+                        unitRegistry::getCommonUnit
+                );
+            }
+            unitsNames.addAll(Arrays.asList(catalogue.units));
+            for (String mealName : catalogue.mealsNames)
+                mealsCatalogues.put(mealName, index);
+            linesCount += catalogue.linesIngredients.length;
+        }
+        // the unit of an ingredient may be none of the units it is written with
+        unitsNames.addAll(ingredientsUnitsNames.values());
+        String[] units = unitsNames.toArray(String[]::new);
+        String[] ingredientsNames = ingredientsUnitsNames.keySet().toArray(String[]::new);
+        int[] ingredientsUnits = new int[ingredientsNames.length];
+        for (int id = 0; id < ingredientsNames.length; id++)
+            ingredientsUnits[id] = Arrays.binarySearch(units, ingredientsUnitsNames.get(ingredientsNames[id]));
+
+        // the ids and unit indexes of each catalogue in the merged one; the
+        // dictionaries are sorted, so the lines of a meal stay sorted by ingredient
+        int[][] ingredientsIds = new int[catalogues.size()][];
+        int[][] unitsIndexes = new int[catalogues.size()][];
+        for (int index = 0; index < catalogues.size(); index++) {
+            MealCatalogue catalogue = catalogues.get(index);
+            ingredientsIds[index] = new int[catalogue.ingredientsNames.length];
+            for (int id = 0; id < catalogue.ingredientsNames.length; id++)
+                ingredientsIds[index][id] = Arrays.binarySearch(ingredientsNames, catalogue.ingredientsNames[id]);
+            unitsIndexes[index] = new int[catalogue.units.length];
+            for (int unit = 0; unit < catalogue.units.length; unit++)
+                unitsIndexes[index][unit] = Arrays.binarySearch(units, catalogue.units[unit]);
+        }
+        int[] registryUnits = new int[units.length];
+        for (int index = 0; index < units.length; index++)
+            registryUnits[index] = unitRegistry.getUnitIndex(units[index]);
+
+        // copy the lines, meal after meal
+        String[] mealsNames = sortMealsNames(mealsCatalogues.keySet());
+        int[] mealsOffsets = new int[mealsNames.length + 1];
+        int[] linesIngredients = new int[linesCount];
+        long[] linesQuantities = new long[linesCount];
+        long[] linesWrittenQuantities = new long[linesCount];
+        int[] linesUnits = new int[linesCount];
+        boolean hasConversions = false;
+        int line = 0;
+        for (int ordinal = 0; ordinal < mealsNames.length; ordinal++) {
+            mealsOffsets[ordinal] = line;
+            int index = mealsCatalogues.get(mealsNames[ordinal]);
+            MealCatalogue catalogue = catalogues.get(index);
+            int sourceOrdinal = catalogue.getMealOrdinal(mealsNames[ordinal]);
+            for (int sourceLine = catalogue.mealsOffsets[sourceOrdinal];
+                 sourceLine < catalogue.mealsOffsets[sourceOrdinal + 1];
+                 sourceLine++) {
+                int sourceId = catalogue.linesIngredients[sourceLine];
+                int id = ingredientsIds[index][sourceId];
+                linesIngredients[line] = id;
+                linesUnits[line] = unitsIndexes[index][catalogue.linesUnits[sourceLine]];
+                linesWrittenQuantities[line] = catalogue.linesWrittenQuantities[sourceLine];
+                if (linesUnits[line] == ingredientsUnits[id]) {
+                    linesQuantities[line] = linesWrittenQuantities[line];
+                } else if (unitsIndexes[index][catalogue.ingredientsUnits[sourceId]] == ingredientsUnits[id]) {
+                    // already converted to this unit in its catalogue
+                    linesQuantities[line] = catalogue.linesQuantities[sourceLine];
+                    hasConversions = true;
+                } else {
+                    int from = registryUnits[linesUnits[line]];
+                    int to = registryUnits[ingredientsUnits[id]];
+                    if (from < 0 || to < 0)
+                        throw new IllegalArgumentException(
+                                "The ingredient '" + ingredientsNames[id] + "' uses incompatible units"
+                        );
+                    linesQuantities[line] = unitRegistry.convert(linesWrittenQuantities[line], from, to);
+                    hasConversions = true;
+                }
+                line++;
+            }
+        }
+        mealsOffsets[mealsNames.length] = line;
+
+        return new MealCatalogue(
+                mealsNames,
+                mealsOffsets,
+                linesIngredients,
+                linesQuantities,
+                hasConversions ? linesWrittenQuantities : linesQuantities,
+                linesUnits,
+                ingredientsNames,
+                ingredientsUnits,
+                units
+        );
+    }
+
+    /**
+     * Sorts meals names in alphabetical order, following the collation rules
+     * of {@link #MEALS_NAMES_LOCALE}. The names that the collator considers
+     * equal are sorted in lexicographic order.
+     *
+     * @param mealsNames the names of the meals
+     * @return the sorted names
+     */
+    static String[] sortMealsNames(Collection<String> mealsNames) {
+        // collation keys are computed once per name, instead of at each comparison
+        Collator collator = Collator.getInstance(MEALS_NAMES_LOCALE);
+        CollationKey[] keys = mealsNames.stream().map(collator::getCollationKey).toArray(CollationKey[]::new);
+        Arrays.sort(keys, Comparator.<CollationKey>naturalOrder().thenComparing(CollationKey::getSourceString));
+        return Arrays.stream(keys).map(CollationKey::getSourceString).toArray(String[]::new);
+    }
+
+    private static int[] buildHashTable(String[] names) {
+        int[] hashTable = new int[Math.max(2, Integer.highestOneBit(Math.max(1, names.length)) << 2)];
+        for (int ordinal = 0; ordinal < names.length; ordinal++) {
+            int slot = hashSlot(names[ordinal], hashTable.length);
+            while (hashTable[slot] != 0)
+                slot = (slot + 1) & (hashTable.length - 1);
+            hashTable[slot] = ordinal + 1;
+        }
+        return hashTable;
+    }
+
+    private static int hashSlot(String name, int tableLength) {
+        int hash = name.hashCode();
+        return (hash ^ (hash >>> 16)) & (tableLength - 1);
+    }
+
+
+
+
+    /**
+     * Returns the number of meals.
+     *
+     * @return the number of meals
+     */
+    public int getMealsCount() {
+        return mealsNames.length;
+    }
+
+    /**
+     * Returns the name of a meal.
+     *
+     * @param ordinal the ordinal of the meal
+     * @return the name of the meal
+     */
+    public String getMealName(int ordinal) {
+        return mealsNames[ordinal];
+    }
+
+    /**
+     * Returns the names of the meals, in alphabetical order: the name of the
+     * meal with ordinal <code>m</code> is at index <code>m</code>.
+     * <p/>
+     * The returned list is a read-only view, built once per catalogue.
+     *
+     * @return the names of the meals, in alphabetical order
+     */
+    public List<String> getMealsNames() {
+        return mealsNamesView;
+    }
+
+    /**
+     * Returns the ordinal of a meal.
+     *
+     * @param mealName the name of the meal
+     * @return the ordinal of the meal, or -1 if there's no such meal
+     */
+    public int getMealOrdinal(String mealName) {
+        for (int slot = hashSlot(mealName, mealsHashTable.length); mealsHashTable[slot] != 0;
+             slot = (slot + 1) & (mealsHashTable.length - 1)) {
+            if (mealsNames[mealsHashTable[slot] - 1].equals(mealName))
+                return mealsHashTable[slot] - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of ingredients.
+     *
+     * @return the number of ingredients
+     */
+    public int getIngredientsCount() {
+        return ingredientsNames.length;
+    }
+
+    /**
+     * Returns the name of an ingredient.
+     *
+     * @param id the id of the ingredient
+     * @return the name of the ingredient
+     */
+    public String getIngredientName(int id) {
+        return ingredientsNames[id];
+    }
+
+    /**
+     * Returns the id of an ingredient.
+     *
+     * @param ingredientName the name of the ingredient
+     * @return the id of the ingredient, or -1 if there's no such ingredient
+     */
+    public int getIngredientId(String ingredientName) {
+        int id = Arrays.binarySearch(ingredientsNames, ingredientName);
+        return id >= 0 ? id : -1;
+    }
+
+    /**
+     * Returns the unit of an ingredient.
+     *
+     * @param id the id of the ingredient
+     * @return the unit of the ingredient
+     */
+    public String getIngredientUnit(int id) {
+        return units[ingredientsUnits[id]];
+    }
+
+    /**
+     * Returns the unit of an ingredient, as an index in the units.
+     *
+     * @param id the id of the ingredient
+     * @return the index of the unit of the ingredient
+     */
+    public int getIngredientUnitIndex(int id) {
+        return ingredientsUnits[id];
+    }
+
+    /**
+     * Returns the number of units.
+     *
+     * @return the number of units
+     */
+    public int getUnitsCount() {
+        return units.length;
+    }
+
+    /**
+     * Returns a unit.
+     *
+     * @param index the index of the unit
+     * @return the unit
+     */
+    public String getUnit(int index) {
+        return units[index];
+    }
+
+    /**
+     * Returns the number of lines, that is the total number of ingredients of
+     * all the meals.
+     *
+     * @return the number of lines
+     */
+    public int getLinesCount() {
+        return linesIngredients.length;
+    }
+
+    /**
+     * Returns the first line of a meal.
+     *
+     * @param ordinal the ordinal of the meal
+     * @return the first line of the meal
+     */
+    public int getFirstLine(int ordinal) {
+        return mealsOffsets[ordinal];
+    }
+
+    /**
+     * Returns the line that follows the last line of a meal.
+     *
+     * @param ordinal the ordinal of the meal
+     * @return the line that follows the last line of the meal
+     */
+    public int getEndLine(int ordinal) {
+        return mealsOffsets[ordinal + 1];
+    }
+
+    /**
+     * Returns the ingredient of a line.
+     *
+     * @param line the line
+     * @return the id of the ingredient of the line
+     */
+    public int getLineIngredient(int line) {
+        return linesIngredients[line];
+    }
+
+    /**
+     * Returns the quantity of a line.
+     *
+     * @param line the line
+     * @return the quantity of the line, in thousandths of the unit of its
+     * ingredient
+     */
+    public long getLineQuantity(int line) {
+        return linesQuantities[line];
+    }
+
+    /**
+     * Returns the quantity of a line, as it was written in the meals file.
+     *
+     * @param line the line
+     * @return the quantity of the line, in thousandths of the unit it was
+     * written with
+     */
+    public long getLineWrittenQuantity(int line) {
+        return linesWrittenQuantities[line];
+    }
+
+    /**
+     * Returns the unit a line was written with, as an index in the units.
+     *
+     * @param line the line
+     * @return the index of the unit of the line
+     */
+    public int getLineUnitIndex(int line) {
+        return linesUnits[line];
+    }
+
+    /**
+     * Returns the index of the meals of this catalogue by ingredient, which
+     * is built with the catalogue.
+     *
+     * @return the index of the meals by ingredient
+     */
+    public IngredientIndex getIngredientIndex() {
+        return ingredientIndex;
+    }
+
+    /**
+     * Returns the search index of the meals of this catalogue, building it
+     * when it is first used.
+     *
+     * @return the search index of the meals
+     */
+    public MealSearchIndex getSearchIndex() {
+        MealSearchIndex index = searchIndex;
+        if (index == null) {
+            // several threads may build the index at once, which is harmless
+            index = MealSearchIndex.of(this);
+            searchIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Returns a read-only view of this catalogue, as a map associating each
+     * meal name to a map associating each ingredient to its amount. The meals
+     * iterate in alphabetical order, and the ingredients in lexicographic
+     * order. The amounts are the ones written in the meals file, before any
+     * unit conversion.
+     * <p/>
+     * The amounts are built on the fly, so this view is meant for
+     * convenience rather than for the hot paths.
+     *
+     * @return the map view of this catalogue
+     */
+    public Map<String, Map<String, IngredientAmount>> asMap() {
+        return mapView;
+    }
+
+
+
+
+    /**
+     * The map view of the catalogue.
+     */
+    private class MealsMapView extends AbstractMap<String, Map<String, IngredientAmount>> {
+
+        private final Set<Entry<String, Map<String, IngredientAmount>>> entrySet = new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Map<String, IngredientAmount>>> iterator() {
+                return new RangeIterator<>(0, mealsNames.length) {
+                    @Override
+                    Entry<String, Map<String, IngredientAmount>> get(int ordinal) {
+                        return new SimpleImmutableEntry<>(mealsNames[ordinal], new MealMapView(ordinal));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return mealsNames.length;
+            }
+        };
+
+        @Override
+        public Set<Entry<String, Map<String, IngredientAmount>>> entrySet() {
+            return entrySet;
+        }
+
+        @Override
+        public int size() {
+            return mealsNames.length;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String mealName && getMealOrdinal(mealName) >= 0;
+        }
+
+        @Override
+        public Map<String, IngredientAmount> get(Object key) {
+            if (! (key instanceof String mealName))
+                return null;
+            int ordinal = getMealOrdinal(mealName);
+            return ordinal >= 0 ? new MealMapView(ordinal) : null;
+        }
+    }
+
+    /**
+     * The map view of the ingredients of a meal.
+     */
+    private class MealMapView extends AbstractMap<String, IngredientAmount> {
+
+        private final int firstLine;
+        private final int endLine;
+
+        MealMapView(int ordinal) {
+            this.firstLine = mealsOffsets[ordinal];
+            this.endLine = mealsOffsets[ordinal + 1];
+        }
+
+        @Override
+        public Set<Entry<String, IngredientAmount>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, IngredientAmount>> iterator() {
+                    return new RangeIterator<>(firstLine, endLine) {
+                        @Override
+                        Entry<String, IngredientAmount> get(int line) {
+                            return new SimpleImmutableEntry<>(ingredientsNames[linesIngredients[line]], amount(line));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return endLine - firstLine;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return endLine - firstLine;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return findLine(key) >= 0;
+        }
+
+        @Override
+        public IngredientAmount get(Object key) {
+            int line = findLine(key);
+            return line >= 0 ? amount(line) : null;
+        }
+
+        private int findLine(Object key) {
+            if (! (key instanceof String ingredientName))
+                return -1;
+            int id = getIngredientId(ingredientName);
+            if (id < 0)
+                return -1;
+            int line = Arrays.binarySearch(linesIngredients, firstLine, endLine, id);
+            return line >= 0 ? line : -1;
+        }
+
+        private IngredientAmount amount(int line) {
+            return new IngredientAmount(linesWrittenQuantities[line], units[linesUnits[line]]);
+        }
+    }
+
+    /**
+     * An iterator over a range of integers, mapped to elements.
+     */
+    private abstract static class RangeIterator<E> implements Iterator<E> {
+
+        private int next;
+        private final int end;
+
+        RangeIterator(int start, int end) {
+            this.next = start;
+            this.end = end;
+        }
+
+        abstract E get(int index);
+
+        @Override
+        public boolean hasNext() {
+            return next < end;
+        }
+
+        @Override
+        public E next() {
+            if (next >= end)
+                throw new NoSuchElementException();
+            return get(next++);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.foodshoppinglist;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A planner that suggests meals that go well together, for instance the
+ * meals of a week: meals that share as many ingredients as possible, so that
+ * there are fewer items to buy, and, when the ingredients are sold in packs,
+ * fewer leftovers of partly used packs.
+ * <p/>
+ * The cost of a selection is the number of its distinct ingredients, plus,
+ * for each ingredient that has a pack size, the fraction of the last pack
+ * that is left over. Costs are counted in thousandths of an ingredient, as
+ * exact integers, so a selection of 5 ingredients that leaves a quarter of a
+ * pack of rice costs 5250.
+ * <p/>
+ * The planner runs a beam search over the ordinals of the meals: it keeps the
+ * {@link #DEFAULT_BEAM_WIDTH best} selections of k meals, extends each of them
+ * with every other meal, and keeps the best selections of k + 1 meals. The
+ * cost of an extension is computed incrementally, from the lines of the added
+ * meal only: the ingredients of a selection are a bitset, and only the
+ * ingredients that have a pack size need their running totals. The
+ * selections of a step are extended in parallel on a fork/join pool.
+ * <p/>
+ * The search has a time budget: once it is spent, only the best selection of
+ * each step is extended, which completes the plan greedily. A planner can
+ * also be cancelled from another thread.
+ */
+public class MealPlanner {
+
+    /** The number of selections kept at each step of the search, by default. */
+    public static final int DEFAULT_BEAM_WIDTH = 64;
+
+    /** The cost of one distinct ingredient. */
+    private static final long INGREDIENT_COST = 1000;
+    /** The best candidates first, the ties broken by their positions, so that the search is deterministic. */
+    private static final Comparator<Candidate> CANDIDATES_ORDER = Comparator.comparingLong(Candidate::cost)
+            .thenComparingInt(Candidate::parent)
+            .thenComparingInt(Candidate::meal);
+
+    private final MealCatalogue catalogue;
+    /** The pack size of each ingredient, by id, in thousandths of its unit, or 0 if it has none. */
+    private final long[] packSizes;
+    private final int beamWidth;
+    private final ForkJoinPool pool;
+    private volatile boolean cancelled = false;
+
+
+
+
+    /**
+     * Builds a <code>MealPlanner</code>
+     *
+     * @param catalogue the catalogue of the meals
+     * @param packSizes a map associating ingredients to the amount of their
+     *                  packs, in a unit that is compatible with the unit of
+     *                  the ingredient in the catalogue; the ingredients that
+     *                  are not in the catalogue are ignored
+     * @param beamWidth the number of selections kept at each step of the
+     *                  search
+     * @param pool the pool that runs the search
+     * @throws IllegalArgumentException if a pack size is not positive, or
+     * cannot be converted to the unit of its ingredient
+     * @throws ArithmeticException if a pack size doesn't fit in a
+     * <code>long</code> once converted to the unit of its ingredient
+     */
+    public MealPlanner(MealCatalogue catalogue, Map<String, IngredientAmount> packSizes, int beamWidth, ForkJoinPool pool) {
+        if (beamWidth <= 0)
+            throw new IllegalArgumentException("The beam width must be positive");
+        this.catalogue = catalogue;
+        this.packSizes = new long[catalogue.getIngredientsCount()];
+        this.beamWidth = beamWidth;
+        this.pool = pool;
+        UnitRegistry unitRegistry = UnitRegistry.getDefault();
+        for (Map.Entry<String, IngredientAmount> packEntry : packSizes.entrySet()) {
+            int id = catalogue.getIngredientId(packEntry.getKey());
+            if (id < 0)
+                continue;
+            IngredientAmount pack = packEntry.getValue();
+            String unit = catalogue.getIngredientUnit(id);
+            if (! unitRegistry.areCompatible(pack.unit(), unit)) {
+                throw new IllegalArgumentException("The pack of '" + packEntry.getKey() + "' is in " + pack.unit()
+                        + ", which is incompatible with " + unit + ", its unit in the meals");
+            }
+            long packSize = unitRegistry.convert(pack.scaledQuantity(), pack.unit(), unit);
+            if (packSize <= 0)
+                throw new IllegalArgumentException("The pack of '" + packEntry.getKey() + "' is empty");
+            this.packSizes[id] = packSize;
+        }
+    }
+
+
+
+
+    /**
+     * Reads the pack sizes of ingredients from a YAML file, written like the
+     * ingredients of a meal:
+     * <pre>
+     * riz:
+     *   quantity: 1
+     *   unit: kg
+     * </pre>
+     *
+     * @param fileName the name of the file, in the current directory
+     * @return a map associating each ingredient to the amount of its packs
+     * @throws FileFormatException if the file is not correctly formatted
+     */
+    public static Map<String, IngredientAmount> readPackSizes(String fileName) throws FileFormatException {
+        String errorPrefix = "Error in " + fileName + ": ";
+        Object content = Utils.readYamlFile(fileName, false);
+        if (! (content instanceof Map<?, ?> packs))
+            throw new FileFormatException(errorPrefix + "the root element is not a dictionary");
+        Map<String, IngredientAmount> packSizes = HashMap.newHashMap(packs.size());
+        for (Map.Entry<?, ?> packEntry : packs.entrySet()) {
+            if (! (packEntry.getKey() instanceof String ingredientName))
+                throw new FileFormatException(errorPrefix + "the key '" + packEntry.getKey() + "' is not a string");
+            if (! (packEntry.getValue() instanceof Map<?, ?> pack) || pack.size() != 2
+                    || ! (pack.get("quantity") instanceof Number quantity) || ! FixedPoint.isInRange(quantity)
+                    || ! (pack.get("unit") instanceof String unit)) {
+                throw new FileFormatException(errorPrefix + "the pack of '" + ingredientName
+                        + "' must have a 'quantity' number and a 'unit' string");
+            }
+            packSizes.put(ingredientName, new IngredientAmount(FixedPoint.of(quantity), unit));
+        }
+        return packSizes;
+    }
+
+
+
+
+    /**
+     * Searches for the given number of meals that cost the least together.
+     *
+     * @param mealsCount the number of meals to plan
+     * @param timeBudget the time after which the plan is completed greedily
+     * @return the best plan found
+     * @throws IllegalArgumentException if the number of meals is not positive
+     * or greater than the number of meals of the catalogue
+     * @throws CancellationException if the planner was cancelled
+     * @throws ArithmeticException if the total of an ingredient that has a
+     * pack size doesn't fit in a <code>long</code>
+     */
+    public Plan plan(int mealsCount, Duration timeBudget) {
+        if (mealsCount <= 0 || mealsCount > catalogue.getMealsCount()) {
+            throw new IllegalArgumentException(
+                    "The number of meals to plan must be between 1 and " + catalogue.getMealsCount()
+            );
+        }
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.PLAN)) {
+            return search(mealsCount, System.nanoTime() + timeBudget.toNanos());
+        }
+    }
+
+    /**
+     * Cancels the current search, and the next ones: a cancelled planner
+     * cannot plan anymore.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns the cost of a selection of meals, as minimized by the planner.
+     *
+     * @param mealsOrdinals the ordinals of the meals
+     * @return the cost of the meals, in thousandths of an ingredient
+     * @throws ArithmeticException if the total of an ingredient that has a
+     * pack size doesn't fit in a <code>long</code>
+     */
+    public long computeCost(BitSet mealsOrdinals) {
+        PartialPlan partialPlan = new PartialPlan(new int[0], new BitSet(), new int[0], new long[0], 0);
+        for (int ordinal = mealsOrdinals.nextSetBit(0); ordinal >= 0; ordinal = mealsOrdinals.nextSetBit(ordinal + 1))
+            partialPlan = extend(partialPlan, ordinal, computeExtensionCost(partialPlan, ordinal));
+        return partialPlan.cost;
+    }
+
+
+
+
+    /**
+     * Runs the beam search, one step per meal.
+     */
+    private Plan search(int mealsCount, long deadline) {
+        List<PartialPlan> beam = List.of(new PartialPlan(new int[0], new BitSet(), new int[0], new long[0], 0));
+        boolean timedOut = false;
+        for (int step = 0; step < mealsCount; step++) {
+            // a selection of k meals can be reached from k selections of the previous step
+            int candidatesCount = beamWidth * (step + 1);
+            AtomicBoolean skipped = new AtomicBoolean(false);
+            PriorityQueue<Candidate> candidates = pool.invoke(
+                    new ExpandTask(beam, 0, beam.size(), candidatesCount, deadline, skipped)
+            );
+            if (cancelled)
+                throw new CancellationException("The planning was cancelled");
+            timedOut |= skipped.get();
+
+            List<Candidate> sortedCandidates = new ArrayList<>(candidates);
+            sortedCandidates.sort(CANDIDATES_ORDER);
+            List<PartialPlan> nextBeam = new ArrayList<>(beamWidth);
+            Set<BitSet> selections = new HashSet<>();
+            for (Candidate candidate : sortedCandidates) {
+                PartialPlan parent = beam.get(candidate.parent);
+                BitSet selection = toBitSet(parent.meals);
+                selection.set(candidate.meal);
+                if (! selections.add(selection))
+                    continue;
+                nextBeam.add(extend(parent, candidate.meal, candidate.cost - parent.cost));
+                if (nextBeam.size() == beamWidth)
+                    break;
+            }
+            beam = nextBeam;
+        }
+        PartialPlan best = beam.getFirst();
+        return new Plan(toBitSet(best.meals), best.ingredients.cardinality(), best.cost, timedOut);
+    }
+
+    /**
+     * Returns the cost of adding a meal to a selection, computed from the
+     * lines of the meal.
+     */
+    private long computeExtensionCost(PartialPlan partialPlan, int ordinal) {
+        long cost = 0;
+        for (int line = catalogue.getFirstLine(ordinal); line < catalogue.getEndLine(ordinal); line++) {
+            int id = catalogue.getLineIngredient(line);
+            boolean isNew = ! partialPlan.ingredients.get(id);
+            if (isNew)
+                cost += INGREDIENT_COST;
+            long packSize = packSizes[id];
+            if (packSize == 0)
+                continue;
+            long total = isNew ? 0 : partialPlan.packedTotals[Arrays.binarySearch(partialPlan.packedIngredients, id)];
+            cost += computeLeftover(Math.addExact(total, catalogue.getLineQuantity(line)), packSize)
+                    - (isNew ? 0 : computeLeftover(total, packSize));
+        }
+        return cost;
+    }
+
+    /**
+     * Returns the selection extended with a meal.
+     */
+    private PartialPlan extend(PartialPlan partialPlan, int ordinal, long extensionCost) {
+        int[] meals = Arrays.copyOf(partialPlan.meals, partialPlan.meals.length + 1);
+        meals[partialPlan.meals.length] = ordinal;
+        Arrays.sort(meals);
+        BitSet ingredients = (BitSet) partialPlan.ingredients.clone();
+        int[] packedIngredients = partialPlan.packedIngredients;
+        long[] packedTotals = partialPlan.packedTotals;
+        for (int line = catalogue.getFirstLine(ordinal); line < catalogue.getEndLine(ordinal); line++) {
+            int id = catalogue.getLineIngredient(line);
+            ingredients.set(id);
+            if (packSizes[id] == 0)
+                continue;
+            int index = Arrays.binarySearch(packedIngredients, id);
+            if (index < 0) {
+                // keeps the ingredients sorted, for the binary searches
+                index = -index - 1;
+                int[] newIngredients = new int[packedIngredients.length + 1];
+                long[] newTotals = new long[packedTotals.length + 1];
+                System.arraycopy(packedIngredients, 0, newIngredients, 0, index);
+                System.arraycopy(packedTotals, 0, newTotals, 0, index);
+                System.arraycopy(packedIngredients, index, newIngredients, index + 1, packedIngredients.length - index);
+                System.arraycopy(packedTotals, index, newTotals, index + 1, packedTotals.length - index);
+                newIngredients[index] = id;
+                packedIngredients = newIngredients;
+                packedTotals = newTotals;
+            } else if (packedTotals == partialPlan.packedTotals) {
+                packedTotals = packedTotals.clone();
+            }
+            packedTotals[index] = Math.addExact(packedTotals[index], catalogue.getLineQuantity(line));
+        }
+        return new PartialPlan(meals, ingredients, packedIngredients, packedTotals, partialPlan.cost + extensionCost);
+    }
+
+    /**
+     * Returns the part of the last pack that is left over, in thousandths of
+     * a pack.
+     */
+    private static long computeLeftover(long total, long packSize) {
+        long leftover = Math.multiplyExact(Math.ceilDiv(total, packSize), packSize) - total;
+        return FixedPoint.multiply(leftover, 1000, packSize);
+    }
+
+    private static BitSet toBitSet(int[] meals) {
+        BitSet bitSet = new BitSet();
+        for (int ordinal : meals)
+            bitSet.set(ordinal);
+        return bitSet;
+    }
+
+
+
+
+    /**
+     * A plan of meals.
+     *
+     * @param mealsOrdinals the ordinals of the planned meals
+     * @param ingredientsCount the number of distinct ingredients of the meals
+     * @param cost the cost of the meals, in thousandths of an ingredient (see
+     *             {@link MealPlanner})
+     * @param timedOut true if the time budget ran out, and the plan was
+     *                 completed greedily
+     */
+    public record Plan(BitSet mealsOrdinals, int ingredientsCount, long cost, boolean timedOut) {
+    }
+
+    /**
+     * A selection of meals explored by the search.
+     *
+     * @param meals the ordinals of the meals, sorted
+     * @param ingredients the ids of the ingredients of the meals
+     * @param packedIngredients the ids of the ingredients that have a pack
+     *                          size, sorted
+     * @param packedTotals the total of each of these ingredients
+     * @param cost the cost of the meals
+     */
+    private record PartialPlan(int[] meals, BitSet ingredients, int[] packedIngredients, long[] packedTotals, long cost) {
+    }
+
+    /**
+     * A selection of the beam extended with a meal.
+     *
+     * @param cost the cost of the extended selection
+     * @param parent the position of the extended selection in the beam
+     * @param meal the ordinal of the added meal
+     */
+    private record Candidate(long cost, int parent, int meal) {
+    }
+
+    /**
+     * Extends a range of the selections of the beam, split in two until
+     * there's only one, and keeps the best extensions.
+     */
+    private class ExpandTask extends RecursiveTask<PriorityQueue<Candidate>> {
+
+        private final List<PartialPlan> beam;
+        private final int start;
+        private final int end;
+        private final int candidatesCount;
+        private final long deadline;
+        /** Set when the time budget is spent, and some selections are not extended. */
+        private final AtomicBoolean skipped;
+
+        ExpandTask(List<PartialPlan> beam, int start, int end, int candidatesCount, long deadline, AtomicBoolean skipped) {
+            this.beam = beam;
+            this.start = start;
+            this.end = end;
+            this.candidatesCount = candidatesCount;
+            this.deadline = deadline;
+            this.skipped = skipped;
+        }
+
+        @Override
+        protected PriorityQueue<Candidate> compute() {
+            if (end - start > 1) {
+                int middle = (start + end) >>> 1;
+                ExpandTask second = new ExpandTask(beam, middle, end, candidatesCount, deadline, skipped);
+                second.fork();
+                PriorityQueue<Candidate> candidates =
+                        new ExpandTask(beam, start, middle, candidatesCount, deadline, skipped).compute();
+                for (Candidate candidate : second.join())
+                    offer(candidates, candidate);
+                return candidates;
+            }
+
+            // the worst of the kept candidates is at the head of the queue
+            PriorityQueue<Candidate> candidates = new PriorityQueue<>(candidatesCount + 1, CANDIDATES_ORDER.reversed());
+            // the best selection is always extended, so that the plan can be completed
+            if (cancelled)
+                return candidates;
+            if (start > 0 && System.nanoTime() - deadline > 0) {
+                skipped.set(true);
+                return candidates;
+            }
+            PartialPlan partialPlan = beam.get(start);
+            int[] meals = partialPlan.meals;
+            for (int ordinal = 0, next = 0; ordinal < catalogue.getMealsCount(); ordinal++) {
+                if (next < meals.length && meals[next] == ordinal) {
+                    next++;
+                    continue;
+                }
+                long cost = partialPlan.cost + computeExtensionCost(partialPlan, ordinal);
+                // most extensions are worse than the kept ones, and are dropped without being built
+                if (candidates.size() < candidatesCount || cost <= candidates.peek().cost)
+                    offer(candidates, new Candidate(cost, start, ordinal));
+            }
+            return candidates;
+        }
+
+        private void offer(PriorityQueue<Candidate> candidates, Candidate candidate) {
+            if (candidates.size() < candidatesCount) {
+                candidates.add(candidate);
+            } else if (CANDIDATES_ORDER.compare(candidate, candidates.peek()) < 0) {
+                candidates.poll();
+                candidates.add(candidate);
+            }
+        }
+    }
+}
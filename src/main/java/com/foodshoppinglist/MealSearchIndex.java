@@ -0,0 +1,495 @@
+package com.foodshoppinglist;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * An index of the meals of a catalogue, to find them by name or by
+ * ingredient.
+ * <p/>
+ * The names of the meals and of the ingredients are normalised (lower case,
+ * without accents, ligatures split, punctuation replaced by spaces), so that
+ * "echalotte" finds "Échalotte". Each normalised word is a term, and the
+ * terms are kept in sorted arrays with the ordinals of the meals they belong
+ * to: the terms that start with a query word are a range of these arrays,
+ * found with two binary searches. A query word that starts no term of the
+ * meals that matched the previous words is looked up in a trigram index
+ * instead, so that a typo such as "tofo" still finds "tofu".
+ * <p/>
+ * Every word of a query must match the meal, through its name or one of its
+ * ingredients; the meals are ranked by how well they match (a word of the
+ * name before an ingredient, a whole word before a prefix, a prefix before a
+ * typo), then in alphabetical order. The scores are accumulated in dense
+ * per-meal arrays, taken from a lock-free pool so that a search allocates
+ * almost nothing: the index can be shared between threads.
+ */
+public class MealSearchIndex {
+
+    // the scores of the ways a query word can match a meal
+    private static final int NAME_WORD_SCORE = 120;
+    private static final int NAME_PREFIX_SCORE = 100;
+    private static final int INGREDIENT_WORD_SCORE = 60;
+    private static final int INGREDIENT_PREFIX_SCORE = 50;
+    /** The score of a term that shares all its trigrams with the query word; lower similarities score less. */
+    private static final int NAME_TYPO_SCORE = 80;
+    private static final int INGREDIENT_TYPO_SCORE = 40;
+    /** The bonus of the meals whose whole name starts with the query. */
+    private static final int WHOLE_NAME_BONUS = 30;
+
+    /** The minimum length of a query word for typos to be tolerated. */
+    private static final int MIN_TYPO_LENGTH = 3;
+    /** The minimum similarity (Dice coefficient of the trigrams) of a term and a query word with a typo. */
+    private static final double MIN_TYPO_SIMILARITY = 0.5;
+
+    /** The normalised name of each meal, by ordinal. */
+    private final String[] normalizedNames;
+    /** The words of the names of the meals. */
+    private final TermIndex nameTerms;
+    /** The words of the names of the ingredients, with the meals that use the ingredients. */
+    private final TermIndex ingredientTerms;
+    /** The buffers that are not used by a search. */
+    private final Queue<Scratch> scratches = new ConcurrentLinkedQueue<>();
+
+
+
+
+    private MealSearchIndex(String[] normalizedNames, TermIndex nameTerms, TermIndex ingredientTerms) {
+        this.normalizedNames = normalizedNames;
+        this.nameTerms = nameTerms;
+        this.ingredientTerms = ingredientTerms;
+    }
+
+
+
+
+    /**
+     * Builds the index of the meals of a catalogue.
+     *
+     * @param catalogue the catalogue
+     * @return the index
+     */
+    public static MealSearchIndex of(MealCatalogue catalogue) {
+        String[] normalizedNames = new String[catalogue.getMealsCount()];
+        String[][] ingredientsWords = new String[catalogue.getIngredientsCount()][];
+        for (int id = 0; id < ingredientsWords.length; id++)
+            ingredientsWords[id] = words(normalize(catalogue.getIngredientName(id)));
+
+        // the meals are visited in ordinal order, so the postings are sorted
+        Map<String, Postings> namePostings = new HashMap<>();
+        Map<String, Postings> ingredientPostings = new HashMap<>();
+        for (int ordinal = 0; ordinal < normalizedNames.length; ordinal++) {
+            normalizedNames[ordinal] = normalize(catalogue.getMealName(ordinal));
+            for (String word : words(normalizedNames[ordinal]))
+                namePostings.computeIfAbsent(word, w -> new Postings()).add(ordinal);
+            for (int line = catalogue.getFirstLine(ordinal); line < catalogue.getEndLine(ordinal); line++) {
+                for (String word : ingredientsWords[catalogue.getLineIngredient(line)])
+                    ingredientPostings.computeIfAbsent(word, w -> new Postings()).add(ordinal);
+            }
+        }
+        return new MealSearchIndex(normalizedNames, TermIndex.of(namePostings), TermIndex.of(ingredientPostings));
+    }
+
+    /**
+     * Normalises a name or a query: lower case, without accents, with the
+     * ligatures "œ" and "æ" split, and with each run of characters that are
+     * neither letters nor digits replaced by a single space.
+     *
+     * @param text the name or query
+     * @return the normalised text, without leading or trailing spaces
+     */
+    public static String normalize(CharSequence text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder normalized = new StringBuilder(decomposed.length());
+        boolean isAfterSeparator = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK)
+                continue;
+            if (! Character.isLetterOrDigit(c)) {
+                isAfterSeparator = true;
+                continue;
+            }
+            if (isAfterSeparator && ! normalized.isEmpty())
+                normalized.append(' ');
+            isAfterSeparator = false;
+            switch (c) {
+                case 'œ', 'Œ' -> normalized.append("oe");
+                case 'æ', 'Æ' -> normalized.append("ae");
+                default -> normalized.append(Character.toLowerCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+
+    private static String[] words(String normalized) {
+        return normalized.isEmpty() ? new String[0] : normalized.split(" ");
+    }
+
+
+
+
+    /**
+     * Returns the meals that best match a query.
+     *
+     * @param query the words to look for, in the names of the meals or of
+     *              their ingredients
+     * @param limit the maximum number of meals to return
+     * @return the ordinals of the matching meals, the best match first
+     */
+    public int[] search(CharSequence query, int limit) {
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.SEARCH)) {
+            return searchMeals(query, limit);
+        }
+    }
+
+    private int[] searchMeals(CharSequence query, int limit) {
+        String normalizedQuery = normalize(query);
+        String[] queryWords = words(normalizedQuery);
+        if (queryWords.length == 0 || limit <= 0)
+            return new int[0];
+
+        Scratch pooledScratch = scratches.poll();
+        Scratch scratch = pooledScratch != null
+                ? pooledScratch
+                : new Scratch(normalizedNames.length, Math.max(nameTerms.terms.length, ingredientTerms.terms.length));
+        try {
+            scratch.startSearch(queryWords.length);
+            for (String queryWord : queryWords) {
+                scratch.startWord();
+                nameTerms.matchPrefix(queryWord, NAME_WORD_SCORE, NAME_PREFIX_SCORE, scratch);
+                ingredientTerms.matchPrefix(queryWord, INGREDIENT_WORD_SCORE, INGREDIENT_PREFIX_SCORE, scratch);
+                // a word that starts only terms of meals that are not candidates may be a typo
+                if (scratch.nextCandidatesCount == 0 && queryWord.length() >= MIN_TYPO_LENGTH) {
+                    nameTerms.matchTypo(queryWord, NAME_TYPO_SCORE, scratch);
+                    ingredientTerms.matchTypo(queryWord, INGREDIENT_TYPO_SCORE, scratch);
+                }
+                scratch.endWord();
+                if (scratch.candidatesCount == 0)
+                    return new int[0];
+            }
+            return best(normalizedQuery, scratch, limit);
+        } finally {
+            scratch.endSearch();
+            scratches.offer(scratch);
+        }
+    }
+
+    /**
+     * Returns the meal that best matches a query.
+     *
+     * @param query the words to look for, in the names of the meals or of
+     *              their ingredients
+     * @return the ordinal of the best matching meal, or -1 if no meal matches
+     */
+    public int bestMatch(CharSequence query) {
+        int[] ordinals = search(query, 1);
+        return ordinals.length > 0 ? ordinals[0] : -1;
+    }
+
+    /**
+     * Returns the best candidates of a search, adding the bonus of the meals
+     * whose whole name starts with the query.
+     */
+    private int[] best(String normalizedQuery, Scratch scratch, int limit) {
+        // the best ones are packed as (-score << 32 | ordinal), so that the smallest come first
+        long[] best = new long[Math.min(limit, scratch.candidatesCount)];
+        int bestCount = 0;
+        for (int i = 0; i < scratch.candidatesCount; i++) {
+            int ordinal = scratch.candidates[i];
+            int score = scratch.scores[ordinal];
+            if (normalizedNames[ordinal].startsWith(normalizedQuery))
+                score += WHOLE_NAME_BONUS;
+            long ranked = (long) -score << 32 | ordinal;
+            if (bestCount == best.length && ranked >= best[bestCount - 1])
+                continue;
+            int position = bestCount == best.length ? bestCount - 1 : bestCount++;
+            while (position > 0 && best[position - 1] > ranked) {
+                best[position] = best[position - 1];
+                position--;
+            }
+            best[position] = ranked;
+        }
+
+        int[] ordinals = new int[bestCount];
+        for (int i = 0; i < bestCount; i++)
+            ordinals[i] = (int) best[i];
+        return ordinals;
+    }
+
+
+
+
+    /**
+     * The sorted terms of a kind of names, with the meals they belong to and
+     * their trigrams.
+     */
+    private static class TermIndex {
+
+        /** The terms, in lexicographic order. */
+        private final String[] terms;
+        /** The meals of the term <code>t</code> are <code>postings[postingsOffsets[t]]</code> to <code>postings[postingsOffsets[t + 1] - 1]</code>. */
+        private final int[] postingsOffsets;
+        /** The ordinals of the meals of each term, in increasing order. */
+        private final int[] postings;
+        /** The number of distinct trigrams of each term. */
+        private final int[] termsTrigramsCounts;
+        /** The distinct trigrams of all the terms, in increasing order. */
+        private final int[] trigrams;
+        /** The terms of the trigram <code>trigrams[g]</code> are <code>trigramsTerms[trigramsOffsets[g]]</code> to <code>trigramsTerms[trigramsOffsets[g + 1] - 1]</code>. */
+        private final int[] trigramsOffsets;
+        /** The terms of each trigram. */
+        private final int[] trigramsTerms;
+
+        private TermIndex(
+                String[] terms,
+                int[] postingsOffsets,
+                int[] postings,
+                int[] termsTrigramsCounts,
+                int[] trigrams,
+                int[] trigramsOffsets,
+                int[] trigramsTerms) {
+            this.terms = terms;
+            this.postingsOffsets = postingsOffsets;
+            this.postings = postings;
+            this.termsTrigramsCounts = termsTrigramsCounts;
+            this.trigrams = trigrams;
+            this.trigramsOffsets = trigramsOffsets;
+            this.trigramsTerms = trigramsTerms;
+        }
+
+        static TermIndex of(Map<String, Postings> termsPostings) {
+            TreeMap<String, Postings> sortedPostings = new TreeMap<>(termsPostings);
+            String[] terms = sortedPostings.keySet().toArray(String[]::new);
+            int[] postingsOffsets = new int[terms.length + 1];
+            int postingsCount = 0;
+            for (int term = 0; term < terms.length; term++) {
+                postingsOffsets[term] = postingsCount;
+                postingsCount += sortedPostings.get(terms[term]).size;
+            }
+            postingsOffsets[terms.length] = postingsCount;
+            int[] postings = new int[postingsCount];
+            for (int term = 0; term < terms.length; term++) {
+                Postings termPostings = sortedPostings.get(terms[term]);
+                System.arraycopy(termPostings.ordinals, 0, postings, postingsOffsets[term], termPostings.size);
+            }
+
+            // the (trigram, term) pairs, packed as (trigram << 32 | term) and sorted
+            int[] termsTrigramsCounts = new int[terms.length];
+            long[] pairs = new long[16];
+            int pairsCount = 0;
+            for (int term = 0; term < terms.length; term++) {
+                int[] termTrigrams = distinctTrigrams(terms[term]);
+                termsTrigramsCounts[term] = termTrigrams.length;
+                for (int trigram : termTrigrams) {
+                    if (pairsCount == pairs.length)
+                        pairs = Arrays.copyOf(pairs, 2 * pairs.length);
+                    pairs[pairsCount++] = (long) trigram << 32 | term;
+                }
+            }
+            Arrays.sort(pairs, 0, pairsCount);
+            int[] trigrams = new int[pairsCount];
+            int[] trigramsOffsets = new int[pairsCount + 1];
+            int[] trigramsTerms = new int[pairsCount];
+            int trigramsCount = 0;
+            for (int i = 0; i < pairsCount; i++) {
+                int trigram = (int) (pairs[i] >>> 32);
+                if (trigramsCount == 0 || trigrams[trigramsCount - 1] != trigram) {
+                    trigrams[trigramsCount] = trigram;
+                    trigramsOffsets[trigramsCount++] = i;
+                }
+                trigramsTerms[i] = (int) pairs[i];
+            }
+            trigramsOffsets[trigramsCount] = pairsCount;
+
+            return new TermIndex(
+                    terms,
+                    postingsOffsets,
+                    postings,
+                    termsTrigramsCounts,
+                    Arrays.copyOf(trigrams, trigramsCount),
+                    Arrays.copyOf(trigramsOffsets, trigramsCount + 1),
+                    trigramsTerms
+            );
+        }
+
+        /**
+         * Adds the meals of the terms that start with a query word.
+         */
+        void matchPrefix(String queryWord, int wordScore, int prefixScore, Scratch scratch) {
+            int from = lowerBound(queryWord);
+            int to = lowerBound(queryWord + Character.MAX_VALUE);
+            for (int term = from; term < to; term++)
+                addPostings(term, terms[term].length() == queryWord.length() ? wordScore : prefixScore, scratch);
+        }
+
+        /**
+         * Adds the meals of the terms that share enough trigrams with a query
+         * word, their score being proportional to the similarity.
+         */
+        void matchTypo(String queryWord, int maxScore, Scratch scratch) {
+            int[] queryTrigrams = distinctTrigrams(queryWord);
+            // count the trigrams shared with each term that shares at least one
+            int[] sharedCounts = scratch.sharedTrigramsCounts;
+            int touchedTermsCount = 0;
+            for (int trigram : queryTrigrams) {
+                int g = Arrays.binarySearch(trigrams, trigram);
+                if (g < 0)
+                    continue;
+                for (int i = trigramsOffsets[g]; i < trigramsOffsets[g + 1]; i++) {
+                    if (sharedCounts[trigramsTerms[i]]++ == 0)
+                        scratch.touchedTerms[touchedTermsCount++] = trigramsTerms[i];
+                }
+            }
+            for (int i = 0; i < touchedTermsCount; i++) {
+                int term = scratch.touchedTerms[i];
+                double similarity = 2.0 * sharedCounts[term] / (queryTrigrams.length + termsTrigramsCounts[term]);
+                sharedCounts[term] = 0;
+                if (similarity >= MIN_TYPO_SIMILARITY)
+                    addPostings(term, (int) Math.round(maxScore * similarity), scratch);
+            }
+        }
+
+        private void addPostings(int term, int score, Scratch scratch) {
+            for (int i = postingsOffsets[term]; i < postingsOffsets[term + 1]; i++)
+                scratch.match(postings[i], score);
+        }
+
+        /**
+         * Returns the index of the first term that is not lower than a string.
+         */
+        private int lowerBound(String string) {
+            int index = Arrays.binarySearch(terms, string);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        /**
+         * Returns the distinct trigrams of a word padded with a space on each
+         * side, in increasing order. A trigram of characters below 1024 is
+         * packed exactly into an int, the others are hashed (a collision only
+         * blurs the similarity of typos).
+         */
+        private static int[] distinctTrigrams(String word) {
+            String padded = " " + word + " ";
+            int[] trigrams = new int[padded.length() - 2];
+            for (int i = 0; i < trigrams.length; i++) {
+                char c1 = padded.charAt(i);
+                char c2 = padded.charAt(i + 1);
+                char c3 = padded.charAt(i + 2);
+                trigrams[i] = (c1 | c2 | c3) < 1024
+                        ? c1 << 20 | c2 << 10 | c3
+                        : 1 << 30 | ((c1 * 31 + c2) * 31 + c3) & ((1 << 30) - 1);
+            }
+            return Arrays.stream(trigrams).sorted().distinct().toArray();
+        }
+    }
+
+    /**
+     * The ordinals of the meals of a term, in increasing order.
+     */
+    private static class Postings {
+
+        int[] ordinals = new int[2];
+        int size;
+
+        void add(int ordinal) {
+            // a meal whose name (or whose ingredients) has the same word twice is added once
+            if (size > 0 && ordinals[size - 1] == ordinal)
+                return;
+            if (size == ordinals.length)
+                ordinals = Arrays.copyOf(ordinals, 2 * size);
+            ordinals[size++] = ordinal;
+        }
+    }
+
+    /**
+     * The buffers of a search.
+     * <p/>
+     * A meal remains a candidate as long as it matches every word of the
+     * query: the mark of a meal is the number of the last word it matched,
+     * the words being numbered across all the searches that use the buffers,
+     * so that the buffers never need to be cleared.
+     */
+    private static class Scratch {
+
+        /** The number of the last word matched by each meal. */
+        final int[] marks;
+        /** The best score of each meal for the current word. */
+        final int[] wordScores;
+        /** The total score of each candidate. */
+        final int[] scores;
+        /** The meals that matched all the words so far. */
+        int[] candidates;
+        int candidatesCount;
+        /** The meals that match the current word, among the candidates. */
+        int[] nextCandidates;
+        int nextCandidatesCount;
+        /** The number of trigrams each term shares with a query word; zero between two words. */
+        final int[] sharedTrigramsCounts;
+        /** The terms whose count of shared trigrams is not zero. */
+        final int[] touchedTerms;
+
+        /** The number of the current word, and of the previous word of the same search (0 for the first word). */
+        int word;
+        int previousWord;
+
+        Scratch(int mealsCount, int termsCount) {
+            this.marks = new int[mealsCount];
+            this.wordScores = new int[mealsCount];
+            this.scores = new int[mealsCount];
+            this.candidates = new int[mealsCount];
+            this.nextCandidates = new int[mealsCount];
+            this.sharedTrigramsCounts = new int[termsCount];
+            this.touchedTerms = new int[termsCount];
+        }
+
+        void startSearch(int wordsCount) {
+            if (word > Integer.MAX_VALUE - wordsCount) {
+                // the numbers of the words would overflow
+                Arrays.fill(marks, 0);
+                word = 0;
+            }
+        }
+
+        void startWord() {
+            word++;
+            nextCandidatesCount = 0;
+        }
+
+        /**
+         * Records that a meal matches the current word, if it matched all
+         * the previous ones.
+         */
+        void match(int ordinal, int score) {
+            int mark = marks[ordinal];
+            if (mark == word) {
+                wordScores[ordinal] = Math.max(wordScores[ordinal], score);
+            } else if (previousWord == 0 || mark == previousWord) {
+                marks[ordinal] = word;
+                wordScores[ordinal] = score;
+                nextCandidates[nextCandidatesCount++] = ordinal;
+            }
+        }
+
+        void endWord() {
+            for (int i = 0; i < nextCandidatesCount; i++) {
+                int ordinal = nextCandidates[i];
+                scores[ordinal] = (previousWord == 0 ? 0 : scores[ordinal]) + wordScores[ordinal];
+            }
+            int[] swapped = candidates;
+            candidates = nextCandidates;
+            candidatesCount = nextCandidatesCount;
+            nextCandidates = swapped;
+            previousWord = word;
+        }
+
+        void endSearch() {
+            previousWord = 0;
+            candidatesCount = 0;
+        }
+    }
+}
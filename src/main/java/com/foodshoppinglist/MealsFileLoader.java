@@ -0,0 +1,466 @@
+package com.foodshoppinglist;
+
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingEndEvent;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceEndEvent;
+import org.yaml.snakeyaml.events.StreamEndEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.reader.UnicodeReader;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * A single-pass loader for meals files.
+ * <p/>
+ * The file is read through the YAML event stream: each meal is validated and
+ * converted as soon as its events are read, so no generic object tree of the
+ * whole file is ever built. The errors are the same as those of
+ * {@link MealsHandler#checkFileFormat(String, Object)}.
+ * <p/>
+ * The few YAML constructs that cannot be checked from the events alone
+ * (aliases, explicit tags, non-string keys, duplicate keys, several
+ * documents, numbers that are not written in plain decimal notation) make the
+ * loader fall back to loading the whole object tree, so that the result is
+ * always the one of the tree-based path.
+ */
+public class MealsFileLoader {
+
+    private static final String QUANTITY = "quantity";
+    private static final String UNIT = "unit";
+
+    /** Marks a quantity or unit value that doesn't have the expected type. */
+    private static final Object WRONG_TYPE = new Object();
+    /** Marks a quantity that is too large to be represented. */
+    private static final Object OUT_OF_RANGE = new Object();
+
+    private final String errorPrefix;
+    private final Iterator<Event> events;
+    private final Resolver resolver = new Resolver();
+
+    /** The meals, in file order. */
+    private final Map<String, Map<String, IngredientAmount>> meals = new LinkedHashMap<>();
+    private final UnitRegistry unitRegistry = UnitRegistry.getDefault();
+    /** Associates each ingredient with the first unit it was found with. */
+    private final Map<String, String> ingredientsUnits = new HashMap<>();
+    /** The ingredients that were found with incompatible units. */
+    private final SortedSet<String> ingredientsWithIncompatibleUnits = new TreeSet<>();
+
+
+
+
+    private MealsFileLoader(String fileName, Iterator<Event> events) {
+        this.errorPrefix = "Error in " + fileName + ": ";
+        this.events = events;
+    }
+
+
+
+
+    /**
+     * Loads, checks and converts the meals file.
+     * <p/>
+     * If the file cannot be read or contains a YAML syntax error, the program
+     * exits, as with {@link Utils#readYamlFile(String, boolean)}.
+     *
+     * @param mealsFile the file that contains the meals
+     * @return a map associating each meal name to a map associating each
+     * ingredient to its amount
+     * @throws FileFormatException if the file is not correctly formatted
+     */
+    public static Map<String, Map<String, IngredientAmount>> load(String mealsFile) throws FileFormatException {
+        try {
+            return load(mealsFile, true);
+        } catch (IOException exception) {
+            System.err.println(exception.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Loads, checks and converts the meals file, without ever exiting the
+     * program.
+     * <p/>
+     * This is the same as {@link #load(String)}, except that a YAML syntax
+     * error is reported as a {@link FileFormatException}, and a file that
+     * cannot be read as an {@link IOException}.
+     *
+     * @param mealsFile the file that contains the meals
+     * @return a map associating each meal name to a map associating each
+     * ingredient to its amount
+     * @throws FileFormatException if the file is not correctly formatted
+     * @throws IOException if the file cannot be read
+     */
+    public static Map<String, Map<String, IngredientAmount>> tryLoad(String mealsFile)
+            throws FileFormatException, IOException {
+        return load(mealsFile, false);
+    }
+
+    private static Map<String, Map<String, IngredientAmount>> load(String mealsFile, boolean exitOnError)
+            throws FileFormatException, IOException {
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.LOAD_MEALS_FILE)) {
+            return loadMealsFile(mealsFile, exitOnError);
+        }
+    }
+
+    private static Map<String, Map<String, IngredientAmount>> loadMealsFile(String mealsFile, boolean exitOnError)
+            throws FileFormatException, IOException {
+        try (Reader reader = new UnicodeReader(open(mealsFile, exitOnError))) {
+            return new MealsFileLoader(mealsFile, Utils.newYaml().parse(reader).iterator()).loadMeals();
+        } catch (YAMLException exception) {
+            throw syntaxError(mealsFile, exception, exitOnError);
+        } catch (UnsupportedConstructException exception) {
+            // handled below, once the file is closed
+        }
+        Object content;
+        try (InputStream inputStream = open(mealsFile, exitOnError)) {
+            content = Utils.newYaml().load(inputStream);
+        } catch (YAMLException exception) {
+            throw syntaxError(mealsFile, exception, exitOnError);
+        }
+        MealsHandler.checkFileFormat(mealsFile, content);
+        return MealsHandler.convertToStructuredObject(content);
+    }
+
+    private static InputStream open(String mealsFile, boolean exitOnError) throws IOException {
+        if (exitOnError)
+            return Utils.getInputStream(mealsFile, false);
+        return Files.newInputStream(Path.of(mealsFile));
+    }
+
+    private static FileFormatException syntaxError(String mealsFile, YAMLException exception, boolean exitOnError) {
+        if (exitOnError)
+            Utils.exitOnSyntaxError(mealsFile, exception);
+        return new FileFormatException("Syntax error in " + mealsFile + ": " + exception.getMessage());
+    }
+
+    private Map<String, Map<String, IngredientAmount>> loadMeals() throws FileFormatException {
+        events.next(); // stream start
+        Event event = events.next();
+        if (event instanceof StreamEndEvent)
+            throw new FileFormatException(errorPrefix + "the root element is not a dictionary");
+        event = events.next(); // the document start has been read, this is the root node
+        if (! (event instanceof MappingStartEvent mappingStart) || hasExplicitTag(mappingStart)) {
+            requireDefaultNode(event);
+            throw formatError(errorPrefix + "the root element is not a dictionary");
+        }
+
+        while (! ((event = events.next()) instanceof MappingEndEvent)) {
+            String mealName = readStringKey(event);
+            event = events.next();
+            if (! isMappingStart(event))
+                throw formatError(errorPrefix + "the value of the key '" + mealName + "' is not a dictionary");
+            Map<String, IngredientAmount> ingredients = new HashMap<>();
+            if (meals.put(mealName, ingredients) != null)
+                throw new UnsupportedConstructException();
+            readIngredients(mealName, ingredients);
+        }
+
+        events.next(); // document end
+        if (events.next() instanceof DocumentStartEvent)
+            throw new UnsupportedConstructException();
+
+        if (! ingredientsWithIncompatibleUnits.isEmpty())
+            throw new FileFormatException(errorPrefix + incompatibleUnitsMessage());
+        return meals;
+    }
+
+    private void readIngredients(String mealName, Map<String, IngredientAmount> ingredients) throws FileFormatException {
+        Event event;
+        while (! ((event = events.next()) instanceof MappingEndEvent)) {
+            String ingredientName = readStringKey(event);
+            event = events.next();
+            if (! isMappingStart(event))
+                throw formatError(
+                        errorPrefix + "value of ingredient '" + ingredientName + "' in meal '" + mealName + "' is not a dictionary"
+                );
+            IngredientAmount ingredientAmount = readIngredientAmount(mealName, ingredientName);
+            if (ingredients.put(ingredientName, ingredientAmount) != null)
+                throw new UnsupportedConstructException();
+
+            // this is used to check that the units of each ingredient are compatible across the whole file
+            String firstUnit = ingredientsUnits.putIfAbsent(ingredientName, ingredientAmount.unit());
+            if (firstUnit != null && ! unitRegistry.areCompatible(firstUnit, ingredientAmount.unit()))
+                ingredientsWithIncompatibleUnits.add(ingredientName);
+        }
+    }
+
+    private IngredientAmount readIngredientAmount(String mealName, String ingredientName) throws FileFormatException {
+        Object quantity = null;
+        Object unit = null;
+        boolean hasOtherKeys = false;
+
+        Event event;
+        while (! ((event = events.next()) instanceof MappingEndEvent)) {
+            Object key = readKey(event);
+            event = events.next();
+            if (QUANTITY.equals(key)) {
+                quantity = readQuantity(event);
+            } else if (UNIT.equals(key)) {
+                unit = event instanceof ScalarEvent scalar && resolve(scalar) == Tag.STR ? scalar.getValue() : WRONG_TYPE;
+                skipNode(event);
+            } else {
+                hasOtherKeys = true;
+                skipNode(event);
+            }
+        }
+
+        if (quantity == null)
+            throw formatError(
+                    errorPrefix + "ingredient '" + ingredientName + "' in meal '" + mealName + "' misses the key 'quantity'"
+            );
+        if (quantity == WRONG_TYPE)
+            throw formatError(
+                    errorPrefix + "key 'quantity' of ingredient '" + ingredientName + "' in meal '" + mealName + "' is not a number"
+            );
+        if (quantity == OUT_OF_RANGE)
+            throw formatError(
+                    errorPrefix + "key 'quantity' of ingredient '" + ingredientName + "' in meal '" + mealName + "' is out of range"
+            );
+        if (unit == null)
+            throw formatError(
+                    errorPrefix + "ingredient '" + ingredientName + "' in meal '" + mealName + "' misses the key 'unit'"
+            );
+        if (unit == WRONG_TYPE)
+            throw formatError(
+                    errorPrefix + "key 'unit' of ingredient '" + ingredientName + "' in meal '" + mealName + "' is not a string"
+            );
+        if (hasOtherKeys)
+            throw formatError(
+                    errorPrefix + "ingredient '" + ingredientName + "' in meal '" + mealName + "' has one or several keys that are not 'quantity' or 'unit'"
+            );
+        return new IngredientAmount((Long) quantity, (String) unit);
+    }
+
+    /**
+     * Reads the value of a 'quantity' key.
+     *
+     * @param event the first event of the value
+     * @return the quantity, in thousandths (see {@link FixedPoint}), or
+     * <code>WRONG_TYPE</code> if it is not a number, or
+     * <code>OUT_OF_RANGE</code> if it is too large
+     */
+    private Object readQuantity(Event event) {
+        if (! (event instanceof ScalarEvent scalar)) {
+            skipNode(event);
+            return WRONG_TYPE;
+        }
+        Tag tag = resolve(scalar);
+        String value = scalar.getValue();
+        if (tag == Tag.INT && ! isPlainDecimalInteger(value))
+            throw new UnsupportedConstructException();
+        if (tag == Tag.FLOAT && ! isPlainDecimalNumber(value))
+            throw new UnsupportedConstructException();
+        if (tag != Tag.INT && tag != Tag.FLOAT)
+            return WRONG_TYPE;
+        // the decimal text is parsed exactly, without going through a double
+        try {
+            return FixedPoint.parse(value);
+        } catch (NumberFormatException e) {
+            return OUT_OF_RANGE;
+        }
+    }
+
+    /**
+     * Reads a key that must be a string.
+     *
+     * @param event the event of the key
+     * @return the key
+     */
+    private String readStringKey(Event event) {
+        if (readKey(event) instanceof String key)
+            return key;
+        // the error message shows the key as it was constructed by the YAML loader
+        throw new UnsupportedConstructException();
+    }
+
+    /**
+     * Reads a key.
+     *
+     * @param event the first event of the key
+     * @return the key if it is a string, or <code>WRONG_TYPE</code> otherwise
+     */
+    private Object readKey(Event event) {
+        if (event instanceof ScalarEvent scalar && resolve(scalar) == Tag.STR)
+            return scalar.getValue();
+        skipNode(event);
+        return WRONG_TYPE;
+    }
+
+    /**
+     * Returns the tag that the YAML loader would give to the scalar.
+     *
+     * @param scalar the scalar
+     * @return the tag of the scalar
+     */
+    private Tag resolve(ScalarEvent scalar) {
+        requireDefaultNode(scalar);
+        return resolver.resolve(NodeId.scalar, scalar.getValue(), scalar.getImplicit().canOmitTagInPlainScalar());
+    }
+
+    private boolean isMappingStart(Event event) {
+        requireDefaultNode(event);
+        return event instanceof MappingStartEvent;
+    }
+
+    /**
+     * Skips the node that starts with the given event.
+     *
+     * @param event the first event of the node
+     */
+    private void skipNode(Event event) {
+        requireDefaultNode(event);
+        if (! (event instanceof CollectionStartEvent))
+            return;
+        int depth = 1;
+        while (depth > 0) {
+            event = events.next();
+            requireDefaultNode(event);
+            if (event instanceof CollectionStartEvent)
+                depth++;
+            else if (event instanceof MappingEndEvent || event instanceof SequenceEndEvent)
+                depth--;
+        }
+    }
+
+    /**
+     * Falls back to the tree-based loading if the event is an alias or has an
+     * explicit tag.
+     *
+     * @param event the event of a node
+     */
+    private static void requireDefaultNode(Event event) {
+        if (event instanceof AliasEvent || hasExplicitTag(event))
+            throw new UnsupportedConstructException();
+    }
+
+    private static boolean hasExplicitTag(Event event) {
+        String tag = null;
+        if (event instanceof ScalarEvent scalar)
+            tag = scalar.getTag();
+        else if (event instanceof CollectionStartEvent collectionStart)
+            tag = collectionStart.getTag();
+        return tag != null && ! tag.equals("!");
+    }
+
+    /**
+     * Reads the rest of the file before returning the exception, so that a
+     * syntax error further in the file is reported first, as with the
+     * tree-based loading.
+     *
+     * @param message the message of the exception
+     * @return the exception to throw
+     */
+    private FileFormatException formatError(String message) {
+        while (events.hasNext())
+            requireDefaultNode(events.next());
+        return new FileFormatException(message);
+    }
+
+    /**
+     * Builds the message about the first ingredient (in lexicographic order)
+     * that uses incompatible units, as {@link MealsFileValidator} does.
+     *
+     * @return the message
+     */
+    private String incompatibleUnitsMessage() {
+        String ingredientName = ingredientsWithIncompatibleUnits.first();
+        // the units, in the order of the first meal that uses them, with that meal
+        Map<String, String> ingredientUnits = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, IngredientAmount>> mealEntry : meals.entrySet()) {
+            IngredientAmount ingredientAmount = mealEntry.getValue().get(ingredientName);
+            if (ingredientAmount != null)
+                ingredientUnits.putIfAbsent(ingredientAmount.unit(), mealEntry.getKey());
+        }
+        return "ingredient '" + ingredientName + "' uses incompatible units: " + String.join(
+                ", ",
+                ingredientUnits.entrySet()
+                        .stream()
+                        .map(unitEntry -> "'" + unitEntry.getKey() + "' in [" + unitEntry.getValue() + "]")
+                        .toList()
+        );
+    }
+
+    /**
+     * Returns true if the value is written like an integer that can be stored
+     * in a <code>long</code> and has no underscores or leading zeros.
+     */
+    private static boolean isPlainDecimalInteger(String value) {
+        int start = value.startsWith("-") || value.startsWith("+") ? 1 : 0;
+        int length = value.length() - start;
+        if (length == 0 || length > 18 || (length > 1 && value.charAt(start) == '0'))
+            return false;
+        for (int i = start; i < value.length(); i++)
+            if (! isDigit(value.charAt(i)))
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns true if the value is written like a decimal number without
+     * underscores, such as <code>1.5</code>, <code>.5</code> or <code>2e3</code>.
+     */
+    private static boolean isPlainDecimalNumber(String value) {
+        int i = value.startsWith("-") || value.startsWith("+") ? 1 : 0;
+        int digits = 0;
+        while (i < value.length() && isDigit(value.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < value.length() && value.charAt(i) == '.') {
+            i++;
+            while (i < value.length() && isDigit(value.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0)
+            return false;
+        if (i < value.length() && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            i++;
+            if (i < value.length() && (value.charAt(i) == '-' || value.charAt(i) == '+'))
+                i++;
+            int exponentDigits = 0;
+            while (i < value.length() && isDigit(value.charAt(i))) {
+                i++;
+                exponentDigits++;
+            }
+            if (exponentDigits == 0)
+                return false;
+        }
+        return i == value.length();
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Thrown when the file uses a construct that the event-based loading
+     * doesn't handle.
+     */
+    private static class UnsupportedConstructException extends RuntimeException {
+
+        UnsupportedConstructException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.foodshoppinglist;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Several meals files, for instance one per cuisine, that are loaded into
+ * one catalogue.
+ * <p/>
+ * The files are given as a directory (all the <code>.yaml</code> and
+ * <code>.yml</code> files under it) or as a glob pattern such as
+ * <code>recipes/*.yaml</code>. They are loaded in parallel, one task per
+ * file, on a pool of at most one thread per processor, then merged in the
+ * order of their paths: a meal that is defined in two files, or an
+ * ingredient that is written with incompatible units in two files, is
+ * reported with the files and the meals involved.
+ * <p/>
+ * The catalogue of each file is cached in a snapshot (see
+ * {@link CatalogueSnapshot}) named after the SHA-256 hash of its content, in
+ * the {@link #CACHE_DIRECTORY} directory of the base directory of the files:
+ * on the next load, only the files whose content has changed are parsed and
+ * checked again. The snapshots that no file uses anymore are deleted.
+ * <p/>
+ * The cache is best-effort: when its directory cannot be created or written,
+ * for example in a read-only directory, the problem is reported and the
+ * files are parsed as if there were no cache.
+ */
+public class MealsFileSet {
+
+    /** The directory, in the base directory of the files, of the snapshots of the files. */
+    public static final String CACHE_DIRECTORY = ".snapshots";
+
+    /** The characters that make a path a glob pattern. */
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    /** The directory, or the part of the glob pattern before its first glob character. */
+    private final Path baseDirectory;
+    /** Tells if a path, relative to the base directory, is one of the meals files. */
+    private final PathMatcher matcher;
+    /** The meals files, in the order of their paths. */
+    private final List<Path> files;
+
+
+
+
+    private MealsFileSet(Path baseDirectory, PathMatcher matcher, List<Path> files) {
+        this.baseDirectory = baseDirectory;
+        this.matcher = matcher;
+        this.files = files;
+    }
+
+
+
+
+    /**
+     * Returns true if a path designates several meals files, that is if it
+     * is a directory or a glob pattern.
+     *
+     * @param mealsSource the path given for the meals
+     * @return true if the path is a directory or a glob pattern
+     */
+    public static boolean isFileSet(String mealsSource) {
+        return hasGlob(mealsSource) || Files.isDirectory(Path.of(mealsSource));
+    }
+
+    /**
+     * Finds the meals files of a directory or of a glob pattern.
+     * <p/>
+     * The directories are searched recursively. A pattern is matched against
+     * the paths relative to the part of the pattern before its first glob
+     * character, so <code>recipes/*.yaml</code> is the YAML files of the
+     * <code>recipes</code> directory, and <code>recipes/**.yaml</code> the
+     * ones of its subdirectories as well.
+     *
+     * @param mealsSource a directory or a glob pattern
+     * @return the meals files
+     * @throws FileFormatException if there's no meals file
+     * @throws IOException if a directory cannot be read
+     */
+    public static MealsFileSet of(String mealsSource) throws FileFormatException, IOException {
+        Path baseDirectory;
+        PathMatcher matcher;
+        if (hasGlob(mealsSource)) {
+            int firstGlobCharacter = 0;
+            while (GLOB_CHARACTERS.indexOf(mealsSource.charAt(firstGlobCharacter)) < 0)
+                firstGlobCharacter++;
+            int baseLength = Math.max(
+                    mealsSource.lastIndexOf('/', firstGlobCharacter),
+                    mealsSource.lastIndexOf(File.separatorChar, firstGlobCharacter)
+            ) + 1;
+            baseDirectory = Path.of(baseLength > 0 ? mealsSource.substring(0, baseLength) : ".");
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + mealsSource.substring(baseLength));
+        } else {
+            baseDirectory = Path.of(mealsSource);
+            matcher = MealsFileSet::isYamlFile;
+        }
+
+        List<Path> files;
+        if (! Files.isDirectory(baseDirectory)) {
+            files = List.of();
+        } else {
+            try (Stream<Path> paths = Files.walk(baseDirectory)) {
+                // the snapshots would match a pattern such as recipes/**
+                files = paths
+                        .filter(path -> isMatched(baseDirectory.relativize(path), matcher) && Files.isRegularFile(path))
+                        .sorted()
+                        .toList();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        if (files.isEmpty())
+            throw new FileFormatException("There's no meals file in " + mealsSource);
+        return new MealsFileSet(baseDirectory, matcher, files);
+    }
+
+
+
+
+    /**
+     * Returns the meals files, in the order of their paths.
+     *
+     * @return the meals files
+     */
+    public List<Path> getFiles() {
+        return files;
+    }
+
+    /**
+     * Returns the directory under which the meals files are searched.
+     *
+     * @return the base directory of the meals files
+     */
+    public Path getBaseDirectory() {
+        return baseDirectory;
+    }
+
+    /**
+     * Returns true if a file would be one of the meals files, were it to
+     * exist, which tells the files to watch for changes.
+     *
+     * @param file a file under the base directory
+     * @return true if the file is matched by the directory or the glob
+     * pattern
+     */
+    public boolean matches(Path file) {
+        return isMatched(baseDirectory.toAbsolutePath().relativize(file.toAbsolutePath()), matcher);
+    }
+
+    /**
+     * Loads the meals files, each from its snapshot if its content hasn't
+     * changed, and merges them into one catalogue.
+     * <p/>
+     * When several files have errors, the error of the first one in the
+     * order of the paths is reported.
+     *
+     * @return the catalogue of the meals of all the files
+     * @throws FileFormatException if a file is not correctly formatted, if a
+     * meal is defined in two files, or if an ingredient is written with
+     * incompatible units in two files
+     * @throws IOException if a file cannot be read
+     */
+    public MealCatalogue load() throws FileFormatException, IOException {
+        Path cacheDirectory = baseDirectory.resolve(CACHE_DIRECTORY);
+        try {
+            Files.createDirectories(cacheDirectory);
+        } catch (IOException e) {
+            System.err.println("Cannot create the snapshots directory " + cacheDirectory + ", the files are not cached: " + e);
+            cacheDirectory = null;
+        }
+        Path snapshotsDirectory = cacheDirectory;
+
+        List<MealCatalogue> catalogues = new ArrayList<>(files.size());
+        Set<Path> snapshots = new HashSet<>();
+        int threadsCount = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+        try (ExecutorService executor = Executors.newFixedThreadPool(threadsCount)) {
+            List<Future<LoadedFile>> futures = new ArrayList<>(files.size());
+            for (Path file : files)
+                futures.add(executor.submit(() -> loadFile(file, snapshotsDirectory)));
+            try {
+                for (Future<LoadedFile> future : futures) {
+                    LoadedFile loadedFile = future.get();
+                    catalogues.add(loadedFile.catalogue());
+                    if (loadedFile.snapshot() != null)
+                        snapshots.add(loadedFile.snapshot().getFileName());
+                }
+            } catch (ExecutionException e) {
+                futures.forEach(future -> future.cancel(true));
+                switch (e.getCause()) {
+                    case FileFormatException cause -> throw cause;
+                    case IOException cause -> throw cause;
+                    case RuntimeException cause -> throw cause;
+                    case Error cause -> throw cause;
+                    default -> throw new IllegalStateException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                futures.forEach(future -> future.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while loading the meals files");
+            }
+        }
+
+        if (cacheDirectory != null)
+            deleteUnusedSnapshots(cacheDirectory, snapshots);
+        return merge(catalogues);
+    }
+
+
+
+
+    /**
+     * Reads the catalogue of a file from its snapshot, or loads the file and
+     * writes its snapshot; without a cache directory, only loads the file.
+     */
+    private static LoadedFile loadFile(Path file, Path cacheDirectory) throws FileFormatException, IOException {
+        if (cacheDirectory == null)
+            return new LoadedFile(MealCatalogue.of(MealsFileLoader.tryLoad(file.toString())), null);
+        // the file is described before being read, so that a modification
+        // during the load makes the snapshot stale
+        CatalogueSnapshot.SourceDescription source = CatalogueSnapshot.SourceDescription.of(file);
+        Path snapshot = cacheDirectory.resolve(HexFormat.of().formatHex(source.hash()) + CatalogueSnapshot.EXTENSION);
+        if (Files.isRegularFile(snapshot)) {
+            try (Metrics.Timer timer = Metrics.start(Metrics.Phase.READ_SNAPSHOT)) {
+                MealCatalogue catalogue = CatalogueSnapshot.read(snapshot, file);
+                if (catalogue != null)
+                    return new LoadedFile(catalogue, snapshot);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Ignoring the snapshot " + snapshot + ": " + e.getMessage());
+            }
+        }
+        MealCatalogue catalogue = MealCatalogue.of(MealsFileLoader.tryLoad(file.toString()));
+        try {
+            CatalogueSnapshot.write(catalogue, source, snapshot);
+        } catch (IOException e) {
+            System.err.println("Cannot write the snapshot " + snapshot + ": " + e.getMessage());
+        }
+        return new LoadedFile(catalogue, snapshot);
+    }
+
+    /**
+     * Merges the catalogues of the files, in the order of the files.
+     */
+    private MealCatalogue merge(List<MealCatalogue> catalogues) throws FileFormatException {
+        if (catalogues.size() == 1)
+            return catalogues.getFirst();
+        UnitRegistry unitRegistry = UnitRegistry.getDefault();
+        // the file of each meal, and the file that first used each ingredient, by index
+        Map<String, Integer> mealsFiles = new HashMap<>();
+        Map<String, Integer> ingredientsFiles = new HashMap<>();
+        for (int index = 0; index < catalogues.size(); index++) {
+            MealCatalogue catalogue = catalogues.get(index);
+            for (int ordinal = 0; ordinal < catalogue.getMealsCount(); ordinal++) {
+                String mealName = catalogue.getMealName(ordinal);
+                Integer otherIndex = mealsFiles.putIfAbsent(mealName, index);
+                if (otherIndex != null) {
+                    throw new FileFormatException("Error in " + files.get(index) + ": the meal '" + mealName
+                            + "' is already defined in " + files.get(otherIndex));
+                }
+            }
+            // the units of an ingredient within a file are compatible, so one unit per file is enough
+            for (int id = 0; id < catalogue.getIngredientsCount(); id++) {
+                String ingredientName = catalogue.getIngredientName(id);
+                Integer otherIndex = ingredientsFiles.putIfAbsent(ingredientName, index);
+                if (otherIndex == null)
+                    continue;
+                MealCatalogue otherCatalogue = catalogues.get(otherIndex);
+                int otherId = otherCatalogue.getIngredientId(ingredientName);
+                String unit = catalogue.getIngredientUnit(id);
+                String otherUnit = otherCatalogue.getIngredientUnit(otherId);
+                if (! unitRegistry.areCompatible(unit, otherUnit)) {
+                    throw new FileFormatException("Error in " + files.get(index) + ": the ingredient '"
+                            + ingredientName + "' of the meal '" + getFirstMealWith(catalogue, id) + "' is in " + unit
+                            + ", which is incompatible with " + otherUnit + ", its unit in the meal '"
+                            + getFirstMealWith(otherCatalogue, otherId) + "' of " + files.get(otherIndex));
+                }
+            }
+        }
+        return MealCatalogue.merge(catalogues, unitRegistry);
+    }
+
+    private static String getFirstMealWith(MealCatalogue catalogue, int id) {
+        int ordinal = catalogue.getIngredientIndex().findMealsWith(catalogue.getIngredientName(id)).nextSetBit(0);
+        return catalogue.getMealName(ordinal);
+    }
+
+    private static void deleteUnusedSnapshots(Path cacheDirectory, Set<Path> snapshots) {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(cacheDirectory, "*" + CatalogueSnapshot.EXTENSION)) {
+            for (Path entry : entries) {
+                if (! snapshots.contains(entry.getFileName()))
+                    Files.deleteIfExists(entry);
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot delete the unused snapshots of " + cacheDirectory + ": " + e);
+        }
+    }
+
+    private static boolean hasGlob(String mealsSource) {
+        return mealsSource.chars().anyMatch(c -> GLOB_CHARACTERS.indexOf(c) >= 0);
+    }
+
+    /**
+     * Returns true if a path relative to the base directory is matched, the
+     * snapshots excluded.
+     */
+    private static boolean isMatched(Path relativePath, PathMatcher matcher) {
+        return ! relativePath.startsWith(CACHE_DIRECTORY) && matcher.matches(relativePath);
+    }
+
+    private static boolean isYamlFile(Path path) {
+        String fileName = path.getFileName().toString();
+        return fileName.endsWith(".yaml") || fileName.endsWith(".yml");
+    }
+
+
+
+
+    /**
+     * The catalogue of a meals file, and the snapshot it was read from or
+     * written to, null if the files are not cached.
+     */
+    private record LoadedFile(MealCatalogue catalogue, Path snapshot) {
+    }
+}
@@ -0,0 +1,228 @@
+package com.foodshoppinglist;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A parallel validator of the content of meals files.
+ * <p/>
+ * The meals are split into ranges that are checked independently on a
+ * fork/join pool. Each range also collects, for each ingredient, the units it
+ * uses with one example meal per unit; these are merged range by range, and
+ * then checked so that the units of each ingredient across the whole file
+ * can be converted into one another (see {@link UnitRegistry}).
+ * <p/>
+ * The reported errors don't depend on the number of threads: the first error
+ * is the error of the first faulty meal (in the order of the content), and
+ * the incompatible-units errors come in the lexicographic order of the
+ * ingredients, after all the other errors.
+ */
+public class MealsFileValidator {
+
+    /** The number of meals below which a range is checked without being split. */
+    private static final int MEALS_PER_TASK = 512;
+
+
+
+
+    /**
+     * Throws an exception if the content is not correctly formatted.
+     *
+     * @param fileName the name of the file
+     * @param content the content of the file
+     * @param reportAllErrors if true, the message of the exception lists all
+     *                        the errors, one per line, instead of only the
+     *                        first one
+     * @param pool the pool that runs the checks
+     * @throws FileFormatException if the content is not correctly formatted
+     */
+    public static void check(String fileName, Object content, boolean reportAllErrors, ForkJoinPool pool)
+            throws FileFormatException {
+        String errorPrefix = "Error in " + fileName + ": ";
+
+        if (! (content instanceof Map<?, ?> meals))
+            throw new FileFormatException(errorPrefix + "the root element is not a dictionary");
+        Map.Entry<?, ?>[] mealEntries = meals.entrySet().toArray(Map.Entry<?, ?>[]::new);
+        Result result = pool.invoke(new CheckTask(
+                mealEntries, 0, mealEntries.length, reportAllErrors, new AtomicInteger(Integer.MAX_VALUE)
+        ));
+        List<String> errors = result.errors;
+        if (! errors.isEmpty() && ! reportAllErrors)
+            throw new FileFormatException(errorPrefix + errors.getFirst());
+
+        // check that the units of each ingredient are compatible across the whole file
+        UnitRegistry unitRegistry = UnitRegistry.getDefault();
+        for (Map.Entry<String, Map<String, Integer>> ingredientEntry : new TreeMap<>(result.ingredientsUnits).entrySet()) {
+            Map<String, Integer> ingredientUnits = ingredientEntry.getValue();
+            String firstUnit = ingredientUnits.keySet().iterator().next();
+            if (! ingredientUnits.keySet().stream().allMatch(unit -> unitRegistry.areCompatible(firstUnit, unit))) {
+                errors.add("ingredient '" + ingredientEntry.getKey() + "' uses incompatible units: " + String.join(
+                        ", ",
+                        ingredientUnits.entrySet()
+                                .stream()
+                                .sorted(Map.Entry.comparingByValue())
+                                .map(unitEntry -> "'" + unitEntry.getKey() + "' in [" + mealEntries[unitEntry.getValue()].getKey() + "]")
+                                .toList()
+                ));
+                if (! reportAllErrors)
+                    break;
+            }
+        }
+        if (! errors.isEmpty())
+            throw new FileFormatException(errorPrefix + String.join("\n" + errorPrefix, errors));
+    }
+
+    /**
+     * Checks one meal.
+     *
+     * @param mealEntry the meal
+     * @param mealIndex the position of the meal in the content
+     * @param result where to add the errors and the units of the ingredients
+     * @param reportAllErrors if false, stops at the first error
+     */
+    private static void checkMeal(Map.Entry<?, ?> mealEntry, int mealIndex, Result result, boolean reportAllErrors) {
+        if (! (mealEntry.getKey() instanceof String mealName)) {
+            result.errors.add("the key '" + mealEntry.getKey() + "' is not a string");
+            return;
+        }
+        if (! (mealEntry.getValue() instanceof Map<?, ?> ingredients)) {
+            result.errors.add("the value of the key '" + mealName + "' is not a dictionary");
+            return;
+        }
+        for (Map.Entry<?, ?> ingredientEntry : ingredients.entrySet()) {
+            String error = checkIngredient(mealName, ingredientEntry);
+            if (error != null) {
+                result.errors.add(error);
+                if (! reportAllErrors)
+                    return;
+                continue;
+            }
+            // this is used to check that the units of each ingredient are compatible across the whole file
+            String ingredientName = (String) ingredientEntry.getKey();
+            String ingredientUnit = (String) ((Map<?, ?>) ingredientEntry.getValue()).get("unit");
+            result.ingredientsUnits.computeIfAbsent(ingredientName, name -> new HashMap<>())
+                    .merge(ingredientUnit, mealIndex, Math::min);
+        }
+    }
+
+    /**
+     * Checks one ingredient of a meal.
+     *
+     * @param mealName the name of the meal
+     * @param ingredientEntry the ingredient
+     * @return the error, or null if the ingredient is correctly formatted
+     */
+    private static String checkIngredient(String mealName, Map.Entry<?, ?> ingredientEntry) {
+        if (! (ingredientEntry.getKey() instanceof String ingredientName))
+            return "ingredient '" + ingredientEntry.getKey() + "' in meal '" + mealName + "' is not a string";
+        if (! (ingredientEntry.getValue() instanceof Map<?, ?> ingredientAmount))
+            return "value of ingredient '" + ingredientName + "' in meal '" + mealName + "' is not a dictionary";
+        if (! ingredientAmount.containsKey("quantity"))
+            return "ingredient '" + ingredientName + "' in meal '" + mealName + "' misses the key 'quantity'";
+        Object quantity = ingredientAmount.get("quantity");
+        // the YAML loader builds the integers too large for a long as BigIntegers
+        if (! (quantity instanceof Integer || quantity instanceof Long || quantity instanceof BigInteger
+                || quantity instanceof BigDecimal || quantity instanceof Double))
+            return "key 'quantity' of ingredient '" + ingredientName + "' in meal '" + mealName + "' is not a number";
+        if (quantity instanceof BigInteger || ! FixedPoint.isInRange((Number) quantity))
+            return "key 'quantity' of ingredient '" + ingredientName + "' in meal '" + mealName + "' is out of range";
+        if (! ingredientAmount.containsKey("unit"))
+            return "ingredient '" + ingredientName + "' in meal '" + mealName + "' misses the key 'unit'";
+        if (! (ingredientAmount.get("unit") instanceof String))
+            return "key 'unit' of ingredient '" + ingredientName + "' in meal '" + mealName + "' is not a string";
+        if (ingredientAmount.size() != 2)
+            return "ingredient '" + ingredientName + "' in meal '" + mealName + "' has one or several keys that are not 'quantity' or 'unit'";
+        return null;
+    }
+
+
+
+
+    /**
+     * The errors found in a range of meals, in the order of the meals, and
+     * the units used by the ingredients of the range, each unit being
+     * associated with the first meal of the range that uses it.
+     */
+    private static class Result {
+
+        List<String> errors = new ArrayList<>();
+        final Map<String, Map<String, Integer>> ingredientsUnits = new HashMap<>();
+
+        /**
+         * Merges the result of the following range into this one.
+         *
+         * @param next the result of the following range
+         * @param reportAllErrors if false, only the first error is kept
+         * @return the merged result
+         */
+        Result merge(Result next, boolean reportAllErrors) {
+            if (reportAllErrors || errors.isEmpty())
+                errors.addAll(next.errors);
+            Result larger = ingredientsUnits.size() >= next.ingredientsUnits.size() ? this : next;
+            Result smaller = larger == this ? next : this;
+            for (Map.Entry<String, Map<String, Integer>> ingredientEntry : smaller.ingredientsUnits.entrySet()) {
+                Map<String, Integer> units = larger.ingredientsUnits.putIfAbsent(ingredientEntry.getKey(), ingredientEntry.getValue());
+                if (units != null)
+                    ingredientEntry.getValue().forEach((unit, mealIndex) -> units.merge(unit, mealIndex, Math::min));
+            }
+            larger.errors = errors;
+            return larger;
+        }
+    }
+
+    /**
+     * Checks a range of meals, splitting it if it is large.
+     */
+    private static class CheckTask extends RecursiveTask<Result> {
+
+        private final Map.Entry<?, ?>[] mealEntries;
+        private final int start;
+        private final int end;
+        private final boolean reportAllErrors;
+        /**
+         * The position of the first faulty meal found so far, used to skip
+         * the meals that follow it when only the first error is reported.
+         */
+        private final AtomicInteger firstFaultyMeal;
+
+        CheckTask(Map.Entry<?, ?>[] mealEntries, int start, int end, boolean reportAllErrors, AtomicInteger firstFaultyMeal) {
+            this.mealEntries = mealEntries;
+            this.start = start;
+            this.end = end;
+            this.reportAllErrors = reportAllErrors;
+            this.firstFaultyMeal = firstFaultyMeal;
+        }
+
+        @Override
+        protected Result compute() {
+            if (end - start > MEALS_PER_TASK) {
+                int middle = (start + end) >>> 1;
+                CheckTask second = new CheckTask(mealEntries, middle, end, reportAllErrors, firstFaultyMeal);
+                second.fork();
+                Result first = new CheckTask(mealEntries, start, middle, reportAllErrors, firstFaultyMeal).compute();
+                return first.merge(second.join(), reportAllErrors);
+            }
+
+            Result result = new Result();
+            for (int i = start; i < end; i++) {
+                if (! reportAllErrors && i > firstFaultyMeal.get())
+                    break;
+                int errorsCount = result.errors.size();
+                checkMeal(mealEntries[i], i, result, reportAllErrors);
+                if (result.errors.size() > errorsCount && ! reportAllErrors) {
+                    firstFaultyMeal.accumulateAndGet(i, Math::min);
+                    break;
+                }
+            }
+            return result;
+        }
+    }
+}
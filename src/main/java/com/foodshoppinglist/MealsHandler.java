@@ -1,29 +1,55 @@
 package com.foodshoppinglist;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class MealsHandler {
 
-    private final Map<String, Map<String, IngredientAmount>> meals;
+    /** The file that contains the meals, or the directory or glob pattern of the meals files. */
+    private final String mealsFile;
+    /**
+     * The meals, stored compactly. A catalogue is immutable: reloading the
+     * meals file publishes a new catalogue, so readers never see a partially
+     * built one.
+     */
+    private final AtomicReference<MealCatalogue> catalogue;
     private List<String> selectedMealsNames;
+    /** The aggregator of the meals, whose buffers are kept between calls. */
+    private final ShoppingListAggregator aggregator = new ShoppingListAggregator();
+    /** The shopping lists of the recent selections of meals ordinals. */
+    private final ShoppingListCache shoppingListCache;
 
 
 
 
     /**
      * Builds a <code>MealsHandler</code>
+     * <p/>
+     * If the file has an up-to-date snapshot (see {@link CatalogueSnapshot}),
+     * the meals are read from the snapshot, without parsing and checking the
+     * file again.
+     * <p/>
+     * The meals can also be split into several files, given as a directory or
+     * a glob pattern, that are loaded and merged by {@link MealsFileSet}.
      *
      * @param mealsFile the file that contains the meals with the description of
-     *                  the list of their ingredients
-     * @throws FileFormatException if the file is not correctly formatted
+     *                  the list of their ingredients, or the directory or glob
+     *                  pattern of several such files
+     * @throws FileFormatException if a file is not correctly formatted, or if
+     * several files define the same meal
      */
     public MealsHandler(String mealsFile) throws FileFormatException {
-        Object content = Utils.readYamlFile(mealsFile, false);
-        checkFileFormat(mealsFile, content);
-        this.meals = convertToStructuredObject(content);
+        this.mealsFile = mealsFile;
+        this.catalogue = new AtomicReference<>(load(mealsFile));
+        this.shoppingListCache = new ShoppingListCache(getCatalogue(), ShoppingListCache.DEFAULT_MAXIMUM_WEIGHT);
     }
 
 
@@ -31,88 +57,36 @@ public class MealsHandler {
 
     /**
      * Throws an exception if the content is not correctly formatted.
+     * <p/>
+     * The message of the exception is about the first error only. The
+     * meals are checked in parallel on the common fork/join pool (see
+     * {@link MealsFileValidator}).
      *
      * @param fileName the name of the file
      * @param content the content of the file
      * @throws FileFormatException if the content is not correctly formatted
      */
     public static void checkFileFormat(String fileName, Object content) throws FileFormatException {
-        String errorPrefix = "Error in " + fileName + ": ";
-
-        // Associates each ingredient with a map that associates units used for
-        // this ingredient with one meal (among potentially many) that the unit
-        // is used in.
-        // This is used to check that each ingredient uses exactly one unit
-        // across the whole file.
-        Map<String, Map<String, List<String>>> ingredientsUnits = new HashMap<>();
-
-        if (! (content instanceof Map<?, ?>))
-            throw new FileFormatException(errorPrefix + "the root element is not a dictionary");
-        Map<Object, Object> meals = (Map<Object, Object>) content;
-        for (Map.Entry<Object, Object> mealEntry : meals.entrySet()) {
-
-            if (! (mealEntry.getKey() instanceof String mealName))
-                throw new FileFormatException(errorPrefix + "the key '" + mealEntry.getKey() + "' is not a string");
-            if (! (mealEntry.getValue() instanceof Map<?, ?>))
-                throw new FileFormatException(errorPrefix + "the value of the key '" + mealName + "' is not a dictionary");
-            Map<Object, Object> ingredients = (Map<Object, Object>) mealEntry.getValue();
-            for (Map.Entry<Object, Object> ingredientEntry : ingredients.entrySet()) {
-
-                if (! (ingredientEntry.getKey() instanceof String ingredientName))
-                    throw new FileFormatException(
-                            errorPrefix + "ingredient '" + ingredientEntry.getKey() + "' in meal '" + mealName + "' is not a string"
-                    );
-                if (! (ingredientEntry.getValue() instanceof Map<?, ?>))
-                    throw new FileFormatException(
-                            errorPrefix + "value of ingredient '" + ingredientName + "' in meal '" + mealName + "' is not a dictionary"
-                    );
-                Map<Object, Object> ingredientAmount = (Map<Object, Object>) ingredientEntry.getValue();
-                if (! ingredientAmount.containsKey("quantity"))
-                    throw new FileFormatException(
-                            errorPrefix + "ingredient '" + ingredientName + "' in meal '" + mealName + "' misses the key 'quantity'"
-                    );
-                if (! (ingredientAmount.get("quantity") instanceof Integer) && ! (ingredientAmount.get("quantity") instanceof Double))
-                    throw new FileFormatException(
-                            errorPrefix + "key 'quantity' of ingredient '" + ingredientName + "' in meal '" + mealName + "' is not a number")
-                            ;
-                if (! ingredientAmount.containsKey("unit"))
-                    throw new FileFormatException(
-                            errorPrefix + "ingredient '" + ingredientName + "' in meal '" + mealName + "' misses the key 'unit'"
-                    );
-                if (! (ingredientAmount.get("unit") instanceof String ingredientUnit))
-                    throw new FileFormatException(
-                            errorPrefix + "key 'unit' of ingredient '" + ingredientName + "' in meal '" + mealName + "' is not a string"
-                    );
-                if (ingredientAmount.size() != 2)
-                    throw new FileFormatException(
-                            errorPrefix + "ingredient '" + ingredientName + "' in meal '" + mealName + "' has one or several keys that are not 'quantity' or 'unit'"
-                    );
-
-                // this is used to check that each ingredient uses exactly one unit across the whole file
-                if (! ingredientsUnits.containsKey(ingredientName))
-                    ingredientsUnits.put(ingredientName, new HashMap<String, List<String>>());
-                if (! ingredientsUnits.get(ingredientName).containsKey(ingredientUnit))
-                    ingredientsUnits.get(ingredientName).put(ingredientUnit, new ArrayList<String>());
-                ingredientsUnits.get(ingredientName).get(ingredientUnit).add(mealName);
-
-            }
-        }
+        checkFileFormat(fileName, content, false);
+    }
 
-        // check that each ingredient uses exactly one unit across the whole file
-        for (Map.Entry<String, Map<String, List<String>>> ingredientsUnitEntry : ingredientsUnits.entrySet()) {
-            String ingredientName = ingredientsUnitEntry.getKey();
-            Map<String, List<String>> ingredientUnits = ingredientsUnitEntry.getValue();
-            if (ingredientUnits.size() > 1) {
-                String exceptionMessage = "ingredient '" + ingredientName + "' uses several units: ";
-                exceptionMessage += String.join(
-                        ", ",
-                        ingredientUnits.entrySet()
-                                .stream()
-                                .map(unitEntry -> "'" + unitEntry.getKey() + "' in " + unitEntry.getValue())
-                                .toList()
-                );
-                throw new FileFormatException(errorPrefix + exceptionMessage);
-            }
+    /**
+     * Throws an exception if the content is not correctly formatted.
+     * <p/>
+     * The meals are checked in parallel on the common fork/join pool (see
+     * {@link MealsFileValidator}).
+     *
+     * @param fileName the name of the file
+     * @param content the content of the file
+     * @param reportAllErrors if true, the message of the exception lists all
+     *                        the errors, one per line, instead of only the
+     *                        first one
+     * @throws FileFormatException if the content is not correctly formatted
+     */
+    public static void checkFileFormat(String fileName, Object content, boolean reportAllErrors)
+            throws FileFormatException {
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.VALIDATE)) {
+            MealsFileValidator.check(fileName, content, reportAllErrors, ForkJoinPool.commonPool());
         }
     }
 
@@ -129,7 +103,13 @@ public class MealsHandler {
      * @return a map associating each meal name to a map associating each
      * ingredient to its amount
      */
-    private static Map<String, Map<String, IngredientAmount>> convertToStructuredObject(Object content) {
+    static Map<String, Map<String, IngredientAmount>> convertToStructuredObject(Object content) {
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.CONVERT)) {
+            return convert(content);
+        }
+    }
+
+    private static Map<String, Map<String, IngredientAmount>> convert(Object content) {
         Map<String, Map<String, IngredientAmount>> meals = new HashMap<>();
         Map<String, Map<String, Map<String, Object>>> contentWithAType = (Map<String, Map<String, Map<String, Object>>>) content;
 
@@ -142,7 +122,7 @@ public class MealsHandler {
             for (Map.Entry<String, Map<String, Object>> ingredientEntry : mealIngredients.entrySet()) {
                 String ingredientName = ingredientEntry.getKey();
                 Map<String, Object> ingredientQuantity = ingredientEntry.getValue();
-                float quantity = ((Number) ingredientQuantity.get("quantity")).floatValue();
+                long quantity = FixedPoint.of((Number) ingredientQuantity.get("quantity"));
                 String unit = (String) ingredientQuantity.get("unit");
                 // fill the result
                 meals.get(mealName).put(ingredientName, new IngredientAmount(quantity, unit));
@@ -152,14 +132,131 @@ public class MealsHandler {
     }
 
     /**
-     * Returns the list of the names of the available meals, in lexicographic
-     * order.
+     * Returns the list of the names of the available meals, in alphabetical
+     * order (see {@link MealCatalogue}).
+     * <p/>
+     * The list is a read-only view that is built once per catalogue, so this
+     * method costs nothing, and the list resolves a meal number in constant
+     * time.
      *
-     * @return the list of the names of the available meals, in lexicographic
-     * order.
+     * @return the list of the names of the available meals, in alphabetical
+     * order
      */
     public List<String> getAvailableMealsNames() {
-        return meals.keySet().stream().sorted().toList();
+        return getCatalogue().getMealsNames();
+    }
+
+    /**
+     * Returns the names of the meals that best match a query, the words of
+     * the query being looked for in the names of the meals and of their
+     * ingredients, regardless of case and accents and with some tolerance
+     * for typos.
+     *
+     * @param query the query
+     * @param limit the maximum number of meals to return
+     * @return the names of the matching meals, the best match first
+     * @see MealSearchIndex
+     */
+    public List<String> searchMeals(String query, int limit) {
+        MealCatalogue catalogue = getCatalogue();
+        int[] ordinals = catalogue.getSearchIndex().search(query, limit);
+        List<String> mealsNames = new ArrayList<>(ordinals.length);
+        for (int ordinal : ordinals)
+            mealsNames.add(catalogue.getMealName(ordinal));
+        return Collections.unmodifiableList(mealsNames);
+    }
+
+    /**
+     * Returns the names of the meals that use all the ingredients of a set,
+     * at least one ingredient of another set, and none of the ingredients of
+     * a third set.
+     *
+     * @param allOf the ingredients that the meals must all use; an empty set
+     *              doesn't restrict the meals
+     * @param anyOf the ingredients of which the meals must use at least one;
+     *              an empty set doesn't restrict the meals
+     * @param noneOf the ingredients that the meals must not use
+     * @return the names of the matching meals, in alphabetical order
+     * @see IngredientIndex
+     */
+    public List<String> findMealsByIngredients(Collection<String> allOf, Collection<String> anyOf, Collection<String> noneOf) {
+        MealCatalogue catalogue = getCatalogue();
+        return getMealsNames(catalogue, catalogue.getIngredientIndex().findMeals(allOf, anyOf, noneOf));
+    }
+
+    /**
+     * Returns the names of the meals that can be cooked from a pantry: all
+     * their ingredients are in the pantry, in sufficient quantities for one
+     * serving.
+     *
+     * @param pantry a map associating each ingredient at hand to its amount
+     * @return the names of the meals that can be cooked, in alphabetical
+     * order
+     * @throws IllegalArgumentException if an amount of the pantry cannot be
+     * converted to the unit of its ingredient
+     */
+    public List<String> findCookableMeals(Map<String, IngredientAmount> pantry) {
+        MealCatalogue catalogue = getCatalogue();
+        return getMealsNames(catalogue, catalogue.getIngredientIndex().findCookableMeals(pantry));
+    }
+
+    /**
+     * Returns the catalogue of the meals.
+     * <p/>
+     * The catalogue is replaced when the meals file is reloaded, so a caller
+     * that needs several consistent reads (for instance to resolve meal
+     * numbers and then aggregate them) should call this method once and keep
+     * the returned catalogue.
+     *
+     * @return the current catalogue of the meals
+     */
+    public MealCatalogue getCatalogue() {
+        return catalogue.get();
+    }
+
+    /**
+     * Returns the file that contains the meals.
+     *
+     * @return the file that contains the meals
+     */
+    public String getMealsFile() {
+        return mealsFile;
+    }
+
+    /**
+     * Loads the meals file again, and replaces the catalogue with the new
+     * one if the file is correctly formatted.
+     * <p/>
+     * If the meals are split into several files, the files are searched
+     * again, and only the ones whose content has changed are parsed again.
+     * <p/>
+     * If the file is not correctly formatted or cannot be read, the current
+     * catalogue stays in service. This method can be called from any thread:
+     * the reloads run one at a time, so that an older version of the files
+     * never replaces a newer one, and readers keep using the previous
+     * catalogue until the new one is published.
+     *
+     * @return the new catalogue
+     * @throws FileFormatException if the file is not correctly formatted
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized MealCatalogue reload() throws FileFormatException, IOException {
+        MealCatalogue newCatalogue = MealsFileSet.isFileSet(mealsFile)
+                ? MealsFileSet.of(mealsFile).load()
+                : MealCatalogue.of(MealsFileLoader.tryLoad(mealsFile));
+        catalogue.set(newCatalogue);
+        shoppingListCache.invalidateAll(newCatalogue);
+        return newCatalogue;
+    }
+
+    /**
+     * Returns the cache of the shopping lists of the selections of meals
+     * ordinals. It is emptied when the meals file is reloaded.
+     *
+     * @return the cache of the shopping lists
+     */
+    public ShoppingListCache getShoppingListCache() {
+        return shoppingListCache;
     }
 
     /**
@@ -171,4 +268,154 @@ public class MealsHandler {
     public void setSelectedMealsNames(List<String> selectedMealsNames) {
         this.selectedMealsNames = selectedMealsNames;
     }
+
+    /**
+     * Opens a session on the current catalogue, to edit the selected meals
+     * one at a time (see {@link SelectionSession}). The session starts with
+     * one serving of each selected meal per occurrence of its name.
+     *
+     * @return a new session
+     * @throws IllegalArgumentException if a selected name is not the name of
+     * an available meal
+     * @throws ArithmeticException if a total doesn't fit in a <code>long</code>
+     */
+    public SelectionSession openSession() {
+        SelectionSession session = new SelectionSession(getCatalogue());
+        if (selectedMealsNames != null) {
+            for (String mealName : selectedMealsNames)
+                session.add(mealName);
+        }
+        return session;
+    }
+
+    /**
+     * Returns the ingredients required by the selected meals, with their
+     * total amounts.
+     *
+     * @return a map associating each required ingredient to its total amount,
+     * in the lexicographic order of the ingredients names
+     * @see #computeRequiredIngredients(Collection)
+     */
+    public Map<String, IngredientAmount> getRequiredIngredients() {
+        return computeRequiredIngredients(selectedMealsNames);
+    }
+
+    /**
+     * Returns the ingredients required by the given meals, with their total
+     * amounts.
+     * <p/>
+     * The quantities of an ingredient written with several compatible units
+     * (such as "g" and "kg") are summed exactly, in a unit that divides all of
+     * them (see {@link UnitRegistry#getCommonUnit(String, String)}). A meal
+     * that appears several times is counted as many times.
+     * <p/>
+     * The aggregation reuses the buffers of a {@link ShoppingListAggregator}
+     * owned by this <code>MealsHandler</code>, so this method must not be
+     * called by several threads at the same time. It can run while the meals
+     * file is reloaded: all the meals are then taken from the same catalogue.
+     *
+     * @param mealsNames the names of the meals
+     * @return a map associating each required ingredient to its total amount,
+     * in the lexicographic order of the ingredients names
+     * @throws IllegalArgumentException if a name is not the name of an
+     * available meal
+     * @throws ArithmeticException if a total doesn't fit in a <code>long</code>
+     */
+    public Map<String, IngredientAmount> computeRequiredIngredients(Collection<String> mealsNames) {
+        return aggregator.aggregate(getCatalogue(), mealsNames);
+    }
+
+    /**
+     * Returns the ingredients required by the given meals, with their total
+     * amounts.
+     * <p/>
+     * This is the same as {@link #computeRequiredIngredients(Collection)},
+     * for meals given by their ordinals in the current catalogue (their
+     * positions in the list returned by {@link #getAvailableMealsNames()},
+     * starting at 0).
+     *
+     * @param mealsOrdinals the ordinals of the meals
+     * @return a map associating each required ingredient to its total amount,
+     * in the lexicographic order of the ingredients names
+     * @throws IndexOutOfBoundsException if an ordinal is not the ordinal of an
+     * available meal
+     * @throws ArithmeticException if a total doesn't fit in a <code>long</code>
+     */
+    public Map<String, IngredientAmount> computeRequiredIngredients(BitSet mealsOrdinals) {
+        return computeRequiredIngredients(getCatalogue(), mealsOrdinals);
+    }
+
+    /**
+     * Returns the ingredients required by the given meals of a catalogue,
+     * with their total amounts.
+     * <p/>
+     * This is the same as {@link #computeRequiredIngredients(BitSet)}, for
+     * ordinals that were resolved against a catalogue previously returned by
+     * {@link #getCatalogue()}, which may have been replaced since.
+     * <p/>
+     * The shopping lists of recent selections are kept in a cache (see
+     * {@link #getShoppingListCache()}), so the returned map is read-only.
+     *
+     * @param catalogue the catalogue the ordinals refer to
+     * @param mealsOrdinals the ordinals of the meals
+     * @return a map associating each required ingredient to its total amount,
+     * in the lexicographic order of the ingredients names
+     * @throws IndexOutOfBoundsException if an ordinal is not the ordinal of a
+     * meal of the catalogue
+     * @throws ArithmeticException if a total doesn't fit in a <code>long</code>
+     */
+    public Map<String, IngredientAmount> computeRequiredIngredients(MealCatalogue catalogue, BitSet mealsOrdinals) {
+        return shoppingListCache.get(catalogue, mealsOrdinals, selection -> aggregator.aggregate(catalogue, selection));
+    }
+
+    /**
+     * Returns the ingredients required by each of several selections of
+     * meals, with their total amounts.
+     * <p/>
+     * This is the same as calling {@link #computeRequiredIngredients(MealCatalogue, BitSet)}
+     * on each selection, but much faster for large numbers of selections:
+     * the selections are aggregated together, in parallel on the common
+     * fork/join pool, into compact shopping lists (see
+     * {@link ShoppingListBatch}). The cache of shopping lists is neither
+     * used nor filled. Unlike the other aggregation methods, this one can be
+     * called by several threads at the same time.
+     *
+     * @param catalogue the catalogue the ordinals refer to
+     * @param selections the ordinals of the meals of each selection
+     * @return the shopping lists of the selections, in the order of the
+     * selections
+     * @throws IndexOutOfBoundsException if an ordinal is not the ordinal of a
+     * meal of the catalogue
+     * @throws ArithmeticException if a total of a selection doesn't fit in a
+     * <code>long</code>
+     */
+    public ShoppingListBatch computeRequiredIngredients(MealCatalogue catalogue, List<BitSet> selections) {
+        return ShoppingListBatch.aggregate(catalogue, selections, ForkJoinPool.commonPool());
+    }
+
+    private static List<String> getMealsNames(MealCatalogue catalogue, BitSet mealsOrdinals) {
+        List<String> mealsNames = new ArrayList<>(mealsOrdinals.cardinality());
+        for (int ordinal = mealsOrdinals.nextSetBit(0); ordinal >= 0; ordinal = mealsOrdinals.nextSetBit(ordinal + 1))
+            mealsNames.add(catalogue.getMealName(ordinal));
+        return Collections.unmodifiableList(mealsNames);
+    }
+
+    /**
+     * Loads the meals, from the snapshot of the meals file if it's up to
+     * date, or from several meals files. If a file cannot be read, the
+     * program exits, as with {@link MealsFileLoader#load(String)}.
+     */
+    private static MealCatalogue load(String mealsFile) throws FileFormatException {
+        if (! MealsFileSet.isFileSet(mealsFile)) {
+            MealCatalogue snapshot = CatalogueSnapshot.readIfUpToDate(mealsFile);
+            return snapshot != null ? snapshot : MealCatalogue.of(MealsFileLoader.load(mealsFile));
+        }
+        try {
+            return MealsFileSet.of(mealsFile).load();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
 }
@@ -0,0 +1,384 @@
+package com.foodshoppinglist;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An HTTP server that exposes the meals and computes shopping lists.
+ * <p/>
+ * The endpoints are:
+ * <ul>
+ *     <li><code>GET /meals</code>: the names of the available meals, in the
+ *     order of their numbers, as <code>{"meals":["couscous","pâtes au tofu"]}</code>;</li>
+ *     <li><code>POST /shopping-list</code>: the body is a selection, written
+ *     as the user would enter it (for instance <code>1 3 5-7</code>), and the
+ *     response is the shopping list, as
+ *     <code>{"ingredients":[{"name":"riz","quantity":400,"unit":"g"}]}</code>,
+ *     or <code>{"error":"..."}</code> with the status 400 if the selection is
+ *     invalid;</li>
+ *     <li><code>POST /shopping-list?household=&lt;household&gt;</code>, when
+ *     the server has pantries: the same shopping list, reduced by the stock of
+ *     the pantry of the household (see {@link Pantry#subtractFrom(Map)});</li>
+ *     <li><code>GET /pantry?household=&lt;household&gt;</code>, when the server
+ *     has pantries: the stock of the pantry of the household, as
+ *     <code>{"ingredients":[{"name":"riz","quantity":400,"unit":"g"}]}</code>,
+ *     empty if the household has no pantry yet;</li>
+ *     <li><code>POST /pantry?household=&lt;household&gt;</code>, when the
+ *     server has pantries: the body is a form, for instance
+ *     <code>ingredient=riz&amp;quantity=-200&amp;unit=g</code>, whose amount is
+ *     added to the stock of the ingredient (negative for a use), and the
+ *     response is the new stock of the ingredient, in the same format; the
+ *     pantry is created by its first update, and the status is 500 if its
+ *     files cannot be read or written;</li>
+ *     <li><code>GET /metrics</code>, when the metrics are enabled: the
+ *     durations of the phases (see {@link Metrics}) and the statistics of the
+ *     cache of shopping lists, in the Prometheus text format.</li>
+ * </ul>
+ * Each request runs on its own virtual thread. The meals are shared
+ * read-only between the requests: each request takes the current catalogue
+ * once, so a reload of the meals file never mixes two versions of the meals
+ * in one response. The shopping lists of popular selections are served from
+ * the cache of the meals handler. The parsers and aggregators, which are not
+ * thread-safe, are taken from a lock-free pool, so that their buffers are
+ * reused across requests.
+ */
+public class MealsServer implements Closeable {
+
+    /** The port the server listens to by default. */
+    public static final int DEFAULT_PORT = 8080;
+
+    /** The maximum number of pending connections. */
+    private static final int BACKLOG = 4096;
+    /** The maximum length of a selection, in bytes. */
+    private static final int MAX_SELECTION_LENGTH = 64 * 1024;
+    /** The maximum length of an update of a pantry, in bytes. */
+    private static final int MAX_PANTRY_UPDATE_LENGTH = 4 * 1024;
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String PANTRY_FAILURE_MESSAGE = "The pantry cannot be read or written.";
+
+    private final MealsHandler mealsHandler;
+    /** The pantries of the households, or null if the server has none. */
+    private final Pantries pantries;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    /** The workspaces that are not used by a request. */
+    private final Queue<Workspace> workspaces = new ConcurrentLinkedQueue<>();
+    /** The response of <code>GET /meals</code>, for the catalogue it was rendered from. */
+    private volatile RenderedMeals renderedMeals;
+
+
+
+
+    /**
+     * Builds a <code>MealsServer</code> and starts it.
+     *
+     * @param mealsHandler the handler of the meals
+     * @param address the address to listen to (port 0 picks a free port)
+     * @throws IOException if the server cannot listen to the address
+     */
+    public MealsServer(MealsHandler mealsHandler, InetSocketAddress address) throws IOException {
+        this(mealsHandler, null, address);
+    }
+
+    /**
+     * Builds a <code>MealsServer</code> that keeps the pantries of households,
+     * and starts it.
+     *
+     * @param mealsHandler the handler of the meals
+     * @param pantries the pantries of the households, or null to disable the
+     *                 pantry endpoints
+     * @param address the address to listen to (port 0 picks a free port)
+     * @throws IOException if the server cannot listen to the address
+     */
+    public MealsServer(MealsHandler mealsHandler, Pantries pantries, InetSocketAddress address) throws IOException {
+        this.mealsHandler = mealsHandler;
+        this.pantries = pantries;
+        this.server = HttpServer.create(address, BACKLOG);
+        server.setExecutor(executor);
+        server.createContext("/meals", this::handleMeals);
+        server.createContext("/shopping-list", this::handleShoppingList);
+        if (pantries != null)
+            server.createContext("/pantry", this::handlePantry);
+        if (Metrics.isEnabled())
+            server.createContext("/metrics", this::handleMetrics);
+        server.start();
+    }
+
+
+
+
+    /**
+     * Returns the address the server listens to.
+     *
+     * @return the address the server listens to
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Stops the server, once the requests being processed are done.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    private void handleMeals(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (! checkRequest(exchange, "/meals", "GET"))
+                return;
+            MealCatalogue catalogue = mealsHandler.getCatalogue();
+            RenderedMeals rendered = renderedMeals;
+            if (rendered == null || rendered.catalogue() != catalogue) {
+                // several requests may render the same catalogue at once, which is harmless
+                rendered = new RenderedMeals(catalogue, renderMeals(catalogue));
+                renderedMeals = rendered;
+            }
+            sendJson(exchange, 200, rendered.json());
+        }
+    }
+
+    private void handleShoppingList(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (! checkRequest(exchange, "/shopping-list", "POST"))
+                return;
+            String household = getQueryParameters(exchange).get("household");
+            if (household != null && (pantries == null || ! Pantries.isValidHousehold(household))) {
+                sendError(exchange, 400, pantries == null ? "The server has no pantries." : "Invalid household.");
+                return;
+            }
+            String selection;
+            try (InputStream body = exchange.getRequestBody()) {
+                byte[] bytes = body.readNBytes(MAX_SELECTION_LENGTH + 1);
+                if (bytes.length > MAX_SELECTION_LENGTH) {
+                    sendError(exchange, 413, "The selection is too long.");
+                    return;
+                }
+                selection = new String(bytes, StandardCharsets.UTF_8).strip();
+            }
+
+            MealCatalogue catalogue = mealsHandler.getCatalogue();
+            Workspace pooledWorkspace = workspaces.poll();
+            Workspace workspace = pooledWorkspace != null
+                    ? pooledWorkspace
+                    : new Workspace(new SelectionParser(), new ShoppingListAggregator());
+            Map<String, IngredientAmount> requiredIngredients;
+            try {
+                BitSet mealsOrdinals = workspace.selectionParser().parse(selection, catalogue.getMealsCount());
+                requiredIngredients = mealsHandler.getShoppingListCache().get(
+                        catalogue, mealsOrdinals, selected -> workspace.aggregator().aggregate(catalogue, selected)
+                );
+                if (household != null) {
+                    // a household that has no pantry yet has nothing in stock
+                    try (Pantries.Lease lease = pantries.lease(household, false)) {
+                        if (lease.pantry() != null)
+                            requiredIngredients = lease.pantry().subtractFrom(requiredIngredients);
+                    }
+                }
+            } catch (InvalidUserInputException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            } catch (ArithmeticException e) {
+                // a total of the selection doesn't fit in a long, or a stock
+                // doesn't once it is converted to the unit of the list
+                sendError(exchange, 400, ShoppingListAggregator.OVERFLOW_MESSAGE);
+                return;
+            } catch (IOException e) {
+                sendError(exchange, 500, PANTRY_FAILURE_MESSAGE);
+                return;
+            } finally {
+                workspaces.offer(workspace);
+            }
+
+            StringBuilder json = new StringBuilder("{\"ingredients\":");
+            Json.writeIngredients(json, requiredIngredients);
+            sendJson(exchange, 200, json.append('}').toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void handlePantry(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (! checkRequest(exchange, "/pantry", "GET", "POST"))
+                return;
+            String household = getQueryParameters(exchange).get("household");
+            if (! Pantries.isValidHousehold(household)) {
+                sendError(exchange, 400, "Invalid household.");
+                return;
+            }
+
+            Map<String, IngredientAmount> stocks;
+            if (exchange.getRequestMethod().equals("GET")) {
+                // a household that has no pantry yet has nothing in stock
+                try (Pantries.Lease lease = pantries.lease(household, false)) {
+                    stocks = lease.pantry() != null ? lease.pantry().getStocks() : Map.of();
+                } catch (IOException e) {
+                    sendError(exchange, 500, PANTRY_FAILURE_MESSAGE);
+                    return;
+                }
+            } else {
+                Map<String, String> form;
+                try (InputStream body = exchange.getRequestBody()) {
+                    byte[] bytes = body.readNBytes(MAX_PANTRY_UPDATE_LENGTH + 1);
+                    if (bytes.length > MAX_PANTRY_UPDATE_LENGTH) {
+                        sendError(exchange, 413, "The update is too long.");
+                        return;
+                    }
+                    form = parseForm(new String(bytes, StandardCharsets.UTF_8).strip());
+                }
+                String ingredientName = form.get("ingredient");
+                String quantity = form.get("quantity");
+                String unit = form.get("unit");
+                if (ingredientName == null || ingredientName.isBlank() || quantity == null || unit == null || unit.isBlank()) {
+                    sendError(exchange, 400, "The update must have an ingredient, a quantity and a unit.");
+                    return;
+                }
+                try (Pantries.Lease lease = pantries.lease(household, true)) {
+                    IngredientAmount amount = new IngredientAmount(FixedPoint.parse(quantity), unit);
+                    stocks = Map.of(ingredientName, lease.pantry().add(ingredientName, amount));
+                } catch (IllegalArgumentException e) {
+                    // NumberFormatException included
+                    sendError(exchange, 400, e.getMessage());
+                    return;
+                } catch (ArithmeticException e) {
+                    // a stock that would not fit in a long once converted or summed
+                    sendError(exchange, 400, ShoppingListAggregator.OVERFLOW_MESSAGE);
+                    return;
+                } catch (IOException e) {
+                    sendError(exchange, 500, PANTRY_FAILURE_MESSAGE);
+                    return;
+                }
+            }
+
+            StringBuilder json = new StringBuilder("{\"ingredients\":");
+            Json.writeIngredients(json, stocks);
+            sendJson(exchange, 200, json.append('}').toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (! checkRequest(exchange, "/metrics", "GET"))
+                return;
+            StringBuilder metrics = new StringBuilder();
+            Metrics.writePrometheus(metrics);
+            ShoppingListCache.Statistics statistics = mealsHandler.getShoppingListCache().getStatistics();
+            metrics.append("# TYPE foodshoppinglist_shopping_list_cache_hits_total counter\n")
+                    .append("foodshoppinglist_shopping_list_cache_hits_total ").append(statistics.hits()).append('\n')
+                    .append("# TYPE foodshoppinglist_shopping_list_cache_misses_total counter\n")
+                    .append("foodshoppinglist_shopping_list_cache_misses_total ").append(statistics.misses()).append('\n')
+                    .append("# TYPE foodshoppinglist_shopping_list_cache_evictions_total counter\n")
+                    .append("foodshoppinglist_shopping_list_cache_evictions_total ").append(statistics.evictions()).append('\n')
+                    .append("# TYPE foodshoppinglist_shopping_list_cache_entries gauge\n")
+                    .append("foodshoppinglist_shopping_list_cache_entries ").append(statistics.entriesCount()).append('\n');
+            byte[] body = metrics.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", PROMETHEUS_CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        }
+    }
+
+    /**
+     * Checks the path and the method of a request, and answers it if they
+     * are not the expected ones.
+     *
+     * @return true if the request can be processed
+     */
+    private static boolean checkRequest(HttpExchange exchange, String path, String... methods) throws IOException {
+        if (! exchange.getRequestURI().getPath().equals(path)) {
+            sendError(exchange, 404, "No such resource.");
+            return false;
+        }
+        if (! List.of(methods).contains(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Allow", String.join(", ", methods));
+            sendError(exchange, 405, "The method must be " + String.join(" or ", methods) + ".");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the parameters of the query of a request. A parameter that
+     * appears several times keeps its last value.
+     */
+    private static Map<String, String> getQueryParameters(HttpExchange exchange) {
+        String query = exchange.getRequestURI().getRawQuery();
+        return query == null ? Map.of() : parseForm(query);
+    }
+
+    /**
+     * Parses URL-encoded parameters, as <code>name=value&amp;other=value</code>.
+     */
+    private static Map<String, String> parseForm(String form) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String parameter : form.split("&")) {
+            if (parameter.isEmpty())
+                continue;
+            int equals = parameter.indexOf('=');
+            String name = equals < 0 ? parameter : parameter.substring(0, equals);
+            String value = equals < 0 ? "" : parameter.substring(equals + 1);
+            try {
+                parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                // a malformed escape sequence: the parameter is ignored
+            }
+        }
+        return parameters;
+    }
+
+    private static byte[] renderMeals(MealCatalogue catalogue) throws IOException {
+        StringBuilder json = new StringBuilder("{\"meals\":[");
+        for (int ordinal = 0; ordinal < catalogue.getMealsCount(); ordinal++) {
+            if (ordinal > 0)
+                json.append(',');
+            Json.writeString(json, catalogue.getMealName(ordinal));
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        Json.writeString(json, message);
+        sendJson(exchange, status, json.append('}').toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, byte[] json) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, json.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(json);
+        }
+    }
+
+    /**
+     * The objects a request needs to compute a shopping list.
+     */
+    private record Workspace(SelectionParser selectionParser, ShoppingListAggregator aggregator) {
+    }
+
+    /**
+     * The rendered list of the meals of a catalogue.
+     */
+    private record RenderedMeals(MealCatalogue catalogue, byte[] json) {
+    }
+}
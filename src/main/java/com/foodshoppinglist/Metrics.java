@@ -0,0 +1,316 @@
+package com.foodshoppinglist;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The time spent in each phase of the program: reading and checking the
+ * meals file, building the catalogue, parsing the selections, aggregating
+ * the shopping lists...
+ * <p/>
+ * Each phase has a counter and a latency histogram. The histogram has 32
+ * buckets per power of two (like an HdrHistogram with a precision of about
+ * 3 %), so that recording a duration is a few increments, without locks or
+ * allocation, and the percentiles are read from the buckets. Each phase
+ * also commits a JFR event ({@link PhaseEvent}), which a flight recording
+ * shows next to the garbage collections and the CPU samples.
+ * <p/>
+ * The metrics are disabled by default: a phase then costs one volatile read
+ * and a call to a shared timer that does nothing. They are enabled by
+ * {@link #setEnabled(boolean)}, which the <code>--metrics</code> option calls, or by
+ * the system property <code>foodshoppinglist.metrics=true</code>, to get the
+ * JFR events of a run that was not started with the option.
+ */
+public class Metrics {
+
+    /**
+     * The phases of the program.
+     */
+    public enum Phase {
+        /** The parsing of a whole YAML file (text assets, units, or the meals file when it is checked in full). */
+        READ_YAML,
+        /** The streaming load of the meals file: parsing, checking and converting. */
+        LOAD_MEALS_FILE,
+        /** The check of the content of a meals file. */
+        VALIDATE,
+        /** The conversion of the content of a meals file to meals. */
+        CONVERT,
+        /** The building of a catalogue from meals. */
+        BUILD_CATALOGUE,
+        /** The reading of the snapshot of a meals file. */
+        READ_SNAPSHOT,
+        /** The parsing of a selection of meals. */
+        PARSE_SELECTION,
+        /** The aggregation of the ingredients of a selection of meals. */
+        AGGREGATE,
+        /** The aggregation of a batch of selections of meals, all together. */
+        AGGREGATE_BATCH,
+        /** A search of the meals by name or by ingredient. */
+        SEARCH,
+        /** The search of a plan of meals. */
+        PLAN;
+
+        private final String label = name().toLowerCase(Locale.ROOT);
+
+        /**
+         * Returns the name of the phase in the reports, such as
+         * <code>parse_selection</code>.
+         *
+         * @return the name of the phase in the reports
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /** The number of buckets per power of two, as a power of two. */
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS_COUNT = 1 << SUB_BUCKET_BITS;
+    /** The values below this bound have a bucket each. */
+    private static final long EXACT_BOUND = 2L * SUB_BUCKETS_COUNT;
+    private static final int BUCKETS_COUNT = (int) EXACT_BOUND + (Long.SIZE - 1 - (SUB_BUCKET_BITS + 1)) * SUB_BUCKETS_COUNT;
+    /** The percentiles of the reports. */
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+
+    /** The timer of the phases when the metrics are disabled. */
+    private static final Timer DISABLED_TIMER = new Timer(null, 0, null);
+
+    /** The durations of each phase, by ordinal. */
+    private static final Histogram[] HISTOGRAMS = new Histogram[Phase.values().length];
+    private static volatile boolean isEnabled = Boolean.getBoolean("foodshoppinglist.metrics");
+
+    static {
+        for (int i = 0; i < HISTOGRAMS.length; i++)
+            HISTOGRAMS[i] = new Histogram();
+    }
+
+
+
+
+    /**
+     * Enables or disables the metrics. The phases that are being timed when
+     * the metrics are enabled are not recorded.
+     *
+     * @param enabled true to enable the metrics
+     */
+    public static void setEnabled(boolean enabled) {
+        isEnabled = enabled;
+    }
+
+    /**
+     * Returns true if the metrics are enabled.
+     *
+     * @return true if the metrics are enabled
+     */
+    public static boolean isEnabled() {
+        return isEnabled;
+    }
+
+    /**
+     * Starts timing a phase. The phase ends when the returned timer is
+     * closed, which is meant to be done with a try-with-resources statement.
+     *
+     * @param phase the phase
+     * @return the timer of the phase
+     */
+    public static Timer start(Phase phase) {
+        if (! isEnabled)
+            return DISABLED_TIMER;
+        PhaseEvent event = new PhaseEvent();
+        event.begin();
+        return new Timer(phase, System.nanoTime(), event);
+    }
+
+    /**
+     * Returns the number of times a phase was recorded.
+     *
+     * @param phase the phase
+     * @return the number of times the phase was recorded
+     */
+    public static long getCount(Phase phase) {
+        return HISTOGRAMS[phase.ordinal()].count.sum();
+    }
+
+    /**
+     * Forgets every recorded duration.
+     */
+    public static void reset() {
+        for (Histogram histogram : HISTOGRAMS)
+            histogram.reset();
+    }
+
+    /**
+     * Writes a summary of the phases that were recorded, one line per phase
+     * with the number of times it was recorded, the total time, and the
+     * percentiles of its duration.
+     *
+     * @param output where to write the summary
+     */
+    public static void writeSummary(StringBuilder output) {
+        output.append(String.format(Locale.ROOT, "%-16s %9s %12s %10s %10s %10s %10s%n",
+                "phase", "count", "total (ms)", "p50 (ms)", "p90 (ms)", "p99 (ms)", "max (ms)"));
+        for (Phase phase : Phase.values()) {
+            Histogram histogram = HISTOGRAMS[phase.ordinal()];
+            long count = histogram.count.sum();
+            if (count == 0)
+                continue;
+            output.append(String.format(Locale.ROOT, "%-16s %9d %12.3f %10.3f %10.3f %10.3f %10.3f%n",
+                    phase.getLabel(),
+                    count,
+                    histogram.sum.sum() / 1e6,
+                    histogram.getPercentile(PERCENTILES[0]) / 1e6,
+                    histogram.getPercentile(PERCENTILES[1]) / 1e6,
+                    histogram.getPercentile(PERCENTILES[2]) / 1e6,
+                    histogram.max.get() / 1e6));
+        }
+    }
+
+    /**
+     * Writes the durations of the phases in the Prometheus text format, as a
+     * summary named <code>foodshoppinglist_phase_seconds</code>.
+     *
+     * @param output where to write the metrics
+     */
+    public static void writePrometheus(StringBuilder output) {
+        output.append("# HELP foodshoppinglist_phase_seconds The duration of the phases of the program.\n");
+        output.append("# TYPE foodshoppinglist_phase_seconds summary\n");
+        for (Phase phase : Phase.values()) {
+            Histogram histogram = HISTOGRAMS[phase.ordinal()];
+            long count = histogram.count.sum();
+            for (double percentile : PERCENTILES) {
+                output.append("foodshoppinglist_phase_seconds{phase=\"").append(phase.getLabel())
+                        .append("\",quantile=\"").append(percentile).append("\"} ")
+                        .append(count == 0 ? "NaN" : Double.toString(histogram.getPercentile(percentile) / 1e9))
+                        .append('\n');
+            }
+            output.append("foodshoppinglist_phase_seconds_sum{phase=\"").append(phase.getLabel()).append("\"} ")
+                    .append(histogram.sum.sum() / 1e9).append('\n');
+            output.append("foodshoppinglist_phase_seconds_count{phase=\"").append(phase.getLabel()).append("\"} ")
+                    .append(count).append('\n');
+        }
+    }
+
+    /**
+     * Returns the index of the bucket of a value: the values below
+     * {@link #EXACT_BOUND} have their own bucket, and each following power
+     * of two is split in {@link #SUB_BUCKETS_COUNT} buckets.
+     */
+    static int bucketIndex(long value) {
+        if (value < EXACT_BOUND)
+            return (int) Math.max(0, value);
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS_COUNT - 1);
+        return (int) EXACT_BOUND + (exponent - (SUB_BUCKET_BITS + 1)) * SUB_BUCKETS_COUNT + subBucket;
+    }
+
+    /**
+     * Returns the highest value of a bucket.
+     */
+    static long bucketHighestValue(int index) {
+        if (index < EXACT_BOUND)
+            return index;
+        int exponent = (index - (int) EXACT_BOUND) / SUB_BUCKETS_COUNT + SUB_BUCKET_BITS + 1;
+        int subBucket = (index - (int) EXACT_BOUND) % SUB_BUCKETS_COUNT;
+        long lowestValue = (long) (SUB_BUCKETS_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowestValue + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+
+
+
+    /**
+     * The timer of a phase. Closing it records the duration of the phase.
+     */
+    public static class Timer implements AutoCloseable {
+
+        private final Phase phase;
+        private final long start;
+        private final PhaseEvent event;
+
+        private Timer(Phase phase, long start, PhaseEvent event) {
+            this.phase = phase;
+            this.start = start;
+            this.event = event;
+        }
+
+        /**
+         * Ends the phase.
+         */
+        @Override
+        public void close() {
+            if (phase == null)
+                return;
+            HISTOGRAMS[phase.ordinal()].record(System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = phase.getLabel();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * The durations of a phase.
+     */
+    private static class Histogram {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS_COUNT);
+
+        void record(long nanoseconds) {
+            count.increment();
+            sum.add(nanoseconds);
+            buckets.incrementAndGet(bucketIndex(nanoseconds));
+            if (nanoseconds > max.get())
+                max.accumulateAndGet(nanoseconds, Math::max);
+        }
+
+        /**
+         * Returns the highest value of the bucket that holds a percentile,
+         * so that the percentile is overestimated by about 3 % at most.
+         */
+        long getPercentile(double percentile) {
+            long rank = (long) Math.ceil(percentile * count.sum());
+            long seen = 0;
+            for (int index = 0; index < BUCKETS_COUNT; index++) {
+                seen += buckets.get(index);
+                if (seen >= Math.max(1, rank))
+                    return Math.min(bucketHighestValue(index), max.get());
+            }
+            return max.get();
+        }
+
+        void reset() {
+            count.reset();
+            sum.reset();
+            max.set(0);
+            for (int index = 0; index < BUCKETS_COUNT; index++)
+                buckets.set(index, 0);
+        }
+    }
+
+    /**
+     * The JFR event of a phase.
+     */
+    @Name("com.foodshoppinglist.Phase")
+    @Label("Phase")
+    @Category("Food shopping list")
+    @Description("A phase of the program, such as the loading of the meals file or the aggregation of a selection")
+    @StackTrace(false)
+    static class PhaseEvent extends Event {
+
+        @Label("Phase")
+        String phase;
+    }
+}
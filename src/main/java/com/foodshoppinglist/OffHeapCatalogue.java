@@ -0,0 +1,471 @@
+package com.foodshoppinglist;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A copy of a catalogue (see {@link MealCatalogue}) outside of the heap, in
+ * one memory segment of its own arena, which the garbage collector never
+ * scans.
+ * <p/>
+ * The segment holds the same arrays as the catalogue, packed one after the
+ * other: the offsets of the lines of the meals, the ingredient and the
+ * quantity of each line, the unit of each ingredient, an open-addressing
+ * hash table of the meals, and the names of the meals and of the ingredients
+ * as UTF-8 bytes with their offsets. The quantities are in the units of the
+ * ingredients; the amounts as written in the meals file are not kept.
+ * <p/>
+ * This object is a flyweight view of the segment: the lookups by ordinal, id
+ * or name and the aggregation of a selection read the segment directly, and
+ * allocate nothing. Only the methods that return names build strings. The
+ * memory is freed as soon as the catalogue is closed, usually by its
+ * {@link CatalogueStore}; the view must not be used afterwards, and any
+ * access then throws an {@link IllegalStateException}.
+ */
+public class OffHeapCatalogue implements AutoCloseable {
+
+    private final Arena arena;
+    private final MemorySegment segment;
+    /** The units, in lexicographic order; there are only a few of them, so they stay on the heap. */
+    private final String[] units;
+    private final int mealsCount;
+    private final int ingredientsCount;
+    private final int linesCount;
+
+    // the arrays, as slices of the segment
+    private final MemorySegment mealsOffsets;
+    private final MemorySegment linesIngredients;
+    private final MemorySegment linesQuantities;
+    private final MemorySegment ingredientsUnits;
+    /** The hash code of the name of each meal. */
+    private final MemorySegment mealsHashes;
+    /** The ordinal plus one of the meal of each slot, or zero for an empty slot. */
+    private final MemorySegment mealsHashTable;
+    private final MemorySegment mealsNamesOffsets;
+    private final MemorySegment mealsNamesBytes;
+    private final MemorySegment ingredientsNamesOffsets;
+    private final MemorySegment ingredientsNamesBytes;
+
+
+
+
+    private OffHeapCatalogue(MealCatalogue catalogue, Arena arena) {
+        this.arena = arena;
+        this.mealsCount = catalogue.getMealsCount();
+        this.ingredientsCount = catalogue.getIngredientsCount();
+        this.linesCount = catalogue.getLinesCount();
+        this.units = new String[catalogue.getUnitsCount()];
+        for (int index = 0; index < units.length; index++)
+            units[index] = catalogue.getUnit(index);
+
+        byte[][] mealsNames = new byte[mealsCount][];
+        long mealsNamesSize = 0;
+        for (int ordinal = 0; ordinal < mealsCount; ordinal++) {
+            mealsNames[ordinal] = catalogue.getMealName(ordinal).getBytes(StandardCharsets.UTF_8);
+            mealsNamesSize += mealsNames[ordinal].length;
+        }
+        byte[][] ingredientsNames = new byte[ingredientsCount][];
+        long ingredientsNamesSize = 0;
+        for (int id = 0; id < ingredientsCount; id++) {
+            ingredientsNames[id] = catalogue.getIngredientName(id).getBytes(StandardCharsets.UTF_8);
+            ingredientsNamesSize += ingredientsNames[id].length;
+        }
+        int hashTableLength = Math.max(2, Integer.highestOneBit(Math.max(1, mealsCount)) << 2);
+
+        // the longs first, so that every array is aligned
+        Layout layout = new Layout();
+        long linesQuantitiesOffset = layout.add(Long.BYTES * (long) linesCount);
+        long mealsOffsetsOffset = layout.add(Integer.BYTES * (mealsCount + 1L));
+        long linesIngredientsOffset = layout.add(Integer.BYTES * (long) linesCount);
+        long ingredientsUnitsOffset = layout.add(Integer.BYTES * (long) ingredientsCount);
+        long mealsHashesOffset = layout.add(Integer.BYTES * (long) mealsCount);
+        long mealsHashTableOffset = layout.add(Integer.BYTES * (long) hashTableLength);
+        long mealsNamesOffsetsOffset = layout.add(Integer.BYTES * (mealsCount + 1L));
+        long ingredientsNamesOffsetsOffset = layout.add(Integer.BYTES * (ingredientsCount + 1L));
+        long mealsNamesBytesOffset = layout.add(mealsNamesSize);
+        long ingredientsNamesBytesOffset = layout.add(ingredientsNamesSize);
+        if (mealsNamesSize > Integer.MAX_VALUE || ingredientsNamesSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("The names of the catalogue are too long");
+
+        this.segment = arena.allocate(Math.max(1, layout.size), Long.BYTES);
+        this.linesQuantities = segment.asSlice(linesQuantitiesOffset, Long.BYTES * (long) linesCount);
+        this.mealsOffsets = segment.asSlice(mealsOffsetsOffset, Integer.BYTES * (mealsCount + 1L));
+        this.linesIngredients = segment.asSlice(linesIngredientsOffset, Integer.BYTES * (long) linesCount);
+        this.ingredientsUnits = segment.asSlice(ingredientsUnitsOffset, Integer.BYTES * (long) ingredientsCount);
+        this.mealsHashes = segment.asSlice(mealsHashesOffset, Integer.BYTES * (long) mealsCount);
+        this.mealsHashTable = segment.asSlice(mealsHashTableOffset, Integer.BYTES * (long) hashTableLength);
+        this.mealsNamesOffsets = segment.asSlice(mealsNamesOffsetsOffset, Integer.BYTES * (mealsCount + 1L));
+        this.ingredientsNamesOffsets = segment.asSlice(ingredientsNamesOffsetsOffset, Integer.BYTES * (ingredientsCount + 1L));
+        this.mealsNamesBytes = segment.asSlice(mealsNamesBytesOffset, mealsNamesSize);
+        this.ingredientsNamesBytes = segment.asSlice(ingredientsNamesBytesOffset, ingredientsNamesSize);
+
+        for (int line = 0; line < linesCount; line++) {
+            linesIngredients.setAtIndex(ValueLayout.JAVA_INT, line, catalogue.getLineIngredient(line));
+            linesQuantities.setAtIndex(ValueLayout.JAVA_LONG, line, catalogue.getLineQuantity(line));
+        }
+        for (int id = 0; id < ingredientsCount; id++)
+            ingredientsUnits.setAtIndex(ValueLayout.JAVA_INT, id, catalogue.getIngredientUnitIndex(id));
+        mealsOffsets.setAtIndex(ValueLayout.JAVA_INT, 0, 0);
+        for (int ordinal = 0; ordinal < mealsCount; ordinal++)
+            mealsOffsets.setAtIndex(ValueLayout.JAVA_INT, ordinal + 1, catalogue.getEndLine(ordinal));
+        copyNames(mealsNames, mealsNamesOffsets, mealsNamesBytes);
+        copyNames(ingredientsNames, ingredientsNamesOffsets, ingredientsNamesBytes);
+
+        // the allocated memory is zeroed, so all the slots start empty
+        for (int ordinal = 0; ordinal < mealsCount; ordinal++) {
+            int hash = catalogue.getMealName(ordinal).hashCode();
+            mealsHashes.setAtIndex(ValueLayout.JAVA_INT, ordinal, hash);
+            int slot = hashSlot(hash, hashTableLength);
+            while (mealsHashTable.getAtIndex(ValueLayout.JAVA_INT, slot) != 0)
+                slot = (slot + 1) & (hashTableLength - 1);
+            mealsHashTable.setAtIndex(ValueLayout.JAVA_INT, slot, ordinal + 1);
+        }
+    }
+
+
+
+
+    /**
+     * Copies a catalogue into a new memory segment, in its own arena. The
+     * memory is freed when the returned catalogue is closed.
+     *
+     * @param catalogue the catalogue to copy
+     * @return the copy of the catalogue
+     */
+    public static OffHeapCatalogue copyOf(MealCatalogue catalogue) {
+        Arena arena = Arena.ofShared();
+        try {
+            return new OffHeapCatalogue(catalogue, arena);
+        } catch (RuntimeException | Error e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+
+
+
+    /**
+     * Returns the size of the memory segment of this catalogue.
+     *
+     * @return the size of the segment, in bytes
+     */
+    public long getByteSize() {
+        return segment.byteSize();
+    }
+
+    /**
+     * Returns true if the memory of this catalogue is not freed yet.
+     *
+     * @return true if this catalogue can be read
+     */
+    public boolean isAlive() {
+        return segment.scope().isAlive();
+    }
+
+    /**
+     * Returns the number of meals.
+     *
+     * @return the number of meals
+     */
+    public int getMealsCount() {
+        return mealsCount;
+    }
+
+    /**
+     * Returns the name of a meal.
+     *
+     * @param ordinal the ordinal of the meal
+     * @return the name of the meal
+     */
+    public String getMealName(int ordinal) {
+        return readName(mealsNamesOffsets, mealsNamesBytes, ordinal);
+    }
+
+    /**
+     * Returns the ordinal of a meal, without allocating anything.
+     *
+     * @param mealName the name of the meal
+     * @return the ordinal of the meal, or -1 if there's no such meal
+     */
+    public int getMealOrdinal(String mealName) {
+        int hash = mealName.hashCode();
+        int mask = (int) (mealsHashTable.byteSize() / Integer.BYTES) - 1;
+        int entry;
+        for (int slot = hashSlot(hash, mask + 1); (entry = mealsHashTable.getAtIndex(ValueLayout.JAVA_INT, slot)) != 0;
+             slot = (slot + 1) & mask) {
+            int ordinal = entry - 1;
+            if (mealsHashes.getAtIndex(ValueLayout.JAVA_INT, ordinal) == hash
+                    && compareName(mealsNamesOffsets, mealsNamesBytes, ordinal, mealName) == 0)
+                return ordinal;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of ingredients.
+     *
+     * @return the number of ingredients
+     */
+    public int getIngredientsCount() {
+        return ingredientsCount;
+    }
+
+    /**
+     * Returns the name of an ingredient.
+     *
+     * @param id the id of the ingredient
+     * @return the name of the ingredient
+     */
+    public String getIngredientName(int id) {
+        return readName(ingredientsNamesOffsets, ingredientsNamesBytes, id);
+    }
+
+    /**
+     * Returns the id of an ingredient, without allocating anything.
+     *
+     * @param ingredientName the name of the ingredient
+     * @return the id of the ingredient, or -1 if there's no such ingredient
+     */
+    public int getIngredientId(String ingredientName) {
+        // the names are in the order of String.compareTo
+        int low = 0;
+        int high = ingredientsCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareName(ingredientsNamesOffsets, ingredientsNamesBytes, middle, ingredientName);
+            if (comparison < 0)
+                low = middle + 1;
+            else if (comparison > 0)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the unit of an ingredient.
+     *
+     * @param id the id of the ingredient
+     * @return the unit of the ingredient
+     */
+    public String getIngredientUnit(int id) {
+        return units[ingredientsUnits.getAtIndex(ValueLayout.JAVA_INT, id)];
+    }
+
+    /**
+     * Returns the number of lines, that is the total number of ingredients of
+     * all the meals.
+     *
+     * @return the number of lines
+     */
+    public int getLinesCount() {
+        return linesCount;
+    }
+
+    /**
+     * Returns the first line of a meal.
+     *
+     * @param ordinal the ordinal of the meal
+     * @return the first line of the meal
+     */
+    public int getFirstLine(int ordinal) {
+        return mealsOffsets.getAtIndex(ValueLayout.JAVA_INT, ordinal);
+    }
+
+    /**
+     * Returns the line that follows the last line of a meal.
+     *
+     * @param ordinal the ordinal of the meal
+     * @return the line that follows the last line of the meal
+     */
+    public int getEndLine(int ordinal) {
+        return mealsOffsets.getAtIndex(ValueLayout.JAVA_INT, ordinal + 1);
+    }
+
+    /**
+     * Returns the ingredient of a line.
+     *
+     * @param line the line
+     * @return the id of the ingredient of the line
+     */
+    public int getLineIngredient(int line) {
+        return linesIngredients.getAtIndex(ValueLayout.JAVA_INT, line);
+    }
+
+    /**
+     * Returns the quantity of a line.
+     *
+     * @param line the line
+     * @return the quantity of the line, in thousandths of the unit of its
+     * ingredient
+     */
+    public long getLineQuantity(int line) {
+        return linesQuantities.getAtIndex(ValueLayout.JAVA_LONG, line);
+    }
+
+    /**
+     * Adds up the quantities of the ingredients of selected meals, without
+     * allocating anything.
+     *
+     * @param mealsOrdinals the ordinals of the selected meals
+     * @param totals where the quantities are added, by ingredient id, in
+     *               thousandths of the unit of the ingredient; its length is
+     *               at least the number of ingredients
+     * @throws ArithmeticException if a total doesn't fit in a <code>long</code>;
+     * the totals are then partly added up
+     */
+    public void aggregate(BitSet mealsOrdinals, long[] totals) {
+        for (int ordinal = mealsOrdinals.nextSetBit(0); ordinal >= 0; ordinal = mealsOrdinals.nextSetBit(ordinal + 1)) {
+            int endLine = getEndLine(ordinal);
+            for (int line = getFirstLine(ordinal); line < endLine; line++) {
+                int id = getLineIngredient(line);
+                totals[id] = Math.addExact(totals[id], getLineQuantity(line));
+            }
+        }
+    }
+
+    /**
+     * Returns the shopping list of selected meals, as
+     * {@link MealsHandler#getRequiredIngredients()} does.
+     *
+     * @param mealsOrdinals the ordinals of the selected meals
+     * @return a map associating each required ingredient to its total amount,
+     * in the lexicographic order of the ingredients names
+     * @throws ArithmeticException if a total doesn't fit in a <code>long</code>
+     */
+    public Map<String, IngredientAmount> getShoppingList(BitSet mealsOrdinals) {
+        long[] totals = new long[ingredientsCount];
+        boolean[] isRequired = new boolean[ingredientsCount];
+        aggregate(mealsOrdinals, totals);
+        for (int ordinal = mealsOrdinals.nextSetBit(0); ordinal >= 0; ordinal = mealsOrdinals.nextSetBit(ordinal + 1)) {
+            for (int line = getFirstLine(ordinal); line < getEndLine(ordinal); line++)
+                isRequired[getLineIngredient(line)] = true;
+        }
+        Map<String, IngredientAmount> shoppingList = new LinkedHashMap<>();
+        for (int id = 0; id < ingredientsCount; id++) {
+            if (isRequired[id])
+                shoppingList.put(getIngredientName(id), new IngredientAmount(totals[id], getIngredientUnit(id)));
+        }
+        return shoppingList;
+    }
+
+    /**
+     * Frees the memory of this catalogue. The threads that are reading it
+     * get an {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+
+
+
+    private static int hashSlot(int hash, int tableLength) {
+        return (hash ^ (hash >>> 16)) & (tableLength - 1);
+    }
+
+    private static void copyNames(byte[][] names, MemorySegment offsets, MemorySegment bytes) {
+        int offset = 0;
+        for (int i = 0; i < names.length; i++) {
+            offsets.setAtIndex(ValueLayout.JAVA_INT, i, offset);
+            MemorySegment.copy(names[i], 0, bytes, ValueLayout.JAVA_BYTE, offset, names[i].length);
+            offset += names[i].length;
+        }
+        offsets.setAtIndex(ValueLayout.JAVA_INT, names.length, offset);
+    }
+
+    private static String readName(MemorySegment offsets, MemorySegment bytes, int index) {
+        int start = offsets.getAtIndex(ValueLayout.JAVA_INT, index);
+        int end = offsets.getAtIndex(ValueLayout.JAVA_INT, index + 1);
+        byte[] name = new byte[end - start];
+        MemorySegment.copy(bytes, ValueLayout.JAVA_BYTE, start, name, 0, name.length);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compares a name stored as UTF-8 bytes with a string, in the order of
+     * {@link String#compareTo(String)}, by decoding the bytes char by char.
+     *
+     * @return a negative number, zero or a positive number if the stored name
+     * is before, equal to or after the string
+     */
+    private static int compareName(MemorySegment offsets, MemorySegment bytes, int index, String name) {
+        long position = offsets.getAtIndex(ValueLayout.JAVA_INT, index);
+        long end = offsets.getAtIndex(ValueLayout.JAVA_INT, index + 1);
+        int i = 0;
+        while (position < end) {
+            int b = bytes.get(ValueLayout.JAVA_BYTE, position) & 0xFF;
+            int codePoint;
+            if (b < 0x80) {
+                codePoint = b;
+                position++;
+            } else if (b < 0xE0) {
+                codePoint = (b & 0x1F) << 6 | continuation(bytes, position + 1);
+                position += 2;
+            } else if (b < 0xF0) {
+                codePoint = (b & 0x0F) << 12 | continuation(bytes, position + 1) << 6 | continuation(bytes, position + 2);
+                position += 3;
+            } else {
+                codePoint = (b & 0x07) << 18 | continuation(bytes, position + 1) << 12
+                        | continuation(bytes, position + 2) << 6 | continuation(bytes, position + 3);
+                position += 4;
+            }
+            if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                if (i == name.length())
+                    return 1;
+                if (codePoint != name.charAt(i))
+                    return codePoint - name.charAt(i);
+                i++;
+            } else {
+                // a supplementary character is a pair of surrogate chars in the string
+                char high = Character.highSurrogate(codePoint);
+                char low = Character.lowSurrogate(codePoint);
+                if (i == name.length())
+                    return 1;
+                if (high != name.charAt(i))
+                    return high - name.charAt(i);
+                i++;
+                if (i == name.length())
+                    return 1;
+                if (low != name.charAt(i))
+                    return low - name.charAt(i);
+                i++;
+            }
+        }
+        return i - name.length();
+    }
+
+    private static int continuation(MemorySegment bytes, long position) {
+        return bytes.get(ValueLayout.JAVA_BYTE, position) & 0x3F;
+    }
+
+
+
+
+    /**
+     * The offsets of the arrays in the segment of a catalogue.
+     */
+    private static class Layout {
+
+        private long size = 0;
+
+        /**
+         * Reserves an array, aligned on 8 bytes.
+         *
+         * @return the offset of the array
+         */
+        long add(long byteSize) {
+            long offset = size;
+            size += (byteSize + Long.BYTES - 1) & -Long.BYTES;
+            return offset;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.foodshoppinglist;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The pantries of several households, each in its own subdirectory of a
+ * directory (see {@link Pantry}).
+ * <p/>
+ * A pantry is lent for the time of a request (see {@link #lease(String, boolean)}),
+ * and opened the first time it is lent. Each open pantry has its own writer
+ * thread, so at most a given number of them stay open: past that number,
+ * the pantries that were lent the least recently, and are not lent anymore,
+ * are closed. They are opened again from their files when they are lent
+ * again.
+ */
+public class Pantries implements Closeable {
+
+    /** The number of pantries that stay open, by default. */
+    public static final int DEFAULT_MAX_OPEN_PANTRIES = 64;
+
+    /** The names of the households: letters, digits, '-' and '_'. */
+    private static final String HOUSEHOLD_PATTERN = "[A-Za-z0-9_-]{1,64}";
+
+    private final Path directory;
+    private final int maxOpenPantries;
+    /** The open pantries, by household, the least recently lent first. */
+    private final LinkedHashMap<String, OpenPantry> openPantries = new LinkedHashMap<>(16, 0.75f, true);
+    /** The households whose pantries are being closed, and cannot be opened again yet. */
+    private final Set<String> closingHouseholds = new HashSet<>();
+    private boolean isClosed = false;
+
+
+
+
+    /**
+     * Builds a <code>Pantries</code> that keeps at most
+     * {@link #DEFAULT_MAX_OPEN_PANTRIES} pantries open.
+     *
+     * @param directory the directory of the pantries
+     */
+    public Pantries(Path directory) {
+        this(directory, DEFAULT_MAX_OPEN_PANTRIES);
+    }
+
+    /**
+     * Builds a <code>Pantries</code>
+     *
+     * @param directory the directory of the pantries
+     * @param maxOpenPantries the number of pantries that stay open once
+     *                        they are not lent anymore
+     * @throws IllegalArgumentException if the number of pantries is not
+     * positive
+     */
+    public Pantries(Path directory, int maxOpenPantries) {
+        if (maxOpenPantries <= 0)
+            throw new IllegalArgumentException("The number of open pantries must be positive");
+        this.directory = directory;
+        this.maxOpenPantries = maxOpenPantries;
+    }
+
+
+
+
+    /**
+     * Returns true if a name can be the name of a household.
+     *
+     * @param household a name
+     * @return true if the name is made of 1 to 64 letters, digits, '-' and '_'
+     */
+    public static boolean isValidHousehold(String household) {
+        return household != null && household.matches(HOUSEHOLD_PATTERN);
+    }
+
+    /**
+     * Lends the pantry of a household, opened if needed. The pantry is not
+     * closed before the lease is.
+     *
+     * @param household the name of the household
+     * @param create true to create the pantry if the household has none yet,
+     *               false to leave the directory untouched
+     * @return the lease of the pantry, whose pantry is null if the household
+     * has none and <code>create</code> is false
+     * @throws IllegalArgumentException if the name is not valid
+     * @throws IOException if the files of the pantry cannot be read or
+     * written, or if the pantries are closed
+     */
+    public Lease lease(String household, boolean create) throws IOException {
+        if (! isValidHousehold(household))
+            throw new IllegalArgumentException("Invalid household: " + household);
+        Path pantryDirectory = directory.resolve(household);
+        OpenPantry openPantry;
+        List<OpenPantry> evictedPantries;
+        synchronized (this) {
+            // a pantry is never open twice: the second writer would corrupt the log
+            while (closingHouseholds.contains(household)) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while opening the pantry");
+                }
+            }
+            if (isClosed)
+                throw new IOException("The pantries are closed");
+            openPantry = openPantries.get(household);
+            if (openPantry == null) {
+                if (! create && ! Files.isDirectory(pantryDirectory))
+                    return new Lease(null);
+                openPantry = new OpenPantry(household, Pantry.open(pantryDirectory));
+                openPantries.put(household, openPantry);
+            }
+            openPantry.leasesCount++;
+            evictedPantries = evictUnusedPantries();
+        }
+        Lease lease = new Lease(openPantry);
+        try {
+            closePantries(evictedPantries);
+        } catch (IOException e) {
+            try {
+                lease.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        return lease;
+    }
+
+    /**
+     * Closes the pantries that are open, and fails the next leases. The
+     * pantries that are still lent are closed too: their updates fail.
+     */
+    @Override
+    public void close() throws IOException {
+        List<OpenPantry> closedPantries;
+        synchronized (this) {
+            isClosed = true;
+            closedPantries = new ArrayList<>(openPantries.values());
+            for (OpenPantry openPantry : closedPantries)
+                closingHouseholds.add(openPantry.household);
+            openPantries.clear();
+        }
+        closePantries(closedPantries);
+    }
+
+
+
+
+    /**
+     * Removes the pantries that are not lent, the least recently lent first,
+     * until there are no more open pantries than allowed. The caller closes
+     * them once it doesn't hold the lock anymore.
+     */
+    private List<OpenPantry> evictUnusedPantries() {
+        List<OpenPantry> evictedPantries = new ArrayList<>();
+        Iterator<OpenPantry> iterator = openPantries.values().iterator();
+        while (openPantries.size() > maxOpenPantries && iterator.hasNext()) {
+            OpenPantry openPantry = iterator.next();
+            if (openPantry.leasesCount == 0) {
+                iterator.remove();
+                closingHouseholds.add(openPantry.household);
+                evictedPantries.add(openPantry);
+            }
+        }
+        return evictedPantries;
+    }
+
+    private void closePantries(List<OpenPantry> evictedPantries) throws IOException {
+        IOException failure = null;
+        for (OpenPantry openPantry : evictedPantries) {
+            try {
+                openPantry.pantry.close();
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                synchronized (this) {
+                    closingHouseholds.remove(openPantry.household);
+                    notifyAll();
+                }
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    private void release(OpenPantry openPantry) throws IOException {
+        List<OpenPantry> evictedPantries;
+        synchronized (this) {
+            openPantry.leasesCount--;
+            evictedPantries = evictUnusedPantries();
+        }
+        closePantries(evictedPantries);
+    }
+
+    /**
+     * An open pantry, and the number of its leases that are not closed.
+     */
+    private static class OpenPantry {
+
+        private final String household;
+        private final Pantry pantry;
+        private int leasesCount = 0;
+
+        OpenPantry(String household, Pantry pantry) {
+            this.household = household;
+            this.pantry = pantry;
+        }
+    }
+
+    /**
+     * The lease of the pantry of a household, returned by
+     * {@link #lease(String, boolean)}. Closing it lets the pantry be closed.
+     */
+    public class Lease implements Closeable {
+
+        private final OpenPantry openPantry;
+        private boolean isReleased = false;
+
+        private Lease(OpenPantry openPantry) {
+            this.openPantry = openPantry;
+        }
+
+        /**
+         * Returns the pantry of the household.
+         *
+         * @return the pantry, or null if the household has none
+         */
+        public Pantry pantry() {
+            return openPantry != null ? openPantry.pantry : null;
+        }
+
+        /**
+         * Gives the pantry back. The next calls do nothing.
+         *
+         * @throws IOException if a pantry that was closed meanwhile failed to
+         * write its updates
+         */
+        @Override
+        public void close() throws IOException {
+            if (openPantry == null || isReleased)
+                return;
+            isReleased = true;
+            release(openPantry);
+        }
+    }
+}
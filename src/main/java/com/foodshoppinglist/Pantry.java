@@ -0,0 +1,333 @@
+package com.foodshoppinglist;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The stock of the ingredients of a household, kept on disk.
+ * <p/>
+ * The stock of each ingredient is an amount in one unit, as in the shopping
+ * lists (see {@link IngredientAmount}): purchases add to it, and uses take
+ * from it, in any compatible unit, and it never goes below zero. The
+ * shopping lists are reduced by the stock with {@link #subtractFrom(Map)}.
+ * <p/>
+ * Every update is written to an append-only log before it is visible and
+ * before it returns (see {@link PantryLog}); the updates of concurrent
+ * writers are synced to the disk together. The stock is read from memory, in
+ * open-addressing tables of primitive quantities, split into
+ * {@link #STRIPES_COUNT} stripes by the hash of the ingredients names. Each
+ * stripe has its own locks, so that writers of different ingredients seldom
+ * wait for one another, and readers don't take any lock unless a writer of
+ * the same stripe is publishing an update.
+ */
+public class Pantry implements Closeable {
+
+    /** The number of stripes of the stock, a power of two. */
+    static final int STRIPES_COUNT = 64;
+
+    private final Stripe[] stripes = new Stripe[STRIPES_COUNT];
+    private final UnitRegistry unitRegistry = UnitRegistry.getDefault();
+    private final PantryLog log;
+
+
+
+
+    private Pantry(Path directory, long compactionThreshold) throws IOException {
+        for (int i = 0; i < STRIPES_COUNT; i++)
+            stripes[i] = new Stripe();
+        // the recovery runs before the pantry is shared, so the stripes are written without locks
+        this.log = PantryLog.open(
+                directory,
+                compactionThreshold,
+                (ingredientName, stock) -> getStripe(ingredientName).put(ingredientName, stock)
+        );
+    }
+
+
+
+
+    /**
+     * Opens the pantry stored in a directory, created if needed.
+     *
+     * @param directory the directory of the files of the pantry
+     * @return the pantry, with the stock recorded in its files
+     * @throws IOException if the files cannot be read or written
+     */
+    public static Pantry open(Path directory) throws IOException {
+        return open(directory, PantryLog.COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Opens the pantry stored in a directory, created if needed, with a
+     * given compaction threshold (see {@link PantryLog}).
+     *
+     * @param directory the directory of the files of the pantry
+     * @param compactionThreshold the size of a log file past which the log
+     *                            is compacted, in bytes
+     * @return the pantry, with the stock recorded in its files
+     * @throws IOException if the files cannot be read or written
+     */
+    static Pantry open(Path directory, long compactionThreshold) throws IOException {
+        return new Pantry(directory, compactionThreshold);
+    }
+
+
+
+
+    /**
+     * Returns the stock of an ingredient.
+     *
+     * @param ingredientName the name of the ingredient
+     * @return the stock, or null if the ingredient was never stocked
+     */
+    public IngredientAmount getStock(String ingredientName) {
+        return getStripe(ingredientName).get(ingredientName);
+    }
+
+    /**
+     * Returns the stock of all the ingredients that are not used up.
+     *
+     * @return a map associating each ingredient to its stock, in the
+     * lexicographic order of the ingredients names
+     */
+    public Map<String, IngredientAmount> getStocks() {
+        Map<String, IngredientAmount> stocks = new TreeMap<>();
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                Table table = stripe.table;
+                for (int slot = 0; slot < table.names.length; slot++) {
+                    if (table.names[slot] != null && table.quantities[slot] != 0)
+                        stocks.put(table.names[slot], new IngredientAmount(table.quantities[slot], table.units[slot]));
+                }
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return stocks;
+    }
+
+    /**
+     * Adds an amount to the stock of an ingredient, and waits for the update
+     * to be written on disk.
+     * <p/>
+     * The stock is kept in a unit that divides all the units it was given in
+     * (see {@link UnitRegistry#getCommonUnit(String, String)}), so the sums
+     * are exact. A use of more than the stock leaves an empty stock. The new
+     * stock is visible to the readers once it is written on disk, and the
+     * stock is left unchanged if it cannot be written. This method can be
+     * called by several threads at the same time; the updates of the
+     * ingredients of the same stripe wait for one another.
+     *
+     * @param ingredientName the name of the ingredient
+     * @param amount the amount to add, positive for a purchase and negative
+     *               for a use
+     * @return the new stock of the ingredient
+     * @throws IllegalArgumentException if the unit of the amount is not
+     * compatible with the unit of the stock
+     * @throws IOException if the update cannot be written
+     */
+    public IngredientAmount add(String ingredientName, IngredientAmount amount) throws IOException {
+        Stripe stripe = getStripe(ingredientName);
+        // the writers of a stripe take turns, so the table only changes under
+        // the update lock, and is read here without the stamped lock
+        stripe.updateLock.lock();
+        try {
+            IngredientAmount previous = stripe.table.get(ingredientName);
+            // a used up ingredient can be stocked again in any unit
+            IngredientAmount stock = previous == null || previous.scaledQuantity() == 0
+                    ? clamp(amount)
+                    : sum(ingredientName, previous, amount);
+            // the writers of the other stripes share the fsync of this record
+            CompletableFuture<Void> durable = log.append(ingredientName, stock);
+            PantryLog.await(durable);
+            long stamp = stripe.lock.writeLock();
+            try {
+                stripe.put(ingredientName, stock);
+            } finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+            return stock;
+        } finally {
+            stripe.updateLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a shopping list reduced by the stock: the ingredients that are
+     * in stock in sufficient quantities are removed, and the others are
+     * reduced by their stock. The stock of an ingredient that is in a unit
+     * that is incompatible with its unit in the shopping list is ignored.
+     *
+     * @param shoppingList a map associating ingredients to their required
+     *                     amounts
+     * @return a new map associating the ingredients to buy to their amounts,
+     * in the order of the shopping list
+     */
+    public Map<String, IngredientAmount> subtractFrom(Map<String, IngredientAmount> shoppingList) {
+        Map<String, IngredientAmount> remaining = LinkedHashMap.newLinkedHashMap(shoppingList.size());
+        for (Map.Entry<String, IngredientAmount> ingredientEntry : shoppingList.entrySet()) {
+            IngredientAmount required = ingredientEntry.getValue();
+            IngredientAmount stock = getStock(ingredientEntry.getKey());
+            if (stock != null && stock.scaledQuantity() != 0 && unitRegistry.areCompatible(stock.unit(), required.unit())) {
+                long toBuy = required.scaledQuantity() - unitRegistry.convert(stock.scaledQuantity(), stock.unit(), required.unit());
+                if (toBuy > 0)
+                    remaining.put(ingredientEntry.getKey(), new IngredientAmount(toBuy, required.unit()));
+            } else {
+                remaining.put(ingredientEntry.getKey(), required);
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Waits for the pending updates to be written, and closes the files of
+     * the pantry.
+     */
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+
+
+
+    private Stripe getStripe(String ingredientName) {
+        int hash = ingredientName.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES_COUNT - 1)];
+    }
+
+    /**
+     * Adds an amount to a stock, in a unit that divides both of their units.
+     */
+    private IngredientAmount sum(String ingredientName, IngredientAmount stock, IngredientAmount amount) {
+        if (! unitRegistry.areCompatible(stock.unit(), amount.unit())) {
+            throw new IllegalArgumentException("The stock of '" + ingredientName + "' is in " + stock.unit()
+                    + ", which is incompatible with " + amount.unit());
+        }
+        String unit = unitRegistry.getCommonUnit(stock.unit(), amount.unit());
+        long total = Math.addExact(
+                unitRegistry.convert(stock.scaledQuantity(), stock.unit(), unit),
+                unitRegistry.convert(amount.scaledQuantity(), amount.unit(), unit)
+        );
+        return clamp(new IngredientAmount(total, unit));
+    }
+
+    private static IngredientAmount clamp(IngredientAmount amount) {
+        return amount.scaledQuantity() < 0 ? new IngredientAmount(0, amount.unit()) : amount;
+    }
+
+
+
+
+    /**
+     * A part of the stock, with its own locks: the update lock, which the
+     * writers hold from the computation of a new stock until it is durable,
+     * and the stamped lock, which they hold to publish it.
+     * <p/>
+     * The ingredients are never removed from the table (a used up ingredient
+     * has a zero quantity), and the table is replaced by a larger one when
+     * it is half full, so a probe always ends, even when it reads the table
+     * while a writer changes it: readers read optimistically, and only take
+     * the read lock if a writer ran meanwhile.
+     */
+    private static class Stripe {
+
+        private final ReentrantLock updateLock = new ReentrantLock();
+        private final StampedLock lock = new StampedLock();
+        private volatile Table table = new Table(8);
+        private int size = 0;
+
+        IngredientAmount get(String ingredientName) {
+            long stamp = lock.tryOptimisticRead();
+            IngredientAmount stock = table.get(ingredientName);
+            if (lock.validate(stamp))
+                return stock;
+            stamp = lock.readLock();
+            try {
+                return table.get(ingredientName);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Sets the stock of an ingredient, under the write lock.
+         */
+        void put(String ingredientName, IngredientAmount stock) {
+            Table currentTable = table;
+            int slot = currentTable.find(ingredientName);
+            if (currentTable.names[slot] == null) {
+                if (2 * (size + 1) > currentTable.names.length) {
+                    currentTable = currentTable.grow();
+                    table = currentTable;
+                    slot = currentTable.find(ingredientName);
+                }
+                size++;
+            }
+            currentTable.quantities[slot] = stock.scaledQuantity();
+            currentTable.units[slot] = stock.unit();
+            currentTable.names[slot] = ingredientName;
+        }
+    }
+
+    /**
+     * An open-addressing table of the stock of ingredients, with linear
+     * probing.
+     */
+    private static class Table {
+
+        private final String[] names;
+        /** The quantity of each ingredient, in thousandths of its unit. */
+        private final long[] quantities;
+        private final String[] units;
+
+        Table(int capacity) {
+            names = new String[capacity];
+            quantities = new long[capacity];
+            units = new String[capacity];
+        }
+
+        IngredientAmount get(String ingredientName) {
+            int slot = find(ingredientName);
+            String unit = units[slot];
+            long quantity = quantities[slot];
+            return names[slot] == null || unit == null ? null : new IngredientAmount(quantity, unit);
+        }
+
+        /**
+         * Returns the slot of an ingredient, or the empty slot where it would
+         * be inserted.
+         */
+        int find(String ingredientName) {
+            int mask = names.length - 1;
+            int hash = ingredientName.hashCode();
+            // the low bits chose the stripe, so the slot uses the high ones
+            int slot = (hash >>> 16 ^ hash * 0x9E3779B9) & mask;
+            String name;
+            while ((name = names[slot]) != null && ! name.equals(ingredientName))
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        Table grow() {
+            Table larger = new Table(2 * names.length);
+            for (int slot = 0; slot < names.length; slot++) {
+                if (names[slot] != null) {
+                    int newSlot = larger.find(names[slot]);
+                    larger.names[newSlot] = names[slot];
+                    larger.quantities[newSlot] = quantities[slot];
+                    larger.units[newSlot] = units[slot];
+                }
+            }
+            return larger;
+        }
+    }
+}
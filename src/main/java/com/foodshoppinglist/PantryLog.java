@@ -0,0 +1,453 @@
+package com.foodshoppinglist;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * The files of a pantry (see {@link Pantry}): an append-only log of the
+ * stock updates, and a checkpoint of the whole stock.
+ * <p/>
+ * Each record of the log is the new stock of one ingredient, so replaying
+ * the records in order gives back the stock, and the last record of an
+ * ingredient is its stock. The log is split into generations, one file per
+ * generation (<code>log-&lt;generation&gt;.bin</code>); the checkpoint
+ * (<code>checkpoint.bin</code>) is the stock recorded by all the generations
+ * before its own. At startup, the pantry reads the checkpoint and replays
+ * the generations that follow it, which are short.
+ * <p/>
+ * The records are written by one writer thread, with group commit: the
+ * records appended while the writer waits for the disk are written together
+ * and synced with one <code>fsync</code>, and each appender is told when its
+ * record is durable. When the current generation grows past the compaction
+ * threshold ({@link #COMPACTION_THRESHOLD} by default), the writer starts a
+ * new generation, and the previous ones are folded into a new checkpoint in
+ * the background, from the files, without stopping the writes.
+ * <p/>
+ * Each record and the checkpoint have a CRC-32C checksum. A record that was
+ * only partly written when the program stopped is dropped at startup.
+ */
+class PantryLog implements Closeable {
+
+    /** The default size of a generation of the log, in bytes, past which a new one is started and the log is compacted. */
+    static final long COMPACTION_THRESHOLD = 4 * 1024 * 1024;
+    static final String CHECKPOINT_FILE = "checkpoint.bin";
+
+    private static final int MAGIC = 0x464C5043; // "FLPC"
+    private static final int VERSION = 1;
+    private static final String LOG_PREFIX = "log-";
+    private static final String LOG_EXTENSION = ".bin";
+    /** The size of the header of a record: its length and its checksum. */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final Path directory;
+    /** The size of a generation, in bytes, past which a new one is started. */
+    private final long compactionThreshold;
+    /** The records appended and not yet written. */
+    private final Queue<PendingRecord> pendingRecords = new ConcurrentLinkedQueue<>();
+    private final Thread writer;
+    private final AtomicBoolean isCompacting = new AtomicBoolean(false);
+    private volatile Thread compaction;
+    private volatile boolean isOpen = true;
+    /** The error that stopped the writer, if any. */
+    private volatile IOException failure;
+    /** The first generation of the log that is not in the checkpoint. */
+    private volatile long checkpointGeneration;
+
+    // owned by the writer thread
+    private FileChannel channel;
+    private long generation;
+    private long generationSize = 0;
+
+
+
+
+    private PantryLog(Path directory, long compactionThreshold, long checkpointGeneration, long generation)
+            throws IOException {
+        this.directory = directory;
+        this.compactionThreshold = compactionThreshold;
+        this.checkpointGeneration = checkpointGeneration;
+        this.generation = generation;
+        this.channel = openGeneration(generation);
+        this.writer = Thread.ofPlatform().daemon().name("pantry-log-" + directory.getFileName()).start(this::write);
+    }
+
+
+
+
+    /**
+     * Opens the files of a pantry, and replays the stock they record.
+     *
+     * @param directory the directory of the files, created if needed
+     * @param compactionThreshold the size of a generation, in bytes, past
+     *                            which a new one is started and the log is
+     *                            compacted ({@link #COMPACTION_THRESHOLD} by
+     *                            default)
+     * @param stock called with each recorded stock, in the order of the
+     *              records
+     * @return the log, ready to append records
+     * @throws IOException if the files cannot be read or written, or if the
+     * checkpoint is corrupted
+     */
+    static PantryLog open(Path directory, long compactionThreshold, BiConsumer<String, IngredientAmount> stock)
+            throws IOException {
+        Files.createDirectories(directory);
+        long checkpointGeneration = readCheckpoint(directory.resolve(CHECKPOINT_FILE), stock);
+        List<Long> generations = listGenerations(directory);
+        long lastGeneration = checkpointGeneration - 1;
+        for (long logGeneration : generations) {
+            Path logFile = getLogFile(directory, logGeneration);
+            if (logGeneration < checkpointGeneration) {
+                // already in the checkpoint, the compaction stopped before deleting it
+                Files.deleteIfExists(logFile);
+                continue;
+            }
+            replay(logFile, stock);
+            lastGeneration = logGeneration;
+        }
+        PantryLog log = new PantryLog(directory, compactionThreshold, checkpointGeneration, lastGeneration + 1);
+        // the replayed generations are folded into the checkpoint, so that the next start is faster
+        if (lastGeneration >= checkpointGeneration)
+            log.startCompaction(lastGeneration + 1);
+        return log;
+    }
+
+
+
+
+    /**
+     * Appends the new stock of an ingredient to the log.
+     *
+     * @param ingredientName the name of the ingredient
+     * @param stock its new stock
+     * @return a future completed once the record is durable
+     */
+    CompletableFuture<Void> append(String ingredientName, IngredientAmount stock) {
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        if (failure != null || ! isOpen) {
+            durable.completeExceptionally(failure != null ? failure : new IOException("The pantry is closed"));
+            return durable;
+        }
+        PendingRecord record = new PendingRecord(encodeRecord(ingredientName, stock), durable);
+        pendingRecords.add(record);
+        // The writer may have stopped meanwhile, after its last drain of the
+        // queue. It stops only once isOpen or failure is set, so checking
+        // them again after the add tells if the record may have been missed:
+        // whoever removes it from the queue completes it.
+        if ((failure != null || ! isOpen) && pendingRecords.remove(record)) {
+            durable.completeExceptionally(failure != null ? failure : new IOException("The pantry is closed"));
+            return durable;
+        }
+        LockSupport.unpark(writer);
+        return durable;
+    }
+
+    /**
+     * Waits for a record to be durable.
+     *
+     * @param durable the future returned by {@link #append(String, IngredientAmount)}
+     * @throws IOException if the record cannot be written
+     */
+    static void await(CompletableFuture<Void> durable) throws IOException {
+        try {
+            durable.join();
+        } catch (CompletionException e) {
+            switch (e.getCause()) {
+                case IOException cause -> throw cause;
+                case RuntimeException cause -> throw cause;
+                case Error cause -> throw cause;
+                default -> throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Writes the pending records, waits for the compaction, and closes the
+     * files.
+     */
+    @Override
+    public void close() throws IOException {
+        isOpen = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+            Thread compactionThread = compaction;
+            if (compactionThread != null)
+                compactionThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the pantry");
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+
+
+
+    /**
+     * The loop of the writer thread: writes the pending records in batches,
+     * one <code>fsync</code> per batch.
+     */
+    private void write() {
+        List<PendingRecord> batch = new ArrayList<>();
+        try {
+            while (true) {
+                PendingRecord record;
+                while ((record = pendingRecords.poll()) != null)
+                    batch.add(record);
+                if (batch.isEmpty()) {
+                    if (! isOpen)
+                        break;
+                    LockSupport.park(this);
+                    continue;
+                }
+                writeBatch(batch);
+                batch.forEach(pendingRecord -> pendingRecord.durable().complete(null));
+                batch.clear();
+                if (generationSize >= compactionThreshold)
+                    startNewGeneration();
+            }
+        } catch (IOException e) {
+            failure = e;
+            batch.forEach(pendingRecord -> pendingRecord.durable().completeExceptionally(e));
+        } finally {
+            PendingRecord record;
+            while ((record = pendingRecords.poll()) != null)
+                record.durable().completeExceptionally(failure != null ? failure : new IOException("The pantry is closed"));
+            try {
+                channel.close();
+            } catch (IOException e) {
+                if (failure == null)
+                    failure = e;
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingRecord> batch) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+        long size = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.wrap(batch.get(i).bytes());
+            size += buffers[i].remaining();
+        }
+        long written = 0;
+        while (written < size)
+            written += channel.write(buffers);
+        channel.force(false);
+        generationSize += size;
+    }
+
+    /**
+     * Closes the current generation, starts the next one, and compacts the
+     * closed ones in the background.
+     */
+    private void startNewGeneration() throws IOException {
+        // while a compaction runs, the current generation keeps growing
+        if (isCompacting.get())
+            return;
+        channel.close();
+        generation++;
+        generationSize = 0;
+        channel = openGeneration(generation);
+        startCompaction(generation);
+    }
+
+    /**
+     * Compacts the generations before the given one in the background,
+     * unless a compaction is already running.
+     */
+    private void startCompaction(long endGeneration) {
+        if (! isCompacting.compareAndSet(false, true))
+            return;
+        compaction = Thread.ofPlatform().daemon().name("pantry-compaction-" + directory.getFileName()).start(() -> {
+            try {
+                compact(checkpointGeneration, endGeneration);
+            } catch (IOException | UncheckedIOException e) {
+                // the log stays as it is, and is compacted with the next generation
+                System.err.println("Cannot compact the pantry " + directory + ": " + e.getMessage());
+            } finally {
+                isCompacting.set(false);
+            }
+        });
+    }
+
+    /**
+     * Folds the checkpoint and the generations before the given one into a
+     * new checkpoint, then deletes them.
+     */
+    private void compact(long firstGeneration, long endGeneration) throws IOException {
+        Map<String, IngredientAmount> stock = new HashMap<>();
+        Path checkpointFile = directory.resolve(CHECKPOINT_FILE);
+        readCheckpoint(checkpointFile, stock::put);
+        for (long logGeneration = firstGeneration; logGeneration < endGeneration; logGeneration++) {
+            Path logFile = getLogFile(directory, logGeneration);
+            if (Files.exists(logFile))
+                replay(logFile, stock::put);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(endGeneration);
+            // the ingredients that ran out are not recorded anymore
+            stock.values().removeIf(amount -> amount.scaledQuantity() == 0);
+            output.writeInt(stock.size());
+            for (Map.Entry<String, IngredientAmount> stockEntry : stock.entrySet()) {
+                output.writeUTF(stockEntry.getKey());
+                output.writeLong(stockEntry.getValue().scaledQuantity());
+                output.writeUTF(stockEntry.getValue().unit());
+            }
+        }
+        byte[] content = bytes.toByteArray();
+        Path temporaryFile = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel output = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(content.length + 4).put(content).putInt(checksum(content, 0, content.length));
+            buffer.flip();
+            while (buffer.hasRemaining())
+                output.write(buffer);
+            output.force(false);
+        }
+        Files.move(temporaryFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpointGeneration = endGeneration;
+        for (long logGeneration = firstGeneration; logGeneration < endGeneration; logGeneration++)
+            Files.deleteIfExists(getLogFile(directory, logGeneration));
+    }
+
+    private FileChannel openGeneration(long logGeneration) throws IOException {
+        return FileChannel.open(getLogFile(directory, logGeneration), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Reads a checkpoint, if it exists.
+     *
+     * @return the first generation of the log that is not in the checkpoint
+     */
+    private static long readCheckpoint(Path checkpointFile, BiConsumer<String, IngredientAmount> stock)
+            throws IOException {
+        if (! Files.exists(checkpointFile))
+            return 0;
+        byte[] content = Files.readAllBytes(checkpointFile);
+        if (content.length < 4 || ByteBuffer.wrap(content, content.length - 4, 4).getInt() != checksum(content, 0, content.length - 4))
+            throw new IOException("The pantry checkpoint " + checkpointFile + " is corrupted");
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(content, 0, content.length - 4))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION)
+                throw new IOException("The pantry checkpoint " + checkpointFile + " was written by another version of the program");
+            long checkpointGeneration = input.readLong();
+            int count = input.readInt();
+            for (int i = 0; i < count; i++)
+                stock.accept(input.readUTF(), new IngredientAmount(input.readLong(), input.readUTF()));
+            return checkpointGeneration;
+        }
+    }
+
+    /**
+     * Replays the records of a generation of the log. A record that was only
+     * partly written, and everything after it, is cut off the file.
+     */
+    private static void replay(Path logFile, BiConsumer<String, IngredientAmount> stock) throws IOException {
+        byte[] content = Files.readAllBytes(logFile);
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        int position = 0;
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int length = buffer.getInt(position);
+            int checksum = buffer.getInt(position + 4);
+            int start = position + RECORD_HEADER_SIZE;
+            if (length < 0 || length > content.length - start || checksum(content, start, length) != checksum)
+                break;
+            try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(content, start, length))) {
+                stock.accept(input.readUTF(), new IngredientAmount(input.readLong(), input.readUTF()));
+            } catch (EOFException e) {
+                break;
+            }
+            position = start + length;
+            buffer.position(position);
+        }
+        if (position < content.length) {
+            try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+                channel.truncate(position);
+            }
+        }
+    }
+
+    private static byte[] encodeRecord(String ingredientName, IngredientAmount stock) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(0);
+            output.writeInt(0);
+            output.writeUTF(ingredientName);
+            output.writeLong(stock.scaledQuantity());
+            output.writeUTF(stock.unit());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] record = bytes.toByteArray();
+        int length = record.length - RECORD_HEADER_SIZE;
+        ByteBuffer.wrap(record).putInt(length).putInt(checksum(record, RECORD_HEADER_SIZE, length));
+        return record;
+    }
+
+    private static List<Long> listGenerations(Path directory) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, LOG_PREFIX + "*" + LOG_EXTENSION)) {
+            for (Path entry : entries) {
+                String fileName = entry.getFileName().toString();
+                String number = fileName.substring(LOG_PREFIX.length(), fileName.length() - LOG_EXTENSION.length());
+                if (number.matches("\\d{1,18}"))
+                    generations.add(Long.parseLong(number));
+            }
+        }
+        generations.sort(null);
+        return generations;
+    }
+
+    private static Path getLogFile(Path directory, long logGeneration) {
+        return directory.resolve(LOG_PREFIX + "%012d".formatted(logGeneration) + LOG_EXTENSION);
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+
+
+
+    /**
+     * A record waiting to be written.
+     *
+     * @param bytes the record, with its header
+     * @param durable completed once the record is durable
+     */
+    private record PendingRecord(byte[] bytes, CompletableFuture<Void> durable) {
+    }
+}
@@ -0,0 +1,176 @@
+package com.foodshoppinglist;
+
+import java.util.BitSet;
+
+/**
+ * A parser of meals selections, as entered by the user.
+ * <p/>
+ * A selection is a blank line or a sequence of blank-separated items, each
+ * item being a meal number (such as <code>3</code>), an inclusive range of
+ * meal numbers (such as <code>3-17</code>), or a query between double quotes
+ * (such as <code>"pates tofu"</code>) that selects the meal that best matches
+ * it (see {@link MealSearchIndex}). Numbers start at 1 and have no leading
+ * zero (except the number 0 itself, which is never valid).
+ * <p/>
+ * The input is read in a single pass, and the selected meals are written into
+ * a bitset that is reused from one call to the next: once the bitset has
+ * grown to the number of available meals, parsing a valid selection allocates
+ * nothing. A parser must therefore not be shared between threads.
+ */
+public class SelectionParser {
+
+    static final String INVALID_FORMAT_MESSAGE = "The input must be numbers, ranges of numbers or names between double quotes, separated by spaces.";
+    static final String OUT_OF_BOUNDS_MESSAGE = "The numbers must be part of those proposed.";
+    static final String NO_MATCH_MESSAGE = "No meal matches ";
+
+    /** The selected meals, as indexes (meal number - 1). */
+    private final BitSet selection = new BitSet();
+
+    // the state of the current parsing
+    private CharSequence input;
+    private int position;
+
+
+
+
+    /**
+     * Parses a selection.
+     * <p/>
+     * The returned bitset is owned by the parser, and is only valid until the
+     * next call.
+     *
+     * @param userInput the user input
+     * @param availableMealsCount the number of available meals
+     * @return the indexes (meal number - 1) of the selected meals
+     * @throws InvalidUserInputException if the input is not a valid selection,
+     * or if a number is not the number of an available meal
+     */
+    public BitSet parse(CharSequence userInput, int availableMealsCount) throws InvalidUserInputException {
+        return parse(userInput, availableMealsCount, null);
+    }
+
+    /**
+     * Parses a selection that may contain queries.
+     * <p/>
+     * The returned bitset is owned by the parser, and is only valid until the
+     * next call.
+     *
+     * @param userInput the user input
+     * @param availableMealsCount the number of available meals
+     * @param searchIndex the index of the available meals, or null if queries
+     *                    are not accepted
+     * @return the indexes (meal number - 1) of the selected meals
+     * @throws InvalidUserInputException if the input is not a valid selection,
+     * if a number is not the number of an available meal, or if no meal
+     * matches a query
+     */
+    public BitSet parse(CharSequence userInput, int availableMealsCount, MealSearchIndex searchIndex)
+            throws InvalidUserInputException {
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.PARSE_SELECTION)) {
+            return parseSelection(userInput, availableMealsCount, searchIndex);
+        }
+    }
+
+    private BitSet parseSelection(CharSequence userInput, int availableMealsCount, MealSearchIndex searchIndex)
+            throws InvalidUserInputException {
+        selection.clear();
+        input = userInput;
+        position = 0;
+        // a format error is reported even if it comes after an out-of-bounds number or an unmatched query
+        boolean isOutOfBounds = false;
+        String unmatchedQuery = null;
+
+        try {
+            skipBlanks();
+            while (position < input.length()) {
+                if (searchIndex != null && input.charAt(position) == '"') {
+                    CharSequence query = readQuery();
+                    int ordinal = searchIndex.bestMatch(query);
+                    if (ordinal < 0 && unmatchedQuery == null)
+                        unmatchedQuery = query.toString();
+                    else if (ordinal >= 0)
+                        selection.set(ordinal);
+                    continue;
+                }
+                long first = readNumber();
+                long last = first;
+                if (position < input.length() && input.charAt(position) == '-') {
+                    position++;
+                    last = readNumber();
+                }
+                if (position < input.length() && ! isBlank(input.charAt(position)))
+                    throw new InvalidUserInputException(INVALID_FORMAT_MESSAGE);
+                skipBlanks();
+
+                long from = Math.min(first, last);
+                long to = Math.max(first, last);
+                if (from < 1 || to > availableMealsCount)
+                    isOutOfBounds = true;
+                else if (! isOutOfBounds)
+                    selection.set((int) from - 1, (int) to);
+            }
+        } finally {
+            input = null;
+        }
+
+        if (isOutOfBounds)
+            throw new InvalidUserInputException(OUT_OF_BOUNDS_MESSAGE);
+        if (unmatchedQuery != null)
+            throw new InvalidUserInputException(NO_MATCH_MESSAGE + "\"" + unmatchedQuery + "\".");
+        return selection;
+    }
+
+    /**
+     * Reads a query between double quotes at the current position, and the
+     * blanks that follow it.
+     *
+     * @return the query, without the quotes
+     * @throws InvalidUserInputException if the query is not closed, or is not
+     * followed by a blank
+     */
+    private CharSequence readQuery() throws InvalidUserInputException {
+        int start = position + 1;
+        int end = start;
+        while (end < input.length() && input.charAt(end) != '"')
+            end++;
+        position = end + 1;
+        if (end == input.length() || (position < input.length() && ! isBlank(input.charAt(position))))
+            throw new InvalidUserInputException(INVALID_FORMAT_MESSAGE);
+        skipBlanks();
+        return input.subSequence(start, end);
+    }
+
+    /**
+     * Reads a number at the current position.
+     *
+     * @return the number, or <code>Long.MAX_VALUE</code> if it is too large to
+     * be the number of a meal
+     * @throws InvalidUserInputException if there's no correctly written number
+     * at the current position
+     */
+    private long readNumber() throws InvalidUserInputException {
+        int start = position;
+        long number = 0;
+        while (position < input.length() && isDigit(input.charAt(position))) {
+            number = number > Integer.MAX_VALUE ? Long.MAX_VALUE : number * 10 + (input.charAt(position) - '0');
+            position++;
+        }
+        int length = position - start;
+        if (length == 0 || (length > 1 && input.charAt(start) == '0'))
+            throw new InvalidUserInputException(INVALID_FORMAT_MESSAGE);
+        return number;
+    }
+
+    private void skipBlanks() {
+        while (position < input.length() && isBlank(input.charAt(position)))
+            position++;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\t';
+    }
+}
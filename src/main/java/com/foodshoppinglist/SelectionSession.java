@@ -0,0 +1,209 @@
+package com.foodshoppinglist;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A selection of meals that is edited one meal at a time, with the running
+ * totals of its shopping list.
+ * <p/>
+ * Each meal of the selection has a number of servings. Adding or removing
+ * servings of a meal only applies the quantities of the ingredients of that
+ * meal to the totals, so an edit costs as much as the meal has ingredients,
+ * whatever the size of the selection.
+ * <p/>
+ * The totals are kept as fixed-point integers, in thousandths of the unit of
+ * each ingredient (see {@link FixedPoint}), so they stay exact after any
+ * number of edits.
+ * <p/>
+ * A session is bound to the catalogue it was opened on, and must not be used
+ * by several threads at the same time.
+ */
+public class SelectionSession {
+
+    private final MealCatalogue catalogue;
+    /** The servings of each meal, by ordinal. */
+    private final int[] servings;
+    /** The total of each ingredient, in thousandths of its unit. */
+    private final long[] totals;
+    /** The number of selected meals that use each ingredient. */
+    private final int[] ingredientsUsesCounts;
+    /** The ingredients used by at least one selected meal. */
+    private final BitSet requiredIngredients = new BitSet();
+    /** The number of selected meals (with at least one serving). */
+    private int selectedMealsCount = 0;
+
+
+
+
+    /**
+     * Builds an empty <code>SelectionSession</code>.
+     *
+     * @param catalogue the catalogue of the meals
+     */
+    public SelectionSession(MealCatalogue catalogue) {
+        this.catalogue = catalogue;
+        this.servings = new int[catalogue.getMealsCount()];
+        this.totals = new long[catalogue.getIngredientsCount()];
+        this.ingredientsUsesCounts = new int[catalogue.getIngredientsCount()];
+    }
+
+
+
+
+    /**
+     * Returns the catalogue of the meals of this session.
+     *
+     * @return the catalogue of the meals of this session
+     */
+    public MealCatalogue getCatalogue() {
+        return catalogue;
+    }
+
+    /**
+     * Adds one serving of a meal.
+     *
+     * @param mealName the name of the meal
+     * @throws IllegalArgumentException if there's no such meal
+     * @throws ArithmeticException if the number of servings, or a total,
+     * would not fit anymore; the session is then left unchanged
+     */
+    public void add(String mealName) {
+        int ordinal = getOrdinal(mealName);
+        setServings(ordinal, Math.addExact(servings[ordinal], 1));
+    }
+
+    /**
+     * Removes one serving of a meal.
+     *
+     * @param mealName the name of the meal
+     * @return false if the meal was not selected
+     * @throws IllegalArgumentException if there's no such meal
+     */
+    public boolean remove(String mealName) {
+        int ordinal = getOrdinal(mealName);
+        if (servings[ordinal] == 0)
+            return false;
+        setServings(ordinal, servings[ordinal] - 1);
+        return true;
+    }
+
+    /**
+     * Sets the number of servings of a meal; 0 removes the meal from the
+     * selection.
+     *
+     * @param mealName the name of the meal
+     * @param servings the number of servings
+     * @throws IllegalArgumentException if there's no such meal, or if the
+     * number of servings is negative
+     * @throws ArithmeticException if a total would not fit in a
+     * <code>long</code>; the session is then left unchanged
+     */
+    public void setServings(String mealName, int servings) {
+        if (servings < 0)
+            throw new IllegalArgumentException("The number of servings must not be negative: " + servings);
+        setServings(getOrdinal(mealName), servings);
+    }
+
+    /**
+     * Returns the number of servings of a meal.
+     *
+     * @param mealName the name of the meal
+     * @return the number of servings of the meal, 0 if it is not selected
+     * @throws IllegalArgumentException if there's no such meal
+     */
+    public int getServings(String mealName) {
+        return servings[getOrdinal(mealName)];
+    }
+
+    /**
+     * Returns the names of the selected meals, in alphabetical order.
+     *
+     * @return the names of the selected meals, each once whatever its number
+     * of servings
+     */
+    public List<String> getSelectedMealsNames() {
+        List<String> selectedMealsNames = new ArrayList<>(selectedMealsCount);
+        for (int ordinal = 0; ordinal < servings.length && selectedMealsNames.size() < selectedMealsCount; ordinal++) {
+            if (servings[ordinal] > 0)
+                selectedMealsNames.add(catalogue.getMealName(ordinal));
+        }
+        return Collections.unmodifiableList(selectedMealsNames);
+    }
+
+    /**
+     * Returns the total quantity of an ingredient, in thousandths of its
+     * unit.
+     *
+     * @param ingredientName the name of the ingredient
+     * @return the exact total quantity of the ingredient, in thousandths of
+     * its unit, or 0 if it is not required
+     */
+    public long getScaledTotal(String ingredientName) {
+        int id = catalogue.getIngredientId(ingredientName);
+        return id >= 0 ? totals[id] : 0;
+    }
+
+    /**
+     * Returns the current shopping list.
+     * <p/>
+     * The returned map is a copy: it doesn't change with the session.
+     *
+     * @return a map associating each required ingredient to its total amount,
+     * in the lexicographic order of the ingredients names
+     */
+    public Map<String, IngredientAmount> snapshot() {
+        Map<String, IngredientAmount> result = LinkedHashMap.newLinkedHashMap(requiredIngredients.cardinality());
+        // ingredients ids follow the lexicographic order of their names
+        for (int id = requiredIngredients.nextSetBit(0); id >= 0; id = requiredIngredients.nextSetBit(id + 1)) {
+            result.put(
+                    catalogue.getIngredientName(id),
+                    new IngredientAmount(totals[id], catalogue.getIngredientUnit(id))
+            );
+        }
+        return result;
+    }
+
+    private int getOrdinal(String mealName) {
+        int ordinal = catalogue.getMealOrdinal(mealName);
+        if (ordinal < 0)
+            throw new IllegalArgumentException("No such meal: " + mealName);
+        return ordinal;
+    }
+
+    /**
+     * Sets the number of servings of a meal, applying the difference to the
+     * totals of its ingredients. The totals are checked before any of them
+     * changes, so that an overflow leaves the session as it was.
+     */
+    private void setServings(int ordinal, int newServings) {
+        int previousServings = servings[ordinal];
+        if (newServings == previousServings)
+            return;
+        long delta = (long) newServings - previousServings;
+        long[] newTotals = new long[catalogue.getEndLine(ordinal) - catalogue.getFirstLine(ordinal)];
+        for (int line = catalogue.getFirstLine(ordinal); line < catalogue.getEndLine(ordinal); line++) {
+            int id = catalogue.getLineIngredient(line);
+            newTotals[line - catalogue.getFirstLine(ordinal)] =
+                    Math.addExact(totals[id], Math.multiplyExact(delta, catalogue.getLineQuantity(line)));
+        }
+
+        servings[ordinal] = newServings;
+        // whether the meal enters or leaves the selection
+        int usesDelta = previousServings == 0 ? 1 : newServings == 0 ? -1 : 0;
+        selectedMealsCount += usesDelta;
+
+        for (int line = catalogue.getFirstLine(ordinal); line < catalogue.getEndLine(ordinal); line++) {
+            int id = catalogue.getLineIngredient(line);
+            totals[id] = newTotals[line - catalogue.getFirstLine(ordinal)];
+            if (usesDelta != 0) {
+                ingredientsUsesCounts[id] += usesDelta;
+                requiredIngredients.set(id, ingredientsUsesCounts[id] > 0);
+            }
+        }
+    }
+}
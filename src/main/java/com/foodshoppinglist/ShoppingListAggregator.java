@@ -0,0 +1,167 @@
+package com.foodshoppinglist;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sums the ingredients of meals into shopping lists.
+ * <p/>
+ * The catalogue has already converted the quantities of each ingredient to a
+ * single unit, so the quantities are summed without any unit conversion, as
+ * exact fixed-point integers (see {@link FixedPoint}); a total that doesn't
+ * fit in a <code>long</code> fails the aggregation rather than wrapping
+ * around. A meal that appears several times is counted as many times.
+ * <p/>
+ * An aggregator reuses its buffers from one call to the next (they grow with
+ * the number of ingredients of the catalogue), so an aggregator must not be
+ * used by several threads at the same time: concurrent callers each use their
+ * own aggregator.
+ */
+public class ShoppingListAggregator {
+
+    /** The message that reports a total that doesn't fit in a <code>long</code>. */
+    public static final String OVERFLOW_MESSAGE = "The quantities are too large.";
+
+    // The buffers used by the aggregation, kept between calls, and grown when
+    // a catalogue has more ingredients.
+    /** The running total of each ingredient, in thousandths of its unit. */
+    private long[] totals = new long[0];
+    /** Whether each ingredient is part of the current aggregation. */
+    private boolean[] isRequired = new boolean[0];
+    /** The ingredients that are part of the current aggregation. */
+    private int[] requiredIngredients = new int[0];
+    /** The number of ingredients that are part of the current aggregation. */
+    private int requiredIngredientsCount = 0;
+
+
+
+
+    /**
+     * Returns the ingredients required by the given meals, with their total
+     * amounts.
+     *
+     * @param catalogue the catalogue of the meals
+     * @param mealsNames the names of the meals
+     * @return a map associating each required ingredient to its total amount,
+     * in the lexicographic order of the ingredients names
+     * @throws IllegalArgumentException if a name is not the name of a meal of
+     * the catalogue
+     * @throws ArithmeticException if a total doesn't fit in a <code>long</code>
+     */
+    public Map<String, IngredientAmount> aggregate(MealCatalogue catalogue, Collection<String> mealsNames) {
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.AGGREGATE)) {
+            return aggregateMeals(catalogue, mealsNames);
+        }
+    }
+
+    /**
+     * Returns the ingredients required by the given meals, with their total
+     * amounts.
+     *
+     * @param catalogue the catalogue of the meals
+     * @param mealsOrdinals the ordinals of the meals in the catalogue
+     * @return a map associating each required ingredient to its total amount,
+     * in the lexicographic order of the ingredients names
+     * @throws IndexOutOfBoundsException if an ordinal is not the ordinal of a
+     * meal of the catalogue
+     * @throws ArithmeticException if a total doesn't fit in a <code>long</code>
+     */
+    public Map<String, IngredientAmount> aggregate(MealCatalogue catalogue, BitSet mealsOrdinals) {
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.AGGREGATE)) {
+            return aggregateMeals(catalogue, mealsOrdinals);
+        }
+    }
+
+    private Map<String, IngredientAmount> aggregateMeals(MealCatalogue catalogue, Collection<String> mealsNames) {
+        allocateBuffers(catalogue.getIngredientsCount());
+        try {
+            for (String mealName : mealsNames) {
+                int ordinal = catalogue.getMealOrdinal(mealName);
+                if (ordinal < 0)
+                    throw new IllegalArgumentException("No such meal: " + mealName);
+                addToTotals(catalogue, ordinal);
+            }
+            return collectTotals(catalogue);
+        } finally {
+            resetTotals();
+        }
+    }
+
+    private Map<String, IngredientAmount> aggregateMeals(MealCatalogue catalogue, BitSet mealsOrdinals) {
+        allocateBuffers(catalogue.getIngredientsCount());
+        try {
+            for (int ordinal = mealsOrdinals.nextSetBit(0); ordinal >= 0; ordinal = mealsOrdinals.nextSetBit(ordinal + 1))
+                addToTotals(catalogue, ordinal);
+            return collectTotals(catalogue);
+        } finally {
+            resetTotals();
+        }
+    }
+
+    /**
+     * Makes sure that the aggregation buffers can hold the given number of
+     * ingredients.
+     *
+     * @param ingredientsCount the number of ingredients of the catalogue
+     */
+    private void allocateBuffers(int ingredientsCount) {
+        if (totals.length >= ingredientsCount)
+            return;
+        totals = new long[ingredientsCount];
+        isRequired = new boolean[ingredientsCount];
+        requiredIngredients = new int[ingredientsCount];
+    }
+
+    /**
+     * Adds the ingredients of a meal to the running totals.
+     *
+     * @param catalogue the catalogue of the meal
+     * @param ordinal the ordinal of the meal
+     * @throws ArithmeticException if a total doesn't fit in a <code>long</code>
+     */
+    private void addToTotals(MealCatalogue catalogue, int ordinal) {
+        for (int line = catalogue.getFirstLine(ordinal); line < catalogue.getEndLine(ordinal); line++) {
+            int id = catalogue.getLineIngredient(line);
+            if (! isRequired[id]) {
+                isRequired[id] = true;
+                requiredIngredients[requiredIngredientsCount++] = id;
+            }
+            totals[id] = Math.addExact(totals[id], catalogue.getLineQuantity(line));
+        }
+    }
+
+    /**
+     * Returns the running totals as a map.
+     *
+     * @param catalogue the catalogue of the aggregated meals
+     * @return a map associating each required ingredient to its total amount,
+     * in the lexicographic order of the ingredients names
+     */
+    private Map<String, IngredientAmount> collectTotals(MealCatalogue catalogue) {
+        // ingredients ids follow the lexicographic order of their names
+        Arrays.sort(requiredIngredients, 0, requiredIngredientsCount);
+        Map<String, IngredientAmount> result = LinkedHashMap.newLinkedHashMap(requiredIngredientsCount);
+        for (int i = 0; i < requiredIngredientsCount; i++) {
+            int id = requiredIngredients[i];
+            result.put(
+                    catalogue.getIngredientName(id),
+                    new IngredientAmount(totals[id], catalogue.getIngredientUnit(id))
+            );
+        }
+        return result;
+    }
+
+    /**
+     * Resets the running totals for the next aggregation.
+     */
+    private void resetTotals() {
+        for (int i = 0; i < requiredIngredientsCount; i++) {
+            totals[requiredIngredients[i]] = 0;
+            isRequired[requiredIngredients[i]] = false;
+        }
+        requiredIngredientsCount = 0;
+    }
+}
@@ -0,0 +1,324 @@
+package com.foodshoppinglist;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The shopping lists of many selections of meals of the same catalogue,
+ * computed together.
+ * <p/>
+ * Seen as matrices, the selections are a sparse (selection &times; meal)
+ * matrix of 0 and 1, the catalogue is a sparse (meal &times; ingredient)
+ * matrix of quantities (its lines), and the shopping lists are their
+ * product. The product is computed row by row: the lines of the selected
+ * meals are summed into a dense accumulator indexed by ingredient id, whose
+ * non-zero entries are then gathered into the sparse row of the selection.
+ * <p/>
+ * The selections are split into tiles of {@link #SELECTIONS_PER_TILE}
+ * consecutive selections, computed in parallel on a fork/join pool. A tile
+ * is computed by one thread with one accumulator, which stays in the cache
+ * of its processor from one selection to the next; the accumulators are
+ * reused from one tile to the next, so there are no more of them than
+ * threads. The quantities are summed as exact fixed-point integers (see
+ * {@link FixedPoint}), so the shopping lists are exactly the ones of
+ * {@link ShoppingListAggregator}, whatever the number of threads.
+ * <p/>
+ * The rows are stored one after the other in flat arrays, and turned into
+ * maps only on demand, by {@link #getShoppingList(int)}.
+ */
+public class ShoppingListBatch {
+
+    /** The number of consecutive selections computed by one task. */
+    static final int SELECTIONS_PER_TILE = 64;
+
+    private final MealCatalogue catalogue;
+    /** The position of the first ingredient of each selection, followed by the number of ingredients. */
+    private final int[] offsets;
+    /** The required ingredients of the selections, in the order of their ids within a selection. */
+    private final int[] ingredientsIds;
+    /** The total quantity of each required ingredient, in thousandths of its unit. */
+    private final long[] quantities;
+
+
+
+
+    private ShoppingListBatch(MealCatalogue catalogue, int[] offsets, int[] ingredientsIds, long[] quantities) {
+        this.catalogue = catalogue;
+        this.offsets = offsets;
+        this.ingredientsIds = ingredientsIds;
+        this.quantities = quantities;
+    }
+
+
+
+
+    /**
+     * Computes the shopping lists of several selections of meals.
+     *
+     * @param catalogue the catalogue of the meals
+     * @param selections the ordinals of the meals of each selection
+     * @param pool the pool that runs the tiles
+     * @return the shopping lists of the selections, in the order of the
+     * selections
+     * @throws IndexOutOfBoundsException if an ordinal is not the ordinal of a
+     * meal of the catalogue
+     * @throws ArithmeticException if a total of a selection doesn't fit in a
+     * <code>long</code>
+     */
+    public static ShoppingListBatch aggregate(MealCatalogue catalogue, List<BitSet> selections, ForkJoinPool pool) {
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.AGGREGATE_BATCH)) {
+            BitSet[] selectionsArray = selections.toArray(BitSet[]::new);
+            Tile[] tiles = new Tile[Math.ceilDiv(selectionsArray.length, SELECTIONS_PER_TILE)];
+            if (tiles.length > 0) {
+                pool.invoke(new TilesTask(
+                        catalogue, selectionsArray, tiles, 0, tiles.length, new ConcurrentLinkedQueue<>()
+                ));
+            }
+            return concatenate(catalogue, selectionsArray.length, tiles);
+        }
+    }
+
+
+
+
+    /**
+     * Returns the catalogue of the meals of the selections.
+     *
+     * @return the catalogue of the meals
+     */
+    public MealCatalogue getCatalogue() {
+        return catalogue;
+    }
+
+    /**
+     * Returns the number of selections.
+     *
+     * @return the number of selections
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Returns the number of ingredients required by a selection.
+     *
+     * @param selection the position of the selection
+     * @return the number of required ingredients
+     */
+    public int getIngredientsCount(int selection) {
+        return offsets[selection + 1] - offsets[selection];
+    }
+
+    /**
+     * Returns the id, in the catalogue, of a required ingredient of a
+     * selection.
+     *
+     * @param selection the position of the selection
+     * @param index the position of the ingredient in the shopping list of the
+     *              selection, in the order of the ingredients ids
+     * @return the id of the ingredient
+     */
+    public int getIngredientId(int selection, int index) {
+        return ingredientsIds[offsets[selection] + Objects.checkIndex(index, getIngredientsCount(selection))];
+    }
+
+    /**
+     * Returns the total quantity of a required ingredient of a selection, in
+     * the unit of the ingredient in the catalogue.
+     *
+     * @param selection the position of the selection
+     * @param index the position of the ingredient in the shopping list of the
+     *              selection, in the order of the ingredients ids
+     * @return the total quantity, in thousandths of the unit
+     */
+    public long getQuantity(int selection, int index) {
+        return quantities[offsets[selection] + Objects.checkIndex(index, getIngredientsCount(selection))];
+    }
+
+    /**
+     * Returns the shopping list of a selection, as returned by
+     * {@link ShoppingListAggregator#aggregate(MealCatalogue, BitSet)}.
+     *
+     * @param selection the position of the selection
+     * @return a map associating each required ingredient to its total amount,
+     * in the lexicographic order of the ingredients names
+     */
+    public Map<String, IngredientAmount> getShoppingList(int selection) {
+        int start = offsets[selection];
+        int end = offsets[selection + 1];
+        Map<String, IngredientAmount> shoppingList = LinkedHashMap.newLinkedHashMap(end - start);
+        for (int i = start; i < end; i++) {
+            int id = ingredientsIds[i];
+            shoppingList.put(
+                    catalogue.getIngredientName(id),
+                    new IngredientAmount(quantities[i], catalogue.getIngredientUnit(id))
+            );
+        }
+        return shoppingList;
+    }
+
+
+
+
+    /**
+     * Puts the rows of the tiles one after the other.
+     */
+    private static ShoppingListBatch concatenate(MealCatalogue catalogue, int selectionsCount, Tile[] tiles) {
+        int[] offsets = new int[selectionsCount + 1];
+        int ingredientsCount = 0;
+        for (Tile tile : tiles)
+            ingredientsCount += tile.offsets[tile.offsets.length - 1];
+        int[] ingredientsIds = new int[ingredientsCount];
+        long[] quantities = new long[ingredientsCount];
+        int selection = 0;
+        int position = 0;
+        for (Tile tile : tiles) {
+            for (int i = 0; i < tile.offsets.length - 1; i++)
+                offsets[selection++] = position + tile.offsets[i];
+            int tileIngredientsCount = tile.offsets[tile.offsets.length - 1];
+            System.arraycopy(tile.ingredientsIds, 0, ingredientsIds, position, tileIngredientsCount);
+            System.arraycopy(tile.quantities, 0, quantities, position, tileIngredientsCount);
+            position += tileIngredientsCount;
+        }
+        offsets[selectionsCount] = position;
+        return new ShoppingListBatch(catalogue, offsets, ingredientsIds, quantities);
+    }
+
+
+
+
+    /**
+     * The shopping lists of the selections of a tile, in the same layout as
+     * the batch, with offsets relative to the tile.
+     */
+    private record Tile(int[] offsets, int[] ingredientsIds, long[] quantities) {
+    }
+
+    /**
+     * A dense accumulator of the totals of the ingredients of a catalogue,
+     * and the list of the ingredients it holds.
+     */
+    private static class Accumulator {
+
+        private final long[] totals;
+        private final boolean[] isRequired;
+        private final int[] requiredIngredients;
+        private int requiredIngredientsCount = 0;
+
+        Accumulator(int ingredientsCount) {
+            totals = new long[ingredientsCount];
+            isRequired = new boolean[ingredientsCount];
+            requiredIngredients = new int[ingredientsCount];
+        }
+    }
+
+    /**
+     * Computes a range of tiles, split in two until there's only one.
+     */
+    private static class TilesTask extends RecursiveAction {
+
+        private final MealCatalogue catalogue;
+        private final BitSet[] selections;
+        private final Tile[] tiles;
+        private final int start;
+        private final int end;
+        /** The accumulators that are not used by a tile, shared by all the tasks of the batch. */
+        private final Queue<Accumulator> accumulators;
+
+        TilesTask(MealCatalogue catalogue, BitSet[] selections, Tile[] tiles, int start, int end,
+                  Queue<Accumulator> accumulators) {
+            this.catalogue = catalogue;
+            this.selections = selections;
+            this.tiles = tiles;
+            this.start = start;
+            this.end = end;
+            this.accumulators = accumulators;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > 1) {
+                int middle = (start + end) >>> 1;
+                invokeAll(
+                        new TilesTask(catalogue, selections, tiles, start, middle, accumulators),
+                        new TilesTask(catalogue, selections, tiles, middle, end, accumulators)
+                );
+                return;
+            }
+
+            Accumulator accumulator = accumulators.poll();
+            if (accumulator == null)
+                accumulator = new Accumulator(catalogue.getIngredientsCount());
+            try {
+                tiles[start] = computeTile(accumulator);
+            } finally {
+                accumulators.add(accumulator);
+            }
+        }
+
+        private Tile computeTile(Accumulator accumulator) {
+            int firstSelection = start * SELECTIONS_PER_TILE;
+            int endSelection = Math.min(firstSelection + SELECTIONS_PER_TILE, selections.length);
+            int[] offsets = new int[endSelection - firstSelection + 1];
+            int[] ingredientsIds = new int[64];
+            long[] quantities = new long[64];
+            int position = 0;
+            for (int selection = firstSelection; selection < endSelection; selection++) {
+                offsets[selection - firstSelection] = position;
+                try {
+                    addToTotals(accumulator, selections[selection]);
+                    int count = accumulator.requiredIngredientsCount;
+                    if (position + count > ingredientsIds.length) {
+                        int length = Math.max(position + count, 2 * ingredientsIds.length);
+                        ingredientsIds = Arrays.copyOf(ingredientsIds, length);
+                        quantities = Arrays.copyOf(quantities, length);
+                    }
+                    // ingredients ids follow the lexicographic order of their names
+                    Arrays.sort(accumulator.requiredIngredients, 0, count);
+                    for (int i = 0; i < count; i++) {
+                        int id = accumulator.requiredIngredients[i];
+                        ingredientsIds[position] = id;
+                        quantities[position++] = accumulator.totals[id];
+                    }
+                } finally {
+                    resetTotals(accumulator);
+                }
+            }
+            offsets[offsets.length - 1] = position;
+            return new Tile(offsets, ingredientsIds, quantities);
+        }
+
+        private void addToTotals(Accumulator accumulator, BitSet selection) {
+            long[] totals = accumulator.totals;
+            boolean[] isRequired = accumulator.isRequired;
+            int[] requiredIngredients = accumulator.requiredIngredients;
+            for (int ordinal = selection.nextSetBit(0); ordinal >= 0; ordinal = selection.nextSetBit(ordinal + 1)) {
+                int endLine = catalogue.getEndLine(ordinal);
+                for (int line = catalogue.getFirstLine(ordinal); line < endLine; line++) {
+                    int id = catalogue.getLineIngredient(line);
+                    if (! isRequired[id]) {
+                        isRequired[id] = true;
+                        requiredIngredients[accumulator.requiredIngredientsCount++] = id;
+                    }
+                    totals[id] = Math.addExact(totals[id], catalogue.getLineQuantity(line));
+                }
+            }
+        }
+
+        private static void resetTotals(Accumulator accumulator) {
+            for (int i = 0; i < accumulator.requiredIngredientsCount; i++) {
+                accumulator.totals[accumulator.requiredIngredients[i]] = 0;
+                accumulator.isRequired[accumulator.requiredIngredients[i]] = false;
+            }
+            accumulator.requiredIngredientsCount = 0;
+        }
+    }
+}
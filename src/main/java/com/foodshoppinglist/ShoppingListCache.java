@@ -0,0 +1,259 @@
+package com.foodshoppinglist;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A bounded cache of shopping lists, keyed by selection.
+ * <p/>
+ * A selection is a set of meal ordinals, so two selections that only differ
+ * by the order of the meals or by duplicates share the same entry; the key is
+ * the packed words of the bitset of the selection.
+ * <p/>
+ * The size of the cache is bounded by an estimate of the bytes its entries
+ * retain. When the bound is exceeded, entries are evicted with the CLOCK
+ * algorithm: each entry has a small saturating counter that each hit
+ * increments, and a hand sweeps the entries, decrementing the counters and
+ * evicting the first entry whose counter is zero. This approximates an LRU
+ * eviction that also favours frequently used entries, so a burst of
+ * selections used once doesn't flush the popular ones.
+ * <p/>
+ * The cache holds no lock: lookups and insertions go through a concurrent
+ * map, and a single thread at a time runs the eviction (the others don't wait
+ * for it, so the bound can be exceeded briefly). The entries are tied to a
+ * catalogue, and {@link #invalidateAll(MealCatalogue)} replaces them all at
+ * once when the catalogue is reloaded.
+ */
+public class ShoppingListCache {
+
+    /** The default bound of the cache, in bytes. */
+    public static final long DEFAULT_MAXIMUM_WEIGHT = 64L * 1024 * 1024;
+
+    /** The maximum value of the counters of the entries. */
+    private static final int MAX_FREQUENCY = 3;
+    /** The estimated bytes retained by an entry, besides its key words and ingredients. */
+    private static final long ENTRY_WEIGHT = 160;
+    /** The estimated bytes retained by each ingredient of a shopping list. */
+    private static final long INGREDIENT_WEIGHT = 80;
+
+    private final long maximumWeight;
+    /** The entries of the current catalogue. */
+    private final AtomicReference<Generation> generation;
+    /** Whether a thread is evicting entries. */
+    private final AtomicBoolean isEvicting = new AtomicBoolean();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+
+
+
+    /**
+     * Builds an empty <code>ShoppingListCache</code>.
+     *
+     * @param catalogue the catalogue of the shopping lists to cache
+     * @param maximumWeight the bound of the cache, in bytes
+     */
+    public ShoppingListCache(MealCatalogue catalogue, long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+        this.generation = new AtomicReference<>(new Generation(catalogue));
+    }
+
+
+
+
+    /**
+     * Returns the shopping list of a selection, from the cache or computed
+     * by the given aggregation.
+     * <p/>
+     * If the catalogue is not the one the cache is for (it has just been
+     * replaced), the shopping list is computed but not cached.
+     *
+     * @param catalogue the catalogue the selection refers to
+     * @param selection the ordinals of the selected meals
+     * @param aggregation computes the shopping list of a selection
+     * @return a read-only map associating each required ingredient to its
+     * total amount
+     */
+    public Map<String, IngredientAmount> get(
+            MealCatalogue catalogue,
+            BitSet selection,
+            Function<BitSet, Map<String, IngredientAmount>> aggregation) {
+        Generation generation = this.generation.get();
+        if (generation.catalogue != catalogue) {
+            misses.increment();
+            return Collections.unmodifiableMap(aggregation.apply(selection));
+        }
+
+        Key key = new Key(selection.toLongArray());
+        Entry entry = generation.entries.get(key);
+        if (entry != null) {
+            hits.increment();
+            entry.touch();
+            return entry.shoppingList;
+        }
+
+        misses.increment();
+        Map<String, IngredientAmount> shoppingList = Collections.unmodifiableMap(aggregation.apply(selection));
+        Entry newEntry = new Entry(
+                shoppingList, ENTRY_WEIGHT + 8L * key.words.length + INGREDIENT_WEIGHT * shoppingList.size()
+        );
+        if (newEntry.weight > maximumWeight)
+            return shoppingList;
+        Entry previousEntry = generation.entries.putIfAbsent(key, newEntry);
+        if (previousEntry != null)
+            return previousEntry.shoppingList;
+        if (generation.weight.addAndGet(newEntry.weight) > maximumWeight)
+            evict(generation);
+        return shoppingList;
+    }
+
+    /**
+     * Removes all the entries, and ties the cache to a new catalogue.
+     *
+     * @param catalogue the new catalogue
+     */
+    public void invalidateAll(MealCatalogue catalogue) {
+        generation.set(new Generation(catalogue));
+    }
+
+    /**
+     * Returns the statistics of the cache.
+     *
+     * @return the statistics of the cache
+     */
+    public Statistics getStatistics() {
+        Generation generation = this.generation.get();
+        return new Statistics(
+                hits.sum(), misses.sum(), evictions.sum(), generation.entries.size(), generation.weight.get()
+        );
+    }
+
+    /**
+     * Evicts entries until the cache is within its bound, unless another
+     * thread is already doing it.
+     */
+    private void evict(Generation generation) {
+        if (! isEvicting.compareAndSet(false, true))
+            return;
+        try {
+            while (generation.weight.get() > maximumWeight) {
+                if (generation.hand == null || ! generation.hand.hasNext()) {
+                    generation.hand = generation.entries.entrySet().iterator();
+                    if (! generation.hand.hasNext())
+                        return;
+                }
+                Map.Entry<Key, Entry> candidate = generation.hand.next();
+                Entry entry = candidate.getValue();
+                if (entry.frequency > 0) {
+                    entry.frequency--;
+                } else if (generation.entries.remove(candidate.getKey(), entry)) {
+                    generation.weight.addAndGet(-entry.weight);
+                    evictions.increment();
+                }
+            }
+        } finally {
+            isEvicting.set(false);
+        }
+    }
+
+    /**
+     * The statistics of a cache.
+     *
+     * @param hits the number of selections found in the cache
+     * @param misses the number of selections computed
+     * @param evictions the number of evicted entries
+     * @param entriesCount the number of entries
+     * @param weight the estimated bytes retained by the entries
+     */
+    public record Statistics(long hits, long misses, long evictions, int entriesCount, long weight) {
+
+        /**
+         * Returns the proportion of the selections found in the cache.
+         *
+         * @return the proportion of the selections found in the cache,
+         * between 0 and 1
+         */
+        public double hitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        @Override
+        public String toString() {
+            return "Cache: %d hits, %d misses (%.1f%% hits), %d evictions, %d entries, %d KiB".formatted(
+                    hits, misses, 100 * hitRate(), evictions, entriesCount, weight / 1024
+            );
+        }
+    }
+
+    /**
+     * The entries of the cache for one catalogue.
+     */
+    private static class Generation {
+
+        final MealCatalogue catalogue;
+        final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+        final AtomicLong weight = new AtomicLong();
+        /** The hand of the CLOCK, only used by the evicting thread. */
+        Iterator<Map.Entry<Key, Entry>> hand;
+
+        Generation(MealCatalogue catalogue) {
+            this.catalogue = catalogue;
+        }
+    }
+
+    /**
+     * A cached shopping list.
+     */
+    private static class Entry {
+
+        final Map<String, IngredientAmount> shoppingList;
+        final long weight;
+        /** Incremented by hits, decremented by the hand of the CLOCK (races only blur it). */
+        volatile int frequency;
+
+        Entry(Map<String, IngredientAmount> shoppingList, long weight) {
+            this.shoppingList = shoppingList;
+            this.weight = weight;
+        }
+
+        void touch() {
+            if (frequency < MAX_FREQUENCY)
+                frequency++;
+        }
+    }
+
+    /**
+     * The packed words of a selection bitset.
+     */
+    private static final class Key {
+
+        final long[] words;
+        final int hash;
+
+        Key(long[] words) {
+            this.words = words;
+            this.hash = Arrays.hashCode(words);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && hash == key.hash && Arrays.equals(words, key.words);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.foodshoppinglist;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A scripted run of the program, from which the build records the
+ * ahead-of-time cache of the packaged jar (the classes loaded and linked at
+ * startup, see the "Run the program" section of the README).
+ * <p/>
+ * The run lists the meals of a meals file, selects some of them by number
+ * and by name, and prints their shopping list, so that the cache covers the
+ * whole path of an interactive run.
+ */
+public class StartupTraining {
+
+    /** The selection entered during the run. */
+    private static final String USER_INPUT = "1 2-3 \"tofu\"\n";
+
+    /**
+     * Runs the program on a meals file.
+     *
+     * @param args the meals file
+     */
+    public static void main(String[] args) {
+        if (args.length != 1)
+            throw new IllegalArgumentException("Usage: StartupTraining <meals-file>");
+        System.setIn(new ByteArrayInputStream(USER_INPUT.getBytes(StandardCharsets.UTF_8)));
+        Main.main(args);
+    }
+}
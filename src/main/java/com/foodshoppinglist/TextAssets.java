@@ -0,0 +1,168 @@
+package com.foodshoppinglist;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * The text assets of the program, the messages printed to the user.
+ * <p/>
+ * The text assets are written in a YAML file of the program resources, which
+ * the build compiles into a compact binary resource next to it (see
+ * {@link #main(String[])}): the program then reads the compiled resource,
+ * without loading the YAML parser, which takes a large part of the start of
+ * the program. The compiled resource records the checksum of the YAML file
+ * it was compiled from, and is ignored if the YAML file has changed since
+ * (for instance when the resources are copied by an IDE that doesn't run
+ * the build), in which case the YAML file is parsed. A compiled resource
+ * that is stale or corrupted is reported on the standard error, and never
+ * prevents the program from starting.
+ */
+public class TextAssets {
+
+    /** The extension of the compiled text assets, appended to the name of the YAML file. */
+    public static final String COMPILED_EXTENSION = ".bin";
+
+    private static final int MAGIC = 0x464C5441; // "FLTA"
+    private static final int VERSION = 1;
+
+
+
+
+    /**
+     * Loads the text assets of a file of the program resources.
+     *
+     * @param textAssetsFile the YAML file, in the program resources, that
+     *                       contains the text assets
+     * @return a map associating each key to its text
+     * @throws FileFormatException if the file is not correctly formatted
+     */
+    public static Map<String, String> load(String textAssetsFile) throws FileFormatException {
+        byte[] source = readResource(textAssetsFile);
+        byte[] compiled = readResource(textAssetsFile + COMPILED_EXTENSION);
+        return load(textAssetsFile, source, compiled);
+    }
+
+    /**
+     * Loads the text assets of a file of the program resources, from their
+     * compiled form if it is up to date, or else from the YAML file.
+     *
+     * @param textAssetsFile the YAML file, in the program resources, that
+     *                       contains the text assets
+     * @param source the content of the YAML file, or null if there's none
+     * @param compiled the content of the compiled file, or null if there's
+     *                 none
+     * @return a map associating each key to its text
+     * @throws FileFormatException if the YAML file is not correctly formatted
+     */
+    static Map<String, String> load(String textAssetsFile, byte[] source, byte[] compiled) throws FileFormatException {
+        if (source != null && compiled != null) {
+            try {
+                Map<String, String> textAssets = read(compiled, source);
+                if (textAssets != null)
+                    return textAssets;
+                System.err.println("Ignoring the compiled text assets of " + textAssetsFile + ": they are out of date");
+            } catch (FileFormatException e) {
+                System.err.println("Ignoring the compiled text assets of " + textAssetsFile + ": " + e.getMessage());
+            }
+        }
+        Object content = Utils.readYamlFile(textAssetsFile, true);
+        FrontendHandler.checkFileFormat(textAssetsFile, content);
+        return (Map<String, String>) content;
+    }
+
+    /**
+     * Compiles a text assets file. The build calls this method on the text
+     * assets of the program resources, once they are copied.
+     *
+     * @param args the YAML file of the text assets, and the file to write the
+     *             compiled text assets into
+     * @throws FileFormatException if the YAML file is not correctly formatted
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void main(String[] args) throws FileFormatException, IOException {
+        if (args.length != 2)
+            throw new IllegalArgumentException("Usage: TextAssets <text-assets-file> <compiled-file>");
+        compile(Path.of(args[0]), Path.of(args[1]));
+    }
+
+    /**
+     * Checks and compiles a text assets file.
+     *
+     * @param textAssetsFile the YAML file of the text assets
+     * @param compiledFile the file to write the compiled text assets into
+     * @throws FileFormatException if the YAML file is not correctly formatted
+     * @throws IOException if a file cannot be read or written
+     */
+    static void compile(Path textAssetsFile, Path compiledFile) throws FileFormatException, IOException {
+        byte[] source = Files.readAllBytes(textAssetsFile);
+        Object content = Utils.newYaml().load(new ByteArrayInputStream(source));
+        FrontendHandler.checkFileFormat(textAssetsFile.toString(), content);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(checksum(source));
+            Map<String, String> textAssets = (Map<String, String>) content;
+            output.writeInt(textAssets.size());
+            for (Map.Entry<String, String> entry : textAssets.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeUTF(entry.getValue());
+            }
+        }
+        Files.write(compiledFile, bytes.toByteArray());
+    }
+
+    /**
+     * Reads compiled text assets.
+     *
+     * @param compiled the content of the compiled file
+     * @param source the content of the YAML file
+     * @return the text assets, or null if they were compiled by another
+     * version of the program or from another version of the YAML file
+     * @throws FileFormatException if the compiled file is corrupted
+     */
+    static Map<String, String> read(byte[] compiled, byte[] source) throws FileFormatException {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(compiled))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION || input.readInt() != checksum(source))
+                return null;
+            int count = input.readInt();
+            Map<String, String> textAssets = HashMap.newHashMap(count);
+            for (int i = 0; i < count; i++)
+                textAssets.put(input.readUTF(), input.readUTF());
+            return textAssets;
+        } catch (EOFException e) {
+            throw new FileFormatException("The compiled text assets are corrupted: truncated file");
+        } catch (IOException e) {
+            throw new FileFormatException("The compiled text assets are corrupted: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the content of a file of the program resources, or null if
+     * there's no such file.
+     */
+    private static byte[] readResource(String fileName) {
+        try (InputStream inputStream = Main.class.getClassLoader().getResourceAsStream(fileName)) {
+            return inputStream != null ? inputStream.readAllBytes() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,305 @@
+package com.foodshoppinglist;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The units that can be converted into one another.
+ * <p/>
+ * Each unit belongs to a dimension (mass, volume, count...), and has a size
+ * in the first unit of its dimension (its base unit). The registry is
+ * compiled from a YAML file into a dense conversion matrix of exact ratios,
+ * so that converting a quantity from a unit to another is one lookup and one
+ * multiplication, rounded once. Quantities of different units are added in a
+ * unit that divides both (see {@link #getCommonUnit(String, String)}), so
+ * that the conversions before the sum never round. The units that the
+ * registry doesn't know are only compatible with themselves.
+ */
+public class UnitRegistry {
+
+    /** The file, in the program resources, that defines the default units. */
+    public static final String DEFAULT_UNITS_FILE = "units.yaml";
+
+    /** The units, in lexicographic order. */
+    private final String[] units;
+    /** The dimension of each unit. */
+    private final String[] dimensions;
+    /** The size of each unit, in thousandths of the base unit of its dimension. */
+    private final long[] sizes;
+    /**
+     * The conversion ratios, as irreducible fractions: converting a quantity
+     * from the unit <code>u</code> to the unit <code>v</code> multiplies it by
+     * <code>conversionMatrix[2 * (u * units.length + v)]</code> and divides it
+     * by the next element, which is 0 if the units have different dimensions.
+     */
+    private final long[] conversionMatrix;
+    /**
+     * The unit that quantities in two units of the same dimension are added
+     * in: <code>commonUnits[u * units.length + v]</code> is the index of the
+     * largest unit whose size divides the sizes of <code>u</code> and
+     * <code>v</code>, or -1 if the units have different dimensions or if no
+     * unit divides both.
+     */
+    private final int[] commonUnits;
+
+
+
+
+    /**
+     * Builds a <code>UnitRegistry</code>.
+     *
+     * @param unitsSizes a map associating each dimension to a map associating
+     *                   each of its units to its size, in thousandths of the
+     *                   base unit of the dimension
+     */
+    UnitRegistry(Map<String, Map<String, Long>> unitsSizes) {
+        Map<String, String> unitsDimensions = new TreeMap<>();
+        Map<String, Long> sortedUnitsSizes = new TreeMap<>();
+        unitsSizes.forEach((dimension, dimensionUnits) -> dimensionUnits.forEach((unit, size) -> {
+            unitsDimensions.put(unit, dimension);
+            sortedUnitsSizes.put(unit, size);
+        }));
+        this.units = unitsDimensions.keySet().toArray(String[]::new);
+        this.dimensions = unitsDimensions.values().toArray(String[]::new);
+        this.sizes = sortedUnitsSizes.values().stream().mapToLong(Long::longValue).toArray();
+
+        this.conversionMatrix = new long[2 * units.length * units.length];
+        for (int from = 0; from < units.length; from++) {
+            for (int to = 0; to < units.length; to++) {
+                if (! dimensions[from].equals(dimensions[to]))
+                    continue;
+                long gcd = gcd(sizes[from], sizes[to]);
+                conversionMatrix[2 * (from * units.length + to)] = sizes[from] / gcd;
+                conversionMatrix[2 * (from * units.length + to) + 1] = sizes[to] / gcd;
+            }
+        }
+
+        this.commonUnits = new int[units.length * units.length];
+        Arrays.fill(commonUnits, -1);
+        for (int unit = 0; unit < units.length; unit++) {
+            for (int otherUnit = 0; otherUnit < units.length; otherUnit++) {
+                if (! dimensions[unit].equals(dimensions[otherUnit]))
+                    continue;
+                long gcd = gcd(sizes[unit], sizes[otherUnit]);
+                // the units are sorted, so the first of two units of the same size wins
+                for (int candidate = 0; candidate < units.length; candidate++) {
+                    int common = commonUnits[unit * units.length + otherUnit];
+                    if (dimensions[candidate].equals(dimensions[unit]) && gcd % sizes[candidate] == 0
+                            && (common < 0 || sizes[candidate] > sizes[common]))
+                        commonUnits[unit * units.length + otherUnit] = candidate;
+                }
+            }
+        }
+    }
+
+
+
+
+    /**
+     * Returns the registry of the units defined in {@link #DEFAULT_UNITS_FILE}.
+     *
+     * @return the default registry
+     */
+    public static UnitRegistry getDefault() {
+        return DefaultRegistryHolder.REGISTRY;
+    }
+
+    /**
+     * Builds a registry from the content of a units file.
+     *
+     * @param fileName the name of the file
+     * @param content the content of the file
+     * @return the registry
+     * @throws FileFormatException if the content is not correctly formatted
+     */
+    public static UnitRegistry of(String fileName, Object content) throws FileFormatException {
+        String errorPrefix = "Error in " + fileName + ": ";
+
+        if (! (content instanceof Map<?, ?> dimensions))
+            throw new FileFormatException(errorPrefix + "the root element is not a dictionary");
+        Map<String, Map<String, Long>> unitsSizes = new TreeMap<>();
+        Map<String, String> unitsDimensions = new TreeMap<>();
+        for (Map.Entry<?, ?> dimensionEntry : dimensions.entrySet()) {
+            if (! (dimensionEntry.getKey() instanceof String dimension))
+                throw new FileFormatException(errorPrefix + "the dimension '" + dimensionEntry.getKey() + "' is not a string");
+            if (! (dimensionEntry.getValue() instanceof Map<?, ?> dimensionUnits) || dimensionUnits.isEmpty())
+                throw new FileFormatException(errorPrefix + "the dimension '" + dimension + "' is not a non-empty dictionary");
+            Map<String, Long> sizes = new TreeMap<>();
+            for (Map.Entry<?, ?> unitEntry : dimensionUnits.entrySet()) {
+                if (! (unitEntry.getKey() instanceof String unit))
+                    throw new FileFormatException(errorPrefix + "the unit '" + unitEntry.getKey() + "' is not a string");
+                String otherDimension = unitsDimensions.put(unit, dimension);
+                if (otherDimension != null)
+                    throw new FileFormatException(
+                            errorPrefix + "the unit '" + unit + "' is in both '" + otherDimension + "' and '" + dimension + "'"
+                    );
+                Object size = unitEntry.getValue();
+                boolean isNumber = size instanceof Integer || size instanceof Long
+                        || size instanceof BigDecimal || size instanceof Double;
+                // the YAML loader builds the integers too large for a long as BigIntegers
+                if (size instanceof BigInteger || isNumber && ! FixedPoint.isInRange((Number) size))
+                    throw new FileFormatException(errorPrefix + "the size of the unit '" + unit + "' is out of range");
+                if (! isNumber || FixedPoint.of((Number) size) <= 0)
+                    throw new FileFormatException(
+                            errorPrefix + "the size of the unit '" + unit + "' is not a positive number of thousandths"
+                    );
+                sizes.put(unit, FixedPoint.of((Number) size));
+            }
+            unitsSizes.put(dimension, sizes);
+        }
+        return new UnitRegistry(unitsSizes);
+    }
+
+
+
+
+    /**
+     * Returns the index of a unit in the registry.
+     *
+     * @param unit the unit
+     * @return the index of the unit, or -1 if the registry doesn't know it
+     */
+    public int getUnitIndex(String unit) {
+        int index = Arrays.binarySearch(units, unit);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * Returns the dimension of a unit.
+     *
+     * @param unit the unit
+     * @return the dimension of the unit, or null if the registry doesn't know
+     * it
+     */
+    public String getDimension(String unit) {
+        int index = getUnitIndex(unit);
+        return index >= 0 ? dimensions[index] : null;
+    }
+
+    /**
+     * Returns true if quantities can be converted from a unit to another.
+     *
+     * @param unit a unit
+     * @param otherUnit another unit
+     * @return true if the units are the same, or have the same dimension
+     */
+    public boolean areCompatible(String unit, String otherUnit) {
+        if (unit.equals(otherUnit))
+            return true;
+        String dimension = getDimension(unit);
+        return dimension != null && dimension.equals(getDimension(otherUnit));
+    }
+
+    /**
+     * Returns the size of a unit, to compare it with the other units of its
+     * dimension.
+     *
+     * @param unit the unit
+     * @return the size of the unit in thousandths of the base unit of its
+     * dimension, or 1000 if the registry doesn't know it
+     */
+    public long getSize(String unit) {
+        int index = getUnitIndex(unit);
+        return index >= 0 ? sizes[index] : FixedPoint.SCALE;
+    }
+
+    /**
+     * Returns the unit to add quantities written in two units in: the largest
+     * unit of their dimension whose size divides both of their sizes, so that
+     * converting quantities of either unit to it never rounds. For instance,
+     * quantities in "L" and "c à s" are added in "c à c", and quantities in
+     * "g" and "kg" in "g".
+     * <p/>
+     * If the units are not compatible, or if no unit divides both (which
+     * cannot happen when the dimension has a unit of size 0.001), the smaller
+     * unit is returned, as the unit the quantities would be added in with a
+     * rounding.
+     *
+     * @param unit a unit
+     * @param otherUnit another unit
+     * @return the unit to add quantities of both units in
+     */
+    public String getCommonUnit(String unit, String otherUnit) {
+        if (unit.equals(otherUnit))
+            return unit;
+        int index = getUnitIndex(unit);
+        int otherIndex = getUnitIndex(otherUnit);
+        if (index >= 0 && otherIndex >= 0 && commonUnits[index * units.length + otherIndex] >= 0)
+            return units[commonUnits[index * units.length + otherIndex]];
+        long size = getSize(unit);
+        long otherSize = getSize(otherUnit);
+        return size < otherSize || size == otherSize && unit.compareTo(otherUnit) <= 0 ? unit : otherUnit;
+    }
+
+    /**
+     * Converts a quantity from a unit to another.
+     *
+     * @param scaled the quantity, in thousandths of the unit to convert from
+     * @param from the index of the unit to convert from
+     * @param to the index of the unit to convert to
+     * @return the quantity, in thousandths of the unit to convert to, rounded
+     * half up
+     * @throws IllegalArgumentException if the units have different dimensions
+     * @throws ArithmeticException if the converted quantity doesn't fit in a
+     * <code>long</code>
+     */
+    public long convert(long scaled, int from, int to) {
+        int cell = 2 * (from * units.length + to);
+        if (conversionMatrix[cell + 1] == 0)
+            throw new IllegalArgumentException("Cannot convert " + units[from] + " to " + units[to]);
+        return FixedPoint.multiply(scaled, conversionMatrix[cell], conversionMatrix[cell + 1]);
+    }
+
+    /**
+     * Converts a quantity from a unit to another.
+     *
+     * @param scaled the quantity, in thousandths of the unit to convert from
+     * @param from the unit to convert from
+     * @param to the unit to convert to
+     * @return the quantity, in thousandths of the unit to convert to, rounded
+     * half up
+     * @throws IllegalArgumentException if the units are not compatible
+     * @throws ArithmeticException if the converted quantity doesn't fit in a
+     * <code>long</code>
+     */
+    public long convert(long scaled, String from, String to) {
+        if (from.equals(to))
+            return scaled;
+        int fromIndex = getUnitIndex(from);
+        int toIndex = getUnitIndex(to);
+        if (fromIndex < 0 || toIndex < 0)
+            throw new IllegalArgumentException("Cannot convert " + from + " to " + to);
+        return convert(scaled, fromIndex, toIndex);
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long remainder = a % b;
+            a = b;
+            b = remainder;
+        }
+        return a;
+    }
+
+
+
+
+    /**
+     * Loads the default registry when it is first used.
+     */
+    private static class DefaultRegistryHolder {
+
+        static final UnitRegistry REGISTRY;
+
+        static {
+            try {
+                REGISTRY = of(DEFAULT_UNITS_FILE, Utils.readYamlFile(DEFAULT_UNITS_FILE, true));
+            } catch (FileFormatException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+    }
+}
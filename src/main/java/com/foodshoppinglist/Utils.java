@@ -1,9 +1,17 @@
 package com.foodshoppinglist;
 
+import org.yaml.snakeyaml.LoaderOptions;
 import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.AbstractConstruct;
+import org.yaml.snakeyaml.constructor.Construct;
+import org.yaml.snakeyaml.constructor.Constructor;
 import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
 
 import java.io.*;
+import java.math.BigDecimal;
 import java.net.URL;
 
 public class Utils {
@@ -15,27 +23,68 @@ public class Utils {
      * @param searchInTheProgramResources if true, the method will search is the resources folder, otherwise it will look in the current directory of the user's current directory
      */
     public static Object readYamlFile(String fileName, boolean searchInTheProgramResources) {
-        InputStream inputStream;
-        Object content = null;
-
-        // get the file
-        if (searchInTheProgramResources) {
-            inputStream = getInputStreamInTheProgramResources(fileName);
-        } else {
-            inputStream = getInputStreamInTheCurrentDirectory(fileName);
+        try (Metrics.Timer timer = Metrics.start(Metrics.Phase.READ_YAML)) {
+            return loadYamlFile(fileName, searchInTheProgramResources);
         }
+    }
+
+    private static Object loadYamlFile(String fileName, boolean searchInTheProgramResources) {
+        InputStream inputStream = getInputStream(fileName, searchInTheProgramResources);
+        Object content = null;
 
         // read the file
         try {
-            content = new Yaml().load(inputStream);
+            content = newYaml().load(inputStream);
         } catch (YAMLException exception) {
-            System.err.println("Syntax error in " + fileName + ": " + exception.getMessage());
-            System.exit(1);
+            exitOnSyntaxError(fileName, exception);
         }
 
         return content;
     }
 
+    /**
+     * Builds a YAML parser.
+     * <p/>
+     * The default limit on the size of a document (3 MiB) is lifted, since
+     * large meals files are expected. The decimal numbers are loaded as
+     * <code>BigDecimal</code>s, exactly as they are written, rather than as
+     * the nearest <code>Double</code>s, so that they are rounded as the
+     * streaming load of the meals file rounds them (see
+     * {@link MealsFileLoader}); the infinities, NaN and sexagesimal numbers
+     * are still loaded as <code>Double</code>s.
+     *
+     * @return a YAML parser
+     */
+    static Yaml newYaml() {
+        LoaderOptions loaderOptions = new LoaderOptions();
+        loaderOptions.setCodePointLimit(Integer.MAX_VALUE);
+        return new Yaml(new ExactDecimalConstructor(loaderOptions));
+    }
+
+    /**
+     * Opens a file for reading, exiting the program if it cannot be found.
+     *
+     * @param fileName the name of the file
+     * @param searchInTheProgramResources if true, the method will search is the resources folder, otherwise it will look in the user's current directory
+     * @return a stream over the content of the file
+     */
+    static InputStream getInputStream(String fileName, boolean searchInTheProgramResources) {
+        if (searchInTheProgramResources)
+            return getInputStreamInTheProgramResources(fileName);
+        return getInputStreamInTheCurrentDirectory(fileName);
+    }
+
+    /**
+     * Reports a YAML syntax error and exits the program.
+     *
+     * @param fileName the name of the file that contains the error
+     * @param exception the exception raised by the YAML parser
+     */
+    static void exitOnSyntaxError(String fileName, YAMLException exception) {
+        System.err.println("Syntax error in " + fileName + ": " + exception.getMessage());
+        System.exit(1);
+    }
+
     private static InputStream getInputStreamInTheCurrentDirectory(String fileName) {
         InputStream inputStream = null;
         File file = new File(fileName);
@@ -63,4 +112,30 @@ public class Utils {
         }
         return inputStream;
     }
+
+
+
+
+    /**
+     * A YAML constructor that builds the decimal numbers as
+     * <code>BigDecimal</code>s (see {@link #newYaml()}).
+     */
+    private static class ExactDecimalConstructor extends Constructor {
+
+        ExactDecimalConstructor(LoaderOptions loaderOptions) {
+            super(loaderOptions);
+            Construct constructDouble = yamlConstructors.get(Tag.FLOAT);
+            yamlConstructors.put(Tag.FLOAT, new AbstractConstruct() {
+                @Override
+                public Object construct(Node node) {
+                    String value = constructScalar((ScalarNode) node).replace("_", "");
+                    try {
+                        return new BigDecimal(value);
+                    } catch (NumberFormatException e) {
+                        return constructDouble.construct(node);
+                    }
+                }
+            });
+        }
+    }
 }
@@ -0,0 +1,66 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BatchProcessorTest {
+
+    static private MealsHandler mealsHandler;
+
+    @BeforeAll
+    static void initBeforeAll() throws FileFormatException {
+        mealsHandler = new MealsHandler("meals.yaml");
+    }
+
+    @Test
+    void method_process_writesOneJsonLinePerSelection() throws IOException {
+        int risotto = mealsHandler.getAvailableMealsNames().indexOf("risotto") + 1;
+        int pates = mealsHandler.getAvailableMealsNames().indexOf("pâtes au tofu") + 1;
+        StringWriter output = new StringWriter();
+        ByteArrayOutputStream errorOutput = new ByteArrayOutputStream();
+
+        BatchProcessor.Statistics statistics = new BatchProcessor(mealsHandler, BatchProcessor.OutputFormat.JSON_LINES)
+                .process(
+                        new BufferedReader(new StringReader(pates + "\n\nnot a selection\n" + risotto + " " + pates + "\n")),
+                        output,
+                        new PrintStream(errorOutput));
+
+        assertEquals("""
+                {"selection":1,"ingredients":[{"name":"pâtes","quantity":500,"unit":"g"},{"name":"tofu","quantity":400,"unit":"g"}]}
+                {"selection":2,"ingredients":[]}
+                {"selection":3,"error":"The input must be numbers, ranges of numbers or names between double quotes, separated by spaces."}
+                {"selection":4,"ingredients":[{"name":"ognon","quantity":1,"unit":"unit"},{"name":"pâtes","quantity":500,"unit":"g"},\
+                {"name":"riz","quantity":400,"unit":"g"},{"name":"sauce provençale","quantity":1,"unit":"L"},\
+                {"name":"tofu","quantity":800,"unit":"g"}]}
+                """, output.toString());
+        assertEquals(4, statistics.selectionsCount());
+        assertEquals(1, statistics.invalidSelectionsCount());
+        assertEquals("Invalid selection on line 3: " + SelectionParser.INVALID_FORMAT_MESSAGE, errorOutput.toString().strip());
+    }
+
+    @Test
+    void method_process_writesOneCsvRowPerIngredient() throws IOException {
+        int pates = mealsHandler.getAvailableMealsNames().indexOf("pâtes au tofu") + 1;
+        StringWriter output = new StringWriter();
+
+        new BatchProcessor(mealsHandler, BatchProcessor.OutputFormat.CSV).process(
+                new BufferedReader(new StringReader("0\n" + pates + "\n")),
+                output,
+                new PrintStream(new ByteArrayOutputStream()));
+
+        assertEquals("""
+                selection,ingredient,quantity,unit
+                2,pâtes,500,g
+                2,tofu,400,g
+                """, output.toString());
+    }
+}
@@ -0,0 +1,76 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class CatalogueSnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void method_readIfUpToDate_returnsTheCompiledCatalogue() throws Exception {
+        String mealsFile = copyOfTheMealsFile();
+        MealCatalogue compiled = CatalogueSnapshot.compile(mealsFile);
+        MealCatalogue read = CatalogueSnapshot.readIfUpToDate(mealsFile);
+        assertNotNull(read);
+        assertEquals(compiled.asMap(), read.asMap());
+        assertEquals(MealsFileLoader.load(mealsFile), read.asMap());
+    }
+
+    @Test
+    void method_readIfUpToDate_returnsNull_whenTheMealsFileHasChanged() throws Exception {
+        String mealsFile = copyOfTheMealsFile();
+        assertNull(CatalogueSnapshot.readIfUpToDate(mealsFile));
+
+        CatalogueSnapshot.compile(mealsFile);
+        // touching the file doesn't make the snapshot stale
+        Files.setLastModifiedTime(Path.of(mealsFile), FileTime.fromMillis(0));
+        assertNotNull(CatalogueSnapshot.readIfUpToDate(mealsFile));
+
+        Files.writeString(Path.of(mealsFile), "pâtes:\n  pâtes:\n    quantity: 500\n    unit: g\n", StandardOpenOption.APPEND);
+        assertNull(CatalogueSnapshot.readIfUpToDate(mealsFile));
+    }
+
+    @Test
+    void method_readIfUpToDate_returnsNull_whenTheSnapshotIsCorrupted() throws Exception {
+        String mealsFile = copyOfTheMealsFile();
+        CatalogueSnapshot.compile(mealsFile);
+        Path snapshot = Path.of(mealsFile + CatalogueSnapshot.EXTENSION);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(snapshot, bytes);
+        assertNull(CatalogueSnapshot.readIfUpToDate(mealsFile));
+    }
+
+    @Test
+    void method_readIfUpToDate_keepsTheConvertedQuantities() throws Exception {
+        Path mealsFile = tempDir.resolve("meals.yaml");
+        Files.writeString(mealsFile, "risotto:\n  riz:\n    quantity: 400\n    unit: g\n"
+                + "paella:\n  riz:\n    quantity: 0.25\n    unit: kg\n");
+        MealCatalogue compiled = CatalogueSnapshot.compile(mealsFile.toString());
+        MealCatalogue read = CatalogueSnapshot.readIfUpToDate(mealsFile.toString());
+        assertNotNull(read);
+        assertEquals(compiled.asMap(), read.asMap());
+        assertEquals(
+                Map.of("riz", IngredientAmount.of(650, "g")),
+                new ShoppingListAggregator().aggregate(read, List.of("risotto", "paella")));
+    }
+
+
+    private String copyOfTheMealsFile() throws IOException {
+        return Files.copy(Path.of("meals.yaml"), tempDir.resolve("meals.yaml")).toString();
+    }
+}
@@ -0,0 +1,90 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CatalogueWatcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void method_watch_reloadsTheMeals_andRejectsIncorrectFiles() throws Exception {
+        Path mealsFile = tempDir.resolve("meals.yaml");
+        Files.writeString(mealsFile, "risotto:\n  riz:\n    quantity: 400\n    unit: g\n");
+        MealsHandler mealsHandler = new MealsHandler(mealsFile.toString());
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+        try (CatalogueWatcher watcher = new CatalogueWatcher(mealsHandler, new PrintStream(log, true, StandardCharsets.UTF_8))) {
+            Files.writeString(mealsFile, "pâtes:\n  pâtes:\n    quantity: 500\n    unit: g\n");
+            awaitUntil(() -> mealsHandler.getAvailableMealsNames().equals(List.of("pâtes")));
+
+            Files.writeString(mealsFile, "pâtes:\n  pâtes:\n    quantity: lots\n    unit: g\n");
+            awaitUntil(() -> log.toString(StandardCharsets.UTF_8).contains("Rejected"));
+            assertEquals(List.of("pâtes"), mealsHandler.getAvailableMealsNames());
+        }
+    }
+
+    @Test
+    void method_watch_keepsWatching_afterAnUnexpectedError() throws Exception {
+        Path mealsFile = tempDir.resolve("meals.yaml");
+        Files.writeString(mealsFile, "risotto:\n  riz:\n    quantity: 400\n    unit: g\n");
+        AtomicBoolean hasFailed = new AtomicBoolean(false);
+        MealsHandler mealsHandler = new MealsHandler(mealsFile.toString()) {
+            @Override
+            public MealCatalogue reload() throws FileFormatException, IOException {
+                if (hasFailed.compareAndSet(false, true))
+                    throw new IllegalStateException("unexpected");
+                return super.reload();
+            }
+        };
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+        try (CatalogueWatcher watcher = new CatalogueWatcher(mealsHandler, new PrintStream(log, true, StandardCharsets.UTF_8))) {
+            Files.writeString(mealsFile, "pâtes:\n  pâtes:\n    quantity: 500\n    unit: g\n");
+            awaitUntil(() -> log.toString(StandardCharsets.UTF_8).contains("Could not reload"));
+            assertEquals(List.of("risotto"), mealsHandler.getAvailableMealsNames());
+
+            Files.writeString(mealsFile, "tofu grillé:\n  tofu:\n    quantity: 200\n    unit: g\n");
+            awaitUntil(() -> mealsHandler.getAvailableMealsNames().equals(List.of("tofu grillé")));
+        }
+    }
+
+    @Test
+    void method_watch_reloadsTheMeals_ofADirectoryCreatedAfterItStarted() throws Exception {
+        Files.writeString(tempDir.resolve("italien.yaml"), "risotto:\n  riz:\n    quantity: 400\n    unit: g\n");
+        MealsHandler mealsHandler = new MealsHandler(tempDir.toString());
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+        try (CatalogueWatcher watcher = new CatalogueWatcher(mealsHandler, new PrintStream(log, true, StandardCharsets.UTF_8))) {
+            // the file may be written before the new directory is watched
+            Path asia = Files.createDirectories(tempDir.resolve("asie/japon"));
+            Files.writeString(asia.resolve("ramen.yaml"), "ramen:\n  nouilles:\n    quantity: 100\n    unit: g\n");
+            awaitUntil(() -> mealsHandler.getAvailableMealsNames().equals(List.of("ramen", "risotto")));
+
+            // and the files written later in it are watched too
+            Files.writeString(asia.resolve("ramen.yaml"), "ramen au tofu:\n  tofu:\n    quantity: 100\n    unit: g\n");
+            awaitUntil(() -> mealsHandler.getAvailableMealsNames().equals(List.of("ramen au tofu", "risotto")));
+        }
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 20_000_000_000L;
+        while (! condition.getAsBoolean() && System.nanoTime() < deadline)
+            Thread.sleep(20);
+        assertTrue(condition.getAsBoolean());
+    }
+}
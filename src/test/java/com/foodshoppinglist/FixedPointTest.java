@@ -0,0 +1,75 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FixedPointTest {
+
+    @Test
+    void method_parse_roundsHalfUpToTheThousandth() {
+        assertEquals(400_000, FixedPoint.parse("400"));
+        assertEquals(-1_500, FixedPoint.parse("-1.5"));
+        assertEquals(250, FixedPoint.parse(".25"));
+        assertEquals(100, FixedPoint.parse("+0.1"));
+        assertEquals(1_001, FixedPoint.parse("1.0005"));
+        assertEquals(1_000, FixedPoint.parse("1.00049999"));
+        assertEquals(-1_001, FixedPoint.parse("-1.0005"));
+        assertEquals(1_000, FixedPoint.parse("0.9995"));
+        assertEquals(2_500_000, FixedPoint.parse("2.5e3"));
+        assertEquals(1, FixedPoint.parse("1E-3"));
+    }
+
+    @Test
+    void method_parse_throwsException_whenTheTextIsInvalidOrOutOfRange() {
+        for (String text : new String[] {"", "-", ".", "1.2.3", "a lot", "1e", "1000000000000", "-1.5e12", "0000000000000000001e12"})
+            assertThrows(NumberFormatException.class, () -> FixedPoint.parse(text), text);
+        assertEquals(999_999_999_999_999L, FixedPoint.parse("999999999999.999"));
+    }
+
+    @Test
+    void method_of_convertsTheNumbersOfTheYamlLoader() {
+        assertEquals(400_000, FixedPoint.of(400));
+        assertEquals(100, FixedPoint.of(0.1));
+        assertEquals(1_001, FixedPoint.of(1.0005));
+        assertEquals(-2_500_000, FixedPoint.of(-2.5e3));
+        assertThrows(NumberFormatException.class, () -> FixedPoint.of(Double.NaN));
+        assertThrows(NumberFormatException.class, () -> FixedPoint.of(Double.POSITIVE_INFINITY));
+        assertThrows(NumberFormatException.class, () -> FixedPoint.of(1e12));
+        assertTrue(FixedPoint.isInRange(Integer.MAX_VALUE));
+        assertFalse(FixedPoint.isInRange(Double.NaN));
+        assertFalse(FixedPoint.isInRange(-1e12));
+    }
+
+    @Test
+    void method_multiply_roundsHalfUp_evenWhenTheProductOverflows() {
+        assertEquals(33_333, FixedPoint.multiply(2_000, 50, 3));
+        assertEquals(667, FixedPoint.multiply(2_000, 1, 3));
+        assertEquals(-667, FixedPoint.multiply(-2_000, 1, 3));
+        assertEquals(1, FixedPoint.multiply(1_500, 1, 2_000));
+        assertEquals(999_999_999_999_999L, FixedPoint.multiply(999_999_999_999_999L, 1_000_000, 1_000_000));
+        assertThrows(ArithmeticException.class, () -> FixedPoint.multiply(999_999_999_999_999L, 1_000_000, 3));
+    }
+
+    @Test
+    void method_toString_writesTheShortestDecimal() {
+        Map<Long, String> expected = Map.of(
+                0L, "0", 400_000L, "400", 1_500L, "1.5", 100L, "0.1", 1L, "0.001", 1_010L, "1.01", -2_050L, "-2.05"
+        );
+        expected.forEach((scaled, text) -> assertEquals(text, FixedPoint.toString(scaled)));
+    }
+
+    @Test
+    void sums_ofScaledValues_areExact() {
+        long total = 0;
+        for (int i = 0; i < 10; i++)
+            total += FixedPoint.parse("0.1");
+        assertEquals("1", FixedPoint.toString(total));
+        assertEquals("1.6", FixedPoint.toString(FixedPoint.parse("1.5") + FixedPoint.parse("0.1")));
+    }
+}
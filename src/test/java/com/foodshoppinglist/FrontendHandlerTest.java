@@ -3,8 +3,14 @@ package com.foodshoppinglist;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.io.EOFException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -40,6 +46,29 @@ public class FrontendHandlerTest {
         // spaces between integers required:
         assertThrows(InvalidUserInputException.class, () ->
                 FrontendHandler.parseUserInput("12", availableMealsNames));
+        // bad ranges:
+        assertThrows(InvalidUserInputException.class, () ->
+                FrontendHandler.parseUserInput("1-", availableMealsNames));
+        assertThrows(InvalidUserInputException.class, () ->
+                FrontendHandler.parseUserInput("1 - 2", availableMealsNames));
+        assertThrows(InvalidUserInputException.class, () ->
+                FrontendHandler.parseUserInput("1--2", availableMealsNames));
+        assertThrows(InvalidUserInputException.class, () ->
+                FrontendHandler.parseUserInput("0-2", availableMealsNames));
+        assertThrows(InvalidUserInputException.class, () ->
+                FrontendHandler.parseUserInput("1-99999999999999999999", availableMealsNames));
+    }
+
+    @Test
+    void method_parseSelectedMealsInput_reportsFormatErrorsFirst() {
+        assertEquals(
+                "The input must be numbers, ranges of numbers or names between double quotes, separated by spaces.",
+                assertThrows(InvalidUserInputException.class, () ->
+                        FrontendHandler.parseUserInput("3 a", availableMealsNames)).getMessage());
+        assertEquals(
+                "The numbers must be part of those proposed.",
+                assertThrows(InvalidUserInputException.class, () ->
+                        FrontendHandler.parseUserInput("3 1", availableMealsNames)).getMessage());
     }
 
     @Test
@@ -67,5 +96,96 @@ public class FrontendHandlerTest {
         assertEquals(
                 availableMealsNames,
                 FrontendHandler.parseUserInput("2 1", availableMealsNames));
+        // ranges are accepted:
+        assertEquals(
+                availableMealsNames,
+                FrontendHandler.parseUserInput("1-2", availableMealsNames));
+        assertEquals(
+                availableMealsNames,
+                FrontendHandler.parseUserInput("2-1 2", availableMealsNames));
+        assertEquals(
+                List.of(availableMealsNames.get(1)),
+                FrontendHandler.parseUserInput(" 2-2	", availableMealsNames));
+    }
+
+    @Test
+    void method_parseUserInput_selectsTheBestMatchOfEachQuery() throws Exception {
+        MealCatalogue catalogue = MealCatalogue.of(MealsFileLoader.load("meals.yaml"));
+        List<String> mealsNames = catalogue.getMealsNames();
+        MealSearchIndex searchIndex = catalogue.getSearchIndex();
+        assertEquals(
+                List.of("pâtes au tofu", "tartiflette"),
+                FrontendHandler.parseUserInput("\"tartifflette\" \"pates tofu\"", mealsNames, searchIndex));
+        assertEquals(
+                List.of(mealsNames.getFirst(), "tofu basquaise"),
+                FrontendHandler.parseUserInput("1 \"Tofu\"", mealsNames, searchIndex));
+        assertEquals(
+                "No meal matches \"xyzzy\".",
+                assertThrows(InvalidUserInputException.class, () ->
+                        FrontendHandler.parseUserInput("\"xyzzy\" 1", mealsNames, searchIndex)).getMessage());
+        for (String input : new String[] {"\"tofu", "\"tofu\"1", "\"xyzzy\" a"})
+            assertEquals(
+                    SelectionParser.INVALID_FORMAT_MESSAGE,
+                    assertThrows(InvalidUserInputException.class, () ->
+                            FrontendHandler.parseUserInput(input, mealsNames, searchIndex)).getMessage(),
+                    input);
+        // queries are only accepted with a search index
+        assertThrows(InvalidUserInputException.class, () -> FrontendHandler.parseUserInput("\"tofu\"", mealsNames));
+    }
+
+    @Test
+    void method_printAvailableMeals_printsOnlyTheRequestedWindow_withTheNumbersOfTheWholeList() throws Exception {
+        StringWriter output = new StringWriter();
+        FrontendHandler frontendHandler = new FrontendHandler("texts.yaml", output);
+        List<String> mealsNames = List.of("couscous", "pâtes", "risotto", "tartiflette");
+        String n = System.lineSeparator();
+
+        frontendHandler.printAvailableMeals(mealsNames);
+        assertEquals(n + "Available meals:" + n + "1. couscous" + n + "2. pâtes" + n + "3. risotto" + n
+                + "4. tartiflette" + n + n, output.toString());
+
+        output.getBuffer().setLength(0);
+        frontendHandler.printAvailableMeals(mealsNames, 2, 100);
+        assertEquals(n + "Available meals:" + n + "3. risotto" + n + "4. tartiflette" + n
+                + "(meals 3 to 4 of 4: the other meals can be selected by number or by name too)" + n + n,
+                output.toString());
+    }
+
+    @Test
+    void method_printRequiredIngredients_printsTheAmounts() throws Exception {
+        StringWriter output = new StringWriter();
+        FrontendHandler frontendHandler = new FrontendHandler("texts.yaml", output);
+        Map<String, IngredientAmount> requiredIngredients = new LinkedHashMap<>();
+        requiredIngredients.put("patates", IngredientAmount.of(1.5, "kg"));
+        requiredIngredients.put("échalotte", IngredientAmount.of(2, "unit"));
+        String n = System.lineSeparator();
+
+        frontendHandler.printSelectedMeals(List.of("salade de patates"));
+        frontendHandler.printRequiredIngredients(requiredIngredients);
+        assertEquals("You chose the following meals:" + n + "- salade de patates" + n + n
+                + "Here are the required ingredients:" + n + "- patates: 1.5 kg" + n + "- échalotte: 2" + n + n,
+                output.toString());
+    }
+
+    @Test
+    void method_getSelectedMealsFromUserInput_choosesTheSuggestion_onlyOnAnEmptyLine() throws Exception {
+        List<String> mealsNames = List.of("couscous", "pâtes", "risotto");
+        BitSet suggestedMeals = new BitSet();
+        suggestedMeals.set(1);
+
+        FrontendHandler frontendHandler = new FrontendHandler("texts.yaml", new StringWriter(), new StringReader("\n"));
+        assertEquals(List.of("pâtes"), frontendHandler.getSelectedMealsFromUserInput(mealsNames, null, suggestedMeals));
+
+        // the end of the input is not an empty line, even after an invalid one
+        for (String input : new String[]{"", "a\n"}) {
+            FrontendHandler endedFrontendHandler = new FrontendHandler("texts.yaml", new StringWriter(), new StringReader(input));
+            assertEquals(
+                    "The input ended before any meal was chosen.",
+                    assertThrows(EOFException.class, () ->
+                            endedFrontendHandler.getSelectedMealsFromUserInput(mealsNames, null, suggestedMeals)).getMessage()
+            );
+            FrontendHandler endedWithoutSuggestion = new FrontendHandler("texts.yaml", new StringWriter(), new StringReader(input));
+            assertThrows(EOFException.class, () -> endedWithoutSuggestion.getSelectedMealsFromUserInput(mealsNames, null));
+        }
     }
 }
@@ -0,0 +1,153 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class IngredientIndexTest {
+
+    static private MealCatalogue catalogue;
+
+    @BeforeAll
+    static void initBeforeAll() throws FileFormatException {
+        catalogue = MealCatalogue.of(MealsFileLoader.load("meals.yaml"));
+    }
+
+    private static List<String> names(MealCatalogue catalogue, BitSet ordinals) {
+        return ordinals.stream().mapToObj(catalogue::getMealName).toList();
+    }
+
+    @Test
+    void method_findMealsWith_returnsTheMealsThatUseTheIngredient() {
+        IngredientIndex index = catalogue.getIngredientIndex();
+        assertEquals(
+                List.of("patates sautées", "pâtes au tofu", "risotto", "tartiflette", "tofu basquaise"),
+                names(catalogue, index.findMealsWith("tofu"))
+        );
+        assertEquals(5, index.countMealsWith("tofu"));
+        assertEquals(List.of(), names(catalogue, index.findMealsWith("seitan")));
+        assertEquals(0, index.countMealsWith("seitan"));
+    }
+
+    @Test
+    void method_findMeals_combinesTheIngredients() {
+        IngredientIndex index = catalogue.getIngredientIndex();
+        assertEquals(
+                List.of("patates sautées", "tartiflette"),
+                names(catalogue, index.findMeals(List.of("tofu", "patates"), List.of(), List.of()))
+        );
+        assertEquals(
+                List.of("tartiflette"),
+                names(catalogue, index.findMeals(List.of("tofu", "patates"), List.of(), List.of("salade")))
+        );
+        assertEquals(
+                List.of("pâtes au tofu", "risotto"),
+                names(catalogue, index.findMeals(List.of("tofu"), List.of("pâtes", "riz"), List.of("huile")))
+        );
+        // an unknown ingredient is used by no meal
+        assertEquals(List.of(), names(catalogue, index.findMeals(List.of("tofu", "seitan"), List.of(), List.of())));
+        assertEquals(
+                index.findMeals(List.of(), List.of("tofu"), List.of()),
+                index.findMeals(List.of(), List.of("tofu", "seitan"), List.of("seitan"))
+        );
+        assertEquals(catalogue.getMealsCount(), index.findMeals(List.of(), List.of(), List.of()).cardinality());
+    }
+
+    @Test
+    void method_findCookableMeals_returnsTheMealsWhoseIngredientsAreAllInThePantry() {
+        IngredientIndex index = catalogue.getIngredientIndex();
+        assertEquals(List.of("pâtes au tofu"), names(catalogue, index.findCookableMeals(List.of("tofu", "pâtes", "riz"))));
+        assertEquals(
+                List.of("pâtes au tofu", "risotto"),
+                names(catalogue, index.findCookableMeals(List.of("riz", "tofu", "tofu", "pâtes", "ognon", "sauce provençale", "seitan")))
+        );
+        assertEquals(List.of(), names(catalogue, index.findCookableMeals(List.of())));
+    }
+
+    @Test
+    void method_findCookableMeals_checksTheQuantities_inCompatibleUnits() {
+        IngredientIndex index = catalogue.getIngredientIndex();
+        Map<String, IngredientAmount> pantry = new HashMap<>();
+        pantry.put("pâtes", IngredientAmount.of(1, "kg"));
+        pantry.put("tofu", IngredientAmount.of(300, "g"));
+        pantry.put("riz", IngredientAmount.of(400, "g"));
+        pantry.put("ognon", IngredientAmount.of(2, "unit"));
+        pantry.put("sauce provençale", IngredientAmount.of(100, "cL"));
+        assertEquals(List.of(), names(catalogue, index.findCookableMeals(pantry)));
+
+        pantry.put("tofu", IngredientAmount.of(0.4, "kg"));
+        assertEquals(List.of("pâtes au tofu", "risotto"), names(catalogue, index.findCookableMeals(pantry)));
+
+        pantry.put("tofu", IngredientAmount.of(1, "L"));
+        assertThrows(IllegalArgumentException.class, () -> index.findCookableMeals(pantry));
+    }
+
+    @Test
+    void method_findCookableMeals_answersCorrectly_afterAQueryThatThrows() {
+        // a catalogue of its own, so that the pooled counters are the ones of the failed query
+        MealCatalogue ownCatalogue = MealCatalogue.of(Map.of(
+                "pâtes au tofu", Map.of("pâtes", IngredientAmount.of(250, "g"), "tofu", IngredientAmount.of(200, "g")),
+                "tofu grillé", Map.of("tofu", IngredientAmount.of(200, "g"))
+        ));
+        IngredientIndex index = ownCatalogue.getIngredientIndex();
+        Map<String, IngredientAmount> pantry = new LinkedHashMap<>();
+        pantry.put("pâtes", IngredientAmount.of(1, "kg"));
+        pantry.put("tofu", IngredientAmount.of(1, "L"));
+        assertThrows(IllegalArgumentException.class, () -> index.findCookableMeals(pantry));
+
+        // a counter left at one by the failed query would make pâtes au tofu cookable without pasta
+        assertEquals(
+                List.of("tofu grillé"),
+                names(ownCatalogue, index.findCookableMeals(Map.of("tofu", IngredientAmount.of(200, "g"))))
+        );
+        assertEquals(List.of(), names(ownCatalogue, index.findCookableMeals(List.of("pâtes"))));
+    }
+
+    @Test
+    void method_findMeals_givesTheSameMealsAsAScan_forFrequentAndRareIngredients() {
+        // the first ingredients are in most meals (bitmaps), the last ones in a few (posting lists),
+        // and one meal out of four uses only some of the first four ingredients
+        Random random = new Random(17);
+        Map<String, Map<String, IngredientAmount>> meals = new HashMap<>();
+        for (int meal = 0; meal < 2_000; meal++) {
+            Map<String, IngredientAmount> ingredients = new HashMap<>();
+            for (int ingredient = 0; ingredient < (meal % 4 == 0 ? 4 : 40); ingredient++) {
+                if (random.nextInt(40) >= ingredient)
+                    ingredients.put("ingrédient " + ingredient, IngredientAmount.of(1 + random.nextInt(5), "g"));
+            }
+            ingredients.put("eau", IngredientAmount.of(1, "L"));
+            meals.put("plat " + meal, ingredients);
+        }
+        MealCatalogue randomCatalogue = MealCatalogue.of(meals);
+        IngredientIndex index = randomCatalogue.getIngredientIndex();
+
+        for (int query = 0; query < 200; query++) {
+            List<String> allOf = List.of("ingrédient " + random.nextInt(40), "ingrédient " + random.nextInt(40));
+            List<String> anyOf = List.of("ingrédient " + random.nextInt(40), "ingrédient " + random.nextInt(40));
+            List<String> noneOf = List.of("ingrédient " + random.nextInt(40));
+            List<String> pantry = List.of("eau", "ingrédient 0", "ingrédient " + random.nextInt(4), "ingrédient " + random.nextInt(40));
+            BitSet expected = new BitSet();
+            BitSet expectedCookable = new BitSet();
+            for (int ordinal = 0; ordinal < randomCatalogue.getMealsCount(); ordinal++) {
+                Map<String, IngredientAmount> ingredients = meals.get(randomCatalogue.getMealName(ordinal));
+                if (ingredients.keySet().containsAll(allOf)
+                        && anyOf.stream().anyMatch(ingredients::containsKey)
+                        && noneOf.stream().noneMatch(ingredients::containsKey))
+                    expected.set(ordinal);
+                if (pantry.containsAll(ingredients.keySet()))
+                    expectedCookable.set(ordinal);
+            }
+            assertEquals(expected, index.findMeals(allOf, anyOf, noneOf));
+            assertEquals(expectedCookable, index.findCookableMeals(pantry));
+        }
+    }
+}
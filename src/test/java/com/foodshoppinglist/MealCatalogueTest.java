@@ -0,0 +1,136 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MealCatalogueTest {
+
+    @Test
+    void method_asMap_returnsAViewEqualToTheLoadedMeals() throws FileFormatException {
+        Map<String, Map<String, IngredientAmount>> meals = MealsFileLoader.load("meals.yaml");
+        MealCatalogue catalogue = MealCatalogue.of(meals);
+        assertEquals(meals, catalogue.asMap());
+        assertEquals(catalogue.getMealsNames(), List.copyOf(catalogue.asMap().keySet()));
+        assertEquals(IngredientAmount.of(1.5, "kg"), catalogue.asMap().get("salade de patates").get("patates"));
+        assertNull(catalogue.asMap().get("not a meal"));
+        assertNull(catalogue.asMap().get("risotto").get("patates"));
+    }
+
+    @Test
+    void method_of_storesEachIngredientAndUnitOnce() {
+        MealCatalogue catalogue = MealCatalogue.of(Map.of(
+                "risotto", Map.of("riz", IngredientAmount.of(400, "g"), "ognon", IngredientAmount.of(1, "unit")),
+                "riz cantonnais", Map.of("riz", IngredientAmount.of(300, "g"))
+        ));
+        assertEquals(2, catalogue.getIngredientsCount());
+        assertEquals("ognon", catalogue.getIngredientName(0));
+        assertEquals("riz", catalogue.getIngredientName(1));
+        assertEquals("g", catalogue.getIngredientUnit(catalogue.getIngredientId("riz")));
+
+        int risotto = catalogue.getMealOrdinal("risotto");
+        int rizCantonnais = catalogue.getMealOrdinal("riz cantonnais");
+        assertEquals(2, catalogue.getEndLine(risotto) - catalogue.getFirstLine(risotto));
+        assertEquals(
+                catalogue.getLineIngredient(catalogue.getFirstLine(risotto) + 1),
+                catalogue.getLineIngredient(catalogue.getFirstLine(rizCantonnais)));
+        assertSame(
+                catalogue.asMap().get("risotto").keySet().stream().filter("riz"::equals).findFirst().orElseThrow(),
+                catalogue.asMap().get("riz cantonnais").keySet().iterator().next());
+    }
+
+    @Test
+    void method_of_convertsTheQuantitiesExactly_toAUnitThatDividesAllTheUnitsOfEachIngredient() {
+        Map<String, Map<String, IngredientAmount>> meals = Map.of(
+                "risotto", Map.of("riz", IngredientAmount.of(0.4, "kg"), "bouillon", IngredientAmount.of(1, "L")),
+                "riz cantonnais", Map.of("riz", IngredientAmount.of(300, "g"), "bouillon", IngredientAmount.of(2, "tasse")),
+                "soupe", Map.of("bouillon", IngredientAmount.of(3, "c à s"))
+        );
+        MealCatalogue catalogue = MealCatalogue.of(meals);
+        assertEquals(meals, catalogue.asMap());
+        assertEquals("g", catalogue.getIngredientUnit(catalogue.getIngredientId("riz")));
+        // 1 L is 66.667 c à s, but exactly 200 c à c
+        assertEquals("c à c", catalogue.getIngredientUnit(catalogue.getIngredientId("bouillon")));
+        assertEquals(
+                Map.of("riz", IngredientAmount.of(700, "g"), "bouillon", IngredientAmount.of(309, "c à c")),
+                new ShoppingListAggregator().aggregate(catalogue, List.of("risotto", "riz cantonnais", "soupe")));
+
+        // the totals don't drift with the number of lines
+        Map<String, Map<String, IngredientAmount>> soups = new HashMap<>();
+        for (int i = 0; i < 30; i++)
+            soups.put("soupe " + i, Map.of("bouillon", IngredientAmount.of(1, "L"), "lait", IngredientAmount.of(1, "tasse")));
+        soups.put("vinaigrette", Map.of("bouillon", IngredientAmount.of(1, "c à s"), "lait", IngredientAmount.of(2, "c à s")));
+        MealCatalogue soupsCatalogue = MealCatalogue.of(soups);
+        Map<String, IngredientAmount> shoppingList = new ShoppingListAggregator().aggregate(soupsCatalogue, soups.keySet());
+        assertEquals(IngredientAmount.of(6003, "c à c"), shoppingList.get("bouillon"));
+        assertEquals(IngredientAmount.of(1506, "c à c"), shoppingList.get("lait"));
+        assertEquals(
+                FixedPoint.parse("30.015"),
+                UnitRegistry.getDefault().convert(shoppingList.get("bouillon").scaledQuantity(), "c à c", "L")
+        );
+
+        assertThrows(IllegalArgumentException.class, () -> MealCatalogue.of(Map.of(
+                "risotto", Map.of("riz", IngredientAmount.of(400, "g")),
+                "riz cantonnais", Map.of("riz", IngredientAmount.of(1, "L"))
+        )));
+    }
+
+    @Test
+    void method_merge_buildsTheSameCatalogueAsFromAllTheMeals() throws FileFormatException {
+        Map<String, Map<String, IngredientAmount>> meals = new HashMap<>(MealsFileLoader.load("meals.yaml"));
+        // the same ingredient in kg in one catalogue and in g in another
+        meals.put("purée", Map.of("patates", IngredientAmount.of(800, "g"), "lait", IngredientAmount.of(20, "cL")));
+        // units that don't divide one another, in different catalogues
+        meals.put("béchamel", Map.of("lait", IngredientAmount.of(1, "L")));
+        meals.put("crème", Map.of("lait", IngredientAmount.of(3, "c à s")));
+        meals.put("flan", Map.of("lait", IngredientAmount.of(1, "tasse")));
+        List<Map<String, Map<String, IngredientAmount>>> parts = List.of(new HashMap<>(), new HashMap<>(), new HashMap<>());
+        int index = 0;
+        for (Map.Entry<String, Map<String, IngredientAmount>> mealEntry : meals.entrySet())
+            parts.get(index++ % parts.size()).put(mealEntry.getKey(), mealEntry.getValue());
+
+        MealCatalogue expected = MealCatalogue.of(meals);
+        MealCatalogue merged = MealCatalogue.merge(
+                parts.stream().map(MealCatalogue::of).toList(), UnitRegistry.getDefault()
+        );
+        assertEquals(meals, merged.asMap());
+        assertEquals(expected.getMealsNames(), merged.getMealsNames());
+        assertEquals(expected.getIngredientsCount(), merged.getIngredientsCount());
+        for (int id = 0; id < expected.getIngredientsCount(); id++) {
+            assertEquals(expected.getIngredientName(id), merged.getIngredientName(id));
+            assertEquals(expected.getIngredientUnit(id), merged.getIngredientUnit(id));
+        }
+        assertEquals(expected.getLinesCount(), merged.getLinesCount());
+        for (int line = 0; line < expected.getLinesCount(); line++) {
+            assertEquals(expected.getLineIngredient(line), merged.getLineIngredient(line));
+            assertEquals(expected.getLineQuantity(line), merged.getLineQuantity(line));
+            assertEquals(expected.getLineWrittenQuantity(line), merged.getLineWrittenQuantity(line));
+        }
+    }
+
+    @Test
+    void method_getMealsNames_sortsTheNamesAlphabetically() {
+        MealCatalogue catalogue = MealCatalogue.of(Map.of(
+                "échalottes rôties", Map.of("échalotte", IngredientAmount.of(6, "unit")),
+                "Endives au jambon", Map.of("endive", IngredientAmount.of(4, "unit")),
+                "ecrasé de pommes de terre", Map.of("patates", IngredientAmount.of(1, "kg")),
+                "zucchini", Map.of("courgette", IngredientAmount.of(2, "unit")),
+                "dinde", Map.of("dinde", IngredientAmount.of(500, "g"))
+        ));
+        List<String> expectedNames = List.of(
+                "dinde", "échalottes rôties", "ecrasé de pommes de terre", "Endives au jambon", "zucchini"
+        );
+        assertEquals(expectedNames, catalogue.getMealsNames());
+        for (int ordinal = 0; ordinal < expectedNames.size(); ordinal++)
+            assertEquals(ordinal, catalogue.getMealOrdinal(expectedNames.get(ordinal)));
+        assertEquals(-1, catalogue.getMealOrdinal("Dinde"));
+        assertEquals(-1, catalogue.getMealOrdinal(""));
+    }
+}
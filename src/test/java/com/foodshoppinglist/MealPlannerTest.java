@@ -0,0 +1,133 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MealPlannerTest {
+
+    private static final Duration TIME_BUDGET = Duration.ofMinutes(1);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void method_plan_findsTheCheapestMeals_onASmallCatalogue() throws FileFormatException {
+        MealCatalogue catalogue = new MealsHandler("meals.yaml").getCatalogue();
+        MealPlanner planner = new MealPlanner(
+                catalogue, Map.of(), MealPlanner.DEFAULT_BEAM_WIDTH, ForkJoinPool.commonPool()
+        );
+        int mealsCount = catalogue.getMealsCount();
+        for (int plannedMealsCount = 1; plannedMealsCount <= 4; plannedMealsCount++) {
+            MealPlanner.Plan plan = planner.plan(plannedMealsCount, TIME_BUDGET);
+            assertEquals(plannedMealsCount, plan.mealsOrdinals().cardinality());
+            assertEquals(planner.computeCost(plan.mealsOrdinals()), plan.cost());
+            assertEquals(1000L * plan.ingredientsCount(), plan.cost());
+            assertFalse(plan.timedOut());
+
+            // all the selections of that many meals
+            long cheapestCost = Long.MAX_VALUE;
+            for (long mask = 0; mask < 1L << mealsCount; mask++) {
+                if (Long.bitCount(mask) == plannedMealsCount)
+                    cheapestCost = Math.min(cheapestCost, planner.computeCost(BitSet.valueOf(new long[]{mask})));
+            }
+            assertEquals(cheapestCost, plan.cost());
+        }
+    }
+
+    @Test
+    void method_plan_fillsThePacks() {
+        MealCatalogue catalogue = MealCatalogue.of(Map.of(
+                "riz cantonais", Map.of("riz", IngredientAmount.of(300, "g"), "oeuf", IngredientAmount.of(2, "unit")),
+                "risotto", Map.of("riz", IngredientAmount.of(0.7, "kg"), "oeuf", IngredientAmount.of(1, "unit")),
+                "riz au lait", Map.of("riz", IngredientAmount.of(200, "g"), "oeuf", IngredientAmount.of(1, "unit"))
+        ));
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        // without packs, all the pairs have the same ingredients, and the first one wins
+        MealPlanner planner = new MealPlanner(catalogue, Map.of(), MealPlanner.DEFAULT_BEAM_WIDTH, pool);
+        assertEquals(
+                List.of("risotto", "riz au lait"),
+                getMealsNames(catalogue, planner.plan(2, TIME_BUDGET).mealsOrdinals())
+        );
+
+        // with packs of 1 kg of rice, risotto and riz cantonais use exactly one pack
+        planner = new MealPlanner(catalogue, Map.of("riz", IngredientAmount.of(1, "kg")), 1, pool);
+        MealPlanner.Plan plan = planner.plan(2, TIME_BUDGET);
+        assertEquals(List.of("risotto", "riz cantonais"), getMealsNames(catalogue, plan.mealsOrdinals()));
+        assertEquals(2000, plan.cost());
+        // riz au lait and riz cantonais: 500 g of rice leave half a pack
+        assertEquals(2500, planner.computeCost(BitSet.valueOf(new long[]{0b110})));
+
+        assertThrows(IllegalArgumentException.class, () ->
+                new MealPlanner(catalogue, Map.of("riz", IngredientAmount.of(1, "L")), 1, pool));
+        assertThrows(IllegalArgumentException.class, () ->
+                new MealPlanner(catalogue, Map.of("riz", IngredientAmount.of(0, "g")), 1, pool));
+    }
+
+    @Test
+    void method_computeCost_throwsAnException_whenAPackedTotalOverflows() {
+        MealCatalogue catalogue = MealsHandlerTest.overflowingCatalogue(10_000);
+        MealPlanner planner = new MealPlanner(
+                catalogue, Map.of("riz", IngredientAmount.of(1, "kg")), 1, ForkJoinPool.commonPool()
+        );
+        BitSet allMeals = new BitSet();
+        allMeals.set(0, catalogue.getMealsCount());
+        assertThrows(ArithmeticException.class, () -> planner.computeCost(allMeals));
+        assertEquals(1000, planner.computeCost(BitSet.valueOf(new long[]{0b11})));
+    }
+
+    @Test
+    void method_plan_completesThePlanGreedily_whenTheTimeBudgetIsSpent() throws FileFormatException {
+        MealCatalogue catalogue = new MealsHandler("meals.yaml").getCatalogue();
+        MealPlanner planner = new MealPlanner(
+                catalogue, Map.of(), MealPlanner.DEFAULT_BEAM_WIDTH, ForkJoinPool.commonPool()
+        );
+        MealPlanner.Plan plan = planner.plan(4, Duration.ZERO);
+        assertEquals(4, plan.mealsOrdinals().cardinality());
+        assertTrue(plan.timedOut());
+        assertEquals(planner.computeCost(plan.mealsOrdinals()), plan.cost());
+
+        assertThrows(IllegalArgumentException.class, () -> planner.plan(0, TIME_BUDGET));
+        assertThrows(IllegalArgumentException.class, () -> planner.plan(catalogue.getMealsCount() + 1, TIME_BUDGET));
+
+        planner.cancel();
+        assertThrows(CancellationException.class, () -> planner.plan(4, TIME_BUDGET));
+    }
+
+    @Test
+    void method_readPackSizes_readsTheAmountsOfThePacks() throws Exception {
+        Path packsFile = tempDir.resolve("packs.yaml");
+        Files.writeString(packsFile, "riz:\n  quantity: 1\n  unit: kg\ntofu:\n  quantity: 200\n  unit: g\n");
+        assertEquals(
+                Map.of("riz", IngredientAmount.of(1, "kg"), "tofu", IngredientAmount.of(200, "g")),
+                MealPlanner.readPackSizes(packsFile.toString())
+        );
+
+        Files.writeString(packsFile, "riz:\n  quantity: 1\n");
+        FileFormatException exception = assertThrows(
+                FileFormatException.class, () -> MealPlanner.readPackSizes(packsFile.toString())
+        );
+        assertEquals(
+                "Error in " + packsFile + ": the pack of 'riz' must have a 'quantity' number and a 'unit' string",
+                exception.getMessage()
+        );
+    }
+
+    private static List<String> getMealsNames(MealCatalogue catalogue, BitSet mealsOrdinals) {
+        return mealsOrdinals.stream().mapToObj(catalogue::getMealName).toList();
+    }
+}
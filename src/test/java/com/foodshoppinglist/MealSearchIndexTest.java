@@ -0,0 +1,90 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MealSearchIndexTest {
+
+    static private MealCatalogue catalogue;
+
+    @BeforeAll
+    static void initBeforeAll() throws FileFormatException {
+        catalogue = MealCatalogue.of(MealsFileLoader.load("meals.yaml"));
+    }
+
+    private static List<String> search(MealCatalogue catalogue, String query, int limit) {
+        return Arrays.stream(catalogue.getSearchIndex().search(query, limit)).mapToObj(catalogue::getMealName).toList();
+    }
+
+    @Test
+    void method_normalize_removesCaseAccentsAndPunctuation() {
+        assertEquals("echalotte", MealSearchIndex.normalize("Échalotte"));
+        assertEquals("gousse d ail", MealSearchIndex.normalize("  gousse d'ail "));
+        assertEquals("oeufs brouilles", MealSearchIndex.normalize("Œufs  brouillés !"));
+        assertEquals("ras el hanout", MealSearchIndex.normalize("ras-el-hanout"));
+        assertEquals("", MealSearchIndex.normalize(" - "));
+    }
+
+    @Test
+    void method_search_findsTheMealsByPrefix_regardlessOfCaseAndAccents() {
+        assertEquals(List.of("pâtes au tofu"), search(catalogue, "PATES", 10));
+        // the names that start with the query come first, then the other names, then the ingredients
+        assertEquals(
+                List.of("patates sautées", "pâtes au tofu", "salade de patates", "tartiflette"),
+                search(catalogue, "pat", 10));
+        // every word must match, through the name of the meal or its ingredients
+        assertEquals(List.of("salade de patates", "patates sautées"), search(catalogue, "pat salade", 10));
+        assertEquals(List.of("chili aux protéines de soja texturées"), search(catalogue, "chili proteines", 10));
+        assertEquals(List.of(), search(catalogue, "pates risotto", 10));
+        assertEquals(List.of(), search(catalogue, " ", 10));
+    }
+
+    @Test
+    void method_search_ranksTheNamesBeforeTheIngredients() {
+        List<String> tofu = search(catalogue, "tofu", 10);
+        // "pâtes au tofu" and "tofu basquaise" have tofu in their names, "tofu basquaise" starts with it
+        assertEquals(List.of("tofu basquaise", "pâtes au tofu"), tofu.subList(0, 2));
+        assertEquals(List.of("patates sautées", "risotto", "tartiflette"), tofu.subList(2, tofu.size()));
+        assertEquals(List.of("tofu basquaise"), search(catalogue, "tofu", 1));
+    }
+
+    @Test
+    void method_search_toleratesTypos() {
+        assertEquals("tofu basquaise", search(catalogue, "tofo basquaisse", 10).getFirst());
+        assertEquals(List.of("tartiflette"), search(catalogue, "tartifflette", 10));
+        assertEquals(List.of(), search(catalogue, "xyzzy", 10));
+
+        // "tofo" starts a term of another meal, which doesn't match "basquaise"
+        MealCatalogue otherCatalogue = MealCatalogue.of(Map.of(
+                "tofu basquaise", Map.of("tofu", IngredientAmount.of(400, "g")),
+                "tofou au curry", Map.of("curry", IngredientAmount.of(1, "g"))
+        ));
+        assertEquals(List.of("tofu basquaise"), search(otherCatalogue, "basquaise tofo", 10));
+    }
+
+    @Test
+    void method_search_findsTheBestMatches_amongManyMeals() {
+        Map<String, Map<String, IngredientAmount>> meals = new HashMap<>();
+        for (int i = 0; i < 50_000; i++)
+            meals.put("meal " + i + (i % 1000 == 0 ? " aux échalottes" : ""), Map.of(
+                    "ingredient " + (i % 500), IngredientAmount.of(1, "g")
+            ));
+        MealCatalogue largeCatalogue = MealCatalogue.of(meals);
+        assertEquals(List.of("meal 12345"), search(largeCatalogue, "meal 12345", 1));
+        // the meals that match equally well come in alphabetical order
+        assertEquals(
+                List.of("meal 0 aux échalottes", "meal 10000 aux échalottes", "meal 1000 aux échalottes"),
+                search(largeCatalogue, "echalotte", 3));
+        assertEquals(1000, search(largeCatalogue, "ingredient", 1000).size());
+        assertEquals(50_000, search(largeCatalogue, "ingredient", 100_000).size());
+        assertArrayEquals(new int[0], largeCatalogue.getSearchIndex().search("meal", 0));
+    }
+}
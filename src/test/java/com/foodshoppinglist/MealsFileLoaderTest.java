@@ -0,0 +1,94 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MealsFileLoaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void method_load_returnsTheSameMealsAsTheTreeBasedPath() throws Exception {
+        assertEquals(loadWithTheTreeBasedPath("meals.yaml"), MealsFileLoader.load("meals.yaml"));
+
+        for (String content : List.of(
+                "risotto:\n  riz:\n    quantity: 1\n    unit: g\n",
+                "risotto:\n  riz:\n    unit: g\n    quantity: -1.5e2\n",
+                "risotto: {riz: {quantity: .5, unit: \"g\"}}\n",
+                "risotto:\n  riz:\n    quantity: 1.0005\n    unit: kg\n  sel:\n    quantity: 0.00049\n    unit: kg\n",
+                // more significant digits than a double holds
+                "risotto:\n  riz:\n    quantity: 1.00049999999999999999\n    unit: kg\n"
+                        + "  sel:\n    quantity: 0.000499999999999999999\n    unit: kg\n",
+                // integers that don't fit in an int
+                "risotto:\n  riz:\n    quantity: 3000000000\n    unit: g\n  sel:\n    quantity: -12345678901\n    unit: g\n",
+                // these are handled by the fallback
+                "risotto:\n  riz:\n    quantity: 1_000\n    unit: g\n",
+                "risotto:\n  riz:\n    quantity: 3_000_000_000\n    unit: g\n",
+                "risotto:\n  riz: &amount\n    quantity: 1\n    unit: g\npaella:\n  riz: *amount\n",
+                "risotto:\n  riz:\n    quantity: 1\n    unit: g\nrisotto:\n  riz:\n    quantity: 2\n    unit: g\n"
+        )) {
+            String file = write(content);
+            assertEquals(loadWithTheTreeBasedPath(file), MealsFileLoader.load(file), content);
+        }
+    }
+
+    @Test
+    void method_load_throwsTheSameExceptionsAsTheTreeBasedPath() throws IOException {
+        for (String content : List.of(
+                "",
+                "just a string",
+                "- risotto\n",
+                "1:\n  riz:\n    quantity: 1\n    unit: g\n",
+                "risotto: 1\n",
+                "risotto:\n  [riz]:\n    quantity: 1\n    unit: g\n",
+                "risotto:\n  riz: [1, g]\n",
+                "risotto:\n  riz:\n    unit: g\n",
+                "risotto:\n  riz:\n    quantity: 1\n",
+                "risotto:\n  riz:\n    quantity: a lot\n    unit: g\n",
+                "risotto:\n  riz:\n    quantity: {value: 1}\n    unit: g\n",
+                "risotto:\n  riz:\n    quantity: 12345678901234567\n    unit: g\n",
+                "risotto:\n  riz:\n    quantity: 1234567890123456789012\n    unit: g\n",
+                "risotto:\n  riz:\n    quantity: 1.5e12\n    unit: g\n",
+                "risotto:\n  riz:\n    quantity: -.inf\n    unit: g\n",
+                "risotto:\n  riz:\n    quantity: 1\n    unit: 404\n",
+                "risotto:\n  riz:\n    quantity: 1\n    unit: g\n    brand: any\n",
+                "risotto:\n  riz:\n    quantity: 1\n    unit: g\npaella:\n  riz:\n    quantity: 1\n    unit: kg\n"
+                        + "riz cantonnais:\n  riz:\n    quantity: 1\n    unit: L\n"
+        )) {
+            String file = write(content);
+            FileFormatException expected = assertThrows(FileFormatException.class, () -> loadWithTheTreeBasedPath(file));
+            FileFormatException actual = assertThrows(FileFormatException.class, () -> MealsFileLoader.load(file));
+            assertEquals(expected.getMessage(), actual.getMessage(), content);
+        }
+
+        // the integers that are too large for a long are numbers too
+        String file = write("risotto:\n  riz:\n    quantity: 1234567890123456789012\n    unit: g\n");
+        assertEquals(
+                "Error in " + file + ": key 'quantity' of ingredient 'riz' in meal 'risotto' is out of range",
+                assertThrows(FileFormatException.class, () -> MealsFileLoader.load(file)).getMessage()
+        );
+    }
+
+    private String write(String content) throws IOException {
+        Path file = Files.createTempFile(tempDir, "meals", ".yaml");
+        Files.writeString(file, content);
+        return file.toString();
+    }
+
+    private static Map<String, Map<String, IngredientAmount>> loadWithTheTreeBasedPath(String file)
+            throws FileFormatException {
+        Object content = Utils.readYamlFile(file, false);
+        MealsHandler.checkFileFormat(file, content);
+        return MealsHandler.convertToStructuredObject(content);
+    }
+}
@@ -0,0 +1,178 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+public class MealsFileSetTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static String meal(String mealName, String ingredientName, int quantity, String unit) {
+        return mealName + ":\n  " + ingredientName + ":\n    quantity: " + quantity + "\n    unit: " + unit + "\n";
+    }
+
+    @Test
+    void method_load_mergesTheMealsFilesOfADirectory() throws Exception {
+        Files.writeString(tempDir.resolve("italien.yaml"), meal("pâtes au tofu", "tofu", 200, "g"));
+        Files.createDirectories(tempDir.resolve("asie"));
+        Files.writeString(tempDir.resolve("asie/japon.yml"), meal("riz au tofu", "tofu", 1, "kg"));
+        Files.writeString(tempDir.resolve("notes.txt"), "not a meals file");
+
+        assertTrue(MealsFileSet.isFileSet(tempDir.toString()));
+        MealsFileSet mealsFileSet = MealsFileSet.of(tempDir.toString());
+        assertEquals(
+                List.of(tempDir.resolve("asie/japon.yml"), tempDir.resolve("italien.yaml")),
+                mealsFileSet.getFiles()
+        );
+        MealCatalogue catalogue = mealsFileSet.load();
+        assertEquals(List.of("pâtes au tofu", "riz au tofu"), catalogue.getMealsNames());
+        assertEquals(IngredientAmount.of(1, "kg"), catalogue.asMap().get("riz au tofu").get("tofu"));
+        assertEquals("g", catalogue.getIngredientUnit(catalogue.getIngredientId("tofu")));
+    }
+
+    @Test
+    void method_of_findsTheFilesOfAGlobPattern() throws Exception {
+        Files.writeString(tempDir.resolve("a.yaml"), meal("a", "tofu", 1, "g"));
+        Files.writeString(tempDir.resolve("b.yaml"), meal("b", "tofu", 1, "g"));
+        Files.writeString(tempDir.resolve("c.yml"), meal("c", "tofu", 1, "g"));
+
+        String pattern = tempDir + "/[ab].yaml";
+        assertTrue(MealsFileSet.isFileSet(pattern));
+        assertFalse(MealsFileSet.isFileSet(tempDir.resolve("a.yaml").toString()));
+        MealsFileSet mealsFileSet = MealsFileSet.of(pattern);
+        assertEquals(List.of(tempDir.resolve("a.yaml"), tempDir.resolve("b.yaml")), mealsFileSet.getFiles());
+        assertTrue(mealsFileSet.matches(tempDir.resolve("b.yaml")));
+        assertFalse(mealsFileSet.matches(tempDir.resolve("c.yml")));
+
+        assertThrows(FileFormatException.class, () -> MealsFileSet.of(tempDir + "/*.json"));
+    }
+
+    @Test
+    void method_of_leavesOutTheSnapshots_ofAGlobPatternOfAllTheFiles() throws Exception {
+        Files.writeString(tempDir.resolve("a.yaml"), meal("a", "tofu", 1, "g"));
+        String pattern = tempDir + "/**";
+
+        // the first load writes the snapshots that the second one must not take for meals files
+        assertEquals(List.of("a"), MealsFileSet.of(pattern).load().getMealsNames());
+        assertTrue(Files.isDirectory(tempDir.resolve(MealsFileSet.CACHE_DIRECTORY)));
+        MealsFileSet mealsFileSet = MealsFileSet.of(pattern);
+        assertEquals(List.of(tempDir.resolve("a.yaml")), mealsFileSet.getFiles());
+        assertEquals(List.of("a"), mealsFileSet.load().getMealsNames());
+    }
+
+    @Test
+    void method_load_throwsAnException_whenAMealIsDefinedInTwoFiles() throws Exception {
+        Files.writeString(tempDir.resolve("a.yaml"), meal("pâtes", "pâtes", 500, "g"));
+        Files.writeString(tempDir.resolve("b.yaml"), meal("riz", "riz", 500, "g") + meal("pâtes", "pâtes", 1, "kg"));
+
+        FileFormatException exception = assertThrows(
+                FileFormatException.class, () -> MealsFileSet.of(tempDir.toString()).load()
+        );
+        assertEquals(
+                "Error in " + tempDir.resolve("b.yaml") + ": the meal 'pâtes' is already defined in " + tempDir.resolve("a.yaml"),
+                exception.getMessage()
+        );
+    }
+
+    @Test
+    void method_load_throwsAnException_whenAnIngredientHasIncompatibleUnitsInTwoFiles() throws Exception {
+        Files.writeString(tempDir.resolve("a.yaml"), meal("soupe", "lait", 1, "L"));
+        Files.writeString(tempDir.resolve("b.yaml"), meal("gâteau", "lait", 200, "g"));
+
+        FileFormatException exception = assertThrows(
+                FileFormatException.class, () -> MealsFileSet.of(tempDir.toString()).load()
+        );
+        assertEquals(
+                "Error in " + tempDir.resolve("b.yaml") + ": the ingredient 'lait' of the meal 'gâteau' is in g, "
+                        + "which is incompatible with L, its unit in the meal 'soupe' of " + tempDir.resolve("a.yaml"),
+                exception.getMessage()
+        );
+    }
+
+    @Test
+    void method_load_reportsTheErrorOfTheFirstFile() throws Exception {
+        Files.writeString(tempDir.resolve("a.yaml"), meal("soupe", "lait", 1, "L"));
+        Files.writeString(tempDir.resolve("b.yaml"), "gâteau:\n  lait:\n    quantity: 1\n");
+        Files.writeString(tempDir.resolve("c.yaml"), "pizza: [");
+
+        FileFormatException exception = assertThrows(
+                FileFormatException.class, () -> MealsFileSet.of(tempDir.toString()).load()
+        );
+        assertTrue(exception.getMessage().startsWith("Error in " + tempDir.resolve("b.yaml")), exception.getMessage());
+    }
+
+    @Test
+    void method_load_parsesOnlyTheFilesThatHaveChanged() throws Exception {
+        Path b = tempDir.resolve("b.yaml");
+        Files.writeString(tempDir.resolve("a.yaml"), meal("a", "tofu", 1, "g"));
+        Files.writeString(b, meal("b", "tofu", 1, "g"));
+        Path cacheDirectory = tempDir.resolve(MealsFileSet.CACHE_DIRECTORY);
+        Metrics.setEnabled(true);
+        try {
+            Metrics.reset();
+            MealsFileSet.of(tempDir.toString()).load();
+            assertEquals(2, Metrics.getCount(Metrics.Phase.LOAD_MEALS_FILE));
+            List<Path> snapshots;
+            try (Stream<Path> entries = Files.list(cacheDirectory)) {
+                snapshots = entries.toList();
+            }
+            assertEquals(2, snapshots.size());
+
+            Metrics.reset();
+            Files.writeString(b, meal("b", "tofu", 2, "g"));
+            MealCatalogue catalogue = MealsFileSet.of(tempDir.toString()).load();
+            assertEquals(IngredientAmount.of(2, "g"), catalogue.asMap().get("b").get("tofu"));
+            assertEquals(1, Metrics.getCount(Metrics.Phase.LOAD_MEALS_FILE));
+            assertEquals(1, Metrics.getCount(Metrics.Phase.READ_SNAPSHOT));
+
+            // the snapshot of the previous version of b is deleted
+            try (Stream<Path> entries = Files.list(cacheDirectory)) {
+                assertEquals(2, entries.count());
+            }
+            assertEquals(1, snapshots.stream().filter(Files::exists).count());
+        } finally {
+            Metrics.setEnabled(false);
+            Metrics.reset();
+        }
+    }
+
+    @Test
+    void method_load_parsesTheFiles_whenTheCacheCannotBeWritten() throws Exception {
+        Path readOnlyDirectory = Files.createDirectories(tempDir.resolve("read-only"));
+        Files.writeString(readOnlyDirectory.resolve("a.yaml"), meal("a", "tofu", 1, "g"));
+        Files.writeString(readOnlyDirectory.resolve("b.yaml"), meal("b", "tofu", 2, "g"));
+        Files.setPosixFilePermissions(readOnlyDirectory, PosixFilePermissions.fromString("r-xr-xr-x"));
+        try {
+            // the permissions don't apply to the superuser
+            assumeFalse(Files.isWritable(readOnlyDirectory));
+            MealCatalogue catalogue = MealsFileSet.of(readOnlyDirectory.toString()).load();
+            assertEquals(List.of("a", "b"), catalogue.getMealsNames());
+            assertFalse(Files.exists(readOnlyDirectory.resolve(MealsFileSet.CACHE_DIRECTORY)));
+        } finally {
+            Files.setPosixFilePermissions(readOnlyDirectory, PosixFilePermissions.fromString("rwxr-xr-x"));
+        }
+    }
+
+    @Test
+    void method_load_parsesTheFiles_whenTheCacheDirectoryIsAFile() throws Exception {
+        Files.writeString(tempDir.resolve("a.yaml"), meal("a", "tofu", 1, "g"));
+        Files.writeString(tempDir.resolve(MealsFileSet.CACHE_DIRECTORY), "not a directory");
+
+        MealCatalogue catalogue = MealsFileSet.of(tempDir.toString()).load();
+        assertEquals(List.of("a"), catalogue.getMealsNames());
+        assertEquals("not a directory", Files.readString(tempDir.resolve(MealsFileSet.CACHE_DIRECTORY)));
+    }
+}
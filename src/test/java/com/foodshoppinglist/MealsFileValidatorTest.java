@@ -0,0 +1,63 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MealsFileValidatorTest {
+
+    static String mockFileName = "mockMealsFileName.yaml";
+
+    /**
+     * Builds the content of a file of many meals, the given meals being faulty.
+     */
+    private static Map<String, Object> largeContent(int mealsCount, int... faultyMeals) {
+        Map<String, Object> content = new LinkedHashMap<>();
+        for (int i = 0; i < mealsCount; i++)
+            content.put("meal " + i, Map.of(
+                    "ingredient " + (i % 100), Map.of("quantity", i, "unit", "g"),
+                    "riz", Map.of("quantity", 1, "unit", "g")
+            ));
+        for (int faultyMeal : faultyMeals)
+            content.put("meal " + faultyMeal, Map.of("riz", Map.of("quantity", "notANumber!", "unit", "g")));
+        return content;
+    }
+
+    @Test
+    void method_check_reportsTheSameFirstError_whateverTheNumberOfThreads() {
+        Map<String, Object> content = largeContent(100_000, 77_777, 12_345, 99_999);
+        for (int parallelism : new int[] {1, 4}) {
+            try (ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+                FileFormatException e = assertThrows(FileFormatException.class, () ->
+                        MealsFileValidator.check(mockFileName, content, false, pool));
+                assertEquals(
+                        "Error in mockMealsFileName.yaml: key 'quantity' of ingredient 'riz' in meal 'meal 12345' is not a number",
+                        e.getMessage());
+            }
+        }
+        assertDoesNotThrow(() -> MealsFileValidator.check(mockFileName, largeContent(100_000), false, ForkJoinPool.commonPool()));
+    }
+
+    @Test
+    void method_check_reportsAllTheErrors_whenAsked() {
+        Map<String, Object> content = largeContent(10_000, 9_000, 10);
+        content.put("meal 5000", Map.of("riz", Map.of("quantity", 1, "unit", "L")));
+        content.put("meal 6000", Map.of("ingredient 0", Map.of("quantity", 1, "unit", "L"), "riz", Map.of("quantity", 1, "unit", "kg")));
+
+        FileFormatException e = assertThrows(FileFormatException.class, () ->
+                MealsFileValidator.check(mockFileName, content, true, ForkJoinPool.commonPool()));
+        assertEquals(
+                """
+                Error in mockMealsFileName.yaml: key 'quantity' of ingredient 'riz' in meal 'meal 10' is not a number
+                Error in mockMealsFileName.yaml: key 'quantity' of ingredient 'riz' in meal 'meal 9000' is not a number
+                Error in mockMealsFileName.yaml: ingredient 'ingredient 0' uses incompatible units: 'g' in [meal 0], 'L' in [meal 6000]
+                Error in mockMealsFileName.yaml: ingredient 'riz' uses incompatible units: 'g' in [meal 0], 'L' in [meal 5000], 'kg' in [meal 6000]""",
+                e.getMessage());
+    }
+}
@@ -1,11 +1,21 @@
 package com.foodshoppinglist;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class MealsHandlerTest {
@@ -49,8 +59,20 @@ public class MealsHandlerTest {
     }
 
     @Test
-    void method_checkFileFormat_throwsException_whenAnIngredientsUsesTwoDifferentUnits() {
+    void method_checkFileFormat_throwsException_whenAnIngredientsUsesTwoIncompatibleUnits() {
         assertThrows(FileFormatException.class, () -> MealsHandler.checkFileFormat(mockFileName,
+                Map.of(
+                    "risotto", Map.of("riz", Map.of("quantity", 1, "unit", "g")),
+                    "riz cantonnais", Map.of("riz", Map.of("quantity", 1, "unit", "L"))
+                )
+        ));
+        assertThrows(FileFormatException.class, () -> MealsHandler.checkFileFormat(mockFileName,
+                Map.of(
+                    "risotto", Map.of("riz", Map.of("quantity", 1, "unit", "g")),
+                    "riz cantonnais", Map.of("riz", Map.of("quantity", 1, "unit", "bol"))
+                )
+        ));
+        assertDoesNotThrow(() -> MealsHandler.checkFileFormat(mockFileName,
                 Map.of(
                     "risotto", Map.of("riz", Map.of("quantity", 1, "unit", "g")),
                     "riz cantonnais", Map.of("riz", Map.of("quantity", 1, "unit", "kg"))
@@ -64,4 +86,137 @@ public class MealsHandlerTest {
         assertDoesNotThrow(() -> MealsHandler.checkFileFormat(mockFileName, Map.of("risotto", Map.of("riz", Map.of("quantity", 1.5, "unit", "g")))));
     }
 
+    @Test
+    void method_computeRequiredIngredients_sumsTheQuantitiesOfEachIngredient() throws FileFormatException {
+        MealsHandler mealsHandler = new MealsHandler("meals.yaml");
+        Map<String, IngredientAmount> requiredIngredients =
+                mealsHandler.computeRequiredIngredients(List.of("risotto", "pâtes au tofu", "risotto"));
+        assertEquals(
+                List.of("ognon", "pâtes", "riz", "sauce provençale", "tofu"),
+                List.copyOf(requiredIngredients.keySet()));
+        assertEquals(IngredientAmount.of(2, "unit"), requiredIngredients.get("ognon"));
+        assertEquals(IngredientAmount.of(500, "g"), requiredIngredients.get("pâtes"));
+        assertEquals(IngredientAmount.of(800, "g"), requiredIngredients.get("riz"));
+        assertEquals(IngredientAmount.of(2, "L"), requiredIngredients.get("sauce provençale"));
+        assertEquals(IngredientAmount.of(1200, "g"), requiredIngredients.get("tofu"));
+
+        // the buffers are reset between calls
+        assertEquals(
+                Map.of("pâtes", IngredientAmount.of(500, "g"), "tofu", IngredientAmount.of(400, "g")),
+                mealsHandler.computeRequiredIngredients(List.of("pâtes au tofu")));
+        assertEquals(Map.of(), mealsHandler.computeRequiredIngredients(List.of()));
+        assertThrows(IllegalArgumentException.class, () ->
+                mealsHandler.computeRequiredIngredients(List.of("not a meal")));
+    }
+
+    @Test
+    void method_aggregate_throwsAnException_whenATotalOverflows() {
+        // about 9,223 quantities at the bound overflow a long
+        MealCatalogue catalogue = overflowingCatalogue(10_000);
+        BitSet allMeals = new BitSet();
+        allMeals.set(0, catalogue.getMealsCount());
+        ShoppingListAggregator aggregator = new ShoppingListAggregator();
+        assertThrows(ArithmeticException.class, () -> aggregator.aggregate(catalogue, allMeals));
+        assertThrows(ArithmeticException.class, () -> aggregator.aggregate(catalogue, catalogue.getMealsNames()));
+
+        // the buffers are reset after the failure
+        BitSet twoMeals = new BitSet();
+        twoMeals.set(0, 2);
+        assertEquals(
+                Map.of("riz", new IngredientAmount(2 * 999_999_999_999_000L, "kg")),
+                aggregator.aggregate(catalogue, twoMeals)
+        );
+    }
+
+    /**
+     * Builds a catalogue of meals that each need the largest quantity of rice.
+     */
+    static MealCatalogue overflowingCatalogue(int mealsCount) {
+        Map<String, Map<String, IngredientAmount>> meals = new HashMap<>();
+        for (int i = 0; i < mealsCount; i++)
+            meals.put("meal " + i, Map.of("riz", IngredientAmount.of(999_999_999_999L, "kg")));
+        return MealCatalogue.of(meals);
+    }
+
+    @Test
+    void method_computeRequiredIngredients_ofABatch_matchesEachSelectionAggregatedAlone() throws FileFormatException {
+        MealsHandler mealsHandler = new MealsHandler("meals.yaml");
+        MealCatalogue catalogue = mealsHandler.getCatalogue();
+        Random random = new Random(42);
+        // several tiles, the last one incomplete, with empty and full selections
+        List<BitSet> selections = new ArrayList<>();
+        selections.add(new BitSet());
+        for (int i = 0; i < 3 * ShoppingListBatch.SELECTIONS_PER_TILE; i++)
+            selections.add(BitSet.valueOf(new long[]{random.nextLong() & ((1L << catalogue.getMealsCount()) - 1)}));
+        BitSet allMeals = new BitSet();
+        allMeals.set(0, catalogue.getMealsCount());
+        selections.add(allMeals);
+
+        ShoppingListBatch batch = mealsHandler.computeRequiredIngredients(catalogue, selections);
+        assertEquals(selections.size(), batch.size());
+        for (int i = 0; i < selections.size(); i++) {
+            Map<String, IngredientAmount> expected = mealsHandler.computeRequiredIngredients(catalogue, selections.get(i));
+            assertEquals(List.copyOf(expected.entrySet()), List.copyOf(batch.getShoppingList(i).entrySet()));
+            assertEquals(expected.size(), batch.getIngredientsCount(i));
+        }
+        assertEquals(0, mealsHandler.computeRequiredIngredients(catalogue, List.of()).size());
+
+        BitSet notAMeal = new BitSet();
+        notAMeal.set(catalogue.getMealsCount());
+        assertThrows(IndexOutOfBoundsException.class, () ->
+                mealsHandler.computeRequiredIngredients(catalogue, List.of(allMeals, notAMeal)));
+    }
+
+    @Test
+    void method_computeRequiredIngredients_ofABatch_throwsAnException_whenATotalOverflows() throws FileFormatException {
+        MealsHandler mealsHandler = new MealsHandler("meals.yaml");
+        MealCatalogue catalogue = overflowingCatalogue(10_000);
+        BitSet twoMeals = new BitSet();
+        twoMeals.set(0, 2);
+        BitSet allMeals = new BitSet();
+        allMeals.set(0, catalogue.getMealsCount());
+        assertThrows(ArithmeticException.class, () ->
+                mealsHandler.computeRequiredIngredients(catalogue, List.of(twoMeals, allMeals)));
+        assertEquals(
+                2 * 999_999_999_999_000L,
+                mealsHandler.computeRequiredIngredients(catalogue, List.of(twoMeals)).getQuantity(0, 0)
+        );
+    }
+
+    @Test
+    void method_findMealsByIngredients_returnsTheMatchingMeals_inAlphabeticalOrder() throws FileFormatException {
+        MealsHandler mealsHandler = new MealsHandler("meals.yaml");
+        assertEquals(
+                List.of("pâtes au tofu", "risotto"),
+                mealsHandler.findMealsByIngredients(List.of("tofu"), List.of("pâtes", "riz"), List.of("huile"))
+        );
+        assertEquals(
+                List.of("pâtes au tofu"),
+                mealsHandler.findCookableMeals(Map.of("pâtes", IngredientAmount.of(0.5, "kg"), "tofu", IngredientAmount.of(400, "g")))
+        );
+    }
+
+    @Test
+    void method_reload_replacesTheMeals_onlyWhenTheFileIsCorrect(@TempDir Path tempDir) throws Exception {
+        Path mealsFile = tempDir.resolve("meals.yaml");
+        Files.writeString(mealsFile, "risotto:\n  riz:\n    quantity: 400\n    unit: g\n");
+        MealsHandler mealsHandler = new MealsHandler(mealsFile.toString());
+        assertEquals(List.of("risotto"), mealsHandler.getAvailableMealsNames());
+
+        Files.writeString(mealsFile, "pâtes:\n  pâtes:\n    quantity: 500\n    unit: g\n  ognon:\n    quantity: 1\n    unit: unit\n");
+        mealsHandler.reload();
+        assertEquals(List.of("pâtes"), mealsHandler.getAvailableMealsNames());
+        assertEquals(
+                Map.of("ognon", IngredientAmount.of(1, "unit"), "pâtes", IngredientAmount.of(500, "g")),
+                mealsHandler.computeRequiredIngredients(List.of("pâtes")));
+
+        MealCatalogue lastGoodCatalogue = mealsHandler.getCatalogue();
+        Files.writeString(mealsFile, "pâtes:\n  pâtes:\n    quantity: [\n");
+        assertThrows(FileFormatException.class, mealsHandler::reload);
+        Files.writeString(mealsFile, "pâtes:\n  pâtes:\n    quantity: lots\n    unit: g\n");
+        assertThrows(FileFormatException.class, mealsHandler::reload);
+        Files.delete(mealsFile);
+        assertThrows(IOException.class, mealsHandler::reload);
+        assertSame(lastGoodCatalogue, mealsHandler.getCatalogue());
+    }
 }
@@ -0,0 +1,198 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MealsServerTest {
+
+    static private MealsHandler mealsHandler;
+    static private MealsServer server;
+    static private HttpClient client;
+
+    @BeforeAll
+    static void initBeforeAll() throws FileFormatException, IOException {
+        mealsHandler = new MealsHandler("meals.yaml");
+        server = new MealsServer(mealsHandler, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterAll
+    static void cleanUpAfterAll() {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void method_handleMeals_listsTheMealsInTheOrderOfTheirNumbers() throws Exception {
+        HttpResponse<String> response = send(HttpRequest.newBuilder(uri("/meals")).GET());
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().startsWith("{\"meals\":[\"" + mealsHandler.getAvailableMealsNames().getFirst() + "\","));
+        assertEquals(mealsHandler.getAvailableMealsNames().size(), response.body().split("\",\"").length);
+    }
+
+    @Test
+    void method_handleShoppingList_aggregatesTheSelectedMeals() throws Exception {
+        int pates = mealsHandler.getAvailableMealsNames().indexOf("pâtes au tofu") + 1;
+        HttpResponse<String> response = send(HttpRequest.newBuilder(uri("/shopping-list"))
+                .POST(HttpRequest.BodyPublishers.ofString(pates + " " + pates)));
+        assertEquals(200, response.statusCode());
+        assertEquals(
+                "{\"ingredients\":[{\"name\":\"pâtes\",\"quantity\":500,\"unit\":\"g\"},{\"name\":\"tofu\",\"quantity\":400,\"unit\":\"g\"}]}",
+                response.body());
+
+        response = send(HttpRequest.newBuilder(uri("/shopping-list")).POST(HttpRequest.BodyPublishers.ofString("1 x")));
+        assertEquals(400, response.statusCode());
+        assertEquals("{\"error\":\"" + SelectionParser.INVALID_FORMAT_MESSAGE + "\"}", response.body());
+
+        assertEquals(405, send(HttpRequest.newBuilder(uri("/shopping-list")).GET()).statusCode());
+        assertEquals(404, send(HttpRequest.newBuilder(uri("/shopping-list/1")).GET()).statusCode());
+    }
+
+    @Test
+    void method_handleShoppingList_sustainsManyConcurrentRequests() throws Exception {
+        int requestsCount = 2000;
+        // bounds the number of open connections of the client
+        Semaphore inFlight = new Semaphore(500);
+        int mealsCount = mealsHandler.getAvailableMealsNames().size();
+        String expectedBody = send(HttpRequest.newBuilder(uri("/shopping-list"))
+                .POST(HttpRequest.BodyPublishers.ofString("1-" + mealsCount))).body();
+
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>(requestsCount);
+        for (int i = 0; i < requestsCount; i++) {
+            inFlight.acquire();
+            responses.add(client.sendAsync(
+                    HttpRequest.newBuilder(uri("/shopping-list")).POST(HttpRequest.BodyPublishers.ofString("1-" + mealsCount)).build(),
+                    HttpResponse.BodyHandlers.ofString()
+            ).whenComplete((response, exception) -> inFlight.release()));
+        }
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals(200, response.join().statusCode());
+            assertEquals(expectedBody, response.join().body());
+        }
+    }
+
+    @Test
+    void method_handlePantry_updatesTheStock_andReducesTheShoppingList(@TempDir Path tempDir) throws Exception {
+        assertEquals(404, send(HttpRequest.newBuilder(uri("/pantry?household=home")).GET()).statusCode());
+
+        try (Pantries pantries = new Pantries(tempDir);
+             MealsServer pantryServer = new MealsServer(
+                     mealsHandler, pantries, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            String baseUri = "http://localhost:" + pantryServer.getAddress().getPort();
+            HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(baseUri + "/pantry?household=home"))
+                    .POST(HttpRequest.BodyPublishers.ofString("ingredient=tofu&quantity=1&unit=kg")));
+            assertEquals(200, response.statusCode());
+            assertEquals("{\"ingredients\":[{\"name\":\"tofu\",\"quantity\":1,\"unit\":\"kg\"}]}", response.body());
+            response = send(HttpRequest.newBuilder(URI.create(baseUri + "/pantry?household=home"))
+                    .POST(HttpRequest.BodyPublishers.ofString("ingredient=tofu&quantity=-0.7&unit=kg")));
+            assertEquals("{\"ingredients\":[{\"name\":\"tofu\",\"quantity\":0.3,\"unit\":\"kg\"}]}", response.body());
+            response = send(HttpRequest.newBuilder(URI.create(baseUri + "/pantry?household=home")).GET());
+            assertEquals("{\"ingredients\":[{\"name\":\"tofu\",\"quantity\":0.3,\"unit\":\"kg\"}]}", response.body());
+
+            int pates = mealsHandler.getAvailableMealsNames().indexOf("pâtes au tofu") + 1;
+            response = send(HttpRequest.newBuilder(URI.create(baseUri + "/shopping-list?household=home"))
+                    .POST(HttpRequest.BodyPublishers.ofString(pates + " " + pates)));
+            assertEquals(
+                    "{\"ingredients\":[{\"name\":\"pâtes\",\"quantity\":500,\"unit\":\"g\"},{\"name\":\"tofu\",\"quantity\":100,\"unit\":\"g\"}]}",
+                    response.body());
+
+            // the pantries of the other households are not shared, nor created by reads
+            response = send(HttpRequest.newBuilder(URI.create(baseUri + "/pantry?household=neighbours")).GET());
+            assertEquals(200, response.statusCode());
+            assertEquals("{\"ingredients\":[]}", response.body());
+            response = send(HttpRequest.newBuilder(URI.create(baseUri + "/shopping-list?household=neighbours"))
+                    .POST(HttpRequest.BodyPublishers.ofString(String.valueOf(pates))));
+            assertEquals(
+                    "{\"ingredients\":[{\"name\":\"pâtes\",\"quantity\":500,\"unit\":\"g\"},{\"name\":\"tofu\",\"quantity\":400,\"unit\":\"g\"}]}",
+                    response.body());
+            assertFalse(Files.exists(tempDir.resolve("neighbours")));
+
+            assertEquals(400, send(HttpRequest.newBuilder(URI.create(baseUri + "/pantry?household=../home")).GET()).statusCode());
+            assertEquals(400, send(HttpRequest.newBuilder(URI.create(baseUri + "/pantry?household=home"))
+                    .POST(HttpRequest.BodyPublishers.ofString("ingredient=tofu&quantity=1&unit=L"))).statusCode());
+            assertEquals(400, send(HttpRequest.newBuilder(URI.create(baseUri + "/pantry?household=home"))
+                    .POST(HttpRequest.BodyPublishers.ofString("ingredient=tofu&quantity=x&unit=g"))).statusCode());
+            assertEquals(405, send(HttpRequest.newBuilder(URI.create(baseUri + "/pantry?household=home"))
+                    .DELETE()).statusCode());
+
+            // a stock that doesn't fit in a long once converted to mg
+            assertEquals(200, send(HttpRequest.newBuilder(URI.create(baseUri + "/pantry?household=home"))
+                    .POST(HttpRequest.BodyPublishers.ofString("ingredient=riz&quantity=999999999999&unit=kg"))).statusCode());
+            response = send(HttpRequest.newBuilder(URI.create(baseUri + "/pantry?household=home"))
+                    .POST(HttpRequest.BodyPublishers.ofString("ingredient=riz&quantity=1&unit=mg")));
+            assertEquals(400, response.statusCode());
+            assertEquals("{\"error\":\"The quantities are too large.\"}", response.body());
+        }
+    }
+
+    @Test
+    void method_handleShoppingList_answers400_whenATotalOverflows(@TempDir Path tempDir) throws Exception {
+        // about 9,223 quantities at the bound overflow a long
+        StringBuilder meals = new StringBuilder();
+        for (int i = 0; i < 10_000; i++)
+            meals.append("meal ").append(i).append(":\n  riz:\n    quantity: 999999999999\n    unit: kg\n");
+        Path mealsFile = tempDir.resolve("meals.yaml");
+        Files.writeString(mealsFile, meals);
+
+        try (MealsServer overflowServer = new MealsServer(
+                new MealsHandler(mealsFile.toString()), new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            String baseUri = "http://localhost:" + overflowServer.getAddress().getPort();
+            HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(baseUri + "/shopping-list"))
+                    .POST(HttpRequest.BodyPublishers.ofString("1-10000")));
+            assertEquals(400, response.statusCode());
+            assertEquals("{\"error\":\"" + ShoppingListAggregator.OVERFLOW_MESSAGE + "\"}", response.body());
+
+            response = send(HttpRequest.newBuilder(URI.create(baseUri + "/shopping-list"))
+                    .POST(HttpRequest.BodyPublishers.ofString("1-2")));
+            assertEquals(200, response.statusCode());
+        }
+    }
+
+    @Test
+    void method_handleMetrics_exportsThePhases_whenTheMetricsAreEnabled() throws Exception {
+        assertEquals(404, send(HttpRequest.newBuilder(uri("/metrics")).GET()).statusCode());
+
+        Metrics.setEnabled(true);
+        try (MealsServer metricsServer = new MealsServer(mealsHandler, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            String baseUri = "http://localhost:" + metricsServer.getAddress().getPort();
+            send(HttpRequest.newBuilder(URI.create(baseUri + "/shopping-list")).POST(HttpRequest.BodyPublishers.ofString("1 2")));
+            HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(baseUri + "/metrics")).GET());
+            assertEquals(200, response.statusCode());
+            assertTrue(response.headers().firstValue("Content-Type").orElseThrow().startsWith("text/plain"));
+            assertTrue(response.body().contains("# TYPE foodshoppinglist_phase_seconds summary\n"));
+            assertTrue(response.body().contains("foodshoppinglist_phase_seconds_count{phase=\"parse_selection\"} "));
+            assertTrue(response.body().contains("foodshoppinglist_shopping_list_cache_hits_total "));
+        } finally {
+            Metrics.setEnabled(false);
+            Metrics.reset();
+        }
+    }
+
+    private static URI uri(String path) {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + path);
+    }
+
+    private static HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
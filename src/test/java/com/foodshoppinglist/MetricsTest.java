@@ -0,0 +1,60 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MetricsTest {
+
+    @AfterEach
+    void cleanUpAfterEach() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    void method_bucketIndex_keepsTheValuesWithinThreePercent() {
+        int previousIndex = -1;
+        for (long value = 0; value < 1_000_000; value += 1 + value / 100) {
+            int index = Metrics.bucketIndex(value);
+            assertTrue(index >= previousIndex);
+            long highestValue = Metrics.bucketHighestValue(index);
+            assertTrue(highestValue >= value && highestValue <= value + value / 32, value + " -> " + highestValue);
+            previousIndex = index;
+        }
+        assertEquals(Long.MAX_VALUE, Metrics.bucketHighestValue(Metrics.bucketIndex(Long.MAX_VALUE)));
+    }
+
+    @Test
+    void method_start_recordsThePhases_onlyWhenEnabled() throws Exception {
+        MealCatalogue catalogue = MealCatalogue.of(MealsFileLoader.load("meals.yaml"));
+        SelectionParser parser = new SelectionParser();
+        parser.parse("1 2", catalogue.getMealsCount());
+        assertEquals(0, Metrics.getCount(Metrics.Phase.PARSE_SELECTION));
+
+        Metrics.setEnabled(true);
+        for (int i = 0; i < 10; i++) {
+            BitSet selection = parser.parse("1 3-4", catalogue.getMealsCount());
+            new ShoppingListAggregator().aggregate(catalogue, selection);
+        }
+        assertEquals(10, Metrics.getCount(Metrics.Phase.PARSE_SELECTION));
+        assertEquals(10, Metrics.getCount(Metrics.Phase.AGGREGATE));
+
+        StringBuilder summary = new StringBuilder();
+        Metrics.writeSummary(summary);
+        String[] lines = summary.toString().split(System.lineSeparator());
+        assertTrue(lines[0].startsWith("phase "));
+        assertEquals(3, lines.length, summary.toString());
+        assertEquals("parse_selection", lines[1].split(" +")[0]);
+        assertEquals("10", lines[1].split(" +")[1]);
+
+        StringBuilder prometheus = new StringBuilder();
+        Metrics.writePrometheus(prometheus);
+        assertTrue(prometheus.toString().contains("foodshoppinglist_phase_seconds_count{phase=\"aggregate\"} 10\n"));
+        assertTrue(prometheus.toString().contains("foodshoppinglist_phase_seconds{phase=\"read_snapshot\",quantile=\"0.99\"} NaN\n"));
+    }
+}
@@ -0,0 +1,145 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OffHeapCatalogueTest {
+
+    @Test
+    void method_copyOf_keepsTheMealsAndTheIngredients_ofTheCatalogue() throws FileFormatException {
+        MealCatalogue catalogue = new MealsHandler("meals.yaml").getCatalogue();
+        try (OffHeapCatalogue offHeapCatalogue = OffHeapCatalogue.copyOf(catalogue)) {
+            assertEquals(catalogue.getMealsCount(), offHeapCatalogue.getMealsCount());
+            for (int ordinal = 0; ordinal < catalogue.getMealsCount(); ordinal++) {
+                assertEquals(catalogue.getMealName(ordinal), offHeapCatalogue.getMealName(ordinal));
+                assertEquals(ordinal, offHeapCatalogue.getMealOrdinal(catalogue.getMealName(ordinal)));
+                assertEquals(catalogue.getFirstLine(ordinal), offHeapCatalogue.getFirstLine(ordinal));
+                assertEquals(catalogue.getEndLine(ordinal), offHeapCatalogue.getEndLine(ordinal));
+            }
+            assertEquals(catalogue.getIngredientsCount(), offHeapCatalogue.getIngredientsCount());
+            for (int id = 0; id < catalogue.getIngredientsCount(); id++) {
+                assertEquals(catalogue.getIngredientName(id), offHeapCatalogue.getIngredientName(id));
+                assertEquals(id, offHeapCatalogue.getIngredientId(catalogue.getIngredientName(id)));
+                assertEquals(catalogue.getIngredientUnit(id), offHeapCatalogue.getIngredientUnit(id));
+            }
+            assertEquals(catalogue.getLinesCount(), offHeapCatalogue.getLinesCount());
+            for (int line = 0; line < catalogue.getLinesCount(); line++) {
+                assertEquals(catalogue.getLineIngredient(line), offHeapCatalogue.getLineIngredient(line));
+                assertEquals(catalogue.getLineQuantity(line), offHeapCatalogue.getLineQuantity(line));
+            }
+
+            BitSet allMeals = new BitSet();
+            allMeals.set(0, catalogue.getMealsCount());
+            assertEquals(
+                    new ShoppingListAggregator().aggregate(catalogue, allMeals),
+                    offHeapCatalogue.getShoppingList(allMeals)
+            );
+            assertEquals(-1, offHeapCatalogue.getMealOrdinal("pâtes"));
+            assertEquals(-1, offHeapCatalogue.getIngredientId("pâtes au tofu"));
+        }
+    }
+
+    @Test
+    void method_aggregate_throwsAnException_whenATotalOverflows() {
+        try (OffHeapCatalogue offHeapCatalogue = OffHeapCatalogue.copyOf(MealsHandlerTest.overflowingCatalogue(10_000))) {
+            BitSet allMeals = new BitSet();
+            allMeals.set(0, offHeapCatalogue.getMealsCount());
+            assertThrows(ArithmeticException.class, () -> offHeapCatalogue.getShoppingList(allMeals));
+            assertThrows(ArithmeticException.class, () ->
+                    offHeapCatalogue.aggregate(allMeals, new long[offHeapCatalogue.getIngredientsCount()]));
+        }
+    }
+
+    @Test
+    void method_getMealOrdinal_comparesTheNames_charByChar() {
+        MealCatalogue catalogue = MealCatalogue.of(Map.of(
+                "crêpes", Map.of("œuf", IngredientAmount.of(2, "unit"), "farine", IngredientAmount.of(250, "g")),
+                "gâteau 🎂", Map.of("œuf", IngredientAmount.of(4, "unit"), "sucre 🍬", IngredientAmount.of(100, "g")),
+                "gâteau", Map.of("farine", IngredientAmount.of(0.2, "kg"))
+        ));
+        try (OffHeapCatalogue offHeapCatalogue = OffHeapCatalogue.copyOf(catalogue)) {
+            for (String mealName : catalogue.getMealsNames())
+                assertEquals(catalogue.getMealOrdinal(mealName), offHeapCatalogue.getMealOrdinal(mealName));
+            for (String ingredientName : new String[]{"farine", "sucre 🍬", "œuf", "sucre", "sucre 🍬🍬", "oeuf", "zeste"})
+                assertEquals(catalogue.getIngredientId(ingredientName), offHeapCatalogue.getIngredientId(ingredientName));
+            assertEquals(-1, offHeapCatalogue.getMealOrdinal("gâteau 🎂 "));
+            assertEquals(-1, offHeapCatalogue.getMealOrdinal("crepes"));
+        }
+    }
+
+    @Test
+    void method_release_freesTheCatalogue() throws FileFormatException {
+        MealCatalogue catalogue = new MealsHandler("meals.yaml").getCatalogue();
+        try (CatalogueStore store = new CatalogueStore()) {
+            OffHeapCatalogue first = store.load("alice", catalogue);
+            OffHeapCatalogue second = store.load("bob", catalogue);
+            assertEquals(Set.of("alice", "bob"), store.getCustomers());
+            assertEquals(first.getByteSize() + second.getByteSize(), store.getByteSize());
+
+            // a new version of a catalogue frees the previous one
+            OffHeapCatalogue reloaded = store.load("alice", catalogue);
+            assertSame(reloaded, store.get("alice"));
+            assertFalse(first.isAlive());
+            assertThrows(IllegalStateException.class, () -> first.getLineQuantity(0));
+
+            assertTrue(store.release("bob"));
+            assertFalse(store.release("bob"));
+            assertNull(store.get("bob"));
+            assertFalse(second.isAlive());
+            assertThrows(IllegalStateException.class, () -> second.getMealOrdinal(catalogue.getMealName(0)));
+
+            store.close();
+            assertFalse(reloaded.isAlive());
+            assertEquals(Set.of(), store.getCustomers());
+        }
+    }
+
+    @Test
+    void method_load_fails_afterTheStoreIsClosed() throws Exception {
+        MealCatalogue catalogue = new MealsHandler("meals.yaml").getCatalogue();
+        int loadersCount = 4;
+        CatalogueStore store = new CatalogueStore();
+        try (ExecutorService executor = Executors.newFixedThreadPool(loadersCount)) {
+            List<Future<List<OffHeapCatalogue>>> loaders = new ArrayList<>();
+            for (int loader = 0; loader < loadersCount; loader++) {
+                String customer = "customer " + loader;
+                loaders.add(executor.submit(() -> {
+                    List<OffHeapCatalogue> loaded = new ArrayList<>();
+                    try {
+                        while (true)
+                            loaded.add(store.load(customer, catalogue));
+                    } catch (IllegalStateException e) {
+                        return loaded;
+                    }
+                }));
+            }
+            Thread.sleep(50);
+            store.close();
+
+            // no catalogue loaded concurrently with the closing stays allocated
+            for (Future<List<OffHeapCatalogue>> loader : loaders) {
+                for (OffHeapCatalogue loaded : loader.get())
+                    assertFalse(loaded.isAlive());
+            }
+        }
+        assertEquals(Set.of(), store.getCustomers());
+        assertEquals(0, store.getByteSize());
+        assertThrows(IllegalStateException.class, () -> store.load("alice", catalogue));
+        assertNull(store.get("alice"));
+    }
+}
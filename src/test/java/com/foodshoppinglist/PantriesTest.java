@@ -0,0 +1,87 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PantriesTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void method_lease_createsThePantry_onlyWhenAsked() throws IOException {
+        try (Pantries pantries = new Pantries(tempDir)) {
+            try (Pantries.Lease lease = pantries.lease("home", false)) {
+                assertNull(lease.pantry());
+            }
+            assertFalse(Files.exists(tempDir.resolve("home")));
+
+            try (Pantries.Lease lease = pantries.lease("home", true)) {
+                lease.pantry().add("riz", IngredientAmount.of(1, "kg"));
+            }
+            try (Pantries.Lease lease = pantries.lease("home", false)) {
+                assertEquals(IngredientAmount.of(1, "kg"), lease.pantry().getStock("riz"));
+            }
+            assertThrows(IllegalArgumentException.class, () -> pantries.lease("../home", true));
+        }
+    }
+
+    @Test
+    void method_lease_closesTheLeastRecentlyLentPantries_thatAreNotLent() throws IOException {
+        try (Pantries pantries = new Pantries(tempDir, 2)) {
+            Pantries.Lease firstLease = pantries.lease("first", true);
+            Pantry first = firstLease.pantry();
+            Pantry second;
+            try (Pantries.Lease lease = pantries.lease("second", true)) {
+                second = lease.pantry();
+                second.add("riz", IngredientAmount.of(1, "kg"));
+            }
+            // the first pantry is lent, so the second one is closed instead
+            try (Pantries.Lease lease = pantries.lease("third", true)) {
+                lease.pantry().add("riz", IngredientAmount.of(3, "kg"));
+            }
+            assertThrows(IOException.class, () -> second.add("riz", IngredientAmount.of(1, "kg")));
+            first.add("riz", IngredientAmount.of(2, "kg"));
+            firstLease.close();
+            firstLease.close();
+
+            // a closed pantry is opened again from its files
+            try (Pantries.Lease lease = pantries.lease("second", false)) {
+                assertEquals(IngredientAmount.of(1, "kg"), lease.pantry().getStock("riz"));
+            }
+            try (Pantries.Lease lease = pantries.lease("third", false)) {
+                assertEquals(IngredientAmount.of(3, "kg"), lease.pantry().getStock("riz"));
+            }
+            // the first pantry was the least recently lent
+            assertThrows(IOException.class, () -> first.add("riz", IngredientAmount.of(1, "kg")));
+            try (Pantries.Lease lease = pantries.lease("first", false)) {
+                assertEquals(IngredientAmount.of(2, "kg"), lease.pantry().getStock("riz"));
+            }
+        }
+    }
+
+    @Test
+    void method_close_failsTheNextLeases() throws IOException {
+        Pantries pantries = new Pantries(tempDir);
+        Pantry pantry;
+        try (Pantries.Lease lease = pantries.lease("home", true)) {
+            pantry = lease.pantry();
+            try (Pantries.Lease sameLease = pantries.lease("home", false)) {
+                assertSame(pantry, sameLease.pantry());
+            }
+        }
+        pantries.close();
+        assertThrows(IOException.class, () -> pantry.add("riz", IngredientAmount.of(1, "kg")));
+        assertThrows(IOException.class, () -> pantries.lease("home", false));
+    }
+}
@@ -0,0 +1,250 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PantryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void method_add_sumsTheAmounts_exactly() throws IOException {
+        try (Pantry pantry = Pantry.open(tempDir)) {
+            assertNull(pantry.getStock("riz"));
+            assertEquals(IngredientAmount.of(1, "kg"), pantry.add("riz", IngredientAmount.of(1, "kg")));
+            assertEquals(IngredientAmount.of(800, "g"), pantry.add("riz", IngredientAmount.of(-200, "g")));
+            assertEquals(IngredientAmount.of(800, "g"), pantry.getStock("riz"));
+
+            // a use of more than the stock empties it
+            assertEquals(IngredientAmount.of(0, "g"), pantry.add("riz", IngredientAmount.of(-1, "kg")));
+            assertEquals(Map.of(), pantry.getStocks());
+            // an empty stock can be stocked again in any unit
+            assertEquals(IngredientAmount.of(2, "unit"), pantry.add("riz", IngredientAmount.of(2, "unit")));
+
+            // the sums are exact, even when the units don't divide one another
+            pantry.add("lait", IngredientAmount.of(1, "L"));
+            pantry.add("lait", IngredientAmount.of(-1, "c à s"));
+            assertEquals(IngredientAmount.of(197, "c à c"), pantry.getStock("lait"));
+            pantry.add("lait", IngredientAmount.of(-197, "c à c"));
+
+            pantry.add("tofu", IngredientAmount.of(200, "g"));
+            assertThrows(IllegalArgumentException.class, () -> pantry.add("tofu", IngredientAmount.of(1, "L")));
+            assertEquals(
+                    Map.of("riz", IngredientAmount.of(2, "unit"), "tofu", IngredientAmount.of(200, "g")),
+                    pantry.getStocks()
+            );
+        }
+    }
+
+    @Test
+    void method_subtractFrom_leavesOutWhatIsInStock() throws IOException {
+        try (Pantry pantry = Pantry.open(tempDir)) {
+            pantry.add("riz", IngredientAmount.of(0.5, "kg"));
+            pantry.add("tofu", IngredientAmount.of(400, "g"));
+            pantry.add("lait", IngredientAmount.of(3, "unit"));
+
+            Map<String, IngredientAmount> shoppingList = new LinkedHashMap<>();
+            shoppingList.put("riz", IngredientAmount.of(700, "g"));
+            shoppingList.put("tofu", IngredientAmount.of(200, "g"));
+            shoppingList.put("lait", IngredientAmount.of(1, "L"));
+            shoppingList.put("oeuf", IngredientAmount.of(4, "unit"));
+
+            Map<String, IngredientAmount> remaining = pantry.subtractFrom(shoppingList);
+            assertEquals(List.of("riz", "lait", "oeuf"), List.copyOf(remaining.keySet()));
+            assertEquals(IngredientAmount.of(200, "g"), remaining.get("riz"));
+            // incompatible units: the stock is ignored
+            assertEquals(IngredientAmount.of(1, "L"), remaining.get("lait"));
+            assertEquals(IngredientAmount.of(4, "unit"), remaining.get("oeuf"));
+        }
+    }
+
+    @Test
+    void method_open_recoversTheStock_andCompactsTheLog() throws IOException {
+        try (Pantry pantry = Pantry.open(tempDir)) {
+            pantry.add("riz", IngredientAmount.of(1, "kg"));
+            pantry.add("riz", IngredientAmount.of(-300, "g"));
+            pantry.add("tofu", IngredientAmount.of(200, "g"));
+            pantry.add("tofu", IngredientAmount.of(-200, "g"));
+        }
+        assertFalse(Files.exists(tempDir.resolve(PantryLog.CHECKPOINT_FILE)));
+
+        // the log is folded into the checkpoint when the pantry is opened again
+        try (Pantry pantry = Pantry.open(tempDir)) {
+            assertEquals(Map.of("riz", IngredientAmount.of(700, "g")), pantry.getStocks());
+        }
+        assertTrue(Files.exists(tempDir.resolve(PantryLog.CHECKPOINT_FILE)));
+        assertEquals(List.of("log-000000000001.bin"), listLogFiles());
+
+        try (Pantry pantry = Pantry.open(tempDir)) {
+            assertEquals(Map.of("riz", IngredientAmount.of(700, "g")), pantry.getStocks());
+            pantry.add("oeuf", IngredientAmount.of(6, "unit"));
+        }
+        try (Pantry pantry = Pantry.open(tempDir)) {
+            assertEquals(
+                    Map.of("riz", IngredientAmount.of(700, "g"), "oeuf", IngredientAmount.of(6, "unit")),
+                    pantry.getStocks()
+            );
+        }
+    }
+
+    @Test
+    void method_open_dropsARecordThatWasPartlyWritten() throws IOException {
+        try (Pantry pantry = Pantry.open(tempDir)) {
+            pantry.add("riz", IngredientAmount.of(1, "kg"));
+        }
+        Path logFile = tempDir.resolve(listLogFiles().getLast());
+        long size = Files.size(logFile);
+        Files.write(logFile, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (Pantry pantry = Pantry.open(tempDir)) {
+            assertEquals(Map.of("riz", IngredientAmount.of(1, "kg")), pantry.getStocks());
+            // the file is cut when the pantry opens, then deleted by the compaction that follows
+            try {
+                assertEquals(size, Files.size(logFile));
+            } catch (NoSuchFileException e) {
+                // already folded into the checkpoint
+            }
+            pantry.add("riz", IngredientAmount.of(-500, "g"));
+        }
+        try (Pantry pantry = Pantry.open(tempDir)) {
+            assertEquals(Map.of("riz", IngredientAmount.of(500, "g")), pantry.getStocks());
+        }
+    }
+
+    @Test
+    void method_add_keepsEveryUpdate_ofConcurrentWriters() throws Exception {
+        int writersCount = 16;
+        int updatesCount = 200;
+        try (Pantry pantry = Pantry.open(tempDir);
+             ExecutorService executor = Executors.newFixedThreadPool(writersCount)) {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int writer = 0; writer < writersCount; writer++) {
+                String ownIngredient = "ingredient " + writer;
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < updatesCount; i++) {
+                        pantry.add("riz", IngredientAmount.of(1, "g"));
+                        pantry.add(ownIngredient, IngredientAmount.of(1, "unit"));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> writer : writers)
+                writer.get();
+            assertEquals(IngredientAmount.of(writersCount * updatesCount, "g"), pantry.getStock("riz"));
+        }
+
+        try (Pantry pantry = Pantry.open(tempDir)) {
+            Map<String, IngredientAmount> stocks = pantry.getStocks();
+            assertEquals(writersCount + 1, stocks.size());
+            assertEquals(IngredientAmount.of(writersCount * updatesCount, "g"), stocks.get("riz"));
+            for (int writer = 0; writer < writersCount; writer++)
+                assertEquals(IngredientAmount.of(updatesCount, "unit"), stocks.get("ingredient " + writer));
+        }
+    }
+
+    @Test
+    void method_add_compactsTheLog_whileWritersAreActive() throws Exception {
+        int writersCount = 8;
+        int updatesCount = 300;
+        // a few hundred bytes per generation, so that the log is compacted many times
+        long compactionThreshold = 512;
+        try (Pantry pantry = Pantry.open(tempDir, compactionThreshold);
+             ExecutorService executor = Executors.newFixedThreadPool(writersCount)) {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int writer = 0; writer < writersCount; writer++) {
+                String ownIngredient = "ingredient " + writer;
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < updatesCount; i++) {
+                        pantry.add(ownIngredient, IngredientAmount.of(2, "unit"));
+                        pantry.add(ownIngredient, IngredientAmount.of(-1, "unit"));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> writer : writers)
+                writer.get();
+        }
+        assertTrue(Files.exists(tempDir.resolve(PantryLog.CHECKPOINT_FILE)));
+        // the compactions deleted the generations they folded
+        assertTrue(listLogFiles().size() < 10, listLogFiles().toString());
+
+        for (int reopening = 0; reopening < 2; reopening++) {
+            try (Pantry pantry = Pantry.open(tempDir, compactionThreshold)) {
+                Map<String, IngredientAmount> stocks = pantry.getStocks();
+                assertEquals(writersCount, stocks.size());
+                for (int writer = 0; writer < writersCount; writer++)
+                    assertEquals(IngredientAmount.of(updatesCount, "unit"), stocks.get("ingredient " + writer));
+            }
+        }
+    }
+
+    @Test
+    void method_close_failsTheUpdatesOfActiveWriters_withoutBlockingThem() throws Exception {
+        int writersCount = 8;
+        Pantry pantry = Pantry.open(tempDir);
+        try (ExecutorService executor = Executors.newFixedThreadPool(writersCount)) {
+            List<Future<Integer>> writers = new ArrayList<>();
+            for (int writer = 0; writer < writersCount; writer++) {
+                String ownIngredient = "ingredient " + writer;
+                writers.add(executor.submit(() -> {
+                    int updatesCount = 0;
+                    try {
+                        while (true) {
+                            pantry.add(ownIngredient, IngredientAmount.of(1, "unit"));
+                            updatesCount++;
+                        }
+                    } catch (IOException e) {
+                        return updatesCount;
+                    }
+                }));
+            }
+            Thread.sleep(50);
+            pantry.close();
+
+            // every writer gets an error, and the stock holds only the durable updates
+            for (int writer = 0; writer < writersCount; writer++) {
+                int updatesCount = writers.get(writer).get(30, TimeUnit.SECONDS);
+                IngredientAmount stock = pantry.getStock("ingredient " + writer);
+                assertEquals(FixedPoint.SCALE * updatesCount, stock == null ? 0 : stock.scaledQuantity());
+            }
+        }
+        assertThrows(IOException.class, () -> pantry.add("riz", IngredientAmount.of(1, "kg")));
+        assertNull(pantry.getStock("riz"));
+
+        try (Pantry reopened = Pantry.open(tempDir)) {
+            for (int writer = 0; writer < writersCount; writer++)
+                assertEquals(pantry.getStock("ingredient " + writer), reopened.getStock("ingredient " + writer));
+        }
+    }
+
+    private List<String> listLogFiles() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(fileName -> fileName.startsWith("log-"))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SelectionSessionTest {
+
+    static private MealsHandler mealsHandler;
+
+    @BeforeAll
+    static void initBeforeAll() throws FileFormatException {
+        mealsHandler = new MealsHandler("meals.yaml");
+    }
+
+    @Test
+    void method_add_and_remove_keepTheSameTotalsAsAFullAggregation() {
+        SelectionSession session = new SelectionSession(mealsHandler.getCatalogue());
+        session.add("risotto");
+        session.add("pâtes au tofu");
+        session.add("risotto");
+        assertEquals(
+                mealsHandler.computeRequiredIngredients(List.of("risotto", "pâtes au tofu", "risotto")),
+                session.snapshot());
+        assertEquals(List.of("pâtes au tofu", "risotto"), session.getSelectedMealsNames());
+
+        assertTrue(session.remove("pâtes au tofu"));
+        assertFalse(session.remove("pâtes au tofu"));
+        assertEquals(mealsHandler.computeRequiredIngredients(List.of("risotto", "risotto")), session.snapshot());
+        assertFalse(session.snapshot().containsKey("pâtes"));
+
+        assertThrows(IllegalArgumentException.class, () -> session.add("not a meal"));
+        assertThrows(IllegalArgumentException.class, () -> session.setServings("risotto", -1));
+    }
+
+    @Test
+    void method_add_and_remove_keepExactTotals_afterManyEdits() {
+        SelectionSession session = new SelectionSession(mealsHandler.getCatalogue());
+        for (int i = 0; i < 10_000; i++) {
+            session.add("salade de patates");
+            session.add("patates sautées");
+            session.remove("patates sautées");
+        }
+        // 10 000 times 0.1 kg
+        assertEquals(1_000_000, session.getScaledTotal("salade"));
+        for (int i = 0; i < 9_999; i++)
+            session.remove("salade de patates");
+        assertEquals(IngredientAmount.of(0.1, "kg"), session.snapshot().get("salade"));
+        assertEquals(1_500, session.getScaledTotal("patates"));
+    }
+
+    @Test
+    void method_setServings_multipliesTheQuantitiesOfTheMeal() {
+        SelectionSession session = new SelectionSession(mealsHandler.getCatalogue());
+        session.setServings("pâtes au tofu", 3);
+        assertEquals(3, session.getServings("pâtes au tofu"));
+        assertEquals(
+                Map.of("pâtes", IngredientAmount.of(1500, "g"), "tofu", IngredientAmount.of(1200, "g")),
+                session.snapshot());
+        session.setServings("pâtes au tofu", 0);
+        assertEquals(Map.of(), session.snapshot());
+        assertEquals(List.of(), session.getSelectedMealsNames());
+    }
+
+    @Test
+    void method_setServings_leavesTheSessionUnchanged_whenATotalOverflows() {
+        // about 9,223 servings of the largest quantity overflow a long
+        SelectionSession session = new SelectionSession(MealsHandlerTest.overflowingCatalogue(1));
+        session.setServings("meal 0", 9_000);
+        assertThrows(ArithmeticException.class, () -> session.setServings("meal 0", 10_000));
+        assertThrows(ArithmeticException.class, () -> session.setServings("meal 0", Integer.MAX_VALUE));
+        assertEquals(9_000, session.getServings("meal 0"));
+        assertEquals(9_000 * 999_999_999_999_000L, session.getScaledTotal("riz"));
+        assertEquals(List.of("meal 0"), session.getSelectedMealsNames());
+    }
+
+    @Test
+    void method_add_rejectsTheServing_thatDoesntFitInAnInt() {
+        SelectionSession session = new SelectionSession(MealCatalogue.of(Map.of(
+                "sel", Map.of("sel", IngredientAmount.of(0, "g"))
+        )));
+        session.setServings("sel", Integer.MAX_VALUE);
+        assertThrows(ArithmeticException.class, () -> session.add("sel"));
+        assertEquals(Integer.MAX_VALUE, session.getServings("sel"));
+        assertTrue(session.remove("sel"));
+        assertEquals(Integer.MAX_VALUE - 1, session.getServings("sel"));
+    }
+}
@@ -0,0 +1,104 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShoppingListCacheTest {
+
+    static private MealCatalogue catalogue;
+
+    @BeforeAll
+    static void initBeforeAll() throws FileFormatException {
+        catalogue = MealCatalogue.of(MealsFileLoader.load("meals.yaml"));
+    }
+
+    private static BitSet selection(int... ordinals) {
+        BitSet selection = new BitSet();
+        for (int ordinal : ordinals)
+            selection.set(ordinal);
+        return selection;
+    }
+
+    @Test
+    void method_get_returnsTheCachedShoppingList_forTheSameSelection() {
+        ShoppingListCache cache = new ShoppingListCache(catalogue, ShoppingListCache.DEFAULT_MAXIMUM_WEIGHT);
+        ShoppingListAggregator aggregator = new ShoppingListAggregator();
+
+        Map<String, IngredientAmount> first = cache.get(catalogue, selection(1, 3), s -> aggregator.aggregate(catalogue, s));
+        assertEquals(aggregator.aggregate(catalogue, selection(1, 3)), first);
+        BitSet sameSelection = selection(3, 1);
+        sameSelection.set(200);
+        sameSelection.clear(200);
+        assertSame(first, cache.get(catalogue, sameSelection, s -> aggregator.aggregate(catalogue, s)));
+        assertThrows(UnsupportedOperationException.class, first::clear);
+        assertEquals(1, cache.getStatistics().hits());
+        assertEquals(1, cache.getStatistics().misses());
+
+        // a new catalogue empties the cache, and a former catalogue is not cached anymore
+        MealCatalogue newCatalogue = MealCatalogue.of(catalogue.asMap());
+        cache.invalidateAll(newCatalogue);
+        assertEquals(0, cache.getStatistics().entriesCount());
+        assertNotSame(first, cache.get(newCatalogue, selection(1, 3), s -> aggregator.aggregate(newCatalogue, s)));
+        cache.get(catalogue, selection(4), s -> aggregator.aggregate(catalogue, s));
+        assertEquals(1, cache.getStatistics().entriesCount());
+    }
+
+    @Test
+    void method_get_evictsEntries_toStayWithinTheBound() {
+        ShoppingListCache cache = new ShoppingListCache(catalogue, 4 * 1024);
+        ShoppingListAggregator aggregator = new ShoppingListAggregator();
+        BitSet popularSelection = selection(0, 1, 2);
+        for (int i = 0; i < 1 << catalogue.getMealsCount(); i++) {
+            cache.get(catalogue, BitSet.valueOf(new long[] {i}), s -> aggregator.aggregate(catalogue, s));
+            cache.get(catalogue, popularSelection, s -> aggregator.aggregate(catalogue, s));
+        }
+        ShoppingListCache.Statistics statistics = cache.getStatistics();
+        assertTrue(statistics.weight() <= 4 * 1024);
+        assertTrue(statistics.evictions() > 0);
+        // the popular selection (which is also one of the enumerated ones) is never evicted
+        assertEquals(1 << catalogue.getMealsCount(), statistics.misses());
+    }
+
+    @Test
+    void method_get_returnsTheRightShoppingLists_whenUsedByManyThreads() throws Exception {
+        ShoppingListCache cache = new ShoppingListCache(catalogue, 16 * 1024);
+        int selectionsCount = 1 << catalogue.getMealsCount();
+        List<Map<String, IngredientAmount>> expected = new ArrayList<>();
+        ShoppingListAggregator aggregator = new ShoppingListAggregator();
+        for (int i = 0; i < selectionsCount; i++)
+            expected.add(aggregator.aggregate(catalogue, BitSet.valueOf(new long[] {i})));
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int seed = thread;
+                futures.add(executor.submit(() -> {
+                    ShoppingListAggregator threadAggregator = new ShoppingListAggregator();
+                    for (int i = 0; i < 20_000; i++) {
+                        int selection = (i * 31 + seed * 7) % selectionsCount;
+                        assertEquals(expected.get(selection), cache.get(
+                                catalogue, BitSet.valueOf(new long[] {selection}), s -> threadAggregator.aggregate(catalogue, s)
+                        ));
+                    }
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        }
+        assertEquals(8 * 20_000, cache.getStatistics().hits() + cache.getStatistics().misses());
+    }
+}
@@ -0,0 +1,83 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TextAssetsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void method_read_returnsTheCompiledTextAssets() throws Exception {
+        Path source = tempDir.resolve("texts.yaml");
+        Files.writeString(source, "prompt_user: \"Enter the numbers:\"\ntry_again: \"Please try again (é):\"\n");
+        Path compiled = tempDir.resolve("texts.yaml" + TextAssets.COMPILED_EXTENSION);
+        TextAssets.compile(source, compiled);
+
+        assertEquals(
+                Map.of("prompt_user", "Enter the numbers:", "try_again", "Please try again (é):"),
+                TextAssets.read(Files.readAllBytes(compiled), Files.readAllBytes(source))
+        );
+    }
+
+    @Test
+    void method_read_returnsNull_whenTheYamlFileHasChanged() throws Exception {
+        Path source = tempDir.resolve("texts.yaml");
+        Files.writeString(source, "prompt_user: \"Enter the numbers:\"\n");
+        Path compiled = tempDir.resolve("texts.yaml" + TextAssets.COMPILED_EXTENSION);
+        TextAssets.compile(source, compiled);
+
+        byte[] newSource = "prompt_user: \"Enter the meals:\"\n".getBytes(StandardCharsets.UTF_8);
+        assertNull(TextAssets.read(Files.readAllBytes(compiled), newSource));
+
+        byte[] compiledBytes = Files.readAllBytes(compiled);
+        byte[] truncated = Arrays.copyOf(compiledBytes, compiledBytes.length - 3);
+        byte[] sourceBytes = Files.readAllBytes(source);
+        assertThrows(FileFormatException.class, () -> TextAssets.read(truncated, sourceBytes));
+    }
+
+    @Test
+    void method_compile_throwsAnException_whenTheFileIsNotCorrectlyFormatted() throws Exception {
+        Path source = tempDir.resolve("texts.yaml");
+        Files.writeString(source, "prompt_user: 3\n");
+        assertThrows(
+                FileFormatException.class,
+                () -> TextAssets.compile(source, tempDir.resolve("texts.yaml" + TextAssets.COMPILED_EXTENSION))
+        );
+    }
+
+    @Test
+    void method_load_readsTheYamlFile_whenThereIsNoCompiledFile() throws Exception {
+        byte[] source = Files.readAllBytes(Path.of(TextAssets.class.getClassLoader().getResource("texts.yaml").toURI()));
+        Map<String, String> textAssets = TextAssets.load("texts.yaml", source, null);
+        assertEquals("You didn't choose any meal.", textAssets.get("you_didnt_choose_any_meal"));
+    }
+
+    @Test
+    void method_load_readsTheYamlFile_whenTheCompiledFileIsStaleOrCorrupted() throws Exception {
+        Path resource = Path.of(TextAssets.class.getClassLoader().getResource("texts.yaml").toURI());
+        byte[] source = Files.readAllBytes(resource);
+        Path compiled = tempDir.resolve("texts.yaml" + TextAssets.COMPILED_EXTENSION);
+        TextAssets.compile(resource, compiled);
+        byte[] compiledBytes = Files.readAllBytes(compiled);
+        Map<String, String> expected = TextAssets.load("texts.yaml", source, compiledBytes);
+
+        byte[] staleSource = Arrays.copyOf(source, source.length + 1);
+        staleSource[source.length] = '\n';
+        byte[] truncated = Arrays.copyOf(compiledBytes, compiledBytes.length - 3);
+        assertEquals(expected, TextAssets.load("texts.yaml", source, truncated));
+        assertEquals(expected, TextAssets.load("texts.yaml", staleSource, compiledBytes));
+        assertEquals("You didn't choose any meal.", expected.get("you_didnt_choose_any_meal"));
+    }
+}
@@ -0,0 +1,82 @@
+package com.foodshoppinglist;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UnitRegistryTest {
+
+    static String mockFileName = "mockUnitsFileName.yaml";
+
+    @Test
+    void method_getDefault_knowsTheCommonUnits() {
+        UnitRegistry unitRegistry = UnitRegistry.getDefault();
+        assertEquals("mass", unitRegistry.getDimension("kg"));
+        assertEquals("volume", unitRegistry.getDimension("c à s"));
+        assertNull(unitRegistry.getDimension("bol"));
+        assertTrue(unitRegistry.areCompatible("g", "kg"));
+        assertTrue(unitRegistry.areCompatible("bol", "bol"));
+        assertFalse(unitRegistry.areCompatible("g", "L"));
+        assertFalse(unitRegistry.areCompatible("bol", "g"));
+    }
+
+    @Test
+    void method_convert_roundsOnceToTheThousandth() {
+        UnitRegistry unitRegistry = UnitRegistry.getDefault();
+        assertEquals(1_500_000, unitRegistry.convert(FixedPoint.parse("1.5"), "kg", "g"));
+        assertEquals(1, unitRegistry.convert(FixedPoint.parse("1"), "mg", "g"));
+        assertEquals(0, unitRegistry.convert(FixedPoint.parse("0.4"), "mg", "g"));
+        assertEquals(33_333, unitRegistry.convert(FixedPoint.parse("2"), "tasse", "c à s"));
+        assertEquals(-66_667, unitRegistry.convert(FixedPoint.parse("-1"), "L", "c à s"));
+        assertEquals(7_000, unitRegistry.convert(FixedPoint.parse("7"), "bol", "bol"));
+        assertThrows(IllegalArgumentException.class, () -> unitRegistry.convert(1, "g", "L"));
+        assertThrows(IllegalArgumentException.class, () -> unitRegistry.convert(1, "bol", "g"));
+    }
+
+    @Test
+    void method_getCommonUnit_returnsAUnitThatDividesBothUnits() {
+        UnitRegistry unitRegistry = UnitRegistry.getDefault();
+        assertEquals("g", unitRegistry.getCommonUnit("g", "kg"));
+        assertEquals("mg", unitRegistry.getCommonUnit("kg", "mg"));
+        assertEquals("cL", unitRegistry.getCommonUnit("L", "cL"));
+        assertEquals("c à c", unitRegistry.getCommonUnit("L", "c à s"));
+        assertEquals("c à c", unitRegistry.getCommonUnit("tasse", "c à s"));
+        assertEquals("unit", unitRegistry.getCommonUnit("douzaine", "unit"));
+        assertEquals("bol", unitRegistry.getCommonUnit("bol", "bol"));
+
+        // the conversions to the common unit are exact
+        assertEquals(200_000, unitRegistry.convert(FixedPoint.parse("1"), "L", "c à c"));
+        assertEquals(3_000, unitRegistry.convert(FixedPoint.parse("1"), "c à s", "c à c"));
+        assertEquals(50_000, unitRegistry.convert(FixedPoint.parse("1"), "tasse", "c à c"));
+        assertEquals(FixedPoint.parse("1.015"), unitRegistry.convert(203_000, "c à c", "L"));
+    }
+
+    @Test
+    void method_of_throwsException_whenContentIsNotCorrect() {
+        for (Object content : new Object[] {
+                "not a dictionary",
+                Map.of("mass", "g"),
+                Map.of("mass", Map.of()),
+                Map.of("mass", Map.of("g", "one")),
+                Map.of("mass", Map.of("g", 0)),
+                Map.of("mass", Map.of("g", 0.0001)),
+                Map.of("mass", Map.of("g", 1), "volume", Map.of("g", 1)),
+                Map.of("mass", Map.of("g", 1_000_000_000_000L)),
+                Map.of("mass", Map.of("g", new BigInteger("1234567890123456789012")))
+        })
+            assertThrows(FileFormatException.class, () -> UnitRegistry.of(mockFileName, content), content.toString());
+    }
+
+    @Test
+    void method_of_acceptsTheSizes_thatDontFitInAnInt() throws FileFormatException {
+        UnitRegistry unitRegistry = UnitRegistry.of(mockFileName, Map.of("mass", Map.of("mg", 1, "3 t", 3_000_000_000L)));
+        assertEquals(FixedPoint.parse("3000000000"), unitRegistry.convert(FixedPoint.parse("1"), "3 t", "mg"));
+    }
+}